@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A BufferedReader that splits the input into lines at byte level and decodes each line on its own. Thread dumps are
+ * almost entirely ASCII: while looking for the line terminator, the reader also checks whether the line contains any
+ * byte outside the ASCII range, and if it does not, the line is built from the bytes as ISO-8859-1, which is a plain
+ * copy into a compact string on recent JVMs, instead of going through the charset decoder. Only the rare line with
+ * non-ASCII content, a thread name for example, is decoded with the input charset. Lines can only be split at byte
+ * level for charsets that encode ASCII as single bytes with the same values; for other charsets, the reader behaves
+ * like a plain BufferedReader over an InputStreamReader.
+ *
+ * The lines are identical to the ones produced by a BufferedReader over an InputStreamReader with the same charset;
+ * '\n', '\r' and "\r\n" terminate lines. The reader is meant to be read line by line: the character read methods are
+ * supported, but they return the lines with the terminators normalized to '\n'. mark() is not supported.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/14/17
+ */
+public class ByteLineReader extends BufferedReader {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return true if the charset encodes all ASCII characters as single bytes with the same values.
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+
+        byte[] ascii = new byte[128];
+
+        for(int i = 0; i < ascii.length; i ++) {
+
+            ascii[i] = (byte)i;
+        }
+
+        return Arrays.equals(ascii, new String(ascii, StandardCharsets.US_ASCII).getBytes(charset));
+    }
+
+    /**
+     * Decodes the bytes, taking the ASCII fast path if possible.
+     *
+     * @param asciiCompatible the result of isAsciiCompatible(charset), computed once by the caller.
+     */
+    static String decode(byte[] bytes, int offset, int length, Charset charset, boolean asciiCompatible) {
+
+        if (asciiCompatible) {
+
+            int bits = 0;
+
+            for(int i = offset; i < offset + length; i ++) {
+
+                bits |= bytes[i];
+            }
+
+            if (bits >= 0) {
+
+                return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+            }
+        }
+
+        return new String(bytes, offset, length, charset);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private InputStream input;
+
+    private Charset charset;
+
+    private boolean asciiCompatible;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    //
+    // the previous line ended with '\r', so a '\n' that follows belongs to the same terminator
+    //
+    private boolean skipLF;
+
+    //
+    // what is left of the line handed out by the character read methods
+    //
+    private String pending;
+    private int pendingPosition;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses the default charset, like InputStreamReader.
+     */
+    public ByteLineReader(InputStream input) {
+
+        this(input, Charset.defaultCharset());
+    }
+
+    public ByteLineReader(InputStream input, Charset charset) {
+
+        this(input, charset, INITIAL_BUFFER_SIZE);
+    }
+
+    ByteLineReader(InputStream input, Charset charset, int initialBufferSize) {
+
+        //
+        // for ASCII compatible charsets, all the BufferedReader methods that would use the reader are overridden
+        //
+
+        super(isAsciiCompatible(charset) ? new StringReader("") : new InputStreamReader(input, charset));
+
+        if (input == null) {
+
+            throw new IllegalArgumentException("null input");
+        }
+
+        this.input = input;
+        this.charset = charset;
+        this.asciiCompatible = isAsciiCompatible(charset);
+        this.buffer = new byte[initialBufferSize];
+    }
+
+    // BufferedReader overrides ----------------------------------------------------------------------------------------
+
+    @Override
+    public String readLine() throws IOException {
+
+        if (!asciiCompatible) {
+
+            return super.readLine();
+        }
+
+        if (pending != null) {
+
+            //
+            // the rest of a line partially handed out by read(char[], ...), without its '\n'
+            //
+
+            String rest = pending.substring(pendingPosition, pending.length() - 1);
+            pending = null;
+            return rest;
+        }
+
+        if (skipLF) {
+
+            if (position == limit && !fill()) {
+
+                return null;
+            }
+
+            if (buffer[position] == '\n') {
+
+                position ++;
+            }
+
+            skipLF = false;
+        }
+
+        int scanned = position;
+        int bits = 0;
+
+        while(true) {
+
+            for(; scanned < limit; scanned ++) {
+
+                byte b = buffer[scanned];
+
+                if (b == '\n' || b == '\r') {
+
+                    String line = decode(position, scanned - position, bits);
+                    position = scanned + 1;
+                    skipLF = b == '\r';
+                    return line;
+                }
+
+                bits |= b;
+            }
+
+            int consumed = scanned - position;
+
+            if (!fill()) {
+
+                if (position == limit) {
+
+                    return null;
+                }
+
+                //
+                // the last line is not terminated
+                //
+
+                String line = decode(position, limit - position, bits);
+                position = limit;
+                return line;
+            }
+
+            scanned = position + consumed;
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        if (!asciiCompatible) {
+
+            return super.read(cbuf, off, len);
+        }
+
+        if (len == 0) {
+
+            return 0;
+        }
+
+        if (pending == null) {
+
+            String line = readLine();
+
+            if (line == null) {
+
+                return -1;
+            }
+
+            pending = line + "\n";
+            pendingPosition = 0;
+        }
+
+        int n = Math.min(len, pending.length() - pendingPosition);
+        pending.getChars(pendingPosition, pendingPosition + n, cbuf, off);
+        pendingPosition += n;
+
+        if (pendingPosition == pending.length()) {
+
+            pending = null;
+        }
+
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (!asciiCompatible) {
+
+            return super.read();
+        }
+
+        char[] c = new char[1];
+
+        return read(c, 0, 1) == -1 ? -1 : c[0];
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        if (!asciiCompatible) {
+
+            return super.skip(n);
+        }
+
+        if (n < 0L) {
+
+            throw new IllegalArgumentException("skip value is negative");
+        }
+
+        char[] c = new char[(int)Math.min(n, 8192)];
+        long skipped = 0;
+
+        while(skipped < n) {
+
+            int r = read(c, 0, (int)Math.min(n - skipped, c.length));
+
+            if (r == -1) {
+
+                break;
+            }
+
+            skipped += r;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+
+        if (!asciiCompatible) {
+
+            return super.ready();
+        }
+
+        return pending != null || position < limit || input.available() > 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+
+        if (!asciiCompatible) {
+
+            return super.markSupported();
+        }
+
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+
+        if (!asciiCompatible) {
+
+            super.mark(readAheadLimit);
+            return;
+        }
+
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+
+        if (!asciiCompatible) {
+
+            super.reset();
+            return;
+        }
+
+        throw new IOException("reset() not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        pending = null;
+        input.close();
+        super.close();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param bits all the bytes of the line, or-ed together; negative if any byte is outside the ASCII range.
+     */
+    private String decode(int offset, int length, int bits) {
+
+        if (bits >= 0) {
+
+            return new String(buffer, offset, length, StandardCharsets.ISO_8859_1);
+        }
+
+        return new String(buffer, offset, length, charset);
+    }
+
+    /**
+     * Moves the unread content to the beginning of the buffer, growing the buffer if the content fills it, and reads
+     * more.
+     *
+     * @return false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+
+        if (position > 0) {
+
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        if (limit == buffer.length) {
+
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int n;
+
+        while((n = input.read(buffer, limit, buffer.length - limit)) == 0) {
+
+            // retry
+        }
+
+        if (n == -1) {
+
+            return false;
+        }
+
+        limit += n;
+        return true;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.File;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.procedure.BatchProcedureBase;
+import io.novaordis.events.processing.Procedure;
+
+/**
+ * Watches a thread dump collector output directory and sends the thread dumps from all jstack files in it to the
+ * procedure, as a single stream, in timestamp order. The collector starts a new "<date>-<pid>-jstack.out" file every
+ * time the target JVM restarts; new files are discovered as they appear, and all files are read incrementally, as they
+ * grow. Each thread dump carries the PID parsed from the name of its file, and the name of the file.
+ *
+ * Thread dumps from different files are merged on timestamp. The merge assumes that thread dumps appended to a file
+ * later are newer than anything already read, which is true for collector output.
+ *
+ * The implementation is NOT thread safe, with the exception of stop(), which may be invoked from any thread.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/8/17
+ */
+public class CollectorDirectoryWatcher {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(CollectorDirectoryWatcher.class);
+
+    /**
+     * The name of the jstack files written by thread-dump-collector.sh: <yy.mm.dd-HH.MM>-<pid>-jstack.out. The PID is
+     * captured by the first group.
+     */
+    public static final Pattern JSTACK_FILE_NAME_PATTERN = Pattern.compile("^(?:.*-)?(\\d+)-jstack\\.out$");
+
+    //
+    // how long to wait for file system notifications before checking the files anyway; some WatchService
+    // implementations poll, and may notify late
+    //
+    public static final long DEFAULT_POLL_INTERVAL_MS = 500L;
+
+    public static final int DELIVERY_BATCH_SIZE = 32;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the PID from a collector jstack file name, or null if the name does not follow the collector's
+     * convention.
+     */
+    public static Integer getPid(String fileName) {
+
+        Matcher m = JSTACK_FILE_NAME_PATTERN.matcher(fileName);
+
+        if (!m.matches()) {
+
+            return null;
+        }
+
+        try {
+
+            return Integer.parseInt(m.group(1));
+        }
+        catch(NumberFormatException e) {
+
+            return null;
+        }
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private File directory;
+
+    private Procedure procedure;
+
+    private long pollIntervalMs;
+
+    private volatile boolean stopped;
+
+    //
+    // in discovery order
+    //
+    private Map<File, Source> sources;
+
+    private List<JavaThreadDumpEvent> batch;
+
+    private volatile long dumpsProcessed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public CollectorDirectoryWatcher(File directory, Procedure procedure, long pollIntervalMs) {
+
+        if (directory == null) {
+
+            throw new IllegalArgumentException("null directory");
+        }
+
+        if (procedure == null) {
+
+            throw new IllegalArgumentException("null procedure");
+        }
+
+        if (pollIntervalMs <= 0) {
+
+            throw new IllegalArgumentException("invalid poll interval: " + pollIntervalMs);
+        }
+
+        this.directory = directory;
+        this.procedure = procedure;
+        this.pollIntervalMs = pollIntervalMs;
+        this.sources = new LinkedHashMap<>();
+        this.batch = new ArrayList<>(DELIVERY_BATCH_SIZE);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Blocks until stop() is invoked, the thread is interrupted or the directory is removed. The procedure runs on the
+     * calling thread, and it receives an EndOfStreamEvent at the end.
+     */
+    public void run() throws Exception {
+
+        try(WatchService watchService = directory.toPath().getFileSystem().newWatchService()) {
+
+            directory.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            discover();
+            ingest();
+
+            while(!stopped) {
+
+                WatchKey key = watchService.poll(pollIntervalMs, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+
+                    boolean rescan = false;
+
+                    for(WatchEvent<?> e: key.pollEvents()) {
+
+                        rescan |= e.kind() != StandardWatchEventKinds.ENTRY_MODIFY;
+                    }
+
+                    if (!key.reset()) {
+
+                        log.warn(directory + " is not accessible anymore");
+                        break;
+                    }
+
+                    if (rescan) {
+
+                        discover();
+                    }
+                }
+
+                ingest();
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException e) {
+
+            log.debug(this + " interrupted");
+        }
+
+        deliver();
+        procedure.process(new EndOfStreamEvent());
+    }
+
+    /**
+     * Ends the session. May be invoked from any thread.
+     */
+    public void stop() {
+
+        stopped = true;
+    }
+
+    public File getDirectory() {
+
+        return directory;
+    }
+
+    /**
+     * @return the jstack files discovered so far, in discovery order.
+     */
+    public List<File> getFiles() {
+
+        return new ArrayList<>(sources.keySet());
+    }
+
+    public long getDumpsProcessed() {
+
+        return dumpsProcessed;
+    }
+
+    @Override
+    public String toString() {
+
+        return "CollectorDirectoryWatcher[" + directory + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Starts tracking the jstack files that appeared since the last invocation. The files present when the watch
+     * starts are discovered in name order, which for collector output is also chronological order.
+     */
+    void discover() {
+
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+
+            return;
+        }
+
+        Arrays.sort(files);
+
+        for(File f: files) {
+
+            if (sources.containsKey(f) || !f.isFile()) {
+
+                continue;
+            }
+
+            Integer pid = getPid(f.getName());
+
+            if (pid == null) {
+
+                continue;
+            }
+
+            log.debug(this + " discovered " + f + ", PID " + pid);
+
+            sources.put(f, new Source(new ThreadDumpTail(f, 0L, 0L), pid));
+        }
+    }
+
+    /**
+     * Reads everything appended to the files since the last invocation, and delivers the thread dumps in timestamp
+     * order. A file is read only as far as needed to know which thread dump comes next, so the memory footprint does
+     * not depend on how much there is to catch up with.
+     */
+    void ingest() throws Exception {
+
+        for(Source s: sources.values()) {
+
+            s.caughtUp = false;
+        }
+
+        while(true) {
+
+            //
+            // after refilling, each source either has a thread dump pending, or has nothing more to give right now,
+            // so the oldest pending thread dump is the oldest one overall
+            //
+
+            Source next = null;
+
+            for(Source s: sources.values()) {
+
+                s.refill();
+
+                if (s.pending.isEmpty()) {
+
+                    continue;
+                }
+
+                if (next == null || s.pending.peek().getTime() < next.pending.peek().getTime()) {
+
+                    next = s;
+                }
+            }
+
+            if (next == null) {
+
+                break;
+            }
+
+            batch.add(next.pending.poll());
+
+            if (batch.size() == DELIVERY_BATCH_SIZE) {
+
+                deliver();
+            }
+        }
+
+        deliver();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void deliver() throws Exception {
+
+        if (batch.isEmpty()) {
+
+            return;
+        }
+
+        if (procedure instanceof BatchProcedureBase) {
+
+            ((BatchProcedureBase)procedure).processBatch(batch);
+        }
+        else {
+
+            for(JavaThreadDumpEvent e: batch) {
+
+                procedure.process(e);
+            }
+        }
+
+        dumpsProcessed += batch.size();
+        batch.clear();
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class Source {
+
+        private final ThreadDumpTail tail;
+        private final int pid;
+        private final ArrayDeque<JavaThreadDumpEvent> pending;
+        private final List<JavaThreadDumpEvent> read;
+        private boolean caughtUp;
+
+        Source(ThreadDumpTail tail, int pid) {
+
+            this.tail = tail;
+            this.pid = pid;
+            this.pending = new ArrayDeque<>();
+            this.read = new ArrayList<>();
+        }
+
+        /**
+         * Reads until at least one thread dump is pending or the end of the file is reached.
+         */
+        void refill() throws Exception {
+
+            while(pending.isEmpty() && !caughtUp) {
+
+                if (!tail.poll(read)) {
+
+                    caughtUp = true;
+                    return;
+                }
+
+                String source = tail.getFile().getName();
+
+                for(JavaThreadDumpEvent e: read) {
+
+                    e.setPid(pid);
+                    e.setSource(source);
+                    pending.add(e);
+                }
+
+                read.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Command line option parsing shared by td and by the procedures that take options.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/16/17
+ */
+public class CommandLineOptions {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Consumes the procedure options that immediately follow the procedure label on the command line, by removing them
+     * from the list, up to the first argument that is not an option of the procedure. The procedures that take options
+     * use it in their (int from, List<String> arguments) constructor, which is what TDProcedureFactory invokes.
+     *
+     * @param from the index of the first argument that follows the procedure label.
+     * @param option applies the argument and returns true if it is an option of the procedure, returns false otherwise.
+     *
+     * @exception IllegalArgumentException on invalid option values, thrown by the option.
+     */
+    public static void consume(int from, List<String> arguments, Predicate<String> option) {
+
+        while(from < arguments.size() && option.test(arguments.get(from))) {
+
+            arguments.remove(from);
+        }
+    }
+
+    /**
+     * @param arg an "<option>=<value>" argument.
+     *
+     * @exception IllegalArgumentException if the value is not a positive integer.
+     */
+    public static int positiveInt(String arg, String option) {
+
+        String s = arg.substring(option.length() + 1);
+
+        try {
+
+            int i = Integer.parseInt(s);
+
+            if (i > 0) {
+
+                return i;
+            }
+        }
+        catch(NumberFormatException e) {
+
+            // fall through
+        }
+
+        throw new IllegalArgumentException("invalid " + option + " value: " + s);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private CommandLineOptions() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
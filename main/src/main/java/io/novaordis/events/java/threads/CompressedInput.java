@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens thread dump input that may be compressed. The format is detected from the first bytes of the content, not from
+ * the file name, so rotated files such as "*-jstack.out.1.gz" or files that were compressed without being renamed are
+ * handled the same way.
+ *
+ * Compressed content is decompressed on a separate thread, with read-ahead, so the decompression overlaps with the
+ * line splitting and the parsing that happen on the reading thread.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/6/17
+ */
+public class CompressedInput {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    //
+    // large enough to hold the longest magic number we look for
+    //
+    private static final int MAGIC_LENGTH = 6;
+
+    public static final int INFLATER_BUFFER_SIZE = 64 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Opens the file, decompressing it if necessary.
+     *
+     * @exception IOException if the file cannot be read, or if it is compressed with an unsupported format.
+     */
+    public static InputStream open(File f) throws IOException {
+
+        return open(f, true);
+    }
+
+    /**
+     * Opens the file, decompressing it if necessary.
+     *
+     * @param readAhead if false, the content is decompressed on the calling thread. Meant for callers that only peek
+     *                  at the beginning of the content, for which starting a read-ahead thread is not worth it.
+     *
+     * @exception IOException if the file cannot be read, or if it is compressed with an unsupported format.
+     */
+    public static InputStream open(File f, boolean readAhead) throws IOException {
+
+        InputStream is = new FileInputStream(f);
+
+        try {
+
+            return open(is, readAhead);
+        }
+        catch(IOException e) {
+
+            is.close();
+            throw new IOException(f + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Wraps the stream, decompressing it if necessary. The returned stream owns the given stream.
+     *
+     * @exception IOException if the stream cannot be read, or if it is compressed with an unsupported format.
+     */
+    public static InputStream open(InputStream is) throws IOException {
+
+        return open(is, true);
+    }
+
+    /**
+     * Wraps the stream, decompressing it if necessary. The returned stream owns the given stream.
+     *
+     * @param readAhead if false, the content is decompressed on the calling thread.
+     *
+     * @exception IOException if the stream cannot be read, or if it is compressed with an unsupported format.
+     */
+    public static InputStream open(InputStream is, boolean readAhead) throws IOException {
+
+        BufferedInputStream bis = new BufferedInputStream(is, INFLATER_BUFFER_SIZE);
+
+        Format format = detect(bis);
+
+        switch(format) {
+
+            case NONE:
+
+                return bis;
+
+            case GZIP:
+
+                //
+                // GZIPInputStream reads concatenated members (cat a.gz b.gz > c.gz, or gzip -c >> f.gz) as one stream
+                //
+
+                return wrap(new GZIPInputStream(bis, INFLATER_BUFFER_SIZE), format, readAhead);
+
+            case ZLIB:
+
+                return wrap(new InflaterInputStream(bis), format, readAhead);
+
+            case ZIP:
+
+                return wrap(new ZipEntriesInputStream(new ZipInputStream(bis)), format, readAhead);
+
+            default:
+
+                throw new IOException(format.getDescription() + " compressed input is not supported");
+        }
+    }
+
+    /**
+     * Looks at the first bytes of the stream without consuming them.
+     */
+    public static Format detect(InputStream is) throws IOException {
+
+        if (!is.markSupported()) {
+
+            throw new IllegalArgumentException(is + " does not support mark()");
+        }
+
+        byte[] magic = new byte[MAGIC_LENGTH];
+        int length = 0;
+
+        is.mark(MAGIC_LENGTH);
+
+        try {
+
+            int read;
+
+            while(length < MAGIC_LENGTH && (read = is.read(magic, length, MAGIC_LENGTH - length)) != -1) {
+
+                length += read;
+            }
+        }
+        finally {
+
+            is.reset();
+        }
+
+        return detect(magic, length);
+    }
+
+    /**
+     * @return the format of the content of the file, or Format.NONE if the file is empty or not compressed.
+     */
+    public static Format detect(File f) throws IOException {
+
+        try(InputStream is = new BufferedInputStream(new FileInputStream(f), MAGIC_LENGTH)) {
+
+            return detect(is);
+        }
+    }
+
+    private static InputStream wrap(InputStream decompressed, Format format, boolean readAhead) {
+
+        return readAhead ? new ReadAheadInputStream(decompressed, format.name()) : decompressed;
+    }
+
+    static Format detect(byte[] magic, int length) {
+
+        for(Format f: Format.values()) {
+
+            if (f.matches(magic, length)) {
+
+                return f;
+            }
+        }
+
+        return Format.NONE;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private CompressedInput() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    public enum Format {
+
+        NONE("uncompressed"),
+        GZIP("gzip", 0x1f, 0x8b),
+        ZLIB("zlib", 0x78),
+        ZIP("zip", 0x50, 0x4b, 0x03, 0x04),
+        BZIP2("bzip2", 0x42, 0x5a, 0x68),
+        XZ("xz", 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00),
+        ZSTD("zstd", 0x28, 0xb5, 0x2f, 0xfd),
+        LZ4("lz4", 0x04, 0x22, 0x4d, 0x18);
+
+        private final String description;
+        private final int[] magic;
+
+        Format(String description, int... magic) {
+
+            this.description = description;
+            this.magic = magic;
+        }
+
+        public String getDescription() {
+
+            return description;
+        }
+
+        boolean matches(byte[] bytes, int length) {
+
+            if (magic.length == 0 || length < magic.length) {
+
+                return false;
+            }
+
+            for(int i = 0; i < magic.length; i ++) {
+
+                if ((bytes[i] & 0xff) != magic[i]) {
+
+                    return false;
+                }
+            }
+
+            if (this == ZLIB) {
+
+                //
+                // only the FLG bytes written at the usual compression levels, so text that starts with "x" is not
+                // mistaken for zlib
+                //
+
+                if (length < 2) {
+
+                    return false;
+                }
+
+                int flg = bytes[1] & 0xff;
+                return flg == 0x01 || flg == 0x9c || flg == 0xda;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * The content of all entries of a zip archive, in archive order, as one stream.
+     */
+    private static class ZipEntriesInputStream extends InputStream {
+
+        private final ZipInputStream zis;
+        private boolean entryOpen;
+
+        ZipEntriesInputStream(ZipInputStream zis) {
+
+            this.zis = zis;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            while(true) {
+
+                if (!entryOpen) {
+
+                    ZipEntry e;
+
+                    do {
+
+                        e = zis.getNextEntry();
+                    }
+                    while(e != null && e.isDirectory());
+
+                    if (e == null) {
+
+                        return -1;
+                    }
+
+                    entryOpen = true;
+                }
+
+                int read = zis.read(b, off, len);
+
+                if (read != -1) {
+
+                    return read;
+                }
+
+                entryOpen = false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            zis.close();
+        }
+    }
+}
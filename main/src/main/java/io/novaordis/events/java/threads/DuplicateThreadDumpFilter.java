@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+/**
+ * Recognizes thread dumps that were already seen, so overlapping inputs (the same file specified twice, rotated
+ * segments that repeat the tail of the previous segment, collector output copied into several places) do not cause
+ * the same thread dump to be counted more than once.
+ *
+ * A thread dump is identified by its timestamp and by a 64-bit FNV-1a fingerprint of its content, built line by line
+ * while the thread dump is read, with fingerprint(long, String). All readers fingerprint the same lines: those that
+ * follow the timestamp line, from the header up to, and excluding, the line that ends the thread dump (see
+ * JavaThreadDumpParser.isThreadDumpEnd()) or the next timestamp line. Blank lines do not count.
+ *
+ * The instance remembers at most "capacity" thread dumps, forgetting the oldest first, so memory stays bounded
+ * regardless of the length of the input; duplicates are expected to be close to each other in the stream.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/15/17
+ */
+public class DuplicateThreadDumpFilter {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    //
+    // FNV-1a 64-bit offset basis and prime
+    //
+    public static final long INITIAL_FINGERPRINT = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Folds the line, followed by a line separator, into the fingerprint. Start with INITIAL_FINGERPRINT. Blank lines
+     * leave the fingerprint unchanged, so it does not depend on how the thread dump is spaced.
+     */
+    public static long fingerprint(long fingerprint, String line) {
+
+        if (line.trim().isEmpty()) {
+
+            return fingerprint;
+        }
+
+        long h = fingerprint;
+
+        for(int i = 0; i < line.length(); i ++) {
+
+            h ^= line.charAt(i);
+            h *= FNV_PRIME;
+        }
+
+        h ^= '\n';
+        h *= FNV_PRIME;
+
+        return h;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private int capacity;
+
+    private Map<Key, Boolean> seen;
+
+    private long duplicateCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public DuplicateThreadDumpFilter() {
+
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DuplicateThreadDumpFilter(int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+
+        this.capacity = capacity;
+
+        this.seen = new LinkedHashMap<Key, Boolean>(16, 0.75f, false) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+
+                return size() > DuplicateThreadDumpFilter.this.capacity;
+            }
+        };
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Records the thread dump as seen.
+     *
+     * @return true if a thread dump with the same timestamp and fingerprint was already seen and is still remembered.
+     */
+    public boolean isDuplicate(long timestamp, long fingerprint) {
+
+        if (seen.put(new Key(timestamp, fingerprint), Boolean.TRUE) != null) {
+
+            duplicateCount ++;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records the thread dump as seen, using the fingerprint computed by its reader.
+     *
+     * @return true if the thread dump was already seen. Thread dumps without a time or a fingerprint are never
+     * duplicates.
+     */
+    public boolean isDuplicate(JavaThreadDumpEvent e) {
+
+        Long time = e.getTime();
+        Long fingerprint = e.getFingerprint();
+
+        if (time == null || fingerprint == null) {
+
+            return false;
+        }
+
+        return isDuplicate(time, fingerprint);
+    }
+
+    /**
+     * @return the number of thread dumps reported as duplicates so far.
+     */
+    public long getDuplicateCount() {
+
+        return duplicateCount;
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+
+        return "DuplicateThreadDumpFilter[" + seen.size() + "/" + capacity + ", " + duplicateCount + " duplicate(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static final class Key {
+
+        private final long timestamp;
+        private final long fingerprint;
+
+        Key(long timestamp, long fingerprint) {
+
+            this.timestamp = timestamp;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (!(o instanceof Key)) {
+
+                return false;
+            }
+
+            Key k = (Key)o;
+            return timestamp == k.timestamp && fingerprint == k.fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+
+            return Long.hashCode(timestamp * 31 + fingerprint);
+        }
+    }
+
+}
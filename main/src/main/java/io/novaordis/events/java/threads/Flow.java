@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads;
+
+/**
+ * The publisher, subscriber and subscription contracts of java.util.concurrent.Flow (Reactive Streams), method by
+ * method, declared here because the project builds for Java 8. Once the project builds for Java 9 or newer, this class
+ * can be replaced by java.util.concurrent.Flow by changing the imports.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/1/17
+ */
+public final class Flow {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private Flow() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * @see java.util.concurrent.Flow.Publisher
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * @see java.util.concurrent.Flow.Subscriber
+     */
+    public interface Subscriber<T> {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * @see java.util.concurrent.Flow.Subscription
+     */
+    public interface Subscription {
+
+        /**
+         * Adds n items to the outstanding demand. A non-positive n cancels the subscription and signals onError().
+         */
+        void request(long n);
+
+        void cancel();
+    }
+}
@@ -17,7 +17,6 @@
 package io.novaordis.events.java.threads;
 
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -50,29 +49,43 @@ public class JavaThreadDumpParser extends ParserBase {
 
     private static final Logger log = LoggerFactory.getLogger(JavaThreadDumpParser.class);
 
+    //
+    // the timestamp format jstack output is usually preceded by. The parser no longer uses these arrays: timestamp
+    // lines are recognized and parsed by ThreadDumpTimestamp, which also understands the sub-second and ISO-8601
+    // variants. They are kept, deprecated, for the code that references them
+    //
+
+    /**
+     * @deprecated timestamps are recognized by ThreadDumpTimestamp.
+     */
+    @Deprecated
     public static final String[] THREAD_DUMP_TIMESTAMP_FORMAT_STRINGS = new String[] {
 
             // 2016-08-13 17:42:10
             "yyyy-MM-dd HH:mm:ss",
     };
 
+    /**
+     * @deprecated timestamps are recognized by ThreadDumpTimestamp.
+     */
+    @Deprecated
     public static final Pattern[] THREAD_DUMP_TIMESTAMP_PATTERNS = new Pattern[] {
 
             // 2016-08-13 17:42:10
             Pattern.compile("^[1-3]\\d\\d\\d-[0-1]\\d-[0-3]\\d [0-2]\\d:[0-5]\\d:[0-5]\\d *$"),
     };
 
+    /**
+     * @deprecated timestamps are parsed by ThreadDumpTimestamp. SimpleDateFormat is not thread safe, so the instance
+     * must not be used concurrently.
+     */
+    @Deprecated
     public static final DateFormat[] THREAD_DUMP_TIMESTAMP_FORMATS = new DateFormat[] {
 
             // 2016-08-13 17:42:10
             new SimpleDateFormat(THREAD_DUMP_TIMESTAMP_FORMAT_STRINGS[0]),
     };
 
-    //
-    // IMPORTANT: every time a new timestamp pattern is added, the corresponding String, Format and a Pattern must be
-    //            added on the same position in the corresponding arrays.
-    //
-
     //
     // Full thread dump Java HotSpot(TM) 64-Bit Server VM (25.51-b03 mixed mode):
     //
@@ -99,6 +112,13 @@ public class JavaThreadDumpParser extends ParserBase {
 
     private JavaThreadDumpEvent currentJavaThreadDumpEvent;
 
+    private boolean fingerprinting;
+
+    //
+    // the fingerprint of the lines of the current thread dump, from the header on
+    //
+    private long fingerprint;
+
     private boolean discardEmptyLine;
 
     private MemorySnapshotEvent memorySnapshotEvent;
@@ -188,6 +208,13 @@ public class JavaThreadDumpParser extends ParserBase {
                 currentJavaThreadDumpEvent = new JavaThreadDumpEvent(lineNumber, timestamp.getTimestamp());
                 currentJavaThreadDumpEvent.appendRawLine(timestamp.getRawTimestampLine());
                 currentJavaThreadDumpEvent.appendRawLine(line);
+
+                if (fingerprinting) {
+
+                    fingerprint =
+                            DuplicateThreadDumpFilter.fingerprint(DuplicateThreadDumpFilter.INITIAL_FINGERPRINT, line);
+                }
+
                 discardEmptyLine = true;
                 timestamp = null;
             }
@@ -210,7 +237,7 @@ public class JavaThreadDumpParser extends ParserBase {
                 memorySnapshotEvent.parse(line);
             }
         }
-        else if (line.startsWith(MARKER_JNI_GLOBAL_REFERENCES) || line.startsWith(MARKER_HEAP)) {
+        else if (isThreadDumpEnd(line)) {
 
             //
             // we are not doing anything with it yet, but we use the information to tokenize the stream
@@ -223,6 +250,7 @@ public class JavaThreadDumpParser extends ParserBase {
                 // one, wrap up the current thread dump instead
                 //
 
+                setFingerprint(currentJavaThreadDumpEvent);
                 result = wrapUpCurrentThreadDump(query, currentJavaThreadDumpEvent, stackTraceParser, line);
                 currentJavaThreadDumpEvent = null;
             }
@@ -235,12 +263,13 @@ public class JavaThreadDumpParser extends ParserBase {
         else {
 
             //
-            // TODO: currently we only check a single set of patterns, generalize when we need to check the second
+            // recognizing and parsing the timestamp is done in the same pass; most lines are rejected after looking
+            // at their first characters
             //
 
-            Matcher m = THREAD_DUMP_TIMESTAMP_PATTERNS[0].matcher(line);
+            long ts = ThreadDumpTimestamp.parse(line);
 
-            if (m.matches()) {
+            if (ts != ThreadDumpTimestamp.NOT_A_TIMESTAMP) {
 
                 //
                 // we identified a new thread dump in the same file, put the thread dump parser in "expect a header
@@ -251,23 +280,6 @@ public class JavaThreadDumpParser extends ParserBase {
                 // save a lot of parsing, so we parse the timestamp here
                 //
 
-                long ts;
-
-                try {
-
-                    ts = THREAD_DUMP_TIMESTAMP_FORMATS[0].parse(line.trim()).getTime();
-                }
-                catch(ParseException e) {
-
-                    //
-                    // this indicates a programming error, as the correct pattern was already identified; it means
-                    // there is a mismatch between pattern and format, so we signal invalid state
-                    //
-
-                    throw new IllegalStateException(
-                            "mismatch between thread dump timestamp pattern and format, line: " + lineNumber, e);
-                }
-
                 if (query != null && !query.selects(ts)) {
 
                     //
@@ -298,6 +310,7 @@ public class JavaThreadDumpParser extends ParserBase {
                         // close the stack trace parser
                         //
 
+                        setFingerprint(currentJavaThreadDumpEvent);
                         result = wrapUpCurrentThreadDump(query, currentJavaThreadDumpEvent, stackTraceParser, null);
                         currentJavaThreadDumpEvent = null;
                     }
@@ -332,6 +345,11 @@ public class JavaThreadDumpParser extends ParserBase {
                     // engage the stack trace parser and identify individual stack traces
                     //
 
+                    if (fingerprinting) {
+
+                        fingerprint = DuplicateThreadDumpFilter.fingerprint(fingerprint, line);
+                    }
+
                     List<Event> stackTraces = stackTraceParser.parse(lineNumber, line, query);
                     currentJavaThreadDumpEvent.addStackTraces(stackTraces);
                 }
@@ -376,6 +394,7 @@ public class JavaThreadDumpParser extends ParserBase {
                 currentJavaThreadDumpEvent.addStackTrace(ste);
             }
 
+            setFingerprint(currentJavaThreadDumpEvent);
             result.add(currentJavaThreadDumpEvent);
         }
 
@@ -389,12 +408,50 @@ public class JavaThreadDumpParser extends ParserBase {
 
     // Public ----------------------------------------------------------------------------------------------------------
 
+    /**
+     * If enabled, the thread dumps carry a fingerprint, for DuplicateThreadDumpFilter. Off by default, as it costs a
+     * hash of every line.
+     */
+    public void setFingerprinting(boolean fingerprinting) {
+
+        this.fingerprinting = fingerprinting;
+    }
+
+    public boolean isFingerprinting() {
+
+        return fingerprinting;
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
+    /**
+     * Recognizes the line that starts a new thread dump, in any of the forms understood by ThreadDumpTimestamp.
+     */
+    static boolean isThreadDumpTimestamp(String line) {
+
+        return ThreadDumpTimestamp.isTimestamp(line);
+    }
+
+    /**
+     * Recognizes the line that follows the last stack trace of a thread dump.
+     */
+    static boolean isThreadDumpEnd(String line) {
+
+        return line.startsWith(MARKER_JNI_GLOBAL_REFERENCES) || line.startsWith(MARKER_HEAP);
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private void setFingerprint(JavaThreadDumpEvent e) {
+
+        if (fingerprinting) {
+
+            e.setFingerprint(fingerprint);
+        }
+    }
+
     /**
      * Wrap up the given (current) thread dump event: collect all leftovers from the stack trace parser, but don't close
      * the stack trace parser, as it will be needed to process upcoming thread dump events.
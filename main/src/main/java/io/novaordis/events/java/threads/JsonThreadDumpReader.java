@@ -0,0 +1,769 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.java.threads.JsonTokenizer.Token;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.query.Query;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Pull-style access to JSON thread dumps, as produced by "jcmd <pid> Thread.dump_to_file -format=json":
+ *
+ * {
+ *   "threadDump": {
+ *     "processId": "12345",
+ *     "time": "2023-09-28T10:11:12.123456Z",
+ *     "runtimeVersion": "21+35-2513",
+ *     "threadContainers": [
+ *       {
+ *         "container": "java.util.concurrent.ThreadPerTaskExecutor@6d06d69c",
+ *         "parent": "<root>",
+ *         "threads": [
+ *           { "tid": "22", "name": "", "virtual": true, "carrier": "25", "stack": [ "...", ... ] },
+ *           ...
+ *
+ * The document is read as a stream of tokens and is never held in memory. nextWithoutStackTraces() returns the thread
+ * dump alone, and nextStackTrace() then produces its threads one at a time, so dumps of any size can be processed in a
+ * fixed heap as long as the caller does not keep the stack traces. next() assembles the whole thread dump into a
+ * JavaThreadDumpEvent, which holds all its stack traces, so it rejects thread dumps with more than a maximum number of
+ * threads. Frames and stacks repeat heavily among virtual threads, so they are shared between stack traces through
+ * bounded caches.
+ *
+ * The thread container, the virtual flag and the carrier are carried as StackTraceEvent properties. The JSON tid is
+ * the Java thread ID; it is converted to the hexadecimal representation StackTraceEvent uses. The Java thread state,
+ * when present, is mapped to the nearest ThreadState. Unknown members are skipped. Several documents may follow each
+ * other in the same input.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/12/17
+ */
+public class JsonThreadDumpReader implements Closeable {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(JsonThreadDumpReader.class);
+
+    //
+    // the number of distinct frames and stacks remembered; the caches are cleared when they fill up
+    //
+    public static final int CACHE_SIZE = 16 * 1024;
+
+    //
+    // the number of threads above which next() rejects a thread dump, instead of assembling it in memory
+    //
+    public static final int DEFAULT_MAX_STACK_TRACES = 100 * 1000;
+
+    //
+    // how far into the input isJson() looks for the first significant character
+    //
+    private static final int DETECTION_LIMIT = 4096;
+
+    //
+    // the nesting depth of the interesting parts of the document
+    //
+    private static final int THREAD_DUMP_DEPTH = 1;
+    private static final int THREAD_DUMP_MEMBERS_DEPTH = 2;
+    private static final int CONTAINER_DEPTH = 4;
+    private static final int THREAD_DEPTH = 6;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Peeks at the input, which must support mark/reset, without consuming it.
+     *
+     * @return true if the first character that is not whitespace is '{'.
+     */
+    public static boolean isJson(InputStream is) throws IOException {
+
+        is.mark(DETECTION_LIMIT);
+
+        try {
+
+            for(int i = 0; i < DETECTION_LIMIT; i ++) {
+
+                int b = is.read();
+
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+
+                    return b == '{';
+                }
+            }
+
+            return false;
+        }
+        finally {
+
+            is.reset();
+        }
+    }
+
+    /**
+     * Maps the Java thread state to the nearest ThreadState representation. The top frame is used to tell apart
+     * the ways a thread can wait.
+     *
+     * @return null if there is no corresponding ThreadState.
+     */
+    static String toThreadStateRepresentation(String state, String topFrame) {
+
+        if ("RUNNABLE".equals(state)) {
+
+            return "runnable";
+        }
+
+        if ("BLOCKED".equals(state)) {
+
+            return "waiting for monitor entry";
+        }
+
+        if ("WAITING".equals(state) || "TIMED_WAITING".equals(state)) {
+
+            if (topFrame != null && topFrame.contains("java.lang.Object.wait")) {
+
+                return "in Object.wait()";
+            }
+
+            if (topFrame != null && topFrame.contains("java.lang.Thread.sleep")) {
+
+                return "sleeping";
+            }
+
+            return "waiting on condition";
+        }
+
+        return null;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private JsonTokenizer tokenizer;
+
+    private Query query;
+
+    private boolean inThreadDump;
+
+    private long threadDumpLineNumber;
+
+    private String time;
+
+    private String processId;
+
+    private String runtimeVersion;
+
+    private String container;
+
+    private StringBuilder stack;
+
+    private Map<String, String> frames;
+
+    private Map<String, String> stacks;
+
+    private int maxStackTraces;
+
+    //
+    // the first stack trace of the current thread dump, read ahead by nextWithoutStackTraces()
+    //
+    private StackTraceEvent pending;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public JsonThreadDumpReader(Reader reader) {
+
+        this(reader, null);
+    }
+
+    /**
+     * @param query may be null. Only the time component of the query is applied, by next().
+     */
+    public JsonThreadDumpReader(Reader reader, Query query) {
+
+        if (reader == null) {
+
+            throw new IllegalArgumentException("null reader");
+        }
+
+        this.tokenizer = new JsonTokenizer(reader);
+        this.query = query;
+        this.stack = new StringBuilder();
+        this.frames = new HashMap<>();
+        this.stacks = new HashMap<>();
+        this.maxStackTraces = DEFAULT_MAX_STACK_TRACES;
+    }
+
+    // Closeable implementation ----------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException {
+
+        inThreadDump = false;
+        pending = null;
+        tokenizer.close();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the next thread dump with all its stack traces. Thread dumps without a valid time, and thread dumps
+     * outside the query time window, are skipped.
+     *
+     * @return the next thread dump or null if the input is exhausted.
+     *
+     * @exception ParsingException if the thread dump has more stack traces than the maximum.
+     */
+    public JavaThreadDumpEvent next() throws IOException, ParsingException {
+
+        while(nextThreadDump()) {
+
+            List<StackTraceEvent> stackTraces = new ArrayList<>();
+
+            StackTraceEvent s;
+
+            while((s = nextStackTrace()) != null) {
+
+                if (stackTraces.size() == maxStackTraces) {
+
+                    throw new ParsingException(
+                            "line " + threadDumpLineNumber + ": the thread dump has more than " + maxStackTraces +
+                                    " threads, too many to be held in memory");
+                }
+
+                stackTraces.add(s);
+            }
+
+            JavaThreadDumpEvent e = toThreadDumpEvent();
+
+            if (e == null) {
+
+                continue;
+            }
+
+            for(StackTraceEvent st: stackTraces) {
+
+                e.addStackTrace(st);
+            }
+
+            return e;
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the next thread dump up to its first thread, and returns it without stack traces. Its stack traces are
+     * read with nextStackTrace(), so the thread dump is never assembled in memory. The time must precede the threads
+     * in the document, as it does in jcmd output. Thread dumps without a valid time before their threads, and thread
+     * dumps outside the query time window, are skipped.
+     *
+     * @return the next thread dump, without stack traces, or null if the input is exhausted.
+     */
+    public JavaThreadDumpEvent nextWithoutStackTraces() throws IOException, ParsingException {
+
+        while(nextThreadDump()) {
+
+            pending = nextStackTrace();
+
+            JavaThreadDumpEvent e = toThreadDumpEvent();
+
+            if (e != null) {
+
+                return e;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Advances to the next thread dump document, skipping what is left of the current one.
+     *
+     * @return false if the input is exhausted.
+     */
+    public boolean nextThreadDump() throws IOException, ParsingException {
+
+        //noinspection StatementWithEmptyBody
+        while(nextStackTrace() != null) {
+
+            // drain
+        }
+
+        time = null;
+        processId = null;
+        runtimeVersion = null;
+        container = null;
+
+        Token t = tokenizer.next();
+
+        if (t == Token.END) {
+
+            return false;
+        }
+
+        if (t != Token.BEGIN_OBJECT) {
+
+            throw new ParsingException("line " + tokenizer.getLineNumber() + ": not a JSON thread dump");
+        }
+
+        inThreadDump = true;
+        threadDumpLineNumber = tokenizer.getLineNumber();
+        return true;
+    }
+
+    /**
+     * Reads the next stack trace of the current thread dump. The caller owns the result; the reader does not keep a
+     * reference to it.
+     *
+     * @return the next stack trace, or null if the current thread dump has no more stack traces.
+     */
+    public StackTraceEvent nextStackTrace() throws IOException, ParsingException {
+
+        if (pending != null) {
+
+            StackTraceEvent s = pending;
+            pending = null;
+            return s;
+        }
+
+        while(inThreadDump) {
+
+            Token t = tokenizer.next();
+            int depth = tokenizer.getDepth();
+
+            switch(t) {
+
+                case END:
+                case END_OBJECT:
+                case END_ARRAY:
+
+                    if (depth == 0) {
+
+                        inThreadDump = false;
+                    }
+
+                    break;
+
+                case NAME:
+
+                    readMember(depth);
+                    break;
+
+                case BEGIN_OBJECT:
+
+                    if (depth == CONTAINER_DEPTH) {
+
+                        container = null;
+                    }
+                    else if (depth == THREAD_DEPTH) {
+
+                        return readThread();
+                    }
+                    else {
+
+                        skipRest();
+                    }
+
+                    break;
+
+                case BEGIN_ARRAY:
+
+                    skipRest();
+                    break;
+
+                default:
+
+                    //
+                    // scalar array elements, ignored
+                    //
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param max the maximum number of stack traces of a thread dump assembled by next().
+     */
+    public void setMaxStackTraces(int max) {
+
+        if (max <= 0) {
+
+            throw new IllegalArgumentException("invalid maximum number of stack traces: " + max);
+        }
+
+        this.maxStackTraces = max;
+    }
+
+    public int getMaxStackTraces() {
+
+        return maxStackTraces;
+    }
+
+    /**
+     * @return the time of the current thread dump, or null if it was not read yet, or it is not valid. The time
+     * usually precedes the threads in the document, but this is not guaranteed.
+     */
+    public Long getTime() {
+
+        if (time == null) {
+
+            return null;
+        }
+
+        long timestamp = ThreadDumpTimestamp.parse(time);
+
+        return timestamp == ThreadDumpTimestamp.NOT_A_TIMESTAMP ? null : timestamp;
+    }
+
+    /**
+     * @return the process ID of the current thread dump, or null if it was not read yet, or it is not valid.
+     */
+    public Integer getPid() {
+
+        if (processId == null) {
+
+            return null;
+        }
+
+        try {
+
+            return Integer.parseInt(processId);
+        }
+        catch(NumberFormatException e) {
+
+            return null;
+        }
+    }
+
+    /**
+     * @return the runtime version of the current thread dump, or null if it was not read yet.
+     */
+    public String getRuntimeVersion() {
+
+        return runtimeVersion;
+    }
+
+    /**
+     * @return the line the reader is on.
+     */
+    public long getLineNumber() {
+
+        return tokenizer.getLineNumber();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Descends into the members that lead to threads, records the thread dump attributes and skips everything else.
+     */
+    private void readMember(int depth) throws IOException, ParsingException {
+
+        if ((depth == THREAD_DUMP_DEPTH && tokenizer.textEquals("threadDump")) ||
+                (depth == THREAD_DUMP_MEMBERS_DEPTH && tokenizer.textEquals("threadContainers")) ||
+                (depth == CONTAINER_DEPTH && tokenizer.textEquals("threads"))) {
+
+            //
+            // enter the object or the array; if the value is a scalar (null, most likely) it is consumed
+            //
+
+            tokenizer.next();
+            return;
+        }
+
+        if (depth == THREAD_DUMP_MEMBERS_DEPTH) {
+
+            if (tokenizer.textEquals("time")) {
+
+                time = readScalar();
+                return;
+            }
+
+            if (tokenizer.textEquals("processId")) {
+
+                processId = readScalar();
+                return;
+            }
+
+            if (tokenizer.textEquals("runtimeVersion")) {
+
+                runtimeVersion = readScalar();
+                return;
+            }
+        }
+
+        if (depth == CONTAINER_DEPTH && tokenizer.textEquals("container")) {
+
+            container = readScalar();
+            return;
+        }
+
+        tokenizer.skipValue();
+    }
+
+    /**
+     * @return the current thread dump, without stack traces, or null if it has no valid time or it is outside the
+     * query time window.
+     */
+    private JavaThreadDumpEvent toThreadDumpEvent() {
+
+        Long timestamp = getTime();
+
+        if (timestamp == null) {
+
+            log.warn("thread dump on line " + threadDumpLineNumber + " skipped, it has no valid time: " + time);
+            return null;
+        }
+
+        if (query != null && !query.selects(timestamp)) {
+
+            return null;
+        }
+
+        JavaThreadDumpEvent e = new JavaThreadDumpEvent(threadDumpLineNumber, timestamp);
+        e.appendRawLine(time);
+
+        Integer pid = getPid();
+
+        if (pid != null) {
+
+            e.setPid(pid);
+        }
+
+        return e;
+    }
+
+    private StackTraceEvent readThread() throws IOException, ParsingException {
+
+        StackTraceEvent e = new StackTraceEvent(tokenizer.getLineNumber());
+
+        String name = null;
+        String tid = null;
+        String state = null;
+        String carrier = null;
+        String topFrame = null;
+        boolean virtual = false;
+
+        stack.setLength(0);
+
+        Token t;
+
+        while((t = tokenizer.next()) != Token.END_OBJECT) {
+
+            if (t != Token.NAME) {
+
+                throw new ParsingException("line " + tokenizer.getLineNumber() + ": unexpected JSON token " + t);
+            }
+
+            if (tokenizer.textEquals("name")) {
+
+                name = readScalar();
+            }
+            else if (tokenizer.textEquals("tid")) {
+
+                tid = readScalar();
+            }
+            else if (tokenizer.textEquals("state")) {
+
+                state = readScalar();
+            }
+            else if (tokenizer.textEquals("virtual")) {
+
+                virtual = "true".equals(readScalar());
+            }
+            else if (tokenizer.textEquals("carrier")) {
+
+                carrier = readScalar();
+            }
+            else if (tokenizer.textEquals("stack")) {
+
+                topFrame = readStack();
+            }
+            else {
+
+                tokenizer.skipValue();
+            }
+        }
+
+        e.setThreadName(name == null ? "" : name);
+
+        if (tid != null) {
+
+            e.setTid(toHexString(tid));
+        }
+
+        if (carrier != null) {
+
+            e.setCarrier(toHexString(carrier));
+        }
+
+        e.setVirtual(virtual);
+
+        if (container != null) {
+
+            e.setContainer(container);
+        }
+
+        String threadState = toThreadStateRepresentation(state, topFrame);
+
+        if (threadState != null) {
+
+            e.setThreadState(threadState);
+        }
+
+        if (stack.length() > 0) {
+
+            e.setStack(share(stacks, stack.toString()));
+        }
+
+        e.appendRawLine(
+                "\"" + e.getThreadName() + "\"" + (tid == null ? "" : " #" + tid) + (virtual ? " virtual" : ""));
+
+        return e;
+    }
+
+    /**
+     * Appends the frames to the stack buffer, in the text thread dump format.
+     *
+     * @return the top frame, or null if the stack is empty.
+     */
+    private String readStack() throws IOException, ParsingException {
+
+        Token t = tokenizer.next();
+
+        if (t != Token.BEGIN_ARRAY) {
+
+            if (t == Token.BEGIN_OBJECT) {
+
+                skipRest();
+            }
+
+            return null;
+        }
+
+        String topFrame = null;
+
+        while((t = tokenizer.next()) != Token.END_ARRAY) {
+
+            if (t == Token.STRING) {
+
+                String frame = share(frames, tokenizer.getText());
+
+                if (topFrame == null) {
+
+                    topFrame = frame;
+                }
+                else {
+
+                    stack.append('\n');
+                }
+
+                stack.append("\tat ").append(frame);
+            }
+            else if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+
+                skipRest();
+            }
+        }
+
+        return topFrame;
+    }
+
+    /**
+     * @return the text of the scalar that follows, or null if the value is JSON null, an object or an array.
+     */
+    private String readScalar() throws IOException, ParsingException {
+
+        Token t = tokenizer.next();
+
+        if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+
+            skipRest();
+            return null;
+        }
+
+        return t == Token.NULL ? null : tokenizer.getText();
+    }
+
+    /**
+     * Skips the rest of the object or array that was just entered.
+     */
+    private void skipRest() throws IOException, ParsingException {
+
+        int depth = tokenizer.getDepth();
+
+        while(tokenizer.getDepth() >= depth) {
+
+            if (tokenizer.next() == Token.END) {
+
+                return;
+            }
+        }
+    }
+
+    private String toHexString(String decimal) throws ParsingException {
+
+        try {
+
+            return "0x" + Long.toHexString(Long.parseLong(decimal));
+        }
+        catch(NumberFormatException e) {
+
+            throw new ParsingException("line " + tokenizer.getLineNumber() + ": invalid thread ID " + decimal);
+        }
+    }
+
+    /**
+     * @return the instance already in the cache, if any, otherwise caches and returns the given instance.
+     */
+    private static String share(Map<String, String> cache, String s) {
+
+        String shared = cache.get(s);
+
+        if (shared != null) {
+
+            return shared;
+        }
+
+        if (cache.size() == CACHE_SIZE) {
+
+            cache.clear();
+        }
+
+        cache.put(s, s);
+        return s;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * A minimal pull tokenizer for JSON documents. It reads the input through a fixed size buffer and never holds more
+ * than the current token, so documents of any size can be read in constant memory, provided the caller does not
+ * accumulate what it reads. Several top-level documents may follow each other in the same input.
+ *
+ * Only the syntax needed to walk a document is verified; for example, numbers are returned as strings and are not
+ * validated.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/12/17
+ */
+class JsonTokenizer implements Closeable {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    //
+    // the context on the nesting stack
+    //
+    private static final byte OBJECT_EXPECTING_NAME = 0;
+    private static final byte OBJECT_EXPECTING_VALUE = 1;
+    private static final byte ARRAY = 2;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private Reader reader;
+
+    private char[] buffer;
+    private int position;
+    private int limit;
+
+    private long lineNumber;
+
+    private byte[] stack;
+    private int depth;
+
+    private StringBuilder text;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    JsonTokenizer(Reader reader) {
+
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+        this.lineNumber = 1;
+        this.stack = new byte[32];
+        this.text = new StringBuilder();
+    }
+
+    // Closeable implementation ----------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException {
+
+        reader.close();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the next token, or Token.END at the end of the input. The text of NAME, STRING and NUMBER tokens is
+     * available with getText() until the next call.
+     */
+    Token next() throws IOException, ParsingException {
+
+        int c = skipSeparators();
+
+        if (c == -1) {
+
+            if (depth != 0) {
+
+                throw new ParsingException("line " + lineNumber + ": unexpected end of JSON input");
+            }
+
+            return Token.END;
+        }
+
+        position ++;
+
+        switch(c) {
+
+            case '{':
+                value();
+                push(OBJECT_EXPECTING_NAME);
+                return Token.BEGIN_OBJECT;
+
+            case '[':
+                value();
+                push(ARRAY);
+                return Token.BEGIN_ARRAY;
+
+            case '}':
+                pop(OBJECT_EXPECTING_NAME, c);
+                return Token.END_OBJECT;
+
+            case ']':
+                pop(ARRAY, c);
+                return Token.END_ARRAY;
+
+            case '"':
+                readString();
+
+                if (depth > 0 && stack[depth - 1] == OBJECT_EXPECTING_NAME) {
+
+                    stack[depth - 1] = OBJECT_EXPECTING_VALUE;
+                    return Token.NAME;
+                }
+
+                value();
+                return Token.STRING;
+
+            default:
+                position --;
+                readLiteral();
+                value();
+
+                String s = text.toString();
+
+                if ("true".equals(s)) {
+
+                    return Token.TRUE;
+                }
+
+                if ("false".equals(s)) {
+
+                    return Token.FALSE;
+                }
+
+                if ("null".equals(s)) {
+
+                    return Token.NULL;
+                }
+
+                char first = s.charAt(0);
+
+                if (first == '-' || (first >= '0' && first <= '9')) {
+
+                    return Token.NUMBER;
+                }
+
+                throw new ParsingException("line " + lineNumber + ": unexpected JSON content \"" + s + "\"");
+        }
+    }
+
+    /**
+     * Skips the value that follows, including all its nested content, if it is an object or an array. Meant to be
+     * used after a NAME token.
+     */
+    void skipValue() throws IOException, ParsingException {
+
+        int level = 0;
+
+        do {
+
+            Token t = next();
+
+            if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+
+                level ++;
+            }
+            else if (t == Token.END_OBJECT || t == Token.END_ARRAY) {
+
+                level --;
+            }
+            else if (t == Token.END) {
+
+                return;
+            }
+        }
+        while(level > 0);
+    }
+
+    /**
+     * @return the text of the last NAME, STRING or NUMBER token, or the literal of the last TRUE, FALSE or NULL token.
+     */
+    String getText() {
+
+        return text.toString();
+    }
+
+    /**
+     * Appends the text of the last token to the given builder. Avoids creating a String.
+     */
+    void appendText(StringBuilder sb) {
+
+        sb.append(text);
+    }
+
+    /**
+     * @return true if the text of the last token equals the given string. Avoids creating a String.
+     */
+    boolean textEquals(String s) {
+
+        if (text.length() != s.length()) {
+
+            return false;
+        }
+
+        for(int i = 0; i < s.length(); i ++) {
+
+            if (text.charAt(i) != s.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the line the tokenizer is on.
+     */
+    long getLineNumber() {
+
+        return lineNumber;
+    }
+
+    /**
+     * @return the nesting depth after the last token: 0 outside any object or array.
+     */
+    int getDepth() {
+
+        return depth;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * A value was read: an object member expects a name again.
+     */
+    private void value() {
+
+        if (depth > 0 && stack[depth - 1] == OBJECT_EXPECTING_VALUE) {
+
+            stack[depth - 1] = OBJECT_EXPECTING_NAME;
+        }
+    }
+
+    private void push(byte context) {
+
+        if (depth == stack.length) {
+
+            byte[] b = new byte[stack.length * 2];
+            System.arraycopy(stack, 0, b, 0, depth);
+            stack = b;
+        }
+
+        stack[depth ++] = context;
+    }
+
+    private void pop(byte expected, int c) throws ParsingException {
+
+        if (depth == 0 || (expected == ARRAY) != (stack[depth - 1] == ARRAY)) {
+
+            throw new ParsingException("line " + lineNumber + ": unexpected '" + (char)c + "'");
+        }
+
+        depth --;
+        value();
+    }
+
+    /**
+     * @return the first character that is not whitespace, ',' or ':', without consuming it, or -1 at the end of the
+     * input.
+     */
+    private int skipSeparators() throws IOException {
+
+        while(true) {
+
+            if (position == limit && !fill()) {
+
+                return -1;
+            }
+
+            char c = buffer[position];
+
+            if (c == '\n') {
+
+                lineNumber ++;
+            }
+            else if (c != ' ' && c != '\t' && c != '\r' && c != ',' && c != ':') {
+
+                return c;
+            }
+
+            position ++;
+        }
+    }
+
+    private void readString() throws IOException, ParsingException {
+
+        text.setLength(0);
+
+        while(true) {
+
+            //
+            // copy runs of plain characters in bulk
+            //
+
+            int start = position;
+
+            while(position < limit) {
+
+                char c = buffer[position];
+
+                if (c == '"' || c == '\\') {
+
+                    break;
+                }
+
+                if (c == '\n') {
+
+                    lineNumber ++;
+                }
+
+                position ++;
+            }
+
+            text.append(buffer, start, position - start);
+
+            if (position == limit) {
+
+                if (!fill()) {
+
+                    throw new ParsingException("line " + lineNumber + ": unterminated JSON string");
+                }
+
+                continue;
+            }
+
+            if (buffer[position ++] == '"') {
+
+                return;
+            }
+
+            int c = read();
+
+            switch(c) {
+
+                case 'b': text.append('\b'); break;
+                case 'f': text.append('\f'); break;
+                case 'n': text.append('\n'); break;
+                case 'r': text.append('\r'); break;
+                case 't': text.append('\t'); break;
+                case 'u':
+
+                    int code = 0;
+
+                    for(int i = 0; i < 4; i ++) {
+
+                        int digit = Character.digit(read(), 16);
+
+                        if (digit == -1) {
+
+                            throw new ParsingException("line " + lineNumber + ": invalid JSON unicode escape");
+                        }
+
+                        code = code * 16 + digit;
+                    }
+
+                    text.append((char)code);
+                    break;
+
+                case -1:
+                    throw new ParsingException("line " + lineNumber + ": unterminated JSON string");
+
+                default:
+
+                    //
+                    // '"', '\\', '/'
+                    //
+
+                    text.append((char)c);
+            }
+        }
+    }
+
+    private void readLiteral() throws IOException {
+
+        text.setLength(0);
+
+        while(position < limit || fill()) {
+
+            char c = buffer[position];
+
+            if (c == ',' || c == ':' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+
+                return;
+            }
+
+            text.append(c);
+            position ++;
+        }
+    }
+
+    private int read() throws IOException {
+
+        if (position == limit && !fill()) {
+
+            return -1;
+        }
+
+        return buffer[position ++];
+    }
+
+    /**
+     * @return false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+
+        int n;
+
+        while((n = reader.read(buffer, 0, buffer.length)) == 0) {
+
+            // retry
+        }
+
+        if (n == -1) {
+
+            position = limit;
+            return false;
+        }
+
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    enum Token {
+
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        TRUE,
+        FALSE,
+        NULL,
+        END,
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Makes sure non-empty content ends with a line terminator, by appending a '\n' at the end of the stream if the last
+ * byte is not one. Used when files are read as one concatenated stream, so the last line of a file that does not end
+ * with a new line is not joined with the first line of the next file.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class LineTerminatedInputStream extends FilterInputStream {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    //
+    // -1 if nothing was read
+    //
+    private int last;
+
+    private boolean terminated;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public LineTerminatedInputStream(InputStream in) {
+
+        super(in);
+        this.last = -1;
+    }
+
+    // FilterInputStream overrides -------------------------------------------------------------------------------------
+
+    @Override
+    public int read() throws IOException {
+
+        if (terminated) {
+
+            return -1;
+        }
+
+        int b = in.read();
+
+        if (b != -1) {
+
+            last = b;
+            return b;
+        }
+
+        return terminate() ? '\n' : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+
+        if (length == 0) {
+
+            return 0;
+        }
+
+        if (terminated) {
+
+            return -1;
+        }
+
+        int n = in.read(buffer, offset, length);
+
+        if (n > 0) {
+
+            last = buffer[offset + n - 1] & 0xFF;
+            return n;
+        }
+
+        if (n == 0) {
+
+            return 0;
+        }
+
+        if (!terminate()) {
+
+            return -1;
+        }
+
+        buffer[offset] = '\n';
+        return 1;
+    }
+
+    /**
+     * Reads and discards, since skipping the underlying stream would not let us see its last byte.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+
+        byte[] discarded = new byte[(int)Math.min(Math.max(n, 0), 8192)];
+        long skipped = 0;
+
+        while(skipped < n) {
+
+            int r = read(discarded, 0, (int)Math.min(discarded.length, n - skipped));
+
+            if (r <= 0) {
+
+                break;
+            }
+
+            skipped += r;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+
+        return false;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Invoked at the end of the underlying stream.
+     *
+     * @return true if a line terminator must be appended.
+     */
+    private boolean terminate() {
+
+        terminated = true;
+        return last != -1 && last != '\n' && last != '\r';
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
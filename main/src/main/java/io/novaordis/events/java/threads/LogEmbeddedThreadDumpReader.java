@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.query.Query;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Pull-style access to the thread dumps embedded in an application log, such as the thread dumps written to
+ * server.log or console.log by "kill -3". The regular log output between thread dumps is skipped at byte level: the
+ * reader looks for lines that start with "Full thread dump", and only the lines of the thread dumps are decoded and
+ * handed to a JavaThreadDumpParser. The skipped lines are not decoded, matched or logged.
+ *
+ * The timestamp of a thread dump is the standalone timestamp line that precedes the header, if present. Otherwise, it
+ * is taken from the preceding log line, if the line starts with a date and time in one of the forms understood by
+ * ThreadDumpTimestamp, optionally in square brackets. The sub-second part and the offset of the log timestamp, if
+ * any, are kept. Thread dumps without a usable timestamp are skipped, with a warning.
+ *
+ * A thread dump ends at its "JNI global references:" line, at the next thread dump header, or at the end of the input.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/10/17
+ */
+public class LogEmbeddedThreadDumpReader implements Closeable {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(LogEmbeddedThreadDumpReader.class);
+
+    public static final String THREAD_DUMP_HEADER = "Full thread dump";
+
+    private static final String MARKER_JNI_GLOBAL_REFERENCES = "JNI global references:";
+
+    private static final byte[] HEADER_BYTES = THREAD_DUMP_HEADER.getBytes(StandardCharsets.US_ASCII);
+
+    public static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return a line in the standalone thread dump timestamp format, built from the timestamp at the beginning of the
+     * log line, or null if the line does not start with a timestamp.
+     */
+    static String toThreadDumpTimestampLine(String logLine) {
+
+        if (logLine == null) {
+
+            return null;
+        }
+
+        //
+        // "2017-08-13 17:41:58,456 INFO ...", "[2017-08-13T17:41:58.456+0000] ...", etc.
+        //
+
+        int offset = logLine.startsWith("[") ? 1 : 0;
+        int length = ThreadDumpTimestamp.length(logLine, offset);
+
+        if (length == -1) {
+
+            return null;
+        }
+
+        int end = offset + length;
+
+        if (end < logLine.length() && Character.isDigit(logLine.charAt(end))) {
+
+            return null;
+        }
+
+        return logLine.substring(offset, end);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private InputStream input;
+
+    private Query query;
+
+    private Charset charset;
+
+    private boolean asciiCompatible;
+
+    private byte[] buffer;
+
+    //
+    // the scan position, and the end of the valid content
+    //
+    private int position;
+    private int limit;
+
+    private boolean endOfInput;
+
+    //
+    // the beginning of the current line, and of the previous one (-1 if not in the buffer anymore)
+    //
+    private int lineStart;
+    private int previousLineStart;
+
+    //
+    // the number of complete lines before the current line
+    //
+    private long lineNumber;
+
+    //
+    // null while skipping regular log output
+    //
+    private JavaThreadDumpParser parser;
+
+    private boolean previousLineIsTimestamp;
+
+    private boolean fingerprinting;
+
+    private ArrayDeque<JavaThreadDumpEvent> pending;
+
+    private long skippedLines;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public LogEmbeddedThreadDumpReader(InputStream input) {
+
+        this(input, null);
+    }
+
+    /**
+     * @param query may be null.
+     */
+    public LogEmbeddedThreadDumpReader(InputStream input, Query query) {
+
+        this(input, query, INITIAL_BUFFER_SIZE);
+    }
+
+    LogEmbeddedThreadDumpReader(InputStream input, Query query, int initialBufferSize) {
+
+        if (input == null) {
+
+            throw new IllegalArgumentException("null input");
+        }
+
+        this.input = input;
+        this.query = query;
+        this.charset = Charset.defaultCharset();
+        this.asciiCompatible = ByteLineReader.isAsciiCompatible(charset);
+        this.buffer = new byte[initialBufferSize];
+        this.previousLineStart = -1;
+        this.pending = new ArrayDeque<>();
+    }
+
+    // Closeable implementation ----------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException {
+
+        endOfInput = true;
+        position = limit;
+        parser = null;
+        pending.clear();
+        input.close();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the next thread dump or null if the input is exhausted.
+     */
+    public JavaThreadDumpEvent next() throws IOException, ParsingException {
+
+        while(pending.isEmpty()) {
+
+            if (parser == null) {
+
+                long before = lineNumber;
+
+                boolean found = skipToHeader();
+
+                skippedLines += lineNumber - before;
+
+                if (!found) {
+
+                    return null;
+                }
+
+                startThreadDump();
+            }
+            else {
+
+                readThreadDumpLine();
+            }
+        }
+
+        return pending.poll();
+    }
+
+    /**
+     * @return the number of the last line read from the input.
+     */
+    public long getLineNumber() {
+
+        return lineNumber;
+    }
+
+    /**
+     * @see JavaThreadDumpParser#setFingerprinting(boolean)
+     */
+    public void setFingerprinting(boolean fingerprinting) {
+
+        this.fingerprinting = fingerprinting;
+    }
+
+    /**
+     * @return the number of lines skipped without being decoded.
+     */
+    public long getSkippedLines() {
+
+        return skippedLines;
+    }
+
+    @Override
+    public String toString() {
+
+        return "LogEmbeddedThreadDumpReader[line " + lineNumber + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Advances to the beginning of the next line that starts with the thread dump header. Only looks at the bytes: a
+     * line feed ends a line, and the header can only match at the beginning of a line.
+     *
+     * @return false if the end of the input was reached.
+     */
+    private boolean skipToHeader() throws IOException {
+
+        byte first = HEADER_BYTES[0];
+
+        while(true) {
+
+            while(position < limit) {
+
+                byte b = buffer[position];
+
+                if (b == '\n') {
+
+                    lineNumber ++;
+                    previousLineStart = lineStart;
+                    lineStart = position + 1;
+                }
+                else if (b == first && position == lineStart) {
+
+                    if (limit - position < HEADER_BYTES.length && !endOfInput) {
+
+                        //
+                        // need more bytes to decide
+                        //
+
+                        break;
+                    }
+
+                    if (startsWithHeader(position, limit)) {
+
+                        return true;
+                    }
+                }
+
+                position ++;
+            }
+
+            //
+            // at the end of the input, the bytes left unscanned while waiting for more input are scanned again
+            //
+
+            if (!fill() && position >= limit) {
+
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Invoked with the scan position at the beginning of a header line. Feeds the timestamp line to a new parser; the
+     * header line itself will be read by readThreadDumpLine().
+     */
+    private void startThreadDump() throws ParsingException {
+
+        String previousLine = previousLineStart < 0 ? null : decode(previousLineStart, lineStart - 1);
+
+        String timestampLine;
+
+        if (previousLine != null && JavaThreadDumpParser.isThreadDumpTimestamp(previousLine)) {
+
+            timestampLine = previousLine;
+        }
+        else {
+
+            timestampLine = toThreadDumpTimestampLine(previousLine);
+        }
+
+        if (timestampLine == null) {
+
+            log.warn("skipping thread dump on line " + (lineNumber + 1) + ", no timestamp found on the previous line");
+
+            //
+            // move past the header, so it is not found again
+            //
+
+            position ++;
+            return;
+        }
+
+        parser = new JavaThreadDumpParser();
+        parser.setFingerprinting(fingerprinting);
+        collect(parser.parse(lineNumber, timestampLine, query));
+        previousLineIsTimestamp = true;
+    }
+
+    private void readThreadDumpLine() throws IOException, ParsingException {
+
+        int end;
+
+        while((end = indexOfLineFeed(lineStart)) == -1) {
+
+            if (!fill()) {
+
+                break;
+            }
+        }
+
+        if (end == -1) {
+
+            end = limit;
+
+            if (lineStart == limit) {
+
+                //
+                // end of input
+                //
+
+                collect(parser.close(lineNumber));
+                parser = null;
+                return;
+            }
+        }
+
+        if (!previousLineIsTimestamp && startsWithHeader(lineStart, end)) {
+
+            //
+            // a header that is not preceded by a standalone timestamp; wrap up the current thread dump and let the
+            // skip logic start the new one, with the timestamp from the previous line
+            //
+
+            collect(parser.close(lineNumber));
+            parser = null;
+            position = lineStart;
+            return;
+        }
+
+        String line = decode(lineStart, end);
+
+        lineNumber ++;
+        previousLineStart = lineStart;
+        lineStart = Math.min(end + 1, limit);
+        position = lineStart;
+
+        collect(parser.parse(lineNumber, line, query));
+
+        previousLineIsTimestamp = JavaThreadDumpParser.isThreadDumpTimestamp(line);
+
+        if (line.startsWith(MARKER_JNI_GLOBAL_REFERENCES)) {
+
+            //
+            // the parser wrapped up the thread dump, back to skipping
+            //
+
+            parser = null;
+        }
+    }
+
+    private int indexOfLineFeed(int from) {
+
+        for(int i = from; i < limit; i ++) {
+
+            if (buffer[i] == '\n') {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean startsWithHeader(int from, int to) {
+
+        if (to - from < HEADER_BYTES.length) {
+
+            return false;
+        }
+
+        for(int i = 0; i < HEADER_BYTES.length; i ++) {
+
+            if (buffer[from + i] != HEADER_BYTES[i]) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param end exclusive, the position of the line feed, if any.
+     */
+    private String decode(int start, int end) {
+
+        if (end > start && buffer[end - 1] == '\r') {
+
+            end --;
+        }
+
+        return ByteLineReader.decode(buffer, start, end - start, charset, asciiCompatible);
+    }
+
+    /**
+     * Reads more input, after discarding the content that precedes the previous line. The buffer grows if a line does
+     * not fit.
+     *
+     * @return false if there is no more input.
+     */
+    private boolean fill() throws IOException {
+
+        if (endOfInput) {
+
+            return false;
+        }
+
+        int keep = previousLineStart >= 0 ? previousLineStart : lineStart;
+
+        if (keep > 0) {
+
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            limit -= keep;
+            position -= keep;
+            lineStart -= keep;
+            previousLineStart = previousLineStart >= 0 ? previousLineStart - keep : -1;
+        }
+        else if (limit == buffer.length) {
+
+            byte[] b = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, b, 0, limit);
+            buffer = b;
+        }
+
+        int read = input.read(buffer, limit, buffer.length - limit);
+
+        if (read == -1) {
+
+            endOfInput = true;
+            return false;
+        }
+
+        limit += read;
+        return true;
+    }
+
+    private void collect(List<Event> events) {
+
+        for(Event e: events) {
+
+            if (e instanceof JavaThreadDumpEvent) {
+
+                pending.add((JavaThreadDumpEvent)e);
+            }
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
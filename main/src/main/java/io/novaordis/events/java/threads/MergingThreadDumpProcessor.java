@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.procedure.BatchProcedureBase;
+import io.novaordis.events.processing.Procedure;
+
+/**
+ * Parses several thread dump files concurrently, each on its own thread, and merges the per-file thread dump streams
+ * on timestamp, so the procedure sees a single, globally time-ordered stream. The thread dumps of a file are expected
+ * to be in time order, as they are in collector output.
+ *
+ * The merge is a k-way merge driven by a heap that holds the oldest unconsumed thread dump of each file. A file thread
+ * parses at most one thread dump ahead of the merge, and only starts parsing it once the previous one was taken by the
+ * merge, so at most two thread dumps per file are held, regardless of the file sizes. Files that are ahead in time
+ * wait for the others.
+ *
+ * Thread dumps with the same timestamp are delivered in the order in which their files were specified. Each thread
+ * dump carries the name of its file and, for collector files, the PID from the file name.
+ *
+ * If a DuplicateThreadDumpFilter is installed, the thread dumps already delivered from another file, or earlier from
+ * the same file, are dropped at the merge. This is the case of rotated segments that overlap.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/9/17
+ */
+public class MergingThreadDumpProcessor {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(MergingThreadDumpProcessor.class);
+
+    //
+    // the number of thread dumps a file thread may parse ahead of the merge
+    //
+    public static final int READ_AHEAD = 1;
+
+    public static final int PROCEDURE_BATCH_SIZE = 16;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private List<File> files;
+
+    private Procedure procedure;
+
+    private List<Source> sources;
+
+    private AtomicReference<Throwable> failure;
+
+    private volatile long dumpsProcessed;
+
+    //
+    // null if duplicate thread dumps are not dropped
+    //
+    private DuplicateThreadDumpFilter duplicateFilter;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public MergingThreadDumpProcessor(List<File> files, Procedure procedure) {
+
+        if (files == null || files.isEmpty()) {
+
+            throw new IllegalArgumentException("no files");
+        }
+
+        if (procedure == null) {
+
+            throw new IllegalArgumentException("null procedure");
+        }
+
+        this.files = new ArrayList<>(files);
+        this.procedure = procedure;
+        this.sources = new ArrayList<>(files.size());
+        this.failure = new AtomicReference<>();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Blocks until all files were read and all thread dumps were processed. The procedure runs on the calling thread,
+     * and it receives an EndOfStreamEvent at the end.
+     *
+     * @exception Exception the first exception thrown while reading any of the files, or by the procedure.
+     */
+    public void run() throws Exception {
+
+        for(int i = 0; i < files.size(); i ++) {
+
+            sources.add(new Source(i, files.get(i)));
+        }
+
+        //
+        // the sources are all in place before any reader thread starts, since a failing reader closes all of them
+        //
+
+        for(Source s: sources) {
+
+            Thread t = new Thread(s, "td reader " + s.file.getName());
+            t.setDaemon(true);
+            t.start();
+        }
+
+        try {
+
+            merge();
+        }
+        catch(Exception e) {
+
+            fail(e);
+        }
+
+        Throwable t = failure.get();
+
+        if (t != null) {
+
+            if (t instanceof Exception) {
+
+                throw (Exception)t;
+            }
+
+            throw new IllegalStateException(t);
+        }
+
+        log.debug(this + " processed " + dumpsProcessed + " thread dump(s)");
+    }
+
+    /**
+     * Must be invoked before run().
+     *
+     * @param filter the filter used to drop duplicate thread dumps. Null means duplicates are processed.
+     */
+    public void setDuplicateFilter(DuplicateThreadDumpFilter filter) {
+
+        this.duplicateFilter = filter;
+    }
+
+    public DuplicateThreadDumpFilter getDuplicateFilter() {
+
+        return duplicateFilter;
+    }
+
+    public List<File> getFiles() {
+
+        return files;
+    }
+
+    public long getDumpsProcessed() {
+
+        return dumpsProcessed;
+    }
+
+    @Override
+    public String toString() {
+
+        return "MergingThreadDumpProcessor[" + files.size() + " file(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void merge() throws Exception {
+
+        PriorityQueue<Source> heap = new PriorityQueue<>(
+                sources.size(),
+                Comparator.comparingLong((Source s) -> s.head.getTime()).thenComparingInt(s -> s.index));
+
+        for(Source s: sources) {
+
+            if (s.advance()) {
+
+                heap.add(s);
+            }
+        }
+
+        List<JavaThreadDumpEvent> batch = new ArrayList<>(PROCEDURE_BATCH_SIZE);
+
+        while(!heap.isEmpty()) {
+
+            Source s = heap.poll();
+
+            if (duplicateFilter == null || !duplicateFilter.isDuplicate(s.head)) {
+
+                batch.add(s.head);
+            }
+
+            if (s.advance()) {
+
+                heap.add(s);
+            }
+
+            if (batch.size() == PROCEDURE_BATCH_SIZE) {
+
+                deliver(batch);
+            }
+        }
+
+        deliver(batch);
+
+        if (failure.get() == null) {
+
+            procedure.process(new EndOfStreamEvent());
+        }
+    }
+
+    private void deliver(List<JavaThreadDumpEvent> batch) throws Exception {
+
+        if (batch.isEmpty() || failure.get() != null) {
+
+            return;
+        }
+
+        if (procedure instanceof BatchProcedureBase) {
+
+            ((BatchProcedureBase)procedure).processBatch(batch);
+        }
+        else {
+
+            for(JavaThreadDumpEvent e: batch) {
+
+                procedure.process(e);
+            }
+        }
+
+        dumpsProcessed += batch.size();
+        batch.clear();
+    }
+
+    private void fail(Throwable t) {
+
+        if (failure.compareAndSet(null, t)) {
+
+            log.error(this + " failed", t);
+        }
+
+        //
+        // unblock all readers and the merge
+        //
+
+        for(Source s: sources) {
+
+            s.buffer.close();
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * A file, the thread that parses it, and its oldest thread dump not yet consumed by the merge.
+     */
+    private class Source implements Runnable {
+
+        private final int index;
+        private final File file;
+        private final RingBuffer<JavaThreadDumpEvent> buffer;
+        private final List<JavaThreadDumpEvent> drained;
+
+        //
+        // only accessed by the merge
+        //
+        private JavaThreadDumpEvent head;
+
+        Source(int index, File file) {
+
+            this.index = index;
+            this.file = file;
+            this.buffer = new RingBuffer<>(file.getName(), READ_AHEAD);
+            this.drained = new ArrayList<>(1);
+        }
+
+        @Override
+        public void run() {
+
+            String name = file.getName();
+            Integer pid = CollectorDirectoryWatcher.getPid(name);
+
+            try(ThreadDumpReader r =
+                        new ThreadDumpReader(new ByteLineReader(CompressedInput.open(file)))) {
+
+                r.setFingerprinting(duplicateFilter != null);
+
+                JavaThreadDumpEvent e;
+
+                while((e = r.next()) != null) {
+
+                    e.setSource(name);
+
+                    if (pid != null) {
+
+                        e.setPid(pid);
+                    }
+
+                    buffer.put(e);
+
+                    //
+                    // the next thread dump is not parsed until there is room for it, so it is not held while waiting
+                    //
+
+                    buffer.awaitNotFull();
+                }
+            }
+            catch(IllegalStateException e) {
+
+                //
+                // the buffer was closed because of a failure elsewhere
+                //
+
+                if (failure.get() == null) {
+
+                    fail(e);
+                }
+            }
+            catch(Throwable t) {
+
+                fail(t);
+            }
+            finally {
+
+                buffer.close();
+            }
+        }
+
+        /**
+         * Blocks until the next thread dump of the file is available.
+         *
+         * @return false if the file is exhausted.
+         */
+        boolean advance() throws InterruptedException {
+
+            if (buffer.drainTo(drained, 1) == -1) {
+
+                head = null;
+                return false;
+            }
+
+            head = drained.get(0);
+            drained.clear();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reads the underlying stream on a dedicated thread, ahead of the consumer, into a bounded number of blocks. Used to
+ * move decompression off the thread that splits and parses lines: the two overlap instead of taking turns.
+ *
+ * Blocks are recycled: a block the consumer is done with goes back to the read-ahead thread, so at most blocks + 2
+ * blocks are ever allocated, however long the stream. The source is only ever touched by the read-ahead thread, which
+ * also closes it: decompressors are not safe to close while another thread is inside read().
+ *
+ * The implementation is NOT thread safe on the consumer side; it is intended to be read by a single thread.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/6/17
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    public static final int DEFAULT_BLOCKS = 4;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final InputStream source;
+
+    private final int blockSize;
+
+    private final RingBuffer<Block> blocks;
+
+    private final Thread reader;
+
+    private final List<Block> drained;
+
+    private final Queue<Block> free;
+
+    private volatile int allocated;
+
+    private volatile IOException failure;
+
+    private Block current;
+
+    private int position;
+
+    private volatile boolean closed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param name used to name the read-ahead thread.
+     */
+    public ReadAheadInputStream(InputStream source, String name) {
+
+        this(source, name, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+    }
+
+    public ReadAheadInputStream(InputStream source, String name, int blockSize, int blocks) {
+
+        if (source == null) {
+
+            throw new IllegalArgumentException("null source");
+        }
+
+        if (blockSize <= 0) {
+
+            throw new IllegalArgumentException("invalid block size: " + blockSize);
+        }
+
+        this.source = source;
+        this.blockSize = blockSize;
+        this.blocks = new RingBuffer<>(name, blocks);
+        this.drained = new ArrayList<>(1);
+        this.free = new ConcurrentLinkedQueue<>();
+        this.reader = new Thread(this::readAhead, "td read-ahead " + name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    // InputStream overrides -------------------------------------------------------------------------------------------
+
+    @Override
+    public int read() throws IOException {
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        return current.bytes[position ++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) {
+
+            return 0;
+        }
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current.bytes, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+
+            return;
+        }
+
+        closed = true;
+
+        //
+        // unblocks the read-ahead thread if it is waiting for space; the thread closes the source on its way out
+        //
+
+        blocks.close();
+        reader.interrupt();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the read-ahead buffer, for statistics.
+     */
+    public RingBuffer<?> getBuffer() {
+
+        return blocks;
+    }
+
+    @Override
+    public String toString() {
+
+        return "ReadAheadInputStream[" + blocks.getName() + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of blocks allocated so far.
+     */
+    int getAllocatedBlocks() {
+
+        return allocated;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return false at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+
+        if (closed) {
+
+            throw new IOException(this + " closed");
+        }
+
+        if (current != null && position < current.length) {
+
+            return true;
+        }
+
+        if (current != null) {
+
+            //
+            // handed back before waiting for the next one, so the read-ahead thread can fill it meanwhile
+            //
+
+            current.length = 0;
+            free.add(current);
+            current = null;
+        }
+
+        try {
+
+            if (blocks.drainTo(drained, 1) == -1) {
+
+                if (failure != null) {
+
+                    throw new IOException(failure.getMessage(), failure);
+                }
+
+                return false;
+            }
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        current = drained.get(0);
+        drained.clear();
+        position = 0;
+        return true;
+    }
+
+    private void readAhead() {
+
+        try {
+
+            while(true) {
+
+                Block b = free.poll();
+
+                if (b == null) {
+
+                    b = new Block(blockSize);
+                    allocated ++;
+                }
+
+                //
+                // fill the block as much as possible, decompressors tend to return short reads
+                //
+
+                int read = 0;
+                IOException e = null;
+
+                try {
+
+                    while(b.length < blockSize &&
+                            (read = source.read(b.bytes, b.length, blockSize - b.length)) != -1) {
+
+                        b.length += read;
+                    }
+                }
+                catch(IOException ioe) {
+
+                    e = ioe;
+                }
+                catch(RuntimeException re) {
+
+                    //
+                    // decompressors may fail with unchecked exceptions on corrupted input
+                    //
+
+                    e = new IOException(re.toString(), re);
+                }
+
+                //
+                // the bytes read before a failure are delivered before the failure is reported
+                //
+
+                if (b.length > 0) {
+
+                    blocks.put(b);
+                }
+
+                if (e != null) {
+
+                    if (!closed) {
+
+                        failure = e;
+                    }
+
+                    return;
+                }
+
+                if (read == -1) {
+
+                    return;
+                }
+            }
+        }
+        catch(IllegalStateException | InterruptedException e) {
+
+            //
+            // closed by the consumer
+            //
+        }
+        finally {
+
+            blocks.close();
+
+            try {
+
+                source.close();
+            }
+            catch(IOException e) {
+
+                //
+                // nothing left to read
+                //
+            }
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class Block {
+
+        private final byte[] bytes;
+        private int length;
+
+        Block(int size) {
+
+            this.bytes = new byte[size];
+        }
+    }
+}
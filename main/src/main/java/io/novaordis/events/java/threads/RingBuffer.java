@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, preallocated FIFO used to connect pipeline stages. Producers block when the buffer is full, consumers
+ * block when it is empty, and consumers drain in batches to amortize the synchronization cost. Once the producer side
+ * is closed, consumers get the remaining elements and then an end-of-stream indication.
+ *
+ * The instance keeps depth statistics, so it can be used to find out which stage is the bottleneck.
+ *
+ * The implementation is thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class RingBuffer<T> {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final String name;
+
+    private final Object[] slots;
+
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+
+    // guarded by lock
+    private int head;
+    private int size;
+    private boolean closed;
+    private int highWatermark;
+    private long putCount;
+    private long fullCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public RingBuffer(String name, int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+
+        this.name = name;
+        this.slots = new Object[capacity];
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Blocks while the buffer is full.
+     *
+     * @exception IllegalStateException if the buffer was closed.
+     */
+    public void put(T element) throws InterruptedException {
+
+        if (element == null) {
+
+            throw new IllegalArgumentException("null element");
+        }
+
+        lock.lockInterruptibly();
+
+        try {
+
+            if (size == slots.length) {
+
+                fullCount ++;
+
+                while(size == slots.length && !closed) {
+
+                    notFull.await();
+                }
+            }
+
+            if (closed) {
+
+                throw new IllegalStateException(this + " is closed");
+            }
+
+            slots[(head + size) % slots.length] = element;
+            size ++;
+            putCount ++;
+
+            if (size > highWatermark) {
+
+                highWatermark = size;
+            }
+
+            notEmpty.signal();
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks while the buffer is full. A producer that builds its elements on demand calls it before building the next
+     * one, so it does not hold a finished element while it waits for room.
+     *
+     * @exception IllegalStateException if the buffer was closed.
+     */
+    public void awaitNotFull() throws InterruptedException {
+
+        lock.lockInterruptibly();
+
+        try {
+
+            if (size == slots.length) {
+
+                fullCount ++;
+
+                while(size == slots.length && !closed) {
+
+                    notFull.await();
+                }
+            }
+
+            if (closed) {
+
+                throw new IllegalStateException(this + " is closed");
+            }
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until at least one element is available or the buffer is closed and empty, then moves up to max elements
+     * into the given collection, in FIFO order.
+     *
+     * @return the number of elements transferred, or -1 if the buffer is closed and there are no more elements.
+     */
+    public int drainTo(Collection<? super T> destination, int max) throws InterruptedException {
+
+        lock.lockInterruptibly();
+
+        try {
+
+            while(size == 0 && !closed) {
+
+                notEmpty.await();
+            }
+
+            if (size == 0) {
+
+                return -1;
+            }
+
+            int n = Math.min(size, max);
+
+            for(int i = 0; i < n; i ++) {
+
+                @SuppressWarnings("unchecked")
+                T element = (T)slots[head];
+                slots[head] = null;
+                head = (head + 1) % slots.length;
+                destination.add(element);
+            }
+
+            size -= n;
+
+            notFull.signalAll();
+
+            if (size > 0) {
+
+                //
+                // let other consumers, if any, pick up what is left
+                //
+
+                notEmpty.signal();
+            }
+
+            return n;
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signals the end of the stream. Elements already in the buffer can still be drained. Blocked producers are
+     * released with an IllegalStateException. Idempotent.
+     */
+    public void close() {
+
+        lock.lock();
+
+        try {
+
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public int getCapacity() {
+
+        return slots.length;
+    }
+
+    /**
+     * @return the current number of elements waiting in the buffer.
+     */
+    public int getDepth() {
+
+        lock.lock();
+
+        try {
+
+            return size;
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the maximum depth observed since the buffer was created.
+     */
+    public int getHighWatermark() {
+
+        lock.lock();
+
+        try {
+
+            return highWatermark;
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total number of elements put in the buffer since it was created.
+     */
+    public long getPutCount() {
+
+        lock.lock();
+
+        try {
+
+            return putCount;
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many times a producer found the buffer full. A high value means the downstream stage is the
+     * bottleneck.
+     */
+    public long getFullCount() {
+
+        lock.lock();
+
+        try {
+
+            return fullCount;
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        return "RingBuffer[" + name + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
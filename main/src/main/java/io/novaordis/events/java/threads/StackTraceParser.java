@@ -224,6 +224,24 @@ public class StackTraceParser extends ParserBase {
             e.setOsPrio(Integer.parseInt(osPrios.substring(0, i)));
         }
 
+        //
+        // cpu=1234.56ms elapsed=789.01s
+        //
+
+        long micros = parseScaledDecimal(fragment, "cpu=", "ms", 3);
+
+        if (micros != -1L) {
+
+            e.setCpuMicros(micros);
+        }
+
+        micros = parseScaledDecimal(fragment, "elapsed=", "s", 6);
+
+        if (micros != -1L) {
+
+            e.setElapsedMicros(micros);
+        }
+
         //
         // nid
         //
@@ -251,6 +269,78 @@ public class StackTraceParser extends ParserBase {
         }
     }
 
+    /**
+     * Parses the decimal number that follows the key in the fragment, multiplied by 10^scale and truncated, without
+     * creating intermediate strings: "cpu=1234.56ms" with scale 3 yields 1234560.
+     *
+     * @param key the key, including '='. It must be at the beginning of the fragment or preceded by a space.
+     * @param unit the unit that must follow the number.
+     *
+     * @return the value, or -1 if the key is not present or its value is not a non-negative decimal number followed by
+     * the unit.
+     */
+    static long parseScaledDecimal(String fragment, String key, String unit, int scale) {
+
+        int i = fragment.indexOf(key);
+
+        while(i > 0 && fragment.charAt(i - 1) != ' ') {
+
+            i = fragment.indexOf(key, i + 1);
+        }
+
+        if (i == -1) {
+
+            return -1L;
+        }
+
+        i += key.length();
+
+        int length = fragment.length();
+        long value = 0L;
+        int digits = 0;
+        int fractionDigits = -1;
+
+        for(; i < length; i ++) {
+
+            char c = fragment.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+
+                if (fractionDigits == -1) {
+
+                    value = value * 10 + (c - '0');
+                }
+                else if (fractionDigits < scale) {
+
+                    value = value * 10 + (c - '0');
+                    fractionDigits ++;
+                }
+
+                digits ++;
+            }
+            else if (c == '.' && fractionDigits == -1) {
+
+                fractionDigits = 0;
+            }
+            else {
+
+                break;
+            }
+        }
+
+        if (digits == 0 || !fragment.startsWith(unit, i)) {
+
+            return -1L;
+        }
+
+        for(int d = Math.max(fractionDigits, 0); d < scale; d ++) {
+
+            value *= 10;
+        }
+
+        return value;
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
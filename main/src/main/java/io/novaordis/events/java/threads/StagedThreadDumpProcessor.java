@@ -0,0 +1,689 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.procedure.AggregatingProcedure;
+import io.novaordis.events.java.threads.procedure.BatchProcedureBase;
+import io.novaordis.events.java.threads.procedure.PartialAggregate;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.Procedure;
+import io.novaordis.events.query.Query;
+
+/**
+ * Processes a thread dump input in three stages, each running on its own thread(s):
+ *
+ * 1. The reader thread does the I/O and line splitting, and cuts the input into chunks at thread dump timestamp
+ *    lines, so each chunk contains at most one thread dump.
+ *
+ * 2. One or more parser threads turn chunks into JavaThreadDumpEvents. Each chunk is parsed by a fresh
+ *    JavaThreadDumpParser, so the parsers share no state.
+ *
+ * 3. The calling thread runs the procedure. Chunks may be parsed out of order, so they are re-sequenced before
+ *    delivery: the procedure sees the thread dumps in the order in which they appear in the input. The dumps that
+ *    became deliverable together are handed over as one batch to procedures that support it. The re-sequencing is
+ *    bounded by a window: a parser does not publish chunk N + REORDER_WINDOW before chunk N was consumed, so a slow
+ *    parser stops the others instead of letting parsed chunks pile up while they wait for their turn.
+ *
+ * If the procedure is an AggregatingProcedure, the parser threads also fold the thread dumps of each chunk into a
+ * partial aggregate, and the procedure stage only merges the partials, in input order, and emits the result at the end
+ * of the stream. The thread dump events themselves never reach the procedure stage.
+ *
+ * If a DuplicateThreadDumpFilter is installed, the reader thread fingerprints the chunks as it builds them and drops
+ * the thread dumps that were already seen before they reach the parsers, so overlapping inputs only cost the scan.
+ *
+ * The stages are connected by bounded RingBuffers, whose depth statistics are available while and after running.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class StagedThreadDumpProcessor {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(StagedThreadDumpProcessor.class);
+
+    public static final int DEFAULT_PARSER_THREADS = 2;
+
+    public static final int CHUNK_BUFFER_SLOTS_PER_PARSER = 4;
+
+    public static final int DUMP_BUFFER_CAPACITY = 64;
+
+    //
+    // the maximum distance, in chunks, between the oldest chunk not yet consumed by the procedure stage and any chunk
+    // published by a parser
+    //
+    public static final int REORDER_WINDOW = 64;
+
+    //
+    // the maximum number of parsed chunks the procedure stage takes from the buffer in one lock acquisition
+    //
+    public static final int PROCEDURE_BATCH_SIZE = 16;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private BufferedReader input;
+
+    private Procedure procedure;
+
+    private Query query;
+
+    private int parserThreads;
+
+    //
+    // null if the procedure cannot aggregate in parallel
+    //
+    private Aggregation<?> aggregation;
+
+    private RingBuffer<Chunk> chunkBuffer;
+
+    private RingBuffer<Chunk> dumpBuffer;
+
+    private AtomicReference<Throwable> failure;
+
+    private int reorderWindow;
+
+    //
+    // the sequence of the next chunk the procedure stage consumes; guarded by "window"
+    //
+    private final Object window;
+    private long consumed;
+
+    private volatile int reorderHighWatermark;
+
+    //
+    // null if duplicate thread dumps are not dropped
+    //
+    private DuplicateThreadDumpFilter duplicateFilter;
+
+    private volatile long linesRead;
+
+    private volatile long dumpsProcessed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param query may be null.
+     */
+    public StagedThreadDumpProcessor(BufferedReader input, Procedure procedure, Query query, int parserThreads) {
+
+        if (input == null) {
+
+            throw new IllegalArgumentException("null input");
+        }
+
+        if (procedure == null) {
+
+            throw new IllegalArgumentException("null procedure");
+        }
+
+        if (parserThreads <= 0) {
+
+            throw new IllegalArgumentException("invalid parser thread count: " + parserThreads);
+        }
+
+        this.input = input;
+        this.procedure = procedure;
+        this.query = query;
+        this.parserThreads = parserThreads;
+        this.chunkBuffer = new RingBuffer<>("chunks", parserThreads * CHUNK_BUFFER_SLOTS_PER_PARSER);
+        this.dumpBuffer = new RingBuffer<>("dumps", DUMP_BUFFER_CAPACITY);
+        this.failure = new AtomicReference<>();
+        this.reorderWindow = REORDER_WINDOW;
+        this.window = new Object();
+
+        if (procedure instanceof AggregatingProcedure) {
+
+            this.aggregation = new Aggregation<>((AggregatingProcedure<?>)procedure);
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Blocks until the input is exhausted and all thread dumps were processed. The procedure runs on the calling
+     * thread, and it receives an EndOfStreamEvent at the end.
+     *
+     * @exception Exception the first exception thrown by any of the stages.
+     */
+    public void run() throws Exception {
+
+        Thread reader = new Thread(this::readerStage, "td reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        AtomicInteger activeParsers = new AtomicInteger(parserThreads);
+
+        for(int i = 0; i < parserThreads; i ++) {
+
+            Thread parser = new Thread(() -> parserStage(activeParsers), "td parser " + i);
+            parser.setDaemon(true);
+            parser.start();
+        }
+
+        try {
+
+            procedureStage();
+        }
+        catch(Exception e) {
+
+            fail(e);
+        }
+
+        reader.join();
+
+        Throwable t = failure.get();
+
+        if (t != null) {
+
+            if (t instanceof Exception) {
+
+                throw (Exception)t;
+            }
+
+            throw new IllegalStateException(t);
+        }
+
+        logStatistics();
+    }
+
+    /**
+     * Must be invoked before run().
+     *
+     * @param filter the filter used to drop duplicate thread dumps. Null means duplicates are processed.
+     */
+    public void setDuplicateFilter(DuplicateThreadDumpFilter filter) {
+
+        this.duplicateFilter = filter;
+    }
+
+    /**
+     * @return the duplicate thread dump filter, or null if duplicates are processed.
+     */
+    public DuplicateThreadDumpFilter getDuplicateFilter() {
+
+        return duplicateFilter;
+    }
+
+    public int getParserThreads() {
+
+        return parserThreads;
+    }
+
+    /**
+     * @return the buffer between the reader and the parser stages.
+     */
+    public RingBuffer<?> getChunkBuffer() {
+
+        return chunkBuffer;
+    }
+
+    /**
+     * @return the buffer between the parser and the procedure stages.
+     */
+    public RingBuffer<?> getDumpBuffer() {
+
+        return dumpBuffer;
+    }
+
+    /**
+     * @return the maximum number of parsed chunks that waited for an older chunk in the procedure stage. Never exceeds
+     * the reorder window.
+     */
+    public int getReorderHighWatermark() {
+
+        return reorderHighWatermark;
+    }
+
+    public long getLinesRead() {
+
+        return linesRead;
+    }
+
+    public long getDumpsProcessed() {
+
+        return dumpsProcessed;
+    }
+
+    @Override
+    public String toString() {
+
+        return "StagedThreadDumpProcessor[" + parserThreads + " parser(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Must be invoked before run().
+     */
+    void setReorderWindow(int chunks) {
+
+        if (chunks <= 0) {
+
+            throw new IllegalArgumentException("invalid reorder window: " + chunks);
+        }
+
+        this.reorderWindow = chunks;
+    }
+
+    int getReorderWindow() {
+
+        return reorderWindow;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void readerStage() {
+
+        try {
+
+            long sequence = 0;
+            long lineNumber = 0;
+            Chunk current = new Chunk(1L);
+            String line;
+
+            while((line = input.readLine()) != null) {
+
+                lineNumber ++;
+
+                if (JavaThreadDumpParser.isThreadDumpTimestamp(line) && !current.lines.isEmpty()) {
+
+                    if (!isDuplicate(current)) {
+
+                        current.sequence = sequence ++;
+                        chunkBuffer.put(current);
+                    }
+
+                    current = new Chunk(lineNumber);
+                }
+
+                if (duplicateFilter != null) {
+
+                    //
+                    // the same lines the parser fingerprints, see DuplicateThreadDumpFilter: whatever follows the
+                    // thread dump in the input does not count
+                    //
+
+                    if (current.lines.isEmpty()) {
+
+                        current.timestamp = ThreadDumpTimestamp.parse(line);
+                    }
+                    else if (!current.fingerprinted) {
+
+                        if (JavaThreadDumpParser.isThreadDumpEnd(line)) {
+
+                            current.fingerprinted = true;
+                        }
+                        else {
+
+                            current.fingerprint = DuplicateThreadDumpFilter.fingerprint(current.fingerprint, line);
+                        }
+                    }
+                }
+
+                current.lines.add(line);
+
+                if ((lineNumber & 0x3FF) == 0) {
+
+                    linesRead = lineNumber;
+                }
+            }
+
+            linesRead = lineNumber;
+
+            if (!current.lines.isEmpty() && !isDuplicate(current)) {
+
+                current.sequence = sequence;
+                chunkBuffer.put(current);
+            }
+        }
+        catch(Throwable t) {
+
+            fail(t);
+        }
+        finally {
+
+            chunkBuffer.close();
+        }
+    }
+
+    /**
+     * Invoked on the reader thread, when the chunk is complete. Only chunks that start with a timestamp line are
+     * candidates; the chunk is recorded as seen.
+     */
+    private boolean isDuplicate(Chunk c) {
+
+        if (duplicateFilter == null || c.timestamp == ThreadDumpTimestamp.NOT_A_TIMESTAMP) {
+
+            return false;
+        }
+
+        if (!duplicateFilter.isDuplicate(c.timestamp, c.fingerprint)) {
+
+            return false;
+        }
+
+        if (log.isDebugEnabled()) {
+
+            log.debug("dropping duplicate thread dump starting on line " + c.firstLineNumber);
+        }
+
+        return true;
+    }
+
+    private void parserStage(AtomicInteger activeParsers) {
+
+        try {
+
+            List<Chunk> batch = new ArrayList<>(1);
+
+            while(chunkBuffer.drainTo(batch, 1) != -1) {
+
+                Chunk c = batch.get(0);
+                batch.clear();
+
+                JavaThreadDumpParser parser = new JavaThreadDumpParser();
+                long lineNumber = c.firstLineNumber;
+
+                for(String line: c.lines) {
+
+                    c.collect(parser.parse(lineNumber ++, line, query));
+                }
+
+                c.collect(parser.close(lineNumber - 1));
+
+                if (aggregation != null) {
+
+                    aggregation.accumulate(c);
+                }
+
+                //
+                // the lines are not needed anymore, release them before the chunk starts waiting in the next buffer
+                //
+
+                c.lines = null;
+
+                awaitWindow(c.sequence);
+                dumpBuffer.put(c);
+            }
+        }
+        catch(Throwable t) {
+
+            fail(t);
+        }
+        finally {
+
+            if (activeParsers.decrementAndGet() == 0) {
+
+                dumpBuffer.close();
+            }
+        }
+    }
+
+    private void procedureStage() throws Exception {
+
+        List<Chunk> batch = new ArrayList<>(PROCEDURE_BATCH_SIZE);
+        Map<Long, Chunk> outOfOrder = new HashMap<>();
+        List<JavaThreadDumpEvent> run = new ArrayList<>();
+        long next = 0;
+
+        while(dumpBuffer.drainTo(batch, PROCEDURE_BATCH_SIZE) != -1) {
+
+            if (failure.get() != null) {
+
+                return;
+            }
+
+            for(Chunk c: batch) {
+
+                outOfOrder.put(c.sequence, c);
+            }
+
+            batch.clear();
+
+            if (outOfOrder.size() > reorderHighWatermark) {
+
+                reorderHighWatermark = outOfOrder.size();
+            }
+
+            Chunk c;
+
+            while((c = outOfOrder.remove(next)) != null) {
+
+                if (aggregation != null) {
+
+                    aggregation.merge(c);
+                    dumpsProcessed += c.dumpCount;
+                }
+                else {
+
+                    run.addAll(c.events);
+                }
+
+                next ++;
+            }
+
+            synchronized(window) {
+
+                if (consumed != next) {
+
+                    consumed = next;
+                    window.notifyAll();
+                }
+            }
+
+            if (run.isEmpty()) {
+
+                continue;
+            }
+
+            if (procedure instanceof BatchProcedureBase) {
+
+                ((BatchProcedureBase)procedure).processBatch(run);
+            }
+            else {
+
+                for(JavaThreadDumpEvent e: run) {
+
+                    procedure.process(e);
+                }
+            }
+
+            dumpsProcessed += run.size();
+            run.clear();
+        }
+
+        if (failure.get() == null) {
+
+            if (aggregation != null) {
+
+                aggregation.emit();
+            }
+
+            procedure.process(new EndOfStreamEvent());
+        }
+    }
+
+    /**
+     * Invoked on a parser thread. Blocks until the chunk is within the reorder window, or until a stage fails.
+     */
+    private void awaitWindow(long sequence) throws InterruptedException {
+
+        synchronized(window) {
+
+            while(sequence >= consumed + reorderWindow && failure.get() == null) {
+
+                window.wait();
+            }
+        }
+    }
+
+    private void fail(Throwable t) {
+
+        if (failure.compareAndSet(null, t)) {
+
+            log.error(this + " failed", t);
+        }
+
+        //
+        // unblock all stages
+        //
+
+        chunkBuffer.close();
+        dumpBuffer.close();
+
+        synchronized(window) {
+
+            window.notifyAll();
+        }
+    }
+
+    private void logStatistics() {
+
+        if (!log.isInfoEnabled()) {
+
+            return;
+        }
+
+        log.info(this + " processed " + dumpsProcessed + " thread dump(s) from " + linesRead + " line(s)");
+        log.info(this + " reorder window " + reorderWindow + " chunk(s), high watermark " + reorderHighWatermark);
+
+        if (duplicateFilter != null) {
+
+            log.info(this + " dropped " + duplicateFilter.getDuplicateCount() + " duplicate thread dump(s)");
+        }
+
+        for(RingBuffer<?> b: new RingBuffer<?>[] { chunkBuffer, dumpBuffer }) {
+
+            log.info(b.getName() + " buffer: capacity " + b.getCapacity() + ", high watermark " +
+                    b.getHighWatermark() + ", " + b.getPutCount() + " put(s), found full " + b.getFullCount() +
+                    " time(s)");
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * A contiguous run of input lines that contains at most one thread dump. Travels through both buffers: it carries
+     * lines between the reader and the parsers, and events between the parsers and the procedure.
+     */
+    private static class Chunk {
+
+        private long sequence;
+        private final long firstLineNumber;
+        private long timestamp;
+        private long fingerprint;
+        private boolean fingerprinted;
+        private List<String> lines;
+        private final List<JavaThreadDumpEvent> events;
+        private PartialAggregate<?> partial;
+        private int dumpCount;
+
+        Chunk(long firstLineNumber) {
+
+            this.firstLineNumber = firstLineNumber;
+            this.timestamp = ThreadDumpTimestamp.NOT_A_TIMESTAMP;
+            this.fingerprint = DuplicateThreadDumpFilter.INITIAL_FINGERPRINT;
+            this.lines = new ArrayList<>();
+            this.events = new ArrayList<>(1);
+        }
+
+        void collect(List<Event> parsed) {
+
+            for(Event e: parsed) {
+
+                if (e instanceof JavaThreadDumpEvent) {
+
+                    events.add((JavaThreadDumpEvent)e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds the partial aggregate type of the procedure, so partials can be created, merged and emitted without
+     * unchecked casts scattered through the stages.
+     */
+    private static class Aggregation<P extends PartialAggregate<P>> {
+
+        private final AggregatingProcedure<P> procedure;
+        private P aggregate;
+
+        Aggregation(AggregatingProcedure<P> procedure) {
+
+            this.procedure = procedure;
+        }
+
+        /**
+         * Invoked on a parser thread. Replaces the chunk's events with their partial aggregate.
+         */
+        void accumulate(Chunk c) {
+
+            P partial = procedure.newPartial();
+
+            for(JavaThreadDumpEvent e: c.events) {
+
+                procedure.accumulate(partial, e);
+            }
+
+            c.partial = partial;
+            c.dumpCount = c.events.size();
+            c.events.clear();
+        }
+
+        /**
+         * Invoked on the procedure thread, in chunk sequence order.
+         */
+        @SuppressWarnings("unchecked")
+        void merge(Chunk c) {
+
+            P partial = (P)c.partial;
+            c.partial = null;
+
+            if (aggregate == null) {
+
+                aggregate = partial;
+            }
+            else {
+
+                aggregate.merge(partial);
+            }
+        }
+
+        void emit() throws EventProcessingException {
+
+            procedure.emit(aggregate == null ? procedure.newPartial() : aggregate);
+        }
+    }
+}
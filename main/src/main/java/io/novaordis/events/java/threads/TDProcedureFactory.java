@@ -16,14 +16,38 @@
 
 package io.novaordis.events.java.threads;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
+import io.novaordis.events.java.threads.procedure.CompositeProcedure;
+import io.novaordis.events.java.threads.procedure.Contention;
 import io.novaordis.events.java.threads.procedure.Count;
+import io.novaordis.events.java.threads.procedure.Deadlocks;
+import io.novaordis.events.java.threads.procedure.Diff;
+import io.novaordis.events.java.threads.procedure.FlameGraph;
+import io.novaordis.events.java.threads.procedure.HotMethods;
 import io.novaordis.events.java.threads.procedure.Names;
+import io.novaordis.events.java.threads.procedure.Pools;
+import io.novaordis.events.java.threads.procedure.Pprof;
+import io.novaordis.events.java.threads.procedure.StuckThreads;
+import io.novaordis.events.java.threads.procedure.Timeline;
+import io.novaordis.events.java.threads.procedure.Totals;
 import io.novaordis.events.processing.Procedure;
 import io.novaordis.events.processing.ProcedureFactory;
 
 /**
+ * Besides the individual procedures, the factory recognizes composite labels, which run several procedures over a
+ * single pass through the input:
+ *
+ *      count,names:/tmp/names.txt,...
+ *
+ * Procedures are separated by commas. A procedure label may be followed by a colon and the name of the file its output
+ * is written to. Procedure options are not accepted after a label with several procedures, since they could not be
+ * told apart between the procedures; they are accepted after a single procedure with an output file ("pprof:out.pb.gz
+ * --state=RUNNABLE"). When the procedures run on their own threads, at most one of them may write to stdout, otherwise
+ * their output would interleave.
+ *
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
  * @since 8/14/17
  */
@@ -31,10 +55,16 @@ public class TDProcedureFactory implements ProcedureFactory {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
+    public static final String PROCEDURE_SEPARATOR = ",";
+
+    public static final String OUTPUT_FILE_SEPARATOR = ":";
+
     // Static ----------------------------------------------------------------------------------------------------------
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
+    private boolean threadedComposite;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     // ProcedureFactory ------------------------------------------------------------------------------------------------
@@ -42,6 +72,37 @@ public class TDProcedureFactory implements ProcedureFactory {
     @Override
     public Procedure find(String commandLineLabel, int from, List<String> arguments) {
 
+        if (commandLineLabel.contains(PROCEDURE_SEPARATOR) || commandLineLabel.contains(OUTPUT_FILE_SEPARATOR)) {
+
+            return findComposite(commandLineLabel, from, arguments);
+        }
+
+        return findSingle(commandLineLabel, from, arguments);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param b if true, each procedure of a composite runs on its own thread.
+     */
+    public void setThreadedComposite(boolean b) {
+
+        this.threadedComposite = b;
+    }
+
+    public boolean isThreadedComposite() {
+
+        return threadedComposite;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private Procedure findSingle(String commandLineLabel, int from, List<String> arguments) {
+
         if (Count.LABEL.equals(commandLineLabel)) {
 
             return new Count();
@@ -52,16 +113,123 @@ public class TDProcedureFactory implements ProcedureFactory {
             return new Names();
         }
 
+        if (Totals.LABEL.equals(commandLineLabel)) {
+
+            return new Totals();
+        }
+
+        if (HotMethods.LABEL.equals(commandLineLabel)) {
+
+            return new HotMethods(from, arguments);
+        }
+
+        if (FlameGraph.LABEL.equals(commandLineLabel)) {
+
+            return new FlameGraph(from, arguments);
+        }
+
+        if (Pprof.LABEL.equals(commandLineLabel)) {
+
+            return new Pprof(from, arguments);
+        }
+
+        if (Timeline.LABEL.equals(commandLineLabel)) {
+
+            return new Timeline(from, arguments);
+        }
+
+        if (Deadlocks.LABEL.equals(commandLineLabel)) {
+
+            return new Deadlocks();
+        }
+
+        if (Contention.LABEL.equals(commandLineLabel)) {
+
+            return new Contention(from, arguments);
+        }
+
+        if (Diff.LABEL.equals(commandLineLabel)) {
+
+            return new Diff(from, arguments);
+        }
+
+        if (StuckThreads.LABEL.equals(commandLineLabel)) {
+
+            return new StuckThreads(from, arguments);
+        }
+
+        if (Pools.LABEL.equals(commandLineLabel)) {
+
+            return new Pools(from, arguments);
+        }
+
         return null;
     }
 
-    // Public ----------------------------------------------------------------------------------------------------------
+    /**
+     * Each component procedure is built against its own copy of the arguments, so the arguments are left unchanged,
+     * including when a component label turns out not to be known.
+     *
+     * @return null if any of the component labels is not a known procedure.
+     *
+     * @exception IllegalArgumentException if the label has several component procedures and is followed by options
+     * of any of them, or if the procedures are threaded and more than one of them writes to stdout.
+     */
+    private Procedure findComposite(String commandLineLabel, int from, List<String> arguments) {
 
-    // Package protected -----------------------------------------------------------------------------------------------
+        String[] components = commandLineLabel.split(PROCEDURE_SEPARATOR);
 
-    // Protected -------------------------------------------------------------------------------------------------------
+        CompositeProcedure composite = new CompositeProcedure(commandLineLabel, threadedComposite);
+        boolean optionsConsumed = false;
+        int stdoutWriters = 0;
 
-    // Private ---------------------------------------------------------------------------------------------------------
+        for(String s: components) {
+
+            String label = s;
+            File output = null;
+
+            int i = s.indexOf(OUTPUT_FILE_SEPARATOR);
+
+            if (i != -1) {
+
+                label = s.substring(0, i);
+                output = new File(s.substring(i + OUTPUT_FILE_SEPARATOR.length()));
+            }
+
+            //
+            // a single procedure consumes its options from the arguments, as it would without an output file
+            //
+
+            List<String> options = components.length == 1 ? arguments : new ArrayList<>(arguments);
+
+            Procedure p = findSingle(label, from, options);
+
+            if (p == null) {
+
+                return null;
+            }
+
+            optionsConsumed |= options.size() != arguments.size();
+            stdoutWriters += output == null ? 1 : 0;
+            composite.addProcedure(p, output);
+        }
+
+        if (optionsConsumed) {
+
+            throw new IllegalArgumentException(
+                    "procedure options cannot be used with multiple procedures (\"" + commandLineLabel + "\"): " +
+                            arguments.get(from));
+        }
+
+        if (threadedComposite && stdoutWriters > 1) {
+
+            throw new IllegalArgumentException(
+                    "threaded procedures cannot share stdout (\"" + commandLineLabel +
+                            "\"), specify an output file for all but one of them");
+        }
+
+        return composite;
+    }
 
     // Inner classes ---------------------------------------------------------------------------------------------------
 
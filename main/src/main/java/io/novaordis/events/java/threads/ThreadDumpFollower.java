@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.procedure.BatchProcedureBase;
+import io.novaordis.events.processing.Procedure;
+
+/**
+ * Follows a thread dump file that is being appended to, in the manner of "tail -f", and sends the thread dumps to the
+ * procedure as soon as they are complete. A single JavaThreadDumpParser lives for the whole session, and only the
+ * bytes appended since the last poll are read. An incomplete last line is not parsed until its line terminator is
+ * written.
+ *
+ * The offset of the beginning of the first thread dump not yet delivered to the procedure is persisted in a
+ * checkpoint file, so a new session resumes there instead of re-parsing the whole file. If the file is shorter than
+ * the checkpoint offset, it is assumed to have been truncated or replaced, and it is read from the beginning.
+ *
+ * The incremental reading itself is done by a ThreadDumpTail.
+ *
+ * The implementation is NOT thread safe, with the exception of stop(), which may be invoked from any thread.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/7/17
+ */
+public class ThreadDumpFollower {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadDumpFollower.class);
+
+    public static final long DEFAULT_POLL_INTERVAL_MS = 250L;
+
+    public static final String CHECKPOINT_FILE_SUFFIX = ".td-checkpoint";
+
+    public static final String OFFSET_PROPERTY = "offset";
+
+    public static final String LINE_NUMBER_PROPERTY = "line";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the default checkpoint file for the given input file.
+     */
+    public static File getDefaultCheckpointFile(File file) {
+
+        return new File(file.getPath() + CHECKPOINT_FILE_SUFFIX);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private File file;
+
+    private Procedure procedure;
+
+    private File checkpointFile;
+
+    private long pollIntervalMs;
+
+    private volatile boolean stopped;
+
+    private ThreadDumpTail tail;
+
+    //
+    // where a new session should resume: the beginning of the first thread dump not yet delivered
+    //
+    private volatile long checkpointOffset;
+    private long checkpointLineNumber;
+
+    private volatile long dumpsProcessed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param checkpointFile may be null, in which case the session always starts at the beginning of the file and the
+     *                       offset is not persisted.
+     */
+    public ThreadDumpFollower(File file, Procedure procedure, File checkpointFile, long pollIntervalMs) {
+
+        if (file == null) {
+
+            throw new IllegalArgumentException("null file");
+        }
+
+        if (procedure == null) {
+
+            throw new IllegalArgumentException("null procedure");
+        }
+
+        if (pollIntervalMs <= 0) {
+
+            throw new IllegalArgumentException("invalid poll interval: " + pollIntervalMs);
+        }
+
+        this.file = file;
+        this.procedure = procedure;
+        this.checkpointFile = checkpointFile;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Blocks until stop() is invoked or the thread is interrupted. The procedure runs on the calling thread, and it
+     * receives an EndOfStreamEvent at the end. A thread dump that is incomplete when the session ends is not delivered;
+     * the next session will start with it.
+     */
+    public void run() throws Exception {
+
+        readCheckpoint();
+
+        tail = new ThreadDumpTail(file, checkpointOffset, checkpointLineNumber);
+
+        log.debug(this + " starting at offset " + checkpointOffset + ", line " + (checkpointLineNumber + 1));
+
+        List<JavaThreadDumpEvent> dumps = new ArrayList<>();
+
+        try {
+
+            while(!stopped) {
+
+                if (tail.poll(dumps)) {
+
+                    deliver(dumps);
+                }
+                else {
+
+                    Thread.sleep(pollIntervalMs);
+                }
+            }
+        }
+        catch(InterruptedException | ClosedByInterruptException e) {
+
+            log.debug(this + " interrupted");
+        }
+
+        procedure.process(new EndOfStreamEvent());
+    }
+
+    /**
+     * Ends the session. May be invoked from any thread.
+     */
+    public void stop() {
+
+        stopped = true;
+    }
+
+    public File getFile() {
+
+        return file;
+    }
+
+    /**
+     * @return may be null.
+     */
+    public File getCheckpointFile() {
+
+        return checkpointFile;
+    }
+
+    /**
+     * @return the offset a new session would resume at.
+     */
+    public long getCheckpointOffset() {
+
+        return checkpointOffset;
+    }
+
+    public long getDumpsProcessed() {
+
+        return dumpsProcessed;
+    }
+
+    @Override
+    public String toString() {
+
+        return "ThreadDumpFollower[" + file + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void deliver(List<JavaThreadDumpEvent> dumps) throws Exception {
+
+        if (dumps.isEmpty()) {
+
+            return;
+        }
+
+        if (procedure instanceof BatchProcedureBase) {
+
+            ((BatchProcedureBase)procedure).processBatch(dumps);
+        }
+        else {
+
+            for(JavaThreadDumpEvent e: dumps) {
+
+                procedure.process(e);
+            }
+        }
+
+        dumpsProcessed += dumps.size();
+        dumps.clear();
+
+        checkpointOffset = tail.getResumeOffset();
+        checkpointLineNumber = tail.getResumeLineNumber();
+        writeCheckpoint();
+    }
+
+    private void readCheckpoint() throws IOException {
+
+        checkpointOffset = 0L;
+        checkpointLineNumber = 0L;
+
+        if (checkpointFile == null || !checkpointFile.isFile()) {
+
+            return;
+        }
+
+        Properties p = new Properties();
+
+        try(InputStream is = new FileInputStream(checkpointFile)) {
+
+            p.load(is);
+        }
+
+        try {
+
+            checkpointOffset = Long.parseLong(p.getProperty(OFFSET_PROPERTY, "0"));
+            checkpointLineNumber = Long.parseLong(p.getProperty(LINE_NUMBER_PROPERTY, "0"));
+        }
+        catch(NumberFormatException e) {
+
+            log.warn("ignoring invalid checkpoint file " + checkpointFile + ": " + e.getMessage());
+            checkpointOffset = 0L;
+            checkpointLineNumber = 0L;
+        }
+
+        if (checkpointOffset > file.length()) {
+
+            log.warn(file + " is shorter than the checkpoint offset " + checkpointOffset +
+                    ", reading it from the beginning");
+            checkpointOffset = 0L;
+            checkpointLineNumber = 0L;
+        }
+    }
+
+    /**
+     * Written to a temporary file and renamed, so an interrupted write does not leave a corrupted checkpoint behind.
+     */
+    private void writeCheckpoint() throws IOException {
+
+        if (checkpointFile == null) {
+
+            return;
+        }
+
+        Properties p = new Properties();
+        p.setProperty(OFFSET_PROPERTY, Long.toString(checkpointOffset));
+        p.setProperty(LINE_NUMBER_PROPERTY, Long.toString(checkpointLineNumber));
+
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+
+        try(OutputStream os = new FileOutputStream(tmp)) {
+
+            p.store(os, file.getAbsolutePath());
+        }
+
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
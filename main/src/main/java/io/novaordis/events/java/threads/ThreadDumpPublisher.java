@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.java.threads.Flow.Subscriber;
+import io.novaordis.events.java.threads.Flow.Subscription;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+/**
+ * A demand-driven publisher of the thread dumps produced by a ThreadDumpReader. The input is read only when the
+ * subscriber has outstanding demand, so a slow subscriber stops the reading instead of letting parsed events pile up
+ * in memory. Demand accumulated while the subscriber was busy is served in one batch.
+ *
+ * The publisher, subscriber and subscription contracts are those of Flow, which mirrors java.util.concurrent.Flow
+ * (Reactive Streams) because the project builds for Java 8.
+ *
+ * The publisher is unicast: the underlying input can be consumed only once, so a second subscriber is rejected with
+ * onError().
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/1/17
+ */
+public class ThreadDumpPublisher implements Flow.Publisher<JavaThreadDumpEvent> {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadDumpPublisher.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ThreadDumpReader reader;
+
+    private Executor executor;
+
+    private AtomicBoolean subscribed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Events are delivered on a dedicated thread, started on subscription.
+     */
+    public ThreadDumpPublisher(ThreadDumpReader reader) {
+
+        this(reader, null);
+    }
+
+    /**
+     * @param executor the executor that runs the reading and delivery loop. If null, a dedicated thread is started on
+     *                 subscription.
+     */
+    public ThreadDumpPublisher(ThreadDumpReader reader, Executor executor) {
+
+        if (reader == null) {
+
+            throw new IllegalArgumentException("null reader");
+        }
+
+        this.reader = reader;
+        this.executor = executor;
+        this.subscribed = new AtomicBoolean(false);
+    }
+
+    // Publisher implementation ----------------------------------------------------------------------------------------
+
+    @Override
+    public void subscribe(Subscriber<? super JavaThreadDumpEvent> subscriber) {
+
+        if (subscriber == null) {
+
+            throw new NullPointerException("null subscriber");
+        }
+
+        if (!subscribed.compareAndSet(false, true)) {
+
+            subscriber.onSubscribe(CANCELLED);
+            subscriber.onError(new IllegalStateException(this + " already has a subscriber"));
+            return;
+        }
+
+        DumpSubscription subscription = new DumpSubscription(subscriber);
+
+        if (executor == null) {
+
+            Thread t = new Thread(subscription, "thread dump publisher");
+            t.setDaemon(true);
+            t.start();
+        }
+        else {
+
+            executor.execute(subscription);
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "ThreadDumpPublisher[" + reader + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static final Subscription CANCELLED = new Subscription() {
+
+        @Override
+        public void request(long n) {
+            // noop
+        }
+
+        @Override
+        public void cancel() {
+            // noop
+        }
+    };
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class DumpSubscription implements Subscription, Runnable {
+
+        private final Subscriber<? super JavaThreadDumpEvent> subscriber;
+
+        private final Object lock;
+
+        // guarded by lock
+        private long demand;
+
+        // guarded by lock
+        private long invalidRequest;
+
+        private volatile boolean cancelled;
+
+        DumpSubscription(Subscriber<? super JavaThreadDumpEvent> subscriber) {
+
+            this.subscriber = subscriber;
+            this.lock = new Object();
+        }
+
+        // Subscription implementation ---------------------------------------------------------------------------------
+
+        @Override
+        public void request(long n) {
+
+            synchronized (lock) {
+
+                if (n <= 0) {
+
+                    invalidRequest = n;
+                }
+                else {
+
+                    demand += n;
+
+                    if (demand < 0) {
+
+                        //
+                        // overflow, demand is effectively unbounded
+                        //
+
+                        demand = Long.MAX_VALUE;
+                    }
+                }
+
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+
+            cancelled = true;
+
+            synchronized (lock) {
+
+                lock.notifyAll();
+            }
+        }
+
+        // Runnable implementation -------------------------------------------------------------------------------------
+
+        @Override
+        public void run() {
+
+            subscriber.onSubscribe(this);
+
+            try {
+
+                while(!cancelled) {
+
+                    long batch;
+
+                    synchronized (lock) {
+
+                        while(demand == 0 && invalidRequest == 0 && !cancelled) {
+
+                            //
+                            // no demand, the input is not read until the subscriber asks for more
+                            //
+
+                            lock.wait();
+                        }
+
+                        if (invalidRequest != 0) {
+
+                            cancelled = true;
+                            subscriber.onError(new IllegalArgumentException(
+                                    "non-positive subscription request: " + invalidRequest));
+                            return;
+                        }
+
+                        batch = demand;
+                    }
+
+                    //
+                    // deliver the whole outstanding demand without going back to the lock for each event
+                    //
+
+                    long delivered = 0;
+
+                    while(delivered < batch && !cancelled) {
+
+                        JavaThreadDumpEvent e = reader.next();
+
+                        if (e == null) {
+
+                            if (!cancelled) {
+
+                                subscriber.onComplete();
+                            }
+
+                            return;
+                        }
+
+                        subscriber.onNext(e);
+                        delivered ++;
+                    }
+
+                    synchronized (lock) {
+
+                        if (demand != Long.MAX_VALUE) {
+
+                            demand -= delivered;
+                        }
+                    }
+                }
+
+                if (log.isDebugEnabled()) {
+
+                    log.debug(ThreadDumpPublisher.this + " subscription cancelled");
+                }
+            }
+            catch(InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                subscriber.onError(e);
+            }
+            catch(Throwable t) {
+
+                if (!cancelled) {
+
+                    subscriber.onError(t);
+                }
+            }
+            finally {
+
+                closeReader();
+            }
+        }
+
+        private void closeReader() {
+
+            try {
+
+                reader.close();
+            }
+            catch(IOException e) {
+
+                log.warn("failed to close " + reader, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.query.Query;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Pull-style access to the thread dumps contained in a line-oriented input. The reader only consumes as many lines as
+ * needed to produce the next JavaThreadDumpEvent, so the caller controls the pace of the input. Events other than
+ * JavaThreadDumpEvents (memory snapshots, etc.) are dropped.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/1/17
+ */
+public class ThreadDumpReader implements Closeable {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadDumpReader.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private BufferedReader reader;
+
+    private JavaThreadDumpParser parser;
+
+    private Query query;
+
+    private long lineNumber;
+
+    private ArrayDeque<JavaThreadDumpEvent> pending;
+
+    private boolean endOfInput;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public ThreadDumpReader(BufferedReader reader) {
+
+        this(reader, null);
+    }
+
+    /**
+     * @param query may be null.
+     */
+    public ThreadDumpReader(BufferedReader reader, Query query) {
+
+        if (reader == null) {
+
+            throw new IllegalArgumentException("null reader");
+        }
+
+        this.reader = reader;
+        this.parser = new JavaThreadDumpParser();
+        this.query = query;
+        this.lineNumber = 0;
+        this.pending = new ArrayDeque<>();
+        this.endOfInput = false;
+    }
+
+    // Closeable implementation ----------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException {
+
+        endOfInput = true;
+        pending.clear();
+        reader.close();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the input up to the point where the next thread dump is complete.
+     *
+     * @return the next thread dump or null if the input is exhausted.
+     */
+    public JavaThreadDumpEvent next() throws IOException, ParsingException {
+
+        while(pending.isEmpty() && !endOfInput) {
+
+            String line = reader.readLine();
+
+            if (line == null) {
+
+                endOfInput = true;
+
+                if (log.isDebugEnabled()) {
+
+                    log.debug("end of input reached after line " + lineNumber);
+                }
+
+                collect(parser.close(lineNumber));
+            }
+            else {
+
+                collect(parser.parse(++lineNumber, line, query));
+            }
+        }
+
+        return pending.poll();
+    }
+
+    /**
+     * @return the number of the last line read from the input.
+     */
+    public long getLineNumber() {
+
+        return lineNumber;
+    }
+
+    /**
+     * @see JavaThreadDumpParser#setFingerprinting(boolean)
+     */
+    public void setFingerprinting(boolean fingerprinting) {
+
+        parser.setFingerprinting(fingerprinting);
+    }
+
+    @Override
+    public String toString() {
+
+        return "ThreadDumpReader[line " + lineNumber + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void collect(List<Event> events) {
+
+        for(Event e: events) {
+
+            if (e instanceof JavaThreadDumpEvent) {
+
+                pending.add((JavaThreadDumpEvent)e);
+            }
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * The incremental reading state of a thread dump file that is being appended to: one JavaThreadDumpParser for the
+ * life of the tail, the offset reached in the file and the incomplete last line, if any. Each poll() reads the bytes
+ * appended since the previous one, and returns the thread dumps they completed.
+ *
+ * The tail also tracks the resume point: the offset and line number of the beginning of the first thread dump not yet
+ * returned. A new tail created at the resume point returns the same thread dumps the old one would have returned.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/8/17
+ */
+class ThreadDumpTail {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadDumpTail.class);
+
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final File file;
+
+    private final Charset charset;
+
+    private final boolean asciiCompatible;
+
+    private final ByteBuffer buffer;
+
+    private JavaThreadDumpParser parser;
+
+    //
+    // the offset of the first byte that was not read yet
+    //
+    private long readOffset;
+
+    //
+    // the offset and the line number of the beginning of the line that follows the last complete line
+    //
+    private long lineOffset;
+    private long lineNumber;
+
+    //
+    // the beginning of the first thread dump not yet returned
+    //
+    private long resumeOffset;
+    private long resumeLineNumber;
+
+    //
+    // the bytes of the current, incomplete line
+    //
+    private byte[] partialLine;
+    private int partialLineLength;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param offset the offset of the beginning of a line. 0 means the beginning of the file.
+     * @param lineNumber the number of lines that precede the offset.
+     */
+    ThreadDumpTail(File file, long offset, long lineNumber) {
+
+        this.file = file;
+        this.charset = Charset.defaultCharset();
+        this.asciiCompatible = ByteLineReader.isAsciiCompatible(charset);
+        this.buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.partialLine = new byte[256];
+        this.parser = new JavaThreadDumpParser();
+        this.readOffset = offset;
+        this.lineOffset = offset;
+        this.lineNumber = lineNumber;
+        this.resumeOffset = offset;
+        this.resumeLineNumber = lineNumber;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "ThreadDumpTail[" + file + ", offset " + readOffset + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    File getFile() {
+
+        return file;
+    }
+
+    long getResumeOffset() {
+
+        return resumeOffset;
+    }
+
+    long getResumeLineNumber() {
+
+        return resumeLineNumber;
+    }
+
+    /**
+     * Reads at most READ_BUFFER_SIZE bytes appended since the previous invocation, and adds the thread dumps they
+     * completed to the list. If the file became shorter than the offset already read, it is assumed to have been
+     * truncated or replaced, and it is read again from the beginning.
+     *
+     * @return true if new bytes were read, so the caller should poll again right away.
+     */
+    boolean poll(List<JavaThreadDumpEvent> dumps) throws IOException, ParsingException {
+
+        if (!file.isFile()) {
+
+            return false;
+        }
+
+        int read;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            if (channel.size() < readOffset) {
+
+                log.warn(file + " is shorter than the offset already read, reading it from the beginning");
+                reset();
+            }
+
+            buffer.clear();
+            read = channel.read(buffer, readOffset);
+        }
+
+        if (read <= 0) {
+
+            return false;
+        }
+
+        readOffset += read;
+        buffer.flip();
+        split(dumps);
+        return true;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void split(List<JavaThreadDumpEvent> dumps) throws ParsingException {
+
+        byte[] bytes = buffer.array();
+        int limit = buffer.limit();
+        int start = 0;
+
+        for(int i = 0; i < limit; i ++) {
+
+            if (bytes[i] != '\n') {
+
+                continue;
+            }
+
+            long thisLineOffset = lineOffset;
+            lineOffset += partialLineLength + (i - start) + 1;
+
+            String line;
+
+            if (partialLineLength == 0) {
+
+                line = decode(bytes, start, i - start);
+            }
+            else {
+
+                appendToPartialLine(bytes, start, i - start);
+                line = decode(partialLine, 0, partialLineLength);
+                partialLineLength = 0;
+            }
+
+            start = i + 1;
+
+            processLine(thisLineOffset, line, dumps);
+        }
+
+        appendToPartialLine(bytes, start, limit - start);
+    }
+
+    private void processLine(long offset, String line, List<JavaThreadDumpEvent> dumps) throws ParsingException {
+
+        lineNumber ++;
+
+        boolean dumpCompleted = false;
+
+        for(Event e: parser.parse(lineNumber, line, null)) {
+
+            if (e instanceof JavaThreadDumpEvent) {
+
+                dumps.add((JavaThreadDumpEvent)e);
+                dumpCompleted = true;
+            }
+        }
+
+        if (!dumpCompleted) {
+
+            return;
+        }
+
+        //
+        // a dump is completed either by the timestamp line of the next one, which must be parsed again on resume, or by
+        // its own last line
+        //
+
+        if (JavaThreadDumpParser.isThreadDumpTimestamp(line)) {
+
+            resumeOffset = offset;
+            resumeLineNumber = lineNumber - 1;
+        }
+        else {
+
+            resumeOffset = lineOffset;
+            resumeLineNumber = lineNumber;
+        }
+    }
+
+    private void reset() {
+
+        parser = new JavaThreadDumpParser();
+        readOffset = 0L;
+        lineOffset = 0L;
+        lineNumber = 0L;
+        resumeOffset = 0L;
+        resumeLineNumber = 0L;
+        partialLineLength = 0;
+    }
+
+    private String decode(byte[] bytes, int offset, int length) {
+
+        //
+        // same line termination handling as BufferedReader.readLine()
+        //
+
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+
+            length --;
+        }
+
+        return ByteLineReader.decode(bytes, offset, length, charset, asciiCompatible);
+    }
+
+    private void appendToPartialLine(byte[] bytes, int offset, int length) {
+
+        if (length == 0) {
+
+            return;
+        }
+
+        if (partialLineLength + length > partialLine.length) {
+
+            byte[] b = new byte[Math.max(partialLine.length * 2, partialLineLength + length)];
+            System.arraycopy(partialLine, 0, b, 0, partialLineLength);
+            partialLine = b;
+        }
+
+        System.arraycopy(bytes, offset, partialLine, partialLineLength, length);
+        partialLineLength += length;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
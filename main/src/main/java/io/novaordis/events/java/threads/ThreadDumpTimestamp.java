@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Recognizes and parses the timestamp lines that precede thread dumps, in a single pass over the characters, without
+ * regular expressions. The supported forms all start with the same 19 character prefix and are told apart by the
+ * character that follows it:
+ *
+ * 2017-08-13 17:41:59
+ * 2017-08-13 17:41:59.123       (or ',123', 1 to 9 fractional digits)
+ * 2017-08-13T17:41:59.123Z
+ * 2017-08-13T17:41:59.123+02:00 (or '+0200', '+02', with or without the fractional part)
+ *
+ * The date/time separator may be ' ' or 'T' in all forms. Timestamps without an offset are interpreted in the default
+ * time zone. The fractional part is truncated to milliseconds.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/11/17
+ */
+public class ThreadDumpTimestamp {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returned by parse() for lines that are not timestamps.
+     */
+    public static final long NOT_A_TIMESTAMP = Long.MIN_VALUE;
+
+    //
+    // "yyyy-MM-dd HH:mm:ss"
+    //
+    public static final int PREFIX_LENGTH = 19;
+
+    private static final int MAX_FRACTION_DIGITS = 9;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return true if the whole line, trailing spaces excepted, is a timestamp in one of the supported forms.
+     */
+    public static boolean isTimestamp(String line) {
+
+        int length = length(line, 0);
+
+        return length != -1 && isBlank(line, length);
+    }
+
+    /**
+     * @return the timestamp in milliseconds, or NOT_A_TIMESTAMP if the line, trailing spaces excepted, is not a
+     * timestamp in one of the supported forms, or is one that does not designate a valid date and time.
+     */
+    public static long parse(String line) {
+
+        int length = length(line, 0);
+
+        if (length == -1 || !isBlank(line, length)) {
+
+            return NOT_A_TIMESTAMP;
+        }
+
+        return parse(line, 0, length);
+    }
+
+    /**
+     * @return the length of the timestamp that starts at the given offset, or -1 if there is no timestamp at the
+     * offset. Only the syntax is verified.
+     */
+    public static int length(CharSequence s, int offset) {
+
+        if (s == null || s.length() - offset < PREFIX_LENGTH) {
+
+            return -1;
+        }
+
+        //
+        // yyyy-MM-dd HH:mm:ss, with the same first digit ranges the original regular expression enforced
+        //
+
+        if (!inRange(s, offset, '1', '3') || !isDigit(s, offset + 1) || !isDigit(s, offset + 2) ||
+                !isDigit(s, offset + 3) || s.charAt(offset + 4) != '-' ||
+                !inRange(s, offset + 5, '0', '1') || !isDigit(s, offset + 6) || s.charAt(offset + 7) != '-' ||
+                !inRange(s, offset + 8, '0', '3') || !isDigit(s, offset + 9)) {
+
+            return -1;
+        }
+
+        char separator = s.charAt(offset + 10);
+
+        if ((separator != ' ' && separator != 'T') ||
+                !inRange(s, offset + 11, '0', '2') || !isDigit(s, offset + 12) || s.charAt(offset + 13) != ':' ||
+                !inRange(s, offset + 14, '0', '5') || !isDigit(s, offset + 15) || s.charAt(offset + 16) != ':' ||
+                !inRange(s, offset + 17, '0', '5') || !isDigit(s, offset + 18)) {
+
+            return -1;
+        }
+
+        int i = offset + PREFIX_LENGTH;
+        int end = s.length();
+
+        if (i == end) {
+
+            return PREFIX_LENGTH;
+        }
+
+        char c = s.charAt(i);
+
+        if (c == '.' || c == ',') {
+
+            int digits = 0;
+
+            while(i + 1 + digits < end && isDigit(s, i + 1 + digits)) {
+
+                digits ++;
+            }
+
+            if (digits == 0 || digits > MAX_FRACTION_DIGITS) {
+
+                return -1;
+            }
+
+            i += 1 + digits;
+
+            if (i == end) {
+
+                return i - offset;
+            }
+
+            c = s.charAt(i);
+        }
+
+        if (c == 'Z') {
+
+            return i + 1 - offset;
+        }
+
+        if (c == '+' || c == '-') {
+
+            int zoneLength = zoneLength(s, i);
+
+            return zoneLength == -1 ? -1 : i + zoneLength - offset;
+        }
+
+        return i - offset;
+    }
+
+    /**
+     * Parses a timestamp whose syntax was already verified with length().
+     *
+     * @return the timestamp in milliseconds, or NOT_A_TIMESTAMP if the fields do not designate a valid date and time.
+     */
+    public static long parse(CharSequence s, int offset, int length) {
+
+        int end = offset + length;
+
+        try {
+
+            LocalDateTime t = LocalDateTime.of(
+                    number(s, offset, 4), number(s, offset + 5, 2), number(s, offset + 8, 2),
+                    number(s, offset + 11, 2), number(s, offset + 14, 2), number(s, offset + 17, 2));
+
+            int i = offset + PREFIX_LENGTH;
+
+            if (i < end && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+
+                int digits = 0;
+
+                while(i + 1 + digits < end && isDigit(s, i + 1 + digits)) {
+
+                    digits ++;
+                }
+
+                int nanos = number(s, i + 1, digits);
+
+                for(int d = digits; d < MAX_FRACTION_DIGITS; d ++) {
+
+                    nanos *= 10;
+                }
+
+                t = t.withNano(nanos);
+                i += 1 + digits;
+            }
+
+            if (i == end) {
+
+                return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+
+            return t.toInstant(offset(s, i, end)).toEpochMilli();
+        }
+        catch(DateTimeException e) {
+
+            return NOT_A_TIMESTAMP;
+        }
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private ThreadDumpTimestamp() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the length of the "+HH:MM", "+HHMM" or "+HH" offset that starts at the given position, or -1.
+     */
+    private static int zoneLength(CharSequence s, int i) {
+
+        int end = s.length();
+
+        if (i + 3 > end || !isDigit(s, i + 1) || !isDigit(s, i + 2)) {
+
+            return -1;
+        }
+
+        if (i + 6 <= end && s.charAt(i + 3) == ':' && isDigit(s, i + 4) && isDigit(s, i + 5)) {
+
+            return 6;
+        }
+
+        if (i + 5 <= end && isDigit(s, i + 3) && isDigit(s, i + 4)) {
+
+            return 5;
+        }
+
+        return 3;
+    }
+
+    private static ZoneOffset offset(CharSequence s, int i, int end) {
+
+        if (s.charAt(i) == 'Z') {
+
+            return ZoneOffset.UTC;
+        }
+
+        int hours = number(s, i + 1, 2);
+        int minutes = end - i == 3 ? 0 : number(s, end - 2, 2);
+
+        return s.charAt(i) == '-' ?
+                ZoneOffset.ofHoursMinutes(-hours, -minutes) : ZoneOffset.ofHoursMinutes(hours, minutes);
+    }
+
+    private static int number(CharSequence s, int offset, int digits) {
+
+        int n = 0;
+
+        for(int i = offset; i < offset + digits; i ++) {
+
+            n = n * 10 + (s.charAt(i) - '0');
+        }
+
+        return n;
+    }
+
+    private static boolean isDigit(CharSequence s, int i) {
+
+        char c = s.charAt(i);
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean inRange(CharSequence s, int i, char low, char high) {
+
+        char c = s.charAt(i);
+        return c >= low && c <= high;
+    }
+
+    private static boolean isBlank(String line, int from) {
+
+        for(int i = from; i < line.length(); i ++) {
+
+            if (line.charAt(i) != ' ') {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -38,11 +38,22 @@ public class Main {
 
         try {
 
+            TDProcedureFactory factory = new TDProcedureFactory();
+
+            TDConfiguration configuration = new TDConfiguration(args, factory);
+
+            if (configuration.isExtendedMode()) {
+
+                new TDRuntime(configuration).run();
+                return;
+            }
+
             ApplicationSpecificBehavior b = new ApplicationSpecificBehavior(
                     new JavaThreadDumpParser(),
-                    new TDProcedureFactory());
+                    factory);
 
-            EventParserRuntime runtime = new EventParserRuntime(args, APPLICATION_NAME, b);
+            EventParserRuntime runtime =
+                    new EventParserRuntime(configuration.getRemainingArguments(), APPLICATION_NAME, b);
 
             if (runtime.getConfiguration().isHelp()) {
 
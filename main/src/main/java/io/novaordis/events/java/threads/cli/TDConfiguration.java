@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.cli;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.CompressedInput;
+import io.novaordis.events.java.threads.JsonThreadDumpReader;
+import io.novaordis.events.java.threads.TDProcedureFactory;
+import io.novaordis.events.java.threads.ThreadDumpFollower;
+import io.novaordis.events.processing.Procedure;
+import io.novaordis.utilities.UserErrorException;
+
+/**
+ * The td-specific command line options. They are extracted from the command line before anything else; if none is
+ * present, the command line is handled by the generic EventParserRuntime, otherwise by TDRuntime.
+ *
+ * Compressed input files and JSON thread dumps are only understood by TDRuntime, so their presence on the command line
+ * also selects it.
+ *
+ * TDRuntime does not evaluate queries, so the arguments that are neither the procedure nor input files are rejected in
+ * these modes.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class TDConfiguration {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String STAGED_OPTION = "--staged";
+
+    public static final String PARSER_THREADS_OPTION = "--parser-threads";
+
+    public static final String THREADED_PROCEDURES_OPTION = "--threaded-procedures";
+
+    public static final String FOLLOW_OPTION = "--follow";
+
+    public static final String CHECKPOINT_OPTION = "--checkpoint";
+
+    public static final String WATCH_OPTION = "--watch";
+
+    public static final String MERGE_OPTION = "--merge";
+
+    public static final String LOG_OPTION = "--log";
+
+    public static final String SKIP_DUPLICATES_OPTION = "--skip-duplicates";
+
+    public static final String MAX_JSON_THREADS_OPTION = "--max-json-threads";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private boolean staged;
+
+    private int parserThreads;
+
+    private boolean threadedProcedures;
+
+    private boolean compressedInput;
+
+    private boolean jsonInput;
+
+    private boolean follow;
+
+    private File checkpointFile;
+
+    private File watchDirectory;
+
+    private boolean merge;
+
+    private boolean logEmbedded;
+
+    private boolean skipDuplicates;
+
+    private int maxJsonThreads;
+
+    private List<String> remainingArguments;
+
+    private Procedure procedure;
+
+    private List<File> files;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param factory used to resolve the procedure, only if td-specific options are present. Options that affect the
+     *                procedures are applied to the factory, in all modes.
+     *
+     * @throws UserErrorException on invalid td-specific options.
+     */
+    public TDConfiguration(String[] args, TDProcedureFactory factory) throws UserErrorException {
+
+        this.remainingArguments = new ArrayList<>();
+        this.files = new ArrayList<>();
+        this.maxJsonThreads = JsonThreadDumpReader.DEFAULT_MAX_STACK_TRACES;
+
+        for(String arg: args) {
+
+            if (STAGED_OPTION.equals(arg)) {
+
+                staged = true;
+            }
+            else if (arg.startsWith(PARSER_THREADS_OPTION + "=")) {
+
+                staged = true;
+
+                try {
+
+                    parserThreads = CommandLineOptions.positiveInt(arg, PARSER_THREADS_OPTION);
+                }
+                catch(IllegalArgumentException e) {
+
+                    throw new UserErrorException(e.getMessage());
+                }
+            }
+            else if (THREADED_PROCEDURES_OPTION.equals(arg)) {
+
+                threadedProcedures = true;
+            }
+            else if (FOLLOW_OPTION.equals(arg)) {
+
+                follow = true;
+            }
+            else if (arg.startsWith(CHECKPOINT_OPTION + "=")) {
+
+                follow = true;
+                checkpointFile = new File(arg.substring(CHECKPOINT_OPTION.length() + 1));
+            }
+            else if (MERGE_OPTION.equals(arg)) {
+
+                merge = true;
+            }
+            else if (LOG_OPTION.equals(arg)) {
+
+                logEmbedded = true;
+            }
+            else if (SKIP_DUPLICATES_OPTION.equals(arg)) {
+
+                skipDuplicates = true;
+            }
+            else if (arg.startsWith(MAX_JSON_THREADS_OPTION + "=")) {
+
+                try {
+
+                    maxJsonThreads = CommandLineOptions.positiveInt(arg, MAX_JSON_THREADS_OPTION);
+                }
+                catch(IllegalArgumentException e) {
+
+                    throw new UserErrorException(e.getMessage());
+                }
+            }
+            else if (arg.startsWith(WATCH_OPTION + "=")) {
+
+                watchDirectory = new File(arg.substring(WATCH_OPTION.length() + 1));
+            }
+            else {
+
+                remainingArguments.add(arg);
+            }
+        }
+
+        factory.setThreadedComposite(threadedProcedures);
+
+        detectInputFormats(factory);
+
+        if (isExtendedMode()) {
+
+            resolveProcedureAndFiles(factory);
+        }
+
+        if (follow) {
+
+            validateFollow();
+        }
+
+        if (watchDirectory != null) {
+
+            validateWatch();
+        }
+
+        if (merge) {
+
+            validateMerge();
+        }
+
+        if (logEmbedded && (staged || follow || merge || watchDirectory != null)) {
+
+            throw new UserErrorException(LOG_OPTION + " cannot be combined with other execution modes");
+        }
+
+        if (jsonInput && (staged || follow || merge || logEmbedded)) {
+
+            throw new UserErrorException("JSON thread dumps cannot be read in other execution modes");
+        }
+
+        if (skipDuplicates && (follow || watchDirectory != null)) {
+
+            throw new UserErrorException(
+                    SKIP_DUPLICATES_OPTION + " cannot be used with " + FOLLOW_OPTION + " or " + WATCH_OPTION);
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return true if at least one td-specific option or a compressed input file is present, so the command line must
+     * be handled by TDRuntime.
+     */
+    public boolean isExtendedMode() {
+
+        return staged || compressedInput || jsonInput || follow || watchDirectory != null || merge || logEmbedded ||
+                skipDuplicates;
+    }
+
+    public boolean isStaged() {
+
+        return staged;
+    }
+
+    /**
+     * @return true if the input file should be followed as it grows.
+     */
+    public boolean isFollow() {
+
+        return follow;
+    }
+
+    /**
+     * @return the file the follow mode offset is persisted in. Defaults to a file next to the input file.
+     */
+    public File getCheckpointFile() {
+
+        return checkpointFile;
+    }
+
+    /**
+     * @return true if the input files should be parsed concurrently and their thread dumps merged on timestamp,
+     * instead of being read one after the other.
+     */
+    public boolean isMerge() {
+
+        return merge;
+    }
+
+    /**
+     * @return true if the thread dumps are embedded in application logs, and the log output between them should be
+     * skipped.
+     */
+    public boolean isLogEmbedded() {
+
+        return logEmbedded;
+    }
+
+    /**
+     * @return true if the thread dumps with the same timestamp and content as a thread dump already read should be
+     * dropped, as they would be when the input files overlap.
+     */
+    public boolean isSkipDuplicates() {
+
+        return skipDuplicates;
+    }
+
+    /**
+     * @return the maximum number of threads of a JSON thread dump that is assembled in memory for a procedure that
+     * cannot process it one stack trace at a time.
+     */
+    public int getMaxJsonThreads() {
+
+        return maxJsonThreads;
+    }
+
+    /**
+     * @return the collector output directory to watch, or null if not in watch mode.
+     */
+    public File getWatchDirectory() {
+
+        return watchDirectory;
+    }
+
+    /**
+     * @return true if at least one of the arguments is a compressed file.
+     */
+    public boolean isCompressedInput() {
+
+        return compressedInput;
+    }
+
+    /**
+     * @return true if at least one of the arguments is a JSON thread dump file, possibly compressed.
+     */
+    public boolean isJsonInput() {
+
+        return jsonInput;
+    }
+
+    /**
+     * @return the number of parser threads, or 0 if not specified.
+     */
+    public int getParserThreads() {
+
+        return parserThreads;
+    }
+
+    /**
+     * @return true if the procedures of a composite run each on its own thread.
+     */
+    public boolean isThreadedProcedures() {
+
+        return threadedProcedures;
+    }
+
+    /**
+     * @return the arguments left after removing the td-specific options.
+     */
+    public String[] getRemainingArguments() {
+
+        return remainingArguments.toArray(new String[remainingArguments.size()]);
+    }
+
+    /**
+     * @return the procedure, if in extended mode. May be null otherwise.
+     */
+    public Procedure getProcedure() {
+
+        return procedure;
+    }
+
+    /**
+     * @return the input files, in the order in which they were specified on command line. An empty list means stdin.
+     */
+    public List<File> getFiles() {
+
+        return Collections.unmodifiableList(files);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * The first argument that resolves to a procedure is the procedure, everything else is an input file. The
+     * procedure is given the chance to consume the arguments that follow its label, by removing them from the list.
+     */
+    private void resolveProcedureAndFiles(TDProcedureFactory factory) throws UserErrorException {
+
+        List<String> arguments = new ArrayList<>(remainingArguments);
+
+        for(int i = 0; i < arguments.size(); i ++) {
+
+            String arg = arguments.get(i);
+
+            if (procedure == null) {
+
+                try {
+
+                    procedure = factory.find(arg, i + 1, arguments);
+                }
+                catch(IllegalArgumentException e) {
+
+                    //
+                    // invalid procedure options, or procedures that cannot be combined
+                    //
+
+                    throw new UserErrorException(e.getMessage());
+                }
+
+                if (procedure != null) {
+
+                    continue;
+                }
+            }
+
+            if (arg.startsWith("-")) {
+
+                throw new UserErrorException("unknown option " + arg);
+            }
+
+            File f = new File(arg);
+
+            if (!f.isFile()) {
+
+                //
+                // the arguments that are not files may be a query, which only EventParserRuntime understands
+                //
+
+                throw new UserErrorException(
+                        "no such file: " + arg + " (queries cannot be used with compressed or JSON input, or with " +
+                                "td-specific options)");
+            }
+
+            files.add(f);
+        }
+
+        if (procedure == null) {
+
+            throw new UserErrorException("no procedure specified");
+        }
+    }
+
+    /**
+     * Looks at the content of the arguments that name files, to find compressed and JSON input. The procedure label
+     * and the options consumed by the procedure are skipped, so only the input files are opened.
+     */
+    private void detectInputFormats(TDProcedureFactory factory) throws UserErrorException {
+
+        List<String> arguments = new ArrayList<>(remainingArguments);
+        boolean procedureFound = false;
+
+        for(int i = 0; i < arguments.size(); i ++) {
+
+            String arg = arguments.get(i);
+
+            if (!procedureFound) {
+
+                try {
+
+                    procedureFound = factory.find(arg, i + 1, arguments) != null;
+                }
+                catch(IllegalArgumentException e) {
+
+                    throw new UserErrorException(e.getMessage());
+                }
+
+                if (procedureFound) {
+
+                    continue;
+                }
+            }
+
+            if (arg.startsWith("-")) {
+
+                continue;
+            }
+
+            compressedInput |= isCompressedFile(arg);
+            jsonInput |= isJsonFile(arg);
+        }
+    }
+
+    private void validateFollow() throws UserErrorException {
+
+        if (files.size() != 1) {
+
+            throw new UserErrorException(FOLLOW_OPTION + " requires exactly one file");
+        }
+
+        if (staged) {
+
+            throw new UserErrorException(FOLLOW_OPTION + " cannot be used with " + STAGED_OPTION);
+        }
+
+        if (compressedInput) {
+
+            throw new UserErrorException("cannot follow a compressed file");
+        }
+
+        if (checkpointFile == null) {
+
+            checkpointFile = ThreadDumpFollower.getDefaultCheckpointFile(files.get(0));
+        }
+    }
+
+    private void validateWatch() throws UserErrorException {
+
+        if (!watchDirectory.isDirectory()) {
+
+            throw new UserErrorException("no such directory: " + watchDirectory);
+        }
+
+        if (!files.isEmpty()) {
+
+            throw new UserErrorException(WATCH_OPTION + " cannot be used with input files");
+        }
+
+        if (staged || follow) {
+
+            throw new UserErrorException(
+                    WATCH_OPTION + " cannot be used with " + STAGED_OPTION + " or " + FOLLOW_OPTION);
+        }
+    }
+
+    private void validateMerge() throws UserErrorException {
+
+        if (files.isEmpty()) {
+
+            throw new UserErrorException(MERGE_OPTION + " requires at least one file");
+        }
+
+        if (staged || follow) {
+
+            throw new UserErrorException(
+                    MERGE_OPTION + " cannot be used with " + STAGED_OPTION + " or " + FOLLOW_OPTION);
+        }
+    }
+
+    private static boolean isCompressedFile(String arg) throws UserErrorException {
+
+        File f = new File(arg);
+
+        if (!f.isFile()) {
+
+            return false;
+        }
+
+        try {
+
+            return CompressedInput.detect(f) != CompressedInput.Format.NONE;
+        }
+        catch(IOException e) {
+
+            throw new UserErrorException("cannot read " + arg + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isJsonFile(String arg) throws UserErrorException {
+
+        File f = new File(arg);
+
+        if (!f.isFile()) {
+
+            return false;
+        }
+
+        try(InputStream is = CompressedInput.open(f, false)) {
+
+            return JsonThreadDumpReader.isJson(is.markSupported() ? is : new BufferedInputStream(is));
+        }
+        catch(IOException e) {
+
+            throw new UserErrorException("cannot read " + arg + ": " + e.getMessage());
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.ByteLineReader;
+import io.novaordis.events.java.threads.CollectorDirectoryWatcher;
+import io.novaordis.events.java.threads.CompressedInput;
+import io.novaordis.events.java.threads.DuplicateThreadDumpFilter;
+import io.novaordis.events.java.threads.JsonThreadDumpReader;
+import io.novaordis.events.java.threads.LineTerminatedInputStream;
+import io.novaordis.events.java.threads.LogEmbeddedThreadDumpReader;
+import io.novaordis.events.java.threads.MergingThreadDumpProcessor;
+import io.novaordis.events.java.threads.StagedThreadDumpProcessor;
+import io.novaordis.events.java.threads.ThreadDumpFollower;
+import io.novaordis.events.java.threads.ThreadDumpReader;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.procedure.BatchProcedureBase;
+import io.novaordis.events.java.threads.procedure.StreamingProcedure;
+import io.novaordis.events.processing.Procedure;
+import io.novaordis.utilities.UserErrorException;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Runs the td-specific execution modes. The generic modes are handled by EventParserRuntime.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class TDRuntime {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final long SHUTDOWN_TIMEOUT_MS = 2000L;
+
+    //
+    // the number of thread dumps delivered at once to batch procedures, in the modes that read thread dumps one by one
+    //
+    public static final int BATCH_SIZE = 16;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private TDConfiguration configuration;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public TDRuntime(TDConfiguration configuration) {
+
+        this.configuration = configuration;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public void run() throws Exception {
+
+        DuplicateThreadDumpFilter duplicateFilter =
+                configuration.isSkipDuplicates() ? new DuplicateThreadDumpFilter() : null;
+
+        if (configuration.isFollow()) {
+
+            follow();
+            return;
+        }
+
+        if (configuration.getWatchDirectory() != null) {
+
+            watch();
+            return;
+        }
+
+        if (configuration.isLogEmbedded()) {
+
+            scanLogs(duplicateFilter);
+            return;
+        }
+
+        if (configuration.isJsonInput()) {
+
+            readJson(duplicateFilter);
+            return;
+        }
+
+        if (configuration.isMerge()) {
+
+            MergingThreadDumpProcessor p =
+                    new MergingThreadDumpProcessor(configuration.getFiles(), configuration.getProcedure());
+
+            p.setDuplicateFilter(duplicateFilter);
+            p.run();
+            return;
+        }
+
+        int parserThreads = configuration.getParserThreads();
+
+        if (parserThreads == 0) {
+
+            parserThreads = StagedThreadDumpProcessor.DEFAULT_PARSER_THREADS;
+        }
+
+        try (BufferedReader input = openInput(configuration.getFiles())) {
+
+            //
+            // no query, TDConfiguration rejects query arguments in the td-specific modes
+            //
+
+            StagedThreadDumpProcessor p = new StagedThreadDumpProcessor(
+                    input, configuration.getProcedure(), null, parserThreads);
+
+            p.setDuplicateFilter(duplicateFilter);
+            p.run();
+        }
+    }
+
+    public TDConfiguration getConfiguration() {
+
+        return configuration;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Runs until the process is terminated.
+     */
+    private void follow() throws Exception {
+
+        ThreadDumpFollower follower = new ThreadDumpFollower(
+                configuration.getFiles().get(0), configuration.getProcedure(), configuration.getCheckpointFile(),
+                ThreadDumpFollower.DEFAULT_POLL_INTERVAL_MS);
+
+        stopOnShutdown(follower::stop);
+
+        follower.run();
+    }
+
+    /**
+     * Runs until the process is terminated.
+     */
+    private void watch() throws Exception {
+
+        CollectorDirectoryWatcher watcher = new CollectorDirectoryWatcher(
+                configuration.getWatchDirectory(), configuration.getProcedure(),
+                CollectorDirectoryWatcher.DEFAULT_POLL_INTERVAL_MS);
+
+        stopOnShutdown(watcher::stop);
+
+        watcher.run();
+    }
+
+    /**
+     * The files, or stdin, are read one after the other.
+     *
+     * @param duplicateFilter may be null.
+     */
+    private void scanLogs(DuplicateThreadDumpFilter duplicateFilter) throws Exception {
+
+        Procedure procedure = configuration.getProcedure();
+        List<File> files = configuration.getFiles();
+        List<JavaThreadDumpEvent> batch = new ArrayList<>(BATCH_SIZE);
+
+        for(int i = 0; i < Math.max(1, files.size()); i ++) {
+
+            InputStream is = files.isEmpty() ? CompressedInput.open(System.in) : CompressedInput.open(files.get(i));
+
+            try(LogEmbeddedThreadDumpReader r = new LogEmbeddedThreadDumpReader(is)) {
+
+                r.setFingerprinting(duplicateFilter != null);
+                read(r::next, BATCH_SIZE, procedure, batch, duplicateFilter);
+            }
+        }
+
+        procedure.process(new EndOfStreamEvent());
+    }
+
+    /**
+     * The files, or stdin, are read one after the other. Text thread dump files may be mixed with the JSON files.
+     * Duplicates are only recognized among the text thread dumps, the JSON reader does not fingerprint.
+     *
+     * JSON thread dumps are streamed to the procedures that implement StreamingProcedure, one stack trace at a time, so
+     * they are processed in a fixed heap whatever their thread count. For the other procedures, each JSON thread dump
+     * is assembled and handed over on its own, and the thread dumps with more threads than the configured maximum are
+     * rejected.
+     *
+     * @param duplicateFilter may be null.
+     */
+    private void readJson(DuplicateThreadDumpFilter duplicateFilter) throws Exception {
+
+        Procedure procedure = configuration.getProcedure();
+        List<File> files = configuration.getFiles();
+        List<JavaThreadDumpEvent> batch = new ArrayList<>(BATCH_SIZE);
+
+        for(int i = 0; i < Math.max(1, files.size()); i ++) {
+
+            InputStream is = files.isEmpty() ? CompressedInput.open(System.in) : CompressedInput.open(files.get(i));
+
+            if (!is.markSupported()) {
+
+                is = new BufferedInputStream(is);
+            }
+
+            if (JsonThreadDumpReader.isJson(is)) {
+
+                try(JsonThreadDumpReader r = new JsonThreadDumpReader(
+                        new InputStreamReader(is, StandardCharsets.UTF_8))) {
+
+                    if (procedure instanceof StreamingProcedure) {
+
+                        stream(r, (StreamingProcedure)procedure);
+                    }
+                    else {
+
+                        r.setMaxStackTraces(configuration.getMaxJsonThreads());
+                        read(r::next, 1, procedure, batch, duplicateFilter);
+                    }
+                }
+                catch(ParsingException e) {
+
+                    throw new UserErrorException((files.isEmpty() ? "stdin" : files.get(i)) + ": " + e.getMessage());
+                }
+            }
+            else {
+
+                try(ThreadDumpReader r = new ThreadDumpReader(new ByteLineReader(is))) {
+
+                    r.setFingerprinting(duplicateFilter != null);
+                    read(r::next, BATCH_SIZE, procedure, batch, duplicateFilter);
+                }
+            }
+        }
+
+        procedure.process(new EndOfStreamEvent());
+    }
+
+    /**
+     * Hands the stack traces of each thread dump to the procedure as they are read.
+     */
+    private static void stream(JsonThreadDumpReader r, StreamingProcedure procedure) throws Exception {
+
+        JavaThreadDumpEvent e;
+
+        while((e = r.nextWithoutStackTraces()) != null) {
+
+            procedure.beginThreadDump(e);
+
+            StackTraceEvent st;
+
+            while((st = r.nextStackTrace()) != null) {
+
+                procedure.processStackTrace(st);
+            }
+
+            procedure.endThreadDump();
+        }
+    }
+
+    /**
+     * @param batchSize the number of thread dumps accumulated before they are delivered to the procedure.
+     * @param duplicateFilter may be null.
+     */
+    private static void read(ThreadDumpSource source, int batchSize, Procedure procedure,
+                             List<JavaThreadDumpEvent> batch, DuplicateThreadDumpFilter duplicateFilter)
+            throws Exception {
+
+        JavaThreadDumpEvent e;
+
+        while((e = source.next()) != null) {
+
+            if (duplicateFilter != null && duplicateFilter.isDuplicate(e)) {
+
+                continue;
+            }
+
+            batch.add(e);
+
+            if (batch.size() >= batchSize) {
+
+                deliver(procedure, batch);
+            }
+        }
+
+        deliver(procedure, batch);
+    }
+
+    private static void deliver(Procedure procedure, List<JavaThreadDumpEvent> batch) throws Exception {
+
+        if (batch.isEmpty()) {
+
+            return;
+        }
+
+        if (procedure instanceof BatchProcedureBase) {
+
+            ((BatchProcedureBase)procedure).processBatch(batch);
+        }
+        else {
+
+            for(JavaThreadDumpEvent e: batch) {
+
+                procedure.process(e);
+            }
+        }
+
+        batch.clear();
+    }
+
+    /**
+     * Installs a shutdown hook that stops the current thread's loop and waits for it, so the procedure receives the
+     * end of the stream, and the last checkpoint is written, before the JVM exits.
+     */
+    private static void stopOnShutdown(Runnable stop) {
+
+        Thread main = Thread.currentThread();
+
+        Thread hook = new Thread(() -> {
+
+            stop.run();
+
+            try {
+
+                main.join(SHUTDOWN_TIMEOUT_MS);
+            }
+            catch(InterruptedException e) {
+
+                // exiting anyway
+            }
+        }, "td shutdown");
+
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    /**
+     * Multiple files are read in sequence, as if they were concatenated, with a line terminator after each file that
+     * does not end with one. No files means stdin. Each file, and stdin, may be compressed.
+     */
+    private static BufferedReader openInput(List<File> files) throws IOException {
+
+        if (files.isEmpty()) {
+
+            return new ByteLineReader(CompressedInput.open(System.in));
+        }
+
+        List<InputStream> streams = new ArrayList<>();
+
+        try {
+
+            for(File f: files) {
+
+                streams.add(new LineTerminatedInputStream(CompressedInput.open(f)));
+            }
+        }
+        catch(IOException e) {
+
+            for(InputStream is: streams) {
+
+                is.close();
+            }
+
+            throw e;
+        }
+
+        return new ByteLineReader(new SequenceInputStream(Collections.enumeration(streams)));
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private interface ThreadDumpSource {
+
+        JavaThreadDumpEvent next() throws Exception;
+    }
+}
@@ -16,8 +16,9 @@
 
 package io.novaordis.events.java.threads.event;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -29,6 +30,8 @@ import org.slf4j.LoggerFactory;
 import io.novaordis.events.api.event.Event;
 import io.novaordis.events.api.event.EventProperty;
 import io.novaordis.events.api.event.GenericTimedEvent;
+import io.novaordis.events.api.event.IntegerProperty;
+import io.novaordis.events.api.event.LongProperty;
 import io.novaordis.events.api.event.Property;
 import io.novaordis.events.api.event.StringProperty;
 import io.novaordis.utilities.time.TimestampImpl;
@@ -47,7 +50,16 @@ public class JavaThreadDumpEvent extends GenericTimedEvent {
 
     private static final Logger log = LoggerFactory.getLogger(JavaThreadDumpEvent.class);
 
-    private static final DateFormat TIMESTAMP_DISPLAY_FORMAT = new SimpleDateFormat("MM/dd/yy HH:mm:ss");
+    //
+    // DateTimeFormatter, unlike SimpleDateFormat, is immutable: toString() is called from parser threads
+    //
+    private static final DateTimeFormatter TIMESTAMP_DISPLAY_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yy HH:mm:ss");
+
+    //
+    // used for thread dumps whose timestamp has a sub-second part, so dumps sampled faster than 1 Hz can be told apart
+    //
+    private static final DateTimeFormatter SUBSECOND_TIMESTAMP_DISPLAY_FORMAT =
+            DateTimeFormatter.ofPattern("MM/dd/yy HH:mm:ss.SSS");
 
     /**
      * The raw representation at this level is carried in two components: the usual RAW_PROPERTY_NAME property, for
@@ -56,6 +68,21 @@ public class JavaThreadDumpEvent extends GenericTimedEvent {
      */
     public static final String RAW_EPILOGUE_PROPERTY_NAME = "raw-epilogue";
 
+    //
+    // the PID of the JVM the thread dump was taken from, when known (from the collector file name, for example)
+    //
+    public static final String PID_PROPERTY_NAME = "pid";
+
+    //
+    // the name of the file the thread dump was read from, when the events of several files are combined
+    //
+    public static final String SOURCE_PROPERTY_NAME = "source";
+
+    //
+    // the fingerprint of the thread dump content, computed while reading. See DuplicateThreadDumpFilter
+    //
+    public static final String FINGERPRINT_PROPERTY_NAME = "fingerprint";
+
     // Static ----------------------------------------------------------------------------------------------------------
 
     // Attributes ------------------------------------------------------------------------------------------------------
@@ -235,6 +262,60 @@ public class JavaThreadDumpEvent extends GenericTimedEvent {
         return null;
     }
 
+    public Integer getPid() {
+
+        IntegerProperty p = getIntegerProperty(PID_PROPERTY_NAME);
+
+        if (p == null) {
+
+            return null;
+        }
+
+        return p.getInteger();
+    }
+
+    public void setPid(int pid) {
+
+        setIntegerProperty(PID_PROPERTY_NAME, pid);
+    }
+
+    public String getSource() {
+
+        StringProperty p = getStringProperty(SOURCE_PROPERTY_NAME);
+
+        if (p == null) {
+
+            return null;
+        }
+
+        return p.getString();
+    }
+
+    public void setSource(String source) {
+
+        setStringProperty(SOURCE_PROPERTY_NAME, source);
+    }
+
+    /**
+     * @return the fingerprint of the thread dump content, or null if the reader did not compute one.
+     */
+    public Long getFingerprint() {
+
+        LongProperty p = getLongProperty(FINGERPRINT_PROPERTY_NAME);
+
+        if (p == null) {
+
+            return null;
+        }
+
+        return p.getLong();
+    }
+
+    public void setFingerprint(long fingerprint) {
+
+        setLongProperty(FINGERPRINT_PROPERTY_NAME, fingerprint);
+    }
+
     @Override
     public String toString() {
 
@@ -249,7 +330,8 @@ public class JavaThreadDumpEvent extends GenericTimedEvent {
 
         return "ThreadDump[" +
                 (lineNumber != null ? "line " + lineNumber + ", "  : "") +
-                TIMESTAMP_DISPLAY_FORMAT.format(time) + "]";
+                (time % 1000 == 0 ? TIMESTAMP_DISPLAY_FORMAT : SUBSECOND_TIMESTAMP_DISPLAY_FORMAT).
+                        format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault())) + "]";
     }
 
     // Package protected -----------------------------------------------------------------------------------------------
@@ -16,6 +16,8 @@
 
 package io.novaordis.events.java.threads.event;
 
+import java.util.Arrays;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +61,37 @@ public class StackTraceEvent extends GenericEvent {
     //
     public static final String STACK_PROPERTY_NAME = "stack";
 
+    //
+    // the thread container (executor, structured task scope, etc.) the thread belongs to, as reported by JSON thread
+    // dumps
+    //
+    public static final String CONTAINER_PROPERTY_NAME = "container";
+
+    public static final String VIRTUAL_PROPERTY_NAME = "virtual";
+
+    //
+    // the TID of the platform thread a mounted virtual thread runs on, in the same representation as TID
+    //
+    public static final String CARRIER_PROPERTY_NAME = "carrier";
+
+    //
+    // the CPU time consumed by the thread and the time since the thread started, both in microseconds, as reported by
+    // the "cpu=1234.56ms elapsed=789.01s" header fields of recent JVMs
+    //
+    public static final String CPU_PROPERTY_NAME = "cpu";
+    public static final String ELAPSED_PROPERTY_NAME = "elapsed";
+
+    //
+    // the value of the monitor addresses that are not known
+    //
+    public static final long NO_MONITOR = -1L;
+
+    //
+    // FNV-1a 64-bit offset basis and prime, for the stack fingerprint
+    //
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     // Static ----------------------------------------------------------------------------------------------------------
 
     /**
@@ -87,6 +120,62 @@ public class StackTraceEvent extends GenericEvent {
         return Integer.parseUnsignedInt(s, 16);
     }
 
+    /**
+     * @param line a stack line such as "- locked <0x00000006c0a8b8e0> (a java.lang.Object)".
+     *
+     * @return the address of the first "<0x...>" that follows the given position, or NO_MONITOR if there is none, as
+     * in "- waiting on <no object reference available>".
+     */
+    public static long monitorAddress(String line, int from) {
+
+        int i = line.indexOf("<0x", from);
+
+        if (i == -1) {
+
+            return NO_MONITOR;
+        }
+
+        i += 3;
+        int j = line.indexOf('>', i);
+
+        if (j == -1 || j == i || j - i > 16) {
+
+            return NO_MONITOR;
+        }
+
+        try {
+
+            return Long.parseUnsignedLong(line.substring(i, j), 16);
+        }
+        catch(NumberFormatException e) {
+
+            return NO_MONITOR;
+        }
+    }
+
+    /**
+     * @return the 64-bit FNV-1a hash of the characters between from (inclusive) and to (exclusive), the hash used for
+     * stack fingerprints. Useful to fingerprint a part of a stack.
+     */
+    public static long fingerprint(CharSequence s, int from, int to) {
+
+        long h = FNV_OFFSET_BASIS;
+
+        for(int i = from; i < to; i ++) {
+
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+
+        return h;
+    }
+
+    private static final String LOCKED = "- locked ";
+    private static final String WAITING_TO_LOCK = "- waiting to lock ";
+    private static final String WAITING_TO_RELOCK = "- waiting to re-lock in wait() ";
+    private static final String WAITING_ON = "- waiting on ";
+    private static final String PARKING_TO_WAIT_FOR = "- parking to wait for ";
+
     private static final byte THREAD_STATE_MODE = 0;
     private static final byte STACK_MODE = 1;
     private static final byte LOCKING_INFO_MODE = 2;
@@ -97,6 +186,36 @@ public class StackTraceEvent extends GenericEvent {
     private byte mode = THREAD_STATE_MODE;
     private transient String stack;
 
+    //
+    // mirrored in properties, for queries; the fields spare the property lookup to procedures that aggregate them
+    //
+    private long cpuMicros = -1L;
+    private long elapsedMicros = -1L;
+
+    //
+    // the monitors from the "- locked", "- waiting to lock" and "- waiting on" stack lines, kept as primitive addresses
+    // so lock analysis does not allocate per thread
+    //
+    private long[] lockedMonitors;
+    private int lockedMonitorCount;
+    private long blockedOnMonitor = NO_MONITOR;
+    private long waitingOnMonitor = NO_MONITOR;
+
+    //
+    // the java.util.concurrent synchronizers from the "Locked ownable synchronizers:" section ("jstack -l"), and the
+    // object from the "- parking to wait for <0x...>" stack line
+    //
+    private long[] ownedSynchronizers;
+    private String[] ownedSynchronizerClasses;
+    private int ownedSynchronizerCount;
+    private long parkedOn = NO_MONITOR;
+
+    //
+    // computed on first access
+    //
+    private long stackFingerprint;
+    private boolean stackFingerprinted;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public StackTraceEvent(Long lineNumber) {
@@ -361,6 +480,152 @@ public class StackTraceEvent extends GenericEvent {
         return b;
     }
 
+    public void setVirtual(boolean isVirtual) {
+
+        if (isVirtual) {
+
+            setBooleanProperty(VIRTUAL_PROPERTY_NAME, true);
+        }
+        else {
+
+            removeBooleanProperty(VIRTUAL_PROPERTY_NAME);
+        }
+    }
+
+    public boolean isVirtual() {
+
+        BooleanProperty p = getBooleanProperty(VIRTUAL_PROPERTY_NAME);
+
+        if (p == null) {
+
+            return false;
+        }
+
+        Boolean b = p.getBoolean();
+
+        if (b == null) {
+
+            return false;
+        }
+
+        return b;
+    }
+
+    /**
+     * @return the CPU time consumed by the thread, in microseconds, or -1 if not reported.
+     */
+    public long getCpuMicros() {
+
+        return cpuMicros;
+    }
+
+    public void setCpuMicros(long micros) {
+
+        this.cpuMicros = micros;
+        setLongProperty(CPU_PROPERTY_NAME, micros);
+    }
+
+    /**
+     * @return the time elapsed since the thread started, in microseconds, or -1 if not reported.
+     */
+    public long getElapsedMicros() {
+
+        return elapsedMicros;
+    }
+
+    public void setElapsedMicros(long micros) {
+
+        this.elapsedMicros = micros;
+        setLongProperty(ELAPSED_PROPERTY_NAME, micros);
+    }
+
+    /**
+     * @return the thread container the thread belongs to. May return null.
+     */
+    public String getContainer() {
+
+        StringProperty p = getStringProperty(CONTAINER_PROPERTY_NAME);
+
+        if (p == null) {
+
+            return null;
+        }
+
+        return p.getString();
+    }
+
+    public void setContainer(String s) {
+
+        setStringProperty(CONTAINER_PROPERTY_NAME, s);
+    }
+
+    /**
+     * @return the TID of the carrier thread, if this is a mounted virtual thread. May return null.
+     */
+    public String getCarrier() {
+
+        StringProperty p = getStringProperty(CARRIER_PROPERTY_NAME);
+
+        if (p == null) {
+
+            return null;
+        }
+
+        return p.getString();
+    }
+
+    /**
+     * @throws NumberFormatException if the hexadecimal string cannot be converted to a valid long.
+     */
+    public void setCarrier(String hexadecimalString) throws NumberFormatException {
+
+        longFromHexString(hexadecimalString);
+        setStringProperty(CARRIER_PROPERTY_NAME, hexadecimalString);
+    }
+
+    /**
+     * @return the literal, multi-line stack. May return null.
+     */
+    public String getStack() {
+
+        StringProperty p = getStringProperty(STACK_PROPERTY_NAME);
+
+        if (p == null) {
+
+            return null;
+        }
+
+        return p.getString();
+    }
+
+    /**
+     * Sets the stack directly, for stack traces that are not built line by line with update().
+     */
+    public void setStack(String s) {
+
+        setStringProperty(STACK_PROPERTY_NAME, s);
+        stackFingerprinted = false;
+    }
+
+    /**
+     * @return a 64-bit FNV-1a hash of the literal stack, computed once, so procedures that follow threads across thread
+     * dumps can compare stacks without comparing their text. 0 if there is no stack.
+     */
+    public long getStackFingerprint() {
+
+        if (stackFingerprinted) {
+
+            return stackFingerprint;
+        }
+
+        String s = getStack();
+        long h = s == null ? 0L : fingerprint(s, 0, s.length());
+
+        stackFingerprint = h;
+        stackFingerprinted = true;
+        return h;
+    }
+
     /**
      * If the thread is in ThreadState.OBJECT_WAIT state, this method returns the monitor the thread is waiting on,
      * if available. May return null.
@@ -382,6 +647,170 @@ public class StackTraceEvent extends GenericEvent {
         setStringProperty(OBJECT_WAIT_MONITOR_PROPERTY_NAME, s);
     }
 
+    /**
+     * @return the number of monitors the stack reports as locked ("- locked <0x...>"). A thread in Object.wait() also
+     * reports the monitor it waits on, and released, as locked.
+     */
+    public int getLockedMonitorCount() {
+
+        return lockedMonitorCount;
+    }
+
+    /**
+     * @param index 0 for the first monitor the stack reports as locked, starting from the top of the stack.
+     */
+    public long getLockedMonitor(int index) {
+
+        if (index < 0 || index >= lockedMonitorCount) {
+
+            throw new IndexOutOfBoundsException("invalid locked monitor index " + index);
+        }
+
+        return lockedMonitors[index];
+    }
+
+    public void addLockedMonitor(long address) {
+
+        if (lockedMonitors == null) {
+
+            lockedMonitors = new long[2];
+        }
+        else if (lockedMonitorCount == lockedMonitors.length) {
+
+            lockedMonitors = Arrays.copyOf(lockedMonitors, lockedMonitorCount * 2);
+        }
+
+        lockedMonitors[lockedMonitorCount ++] = address;
+    }
+
+    /**
+     * @return the monitor the thread is blocked trying to acquire ("- waiting to lock <0x...>", or "- waiting to
+     * re-lock in wait() <0x...>"), or NO_MONITOR.
+     */
+    public long getBlockedOnMonitor() {
+
+        return blockedOnMonitor;
+    }
+
+    public void setBlockedOnMonitor(long address) {
+
+        this.blockedOnMonitor = address;
+    }
+
+    /**
+     * @return the monitor the thread waits on in Object.wait() ("- waiting on <0x...>"), or NO_MONITOR.
+     */
+    public long getWaitingOnMonitor() {
+
+        return waitingOnMonitor;
+    }
+
+    public void setWaitingOnMonitor(long address) {
+
+        this.waitingOnMonitor = address;
+    }
+
+    /**
+     * @return the number of java.util.concurrent synchronizers the thread owns, as listed in the "Locked ownable
+     * synchronizers:" section of "jstack -l" output. 0 if the section is missing, or "- None".
+     */
+    public int getOwnedSynchronizerCount() {
+
+        return ownedSynchronizerCount;
+    }
+
+    public long getOwnedSynchronizer(int index) {
+
+        if (index < 0 || index >= ownedSynchronizerCount) {
+
+            throw new IndexOutOfBoundsException("invalid owned synchronizer index " + index);
+        }
+
+        return ownedSynchronizers[index];
+    }
+
+    /**
+     * @return the class of the synchronizer, such as "java.util.concurrent.locks.ReentrantLock$NonfairSync". May
+     * return null.
+     */
+    public String getOwnedSynchronizerClass(int index) {
+
+        if (index < 0 || index >= ownedSynchronizerCount) {
+
+            throw new IndexOutOfBoundsException("invalid owned synchronizer index " + index);
+        }
+
+        return ownedSynchronizerClasses[index];
+    }
+
+    /**
+     * @param className may be null.
+     */
+    public void addOwnedSynchronizer(long address, String className) {
+
+        if (ownedSynchronizers == null) {
+
+            ownedSynchronizers = new long[1];
+            ownedSynchronizerClasses = new String[1];
+        }
+        else if (ownedSynchronizerCount == ownedSynchronizers.length) {
+
+            ownedSynchronizers = Arrays.copyOf(ownedSynchronizers, ownedSynchronizerCount * 2);
+            ownedSynchronizerClasses = Arrays.copyOf(ownedSynchronizerClasses, ownedSynchronizerCount * 2);
+        }
+
+        ownedSynchronizers[ownedSynchronizerCount] = address;
+        ownedSynchronizerClasses[ownedSynchronizerCount ++] = className;
+    }
+
+    /**
+     * @return the object the thread is parked on ("- parking to wait for <0x...>"), such as the synchronizer of a lock,
+     * or a condition, or NO_MONITOR.
+     */
+    public long getParkedOn() {
+
+        return parkedOn;
+    }
+
+    public void setParkedOn(long address) {
+
+        this.parkedOn = address;
+    }
+
+    /**
+     * Scans the stack, so it is meant for reporting, not for analysis.
+     *
+     * @return the class of the monitor with the given address, as reported by the stack ("(a java.lang.Object)"), or
+     * null if the monitor does not appear in the stack.
+     */
+    public String getMonitorClass(long address) {
+
+        String s = getStack();
+
+        if (s == null || address == NO_MONITOR) {
+
+            return null;
+        }
+
+        for(String line: s.split("\n")) {
+
+            if (monitorAddress(line, 0) != address) {
+
+                continue;
+            }
+
+            int i = line.indexOf("(a ");
+            int j = line.lastIndexOf(')');
+
+            if (i != -1 && j > i) {
+
+                return line.substring(i + 3, j);
+            }
+        }
+
+        return null;
+    }
+
     /**
      * After the stack trace event header is identified and parsed by the StackTraceParser, based on the header pattern,
      * the parser sends incoming lines to the event for interpretation. These lines contain the thread state, the raw
@@ -439,6 +868,7 @@ public class StackTraceEvent extends GenericEvent {
                 if (stack != null) {
 
                     setStringProperty(STACK_PROPERTY_NAME, stack);
+                    stackFingerprinted = false;
                 }
 
                 mode = LOCKING_INFO_MODE;
@@ -454,18 +884,13 @@ public class StackTraceEvent extends GenericEvent {
                     stack += "\n";
                     stack += line;
                 }
+
+                monitorLine(line);
             }
         }
         else if (mode == LOCKING_INFO_MODE) {
 
-            //
-            // simply drop for the time being
-            //
-
-            if (log.isDebugEnabled()) {
-
-                log.debug("discarding logging information");
-            }
+            synchronizerLine(line);
         }
         else if (mode == CLOSED_MODE) {
 
@@ -491,6 +916,88 @@ public class StackTraceEvent extends GenericEvent {
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    /**
+     * Records the monitor of a "- locked", "- waiting to lock" or "- waiting on" stack line, and the object of a
+     * "- parking to wait for" line. Other lines are ignored.
+     */
+    private void monitorLine(String line) {
+
+        int i = 0;
+
+        while(i < line.length() && Character.isWhitespace(line.charAt(i))) {
+
+            i ++;
+        }
+
+        if (i == line.length() || line.charAt(i) != '-') {
+
+            return;
+        }
+
+        if (line.startsWith(LOCKED, i)) {
+
+            long m = monitorAddress(line, i + LOCKED.length());
+
+            if (m != NO_MONITOR) {
+
+                addLockedMonitor(m);
+            }
+        }
+        else if (line.startsWith(WAITING_TO_LOCK, i)) {
+
+            blockedOnMonitor = monitorAddress(line, i + WAITING_TO_LOCK.length());
+        }
+        else if (line.startsWith(WAITING_TO_RELOCK, i)) {
+
+            blockedOnMonitor = monitorAddress(line, i + WAITING_TO_RELOCK.length());
+        }
+        else if (line.startsWith(WAITING_ON, i)) {
+
+            waitingOnMonitor = monitorAddress(line, i + WAITING_ON.length());
+        }
+        else if (line.startsWith(PARKING_TO_WAIT_FOR, i)) {
+
+            parkedOn = monitorAddress(line, i + PARKING_TO_WAIT_FOR.length());
+        }
+    }
+
+    /**
+     * Records the synchronizer of a "- <0x000000076ab8c5a8> (a java.util.concurrent.locks.ReentrantLock$NonfairSync)"
+     * line of the "Locked ownable synchronizers:" section. Other lines, including "- None", are ignored.
+     */
+    private void synchronizerLine(String line) {
+
+        int i = 0;
+
+        while(i < line.length() && Character.isWhitespace(line.charAt(i))) {
+
+            i ++;
+        }
+
+        if (!line.startsWith("- <", i)) {
+
+            return;
+        }
+
+        long address = monitorAddress(line, i);
+
+        if (address == NO_MONITOR) {
+
+            return;
+        }
+
+        String className = null;
+        int j = line.indexOf("(a ", i);
+        int k = line.lastIndexOf(')');
+
+        if (j != -1 && k > j) {
+
+            className = line.substring(j + 3, k);
+        }
+
+        addOwnedSynchronizer(address, className);
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
 }
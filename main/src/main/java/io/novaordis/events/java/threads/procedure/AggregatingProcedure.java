@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.Procedure;
+
+/**
+ * A procedure whose result can be computed in parallel: workers build partial aggregates over ranges of thread dumps,
+ * the partials are merged in range order, and the procedure writes the output for the merged aggregate. The output
+ * must be identical to the one produced by processing the same thread dumps sequentially.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/5/17
+ */
+public interface AggregatingProcedure<P extends PartialAggregate<P>> extends Procedure {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return an empty aggregate.
+     */
+    P newPartial();
+
+    /**
+     * Adds the thread dump, which follows all thread dumps already accumulated, to the partial aggregate. May be
+     * invoked concurrently from different threads, on different partial aggregates, so it must not modify the state
+     * of the procedure.
+     */
+    void accumulate(P partial, JavaThreadDumpEvent dump);
+
+    /**
+     * Writes the output corresponding to the aggregate. Invoked from a single thread.
+     */
+    void emit(P aggregate) throws EventProcessingException;
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.ProcedureBase;
+
+/**
+ * Base class for thread dump procedures that can process runs of thread dumps at once. The type checking is done once
+ * per batch, the subclass appends its output for the whole batch to a StringBuilder, which is written to the output
+ * stream in a single call, and timestamps are formatted at most once per second of thread dump time.
+ *
+ * Events delivered one at a time through process(Event) are handled as batches of one, so the output is the same
+ * regardless of how the events are delivered. The events delivered in batches are counted by getInvocationCount(),
+ * like the events delivered one at a time.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/4/17
+ */
+public abstract class BatchProcedureBase extends ProcedureBase implements PrintStreamAware {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String TIMESTAMP_FORMAT = "MM/dd/yy HH:mm:ss";
+
+    protected static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private PrintStream out;
+
+    private SimpleDateFormat timestampFormat;
+
+    private long lastFormattedSecond;
+    private String lastFormattedTimestamp;
+
+    private List<JavaThreadDumpEvent> batch;
+
+    private StringBuilder output;
+
+    //
+    // the events delivered through processBatch(); the events delivered one at a time are counted by ProcedureBase
+    //
+    private long batchedEventCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    protected BatchProcedureBase() {
+
+        this.out = System.out;
+        this.timestampFormat = new SimpleDateFormat(TIMESTAMP_FORMAT);
+        this.lastFormattedSecond = Long.MIN_VALUE;
+        this.batch = new ArrayList<>();
+        this.output = new StringBuilder(1024);
+    }
+
+    // PrintStreamAware implementation ---------------------------------------------------------------------------------
+
+    @Override
+    public void setPrintStream(PrintStream ps) {
+
+        this.out = ps;
+    }
+
+    // ProcedureBase overrides -----------------------------------------------------------------------------------------
+
+    @Override
+    protected final void process(AtomicLong invocationCount, Event e) throws EventProcessingException {
+
+        if (e instanceof EndOfStreamEvent) {
+
+            endOfStream();
+            return;
+        }
+
+        batch.add(toThreadDump(e));
+        flushBatch();
+    }
+
+    /**
+     * @return the number of events delivered one at a time, counted by ProcedureBase, plus the number of events
+     * delivered in batches.
+     */
+    @Override
+    public long getInvocationCount() {
+
+        return super.getInvocationCount() + batchedEventCount;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Processes a run of events. An EndOfStreamEvent in the list ends the stream; anything after it is ignored.
+     *
+     * @exception IllegalArgumentException if the list contains events other than JavaThreadDumpEvents and
+     * EndOfStreamEvents. In this case, nothing from the list is processed.
+     */
+    public void processBatch(List<? extends Event> events) throws EventProcessingException {
+
+        int consumed = 0;
+        boolean endOfStream = false;
+
+        try {
+
+            for(Event e: events) {
+
+                consumed ++;
+
+                if (e instanceof EndOfStreamEvent) {
+
+                    endOfStream = true;
+                    break;
+                }
+
+                batch.add(toThreadDump(e));
+            }
+        }
+        catch(IllegalArgumentException e) {
+
+            batch.clear();
+            throw e;
+        }
+
+        if (consumed == 0) {
+
+            return;
+        }
+
+        batchedEventCount += consumed;
+
+        flushBatch();
+
+        if (endOfStream) {
+
+            endOfStream();
+        }
+    }
+
+    public DateFormat getTimestampFormat() {
+
+        return timestampFormat;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param dumps a non-empty run of thread dumps, in arrival order. The list is reused, the subclass must not keep a
+     *              reference to it.
+     * @param output the buffer to append the output to. It is written to the output stream after the method returns.
+     */
+    protected abstract void process(List<JavaThreadDumpEvent> dumps, StringBuilder output)
+            throws EventProcessingException;
+
+    /**
+     * Invoked when the end of the stream is reached. The default does nothing; subclasses that accumulate state until
+     * the end of the stream should override and write their output to the given buffer.
+     */
+    protected void endOfStream(StringBuilder output) throws EventProcessingException {
+
+        // noop
+    }
+
+    /**
+     * Formats the timestamp with TIMESTAMP_FORMAT. Since the format has a one second resolution, consecutive thread
+     * dumps taken within the same second reuse the previous result.
+     */
+    protected String formatTimestamp(long timestamp) {
+
+        long second = Math.floorDiv(timestamp, 1000L);
+
+        if (second != lastFormattedSecond) {
+
+            lastFormattedTimestamp = timestampFormat.format(timestamp);
+            lastFormattedSecond = second;
+        }
+
+        return lastFormattedTimestamp;
+    }
+
+    /**
+     * @return the output stream, for procedures that write binary output instead of text.
+     */
+    protected PrintStream getPrintStream() {
+
+        return out;
+    }
+
+    /**
+     * Writes directly to the output stream, for output that is produced outside a batch.
+     */
+    protected void print(CharSequence s) {
+
+        out.print(s);
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static JavaThreadDumpEvent toThreadDump(Event e) {
+
+        if (!(e instanceof JavaThreadDumpEvent)) {
+
+            throw new IllegalArgumentException("expecting a JavaThreadDumpEvent, got " + e);
+        }
+
+        return (JavaThreadDumpEvent)e;
+    }
+
+    private void flushBatch() throws EventProcessingException {
+
+        if (batch.isEmpty()) {
+
+            return;
+        }
+
+        try {
+
+            process(batch, output);
+        }
+        finally {
+
+            batch.clear();
+        }
+
+        write();
+    }
+
+    private void endOfStream() throws EventProcessingException {
+
+        endOfStream(output);
+        write();
+        out.flush();
+    }
+
+    private void write() {
+
+        if (output.length() == 0) {
+
+            return;
+        }
+
+        out.print(output);
+        output.setLength(0);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
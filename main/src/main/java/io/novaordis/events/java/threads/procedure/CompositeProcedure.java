@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.RingBuffer;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.Procedure;
+import io.novaordis.events.processing.ProcedureBase;
+
+/**
+ * Feeds each event to several procedures, so a file is parsed once for several reports. Each procedure may write its
+ * output to its own file. The procedures may run on the caller thread, one after another, or each on its own thread;
+ * either way, each procedure sees the events in the order in which they were received.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/3/17
+ */
+public class CompositeProcedure extends ProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(CompositeProcedure.class);
+
+    //
+    // the number of events that can be queued for a procedure running on its own thread
+    //
+    public static final int MEMBER_BUFFER_CAPACITY = 32;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private String label;
+
+    private List<Member> members;
+
+    private boolean threaded;
+
+    private boolean started;
+
+    private AtomicReference<Throwable> failure;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param label the command line label the composite was built from.
+     * @param threaded true if each member procedure should run on its own thread.
+     */
+    public CompositeProcedure(String label, boolean threaded) {
+
+        this.label = label;
+        this.threaded = threaded;
+        this.members = new ArrayList<>();
+        this.failure = new AtomicReference<>();
+    }
+
+    // ProcedureBase overrides -----------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(AtomicLong invocationCount, Event e) throws EventProcessingException {
+
+        if (!started) {
+
+            start();
+        }
+
+        checkFailure();
+
+        boolean endOfStream = e instanceof EndOfStreamEvent;
+
+        for(Member m: members) {
+
+            if (threaded) {
+
+                try {
+
+                    m.buffer.put(e);
+                }
+                catch(IllegalStateException ise) {
+
+                    //
+                    // the member thread failed and closed its buffer
+                    //
+
+                    checkFailure();
+                    throw ise;
+                }
+                catch(InterruptedException ie) {
+
+                    Thread.currentThread().interrupt();
+                    throw new EventProcessingException(ie);
+                }
+            }
+            else {
+
+                m.procedure.process(e);
+            }
+        }
+
+        if (endOfStream) {
+
+            stop();
+            checkFailure();
+        }
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(label);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param output the file the procedure output is redirected to. May be null, in which case the procedure writes
+     *               to its default output.
+     *
+     * @exception IllegalArgumentException if an output file is specified but the procedure's output cannot be
+     * redirected.
+     * @exception IllegalStateException if the composite already started processing.
+     */
+    public void addProcedure(Procedure p, File output) {
+
+        if (started) {
+
+            throw new IllegalStateException(this + " already started");
+        }
+
+        if (output != null && !(p instanceof PrintStreamAware)) {
+
+            throw new IllegalArgumentException(
+                    "the output of " + p.getCommandLineLabels() + " cannot be redirected to a file");
+        }
+
+        members.add(new Member(p, output));
+    }
+
+    public List<Procedure> getProcedures() {
+
+        List<Procedure> result = new ArrayList<>(members.size());
+
+        for(Member m: members) {
+
+            result.add(m.procedure);
+        }
+
+        return result;
+    }
+
+    public boolean isThreaded() {
+
+        return threaded;
+    }
+
+    @Override
+    public String toString() {
+
+        return "CompositeProcedure[" + label + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void start() throws EventProcessingException {
+
+        started = true;
+
+        for(Member m: members) {
+
+            if (m.output != null) {
+
+                try {
+
+                    m.out = new PrintStream(new FileOutputStream(m.output));
+                }
+                catch(IOException e) {
+
+                    throw new EventProcessingException("cannot write " + m.output, e);
+                }
+
+                ((PrintStreamAware)m.procedure).setPrintStream(m.out);
+            }
+
+            if (threaded) {
+
+                m.buffer = new RingBuffer<>(m.procedure.getCommandLineLabels().toString(), MEMBER_BUFFER_CAPACITY);
+                m.thread = new Thread(m, "td procedure " + m.procedure.getCommandLineLabels());
+                m.thread.setDaemon(true);
+                m.thread.start();
+            }
+        }
+    }
+
+    /**
+     * Waits for the member threads, if any, to process everything they were given, and closes the output files.
+     */
+    private void stop() throws EventProcessingException {
+
+        for(Member m: members) {
+
+            if (m.thread != null) {
+
+                m.buffer.close();
+
+                try {
+
+                    m.thread.join();
+                }
+                catch(InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                    throw new EventProcessingException(e);
+                }
+            }
+
+            if (m.out != null) {
+
+                m.out.close();
+            }
+        }
+    }
+
+    private void checkFailure() throws EventProcessingException {
+
+        Throwable t = failure.get();
+
+        if (t == null) {
+
+            return;
+        }
+
+        if (t instanceof EventProcessingException) {
+
+            throw (EventProcessingException)t;
+        }
+
+        if (t instanceof RuntimeException) {
+
+            throw (RuntimeException)t;
+        }
+
+        throw new EventProcessingException(t);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class Member implements Runnable {
+
+        private final Procedure procedure;
+        private final File output;
+
+        private PrintStream out;
+        private RingBuffer<Event> buffer;
+        private Thread thread;
+
+        Member(Procedure procedure, File output) {
+
+            this.procedure = procedure;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+
+            List<Event> batch = new ArrayList<>(MEMBER_BUFFER_CAPACITY);
+
+            try {
+
+                while(buffer.drainTo(batch, MEMBER_BUFFER_CAPACITY) != -1) {
+
+                    if (procedure instanceof BatchProcedureBase) {
+
+                        ((BatchProcedureBase)procedure).processBatch(batch);
+                    }
+                    else {
+
+                        for(Event e: batch) {
+
+                            procedure.process(e);
+                        }
+                    }
+
+                    batch.clear();
+                }
+            }
+            catch(Throwable t) {
+
+                if (failure.compareAndSet(null, t)) {
+
+                    log.error(procedure.getCommandLineLabels() + " failed", t);
+                }
+
+                buffer.close();
+            }
+        }
+    }
+}
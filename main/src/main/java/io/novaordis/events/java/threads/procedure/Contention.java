@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+/**
+ * The contended locks of each thread dump, as a time series: for each thread dump with lock waiters, one line per lock,
+ * for the locks with the most waiters, with the lock class, the number of waiters, the owner thread and the owner's top
+ * method:
+ *
+ *     12/21/17 10:00:00, 0x000000076ab62208, com.example.Account, 3, worker-1, com.example.Transfer.debit
+ *
+ * The waiters are the threads blocked on a monitor, and the threads parked on a java.util.concurrent lock (see
+ * LockGraph). Threads parked on objects that are not locks, such as conditions, are not counted. With --by-class, the
+ * waiters are counted per lock class instead of per lock, and the owner is the owner of the most contended lock of the
+ * class.
+ *
+ * A lock (or lock class) with at least --convoy-waiters waiters in --convoy-dumps consecutive thread dumps is a convoy,
+ * and its lines are marked with the time the convoy was first seen:
+ *
+ *     12/21/17 10:01:30, 0x000000076ab62208, com.example.Account, 4, worker-1, com.example.Transfer.debit, convoy since
+ *     12/21/17 10:00:00
+ *
+ * Only the locks that currently have enough waiters are tracked, so the memory does not grow with the length of the
+ * history, and the lines of a thread dump are written as soon as the thread dump is processed, so the procedure can run
+ * in --follow mode.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/22/17
+ */
+public class Contention extends BatchProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "contention";
+
+    public static final String TOP_OPTION = "--top";
+    public static final String BY_CLASS_OPTION = "--by-class";
+    public static final String CONVOY_WAITERS_OPTION = "--convoy-waiters";
+    public static final String CONVOY_DUMPS_OPTION = "--convoy-dumps";
+
+    public static final int DEFAULT_TOP = 10;
+    public static final int DEFAULT_CONVOY_WAITERS = 3;
+    public static final int DEFAULT_CONVOY_DUMPS = 3;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private int top;
+    private boolean byClass;
+    private int convoyWaiters;
+    private int convoyDumps;
+
+    private LockGraph graph;
+
+    //
+    // lock address -> index in the per-dump lock arrays
+    //
+    private LongIntMap slots;
+    private long[] locks;
+    private int[] waiters;
+    private int[] firstWaiter;
+
+    //
+    // the locks, or lock classes, with at least convoyWaiters waiters in the previous thread dump
+    //
+    private Map<String, Streak> streaks;
+
+    private long generation;
+    private long convoys;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Contention() {
+
+        this.top = DEFAULT_TOP;
+        this.convoyWaiters = DEFAULT_CONVOY_WAITERS;
+        this.convoyDumps = DEFAULT_CONVOY_DUMPS;
+        this.graph = new LockGraph();
+        this.slots = new LongIntMap(64);
+        this.locks = new long[16];
+        this.waiters = new int[16];
+        this.firstWaiter = new int[16];
+        this.streaks = new HashMap<>();
+    }
+
+    public Contention(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, this::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            process(d, output);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        output.append(generation).append(" thread dump(s), ").append(convoys).append(" convoy(s)")
+                .append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public int getTop() {
+
+        return top;
+    }
+
+    public boolean isByClass() {
+
+        return byClass;
+    }
+
+    public int getConvoyWaiters() {
+
+        return convoyWaiters;
+    }
+
+    public int getConvoyDumps() {
+
+        return convoyDumps;
+    }
+
+    /**
+     * @return the number of convoys found so far. A convoy is counted once, when it reaches --convoy-dumps thread
+     * dumps.
+     */
+    public long getConvoyCount() {
+
+        return convoys;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Contention[" + generation + " thread dump(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean consume(String arg) {
+
+        if (arg.startsWith(TOP_OPTION + "=")) {
+
+            top = CommandLineOptions.positiveInt(arg, TOP_OPTION);
+        }
+        else if (arg.equals(BY_CLASS_OPTION)) {
+
+            byClass = true;
+        }
+        else if (arg.startsWith(CONVOY_WAITERS_OPTION + "=")) {
+
+            convoyWaiters = CommandLineOptions.positiveInt(arg, CONVOY_WAITERS_OPTION);
+        }
+        else if (arg.startsWith(CONVOY_DUMPS_OPTION + "=")) {
+
+            convoyDumps = CommandLineOptions.positiveInt(arg, CONVOY_DUMPS_OPTION);
+        }
+        else {
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private void process(JavaThreadDumpEvent dump, StringBuilder output) {
+
+        generation ++;
+
+        long time = dump.getTime() == null ? 0L : dump.getTime();
+
+        graph.build(dump.getStackTraceEvents());
+
+        List<Entry> entries = graph.getWaiterCount() == 0 ? Collections.emptyList() : count();
+
+        //
+        // a streak survives only if the lock has enough waiters in this thread dump too
+        //
+
+        for(Entry e: entries) {
+
+            if (e.waiters < convoyWaiters) {
+
+                continue;
+            }
+
+            Streak s = streaks.get(e.key);
+
+            if (s == null) {
+
+                s = new Streak(time);
+                streaks.put(e.key, s);
+            }
+
+            s.dumps ++;
+            s.generation = generation;
+
+            if (s.dumps == convoyDumps) {
+
+                convoys ++;
+            }
+
+            if (s.dumps >= convoyDumps) {
+
+                e.convoySince = s.since;
+            }
+        }
+
+        for(Iterator<Streak> i = streaks.values().iterator(); i.hasNext(); ) {
+
+            if (i.next().generation != generation) {
+
+                i.remove();
+            }
+        }
+
+        if (entries.isEmpty()) {
+
+            return;
+        }
+
+        entries.sort((a, b) -> a.waiters != b.waiters ? Integer.compare(b.waiters, a.waiters) : a.key.compareTo(b.key));
+
+        String timestamp = formatTimestamp(time);
+
+        for(int i = 0; i < Math.min(top, entries.size()); i ++) {
+
+            Entry e = entries.get(i);
+
+            output.append(timestamp).append(", ");
+
+            if (!byClass) {
+
+                output.append(e.key).append(", ");
+            }
+
+            output.append(e.lockClass == null ? "-" : e.lockClass).append(", ").append(e.waiters).append(", ");
+
+            if (e.owner == LockGraph.NONE) {
+
+                output.append("-, -");
+            }
+            else {
+
+                StackTraceEvent owner = graph.getThread(e.owner);
+                String stack = owner.getStack();
+                String method = stack == null ? null : MethodTable.topMethod(stack);
+                output.append(owner.getThreadName()).append(", ").append(method == null ? "-" : method);
+            }
+
+            if (e.convoySince != null) {
+
+                output.append(", convoy since ").append(getTimestampFormat().format(e.convoySince));
+            }
+
+            output.append(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * @return the contended locks, or lock classes, of the current graph, in no particular order.
+     */
+    private List<Entry> count() {
+
+        slots.clear();
+        int n = 0;
+
+        for(int i = 0; i < graph.size(); i ++) {
+
+            long lock = graph.getLock(i);
+
+            if (lock == StackTraceEvent.NO_MONITOR) {
+
+                continue;
+            }
+
+            int slot = slots.get(lock, -1);
+
+            if (slot == -1) {
+
+                if (n == locks.length) {
+
+                    locks = Arrays.copyOf(locks, n * 2);
+                    waiters = Arrays.copyOf(waiters, n * 2);
+                    firstWaiter = Arrays.copyOf(firstWaiter, n * 2);
+                }
+
+                slot = n ++;
+                slots.put(lock, slot);
+                locks[slot] = lock;
+                waiters[slot] = 0;
+                firstWaiter[slot] = i;
+            }
+
+            waiters[slot] ++;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Entry> classes = byClass ? new HashMap<>() : null;
+
+        for(int slot = 0; slot < n; slot ++) {
+
+            long lock = locks[slot];
+            int waiter = firstWaiter[slot];
+            int owner = graph.getOwnerOf(lock);
+
+            //
+            // the class is looked up once per lock, on the stack of its first waiter
+            //
+
+            String lockClass = graph.getThread(waiter).getMonitorClass(lock);
+
+            if (graph.isSynchronizer(waiter) && owner == LockGraph.NONE &&
+                    (lockClass == null || !lockClass.endsWith("Sync"))) {
+
+                //
+                // parked on something that is not a lock, such as a condition
+                //
+
+                continue;
+            }
+
+            if (!byClass) {
+
+                entries.add(new Entry(String.format("0x%016x", lock), lockClass, waiters[slot], owner));
+                continue;
+            }
+
+            String key = lockClass == null ? "-" : lockClass;
+            Entry e = classes.get(key);
+
+            if (e == null) {
+
+                e = new Entry(key, lockClass, 0, owner);
+                e.mostWaiters = waiters[slot];
+                classes.put(key, e);
+                entries.add(e);
+            }
+            else if (waiters[slot] > e.mostWaiters) {
+
+                e.mostWaiters = waiters[slot];
+                e.owner = owner;
+            }
+
+            e.waiters += waiters[slot];
+        }
+
+        return entries;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static final class Entry {
+
+        private final String key;
+        private final String lockClass;
+        private int waiters;
+        private int owner;
+
+        //
+        // by class: the number of waiters of the most contended lock of the class
+        //
+        private int mostWaiters;
+
+        private Long convoySince;
+
+        Entry(String key, String lockClass, int waiters, int owner) {
+
+            this.key = key;
+            this.lockClass = lockClass;
+            this.waiters = waiters;
+            this.owner = owner;
+        }
+    }
+
+    private static final class Streak {
+
+        private final long since;
+        private int dumps;
+        private long generation;
+
+        Streak(long since) {
+
+            this.since = since;
+        }
+    }
+}
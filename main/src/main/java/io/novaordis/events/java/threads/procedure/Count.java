@@ -16,27 +16,22 @@
 
 package io.novaordis.events.java.threads.procedure;
 
-import java.io.PrintStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
-import io.novaordis.events.api.event.EndOfStreamEvent;
-import io.novaordis.events.api.event.Event;
 import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
-import io.novaordis.events.processing.EventProcessingException;
-import io.novaordis.events.processing.ProcedureBase;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
 
 /**
  * This is an "override" of the generic count, which counts stack traces per thread dump event instead of top-level
  * events.
  *
+ * Thread dumps can also be streamed, so only the stack traces are counted and the thread dump is not assembled.
+ *
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
  * @since 11/29/17
  */
-public class Count extends ProcedureBase {
+public class Count extends BatchProcedureBase implements StreamingProcedure {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
@@ -46,39 +41,26 @@ public class Count extends ProcedureBase {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
-    private PrintStream out;
-
-    private SimpleDateFormat timestampFormat;
+    //
+    // the thread dump being streamed, and the number of its stack traces so far
+    //
+    private JavaThreadDumpEvent streamed;
+    private int streamedThreads;
 
     // Constructors ----------------------------------------------------------------------------------------------------
 
-    public Count() {
-
-        this.out = System.out;
-        this.timestampFormat = new SimpleDateFormat("MM/dd/yy HH:mm:ss");
-    }
-
-    // ProcedureBase overrides -----------------------------------------------------------------------------------------
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
 
     @Override
-    protected void process(AtomicLong invocationCount, Event e) throws EventProcessingException {
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
 
-        if (e instanceof EndOfStreamEvent) {
+        for(JavaThreadDumpEvent jtde: dumps) {
 
-            return;
-        }
+            int i = jtde.getThreadCount();
+            long timestamp = jtde.getTime();
 
-        if (!(e instanceof JavaThreadDumpEvent)) {
-
-            throw new IllegalArgumentException("expecting a JavaThreadDumpEvent, got " + e);
+            output.append(formatTimestamp(timestamp)).append(", ").append(i).append(LINE_SEPARATOR);
         }
-
-        JavaThreadDumpEvent jtde = (JavaThreadDumpEvent)e;
-
-        int i = jtde.getThreadCount();
-        long timestamp = jtde.getTime();
-
-        out.println(timestampFormat.format(timestamp) + ", " + i);
     }
 
     @Override
@@ -87,20 +69,32 @@ public class Count extends ProcedureBase {
         return Collections.singletonList(LABEL);
     }
 
-    // Public ----------------------------------------------------------------------------------------------------------
+    // StreamingProcedure implementation -------------------------------------------------------------------------------
 
-    public DateFormat getTimestampFormat() {
+    @Override
+    public void beginThreadDump(JavaThreadDumpEvent threadDump) {
 
-        return timestampFormat;
+        streamed = threadDump;
+        streamedThreads = 0;
     }
 
-    // Package protected -----------------------------------------------------------------------------------------------
+    @Override
+    public void processStackTrace(StackTraceEvent stackTrace) {
+
+        streamedThreads ++;
+    }
 
-    void setPrintStream(PrintStream ps) {
+    @Override
+    public void endThreadDump() {
 
-        this.out = ps;
+        print(formatTimestamp(streamed.getTime()) + ", " + streamedThreads + LINE_SEPARATOR);
+        streamed = null;
     }
 
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
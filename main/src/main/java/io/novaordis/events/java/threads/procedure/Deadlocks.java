@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+/**
+ * Finds the Java-level deadlocks of each thread dump: the cycles of the wait-for graph, where a thread blocked trying
+ * to enter a monitor waits for the thread that holds the monitor, and a thread parked on a java.util.concurrent lock
+ * waits for the thread that owns the lock (see LockGraph; the locks are only known for "jstack -l" output). A deadlock
+ * is reported as soon as the thread dump is processed, so the procedure can run in --follow and --watch mode against
+ * collector output:
+ *
+ *     12/15/17 10:00:00 Java-level deadlock, 2 thread(s):
+ *         "t1" waiting to lock <0x000000076ab62208> (a java.lang.Object), held by "t2"
+ *         "t2" waiting for ownable synchronizer <0x000000076ab8c5a8> (a ...ReentrantLock$NonfairSync), held by "t1"
+ *
+ * A thread waits for at most one lock, so the graph is a functional graph and its cycles are found with a single walk,
+ * in time linear in the number of threads. The graph is reused from one thread dump to the next, so evaluating a
+ * thread dump does not allocate per thread.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/20/17
+ */
+public class Deadlocks extends BatchProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "deadlocks";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private LockGraph graph;
+
+    //
+    // the walk that first visited each thread, or 0 if not visited
+    //
+    private int[] visited;
+
+    private long dumps;
+    private long deadlocks;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Deadlocks() {
+
+        this.graph = new LockGraph();
+        this.visited = new int[0];
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            process(d, output);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        output.append(dumps).append(" thread dump(s), ").append(deadlocks).append(" deadlock(s)")
+                .append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of deadlocks found so far. A deadlock that persists is counted once per thread dump.
+     */
+    public long getDeadlockCount() {
+
+        return deadlocks;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Deadlocks[" + dumps + " thread dump(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void process(JavaThreadDumpEvent dump, StringBuilder output) {
+
+        dumps ++;
+
+        graph.build(dump.getStackTraceEvents());
+
+        if (graph.getWaiterCount() == 0) {
+
+            return;
+        }
+
+        int n = graph.size();
+
+        if (visited.length < n) {
+
+            visited = new int[n];
+        }
+        else {
+
+            Arrays.fill(visited, 0, n, 0);
+        }
+
+        //
+        // each walk follows the wait-for edges until it reaches a thread that waits for nothing, or a thread visited
+        // before; if that thread was visited by the same walk, the walk closed a cycle
+        //
+
+        int walk = 0;
+
+        for(int i = 0; i < n; i ++) {
+
+            if (visited[i] != 0) {
+
+                continue;
+            }
+
+            walk ++;
+            int j = i;
+
+            while(j != LockGraph.NONE && visited[j] == 0) {
+
+                visited[j] = walk;
+                j = graph.getOwner(j);
+            }
+
+            if (j != LockGraph.NONE && visited[j] == walk) {
+
+                report(dump, j, output);
+            }
+        }
+    }
+
+    /**
+     * @param first a thread on the cycle.
+     */
+    private void report(JavaThreadDumpEvent dump, int first, StringBuilder output) {
+
+        deadlocks ++;
+
+        int length = 0;
+        int j = first;
+
+        do {
+
+            length ++;
+            j = graph.getOwner(j);
+        }
+        while(j != first);
+
+        output.append(dump.getTime() == null ? "-" : formatTimestamp(dump.getTime()));
+        output.append(" Java-level deadlock, ").append(length).append(" thread(s)");
+
+        if (dump.getPid() != null) {
+
+            output.append(", pid ").append(dump.getPid());
+        }
+
+        output.append(":").append(LINE_SEPARATOR);
+
+        j = first;
+
+        do {
+
+            StackTraceEvent st = graph.getThread(j);
+            long m = graph.getLock(j);
+            String lockClass = st.getMonitorClass(m);
+
+            output.append("    \"").append(st.getThreadName()).append("\" ");
+            output.append(graph.isSynchronizer(j) ? "waiting for ownable synchronizer <" : "waiting to lock <");
+            output.append(String.format("0x%016x", m)).append(">");
+
+            if (lockClass != null) {
+
+                output.append(" (a ").append(lockClass).append(")");
+            }
+
+            output.append(", held by \"").append(graph.getThread(graph.getOwner(j)).getThreadName()).append("\"");
+            output.append(LINE_SEPARATOR);
+
+            j = graph.getOwner(j);
+        }
+        while(j != first);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+/**
+ * The thread lifecycle between consecutive thread dumps: for each thread dump after the first, the number of threads
+ * created, gone, that changed state and that changed stack since the previous thread dump, and the churn - the
+ * created and gone threads relative to the previous thread count - with the creation and termination rates:
+ *
+ *     12/23/17 10:00:30 212 thread(s), 5 created, 3 gone, 17 changed state, 40 changed stack, churn 3.9% (10.0
+ *     created/min, 6.0 gone/min)
+ *
+ * With --threads, the line is followed by the threads themselves:
+ *
+ *     + "default task-58" RUNNABLE
+ *     - "default task-12"
+ *     ~ "Finalizer" OBJECT_WAIT -> RUNNABLE
+ *     * "main"
+ *
+ * The threads are joined on tid: a tid present in both thread dumps is the same thread, unless the name changed, in
+ * which case the tid was reused and the thread is counted as gone and created. Threads without a tid are ignored. The
+ * stacks are compared by fingerprint. Only a compact index of the previous thread dump (tid, name, state, fingerprint)
+ * is kept, so the memory does not depend on the stack sizes or on the length of the history. A change of PID (a JVM
+ * restart) starts over, without comparing.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/23/17
+ */
+public class Diff extends BatchProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "diff";
+
+    public static final String THREADS_OPTION = "--threads";
+
+    private static final byte NO_STATE = -1;
+
+    private static final ThreadState[] STATES = ThreadState.values();
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private boolean threads;
+
+    //
+    // the index of the previous thread dump, and the index the current thread dump is built in; swapped after each
+    // thread dump
+    //
+    private Index previous;
+    private Index current;
+    private boolean hasPrevious;
+
+    private long dumps;
+    private long created;
+    private long gone;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Diff() {
+
+        this.previous = new Index();
+        this.current = new Index();
+    }
+
+    public Diff(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, this::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            process(d, output);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        output.append(dumps).append(" thread dump(s), ").append(created).append(" thread(s) created, ")
+                .append(gone).append(" thread(s) gone").append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public boolean isThreads() {
+
+        return threads;
+    }
+
+    /**
+     * @return the number of threads created so far, across all compared thread dumps.
+     */
+    public long getCreatedCount() {
+
+        return created;
+    }
+
+    /**
+     * @return the number of threads gone so far, across all compared thread dumps.
+     */
+    public long getGoneCount() {
+
+        return gone;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Diff[" + dumps + " thread dump(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean consume(String arg) {
+
+        if (!arg.equals(THREADS_OPTION)) {
+
+            return false;
+        }
+
+        threads = true;
+        return true;
+    }
+
+    private void process(JavaThreadDumpEvent dump, StringBuilder output) {
+
+        dumps ++;
+
+        List<StackTraceEvent> events = dump.getStackTraceEvents();
+        current.reset(events.size(), dump.getTime(), dump.getPid());
+
+        for(StackTraceEvent st: events) {
+
+            Long tid = st.getTidAsLong();
+
+            if (tid == null) {
+
+                continue;
+            }
+
+            current.add(tid, st.getThreadName(), toState(st), st.getStackFingerprint());
+        }
+
+        if (hasPrevious && Objects.equals(previous.pid, current.pid)) {
+
+            compare(output);
+        }
+
+        Index i = previous;
+        previous = current;
+        current = i;
+        hasPrevious = true;
+    }
+
+    /**
+     * @return the ThreadState ordinal, or NO_STATE if the state is missing or not recognized.
+     */
+    private static byte toState(StackTraceEvent st) {
+
+        try {
+
+            ThreadState s = st.getThreadState();
+
+            return s == null ? NO_STATE : (byte)s.ordinal();
+        }
+        catch(IllegalStateException e) {
+
+            return NO_STATE;
+        }
+    }
+
+    /**
+     * Joins the current index with the previous one.
+     */
+    private void compare(StringBuilder output) {
+
+        StringBuilder details = threads ? new StringBuilder() : null;
+
+        int createdNow = 0;
+        int stateChanges = 0;
+        int stackChanges = 0;
+
+        for(int i = 0; i < current.size; i ++) {
+
+            int j = previous.indexOf(current.tids[i]);
+
+            if (j == -1 || !Objects.equals(previous.names[j], current.names[i])) {
+
+                createdNow ++;
+
+                if (details != null) {
+
+                    details.append("+ \"").append(current.names[i]).append("\" ").append(state(current.states[i]))
+                            .append(LINE_SEPARATOR);
+                }
+
+                continue;
+            }
+
+            previous.matched[j] = true;
+
+            if (previous.states[j] != current.states[i]) {
+
+                stateChanges ++;
+
+                if (details != null) {
+
+                    details.append("~ \"").append(current.names[i]).append("\" ").append(state(previous.states[j]))
+                            .append(" -> ").append(state(current.states[i])).append(LINE_SEPARATOR);
+                }
+            }
+            else if (previous.fingerprints[j] != current.fingerprints[i]) {
+
+                stackChanges ++;
+
+                if (details != null) {
+
+                    details.append("* \"").append(current.names[i]).append("\"").append(LINE_SEPARATOR);
+                }
+            }
+        }
+
+        int goneNow = 0;
+
+        for(int j = 0; j < previous.size; j ++) {
+
+            if (previous.matched[j]) {
+
+                continue;
+            }
+
+            goneNow ++;
+
+            if (details != null) {
+
+                details.append("- \"").append(previous.names[j]).append("\"").append(LINE_SEPARATOR);
+            }
+        }
+
+        created += createdNow;
+        gone += goneNow;
+
+        //
+        // a state change usually comes with a stack change, it is only counted as a state change
+        //
+
+        output.append(current.time == null ? "-" : formatTimestamp(current.time)).append(" ");
+        output.append(current.size).append(" thread(s), ");
+        output.append(createdNow).append(" created, ").append(goneNow).append(" gone, ");
+        output.append(stateChanges).append(" changed state, ").append(stackChanges).append(" changed stack");
+
+        if (previous.size > 0) {
+
+            output.append(", churn ")
+                    .append(String.format(Locale.US, "%.1f%%", 100d * (createdNow + goneNow) / previous.size));
+        }
+
+        if (current.time != null && previous.time != null && current.time > previous.time) {
+
+            double minutes = (current.time - previous.time) / 60000d;
+
+            output.append(String.format(Locale.US, " (%.1f created/min, %.1f gone/min)",
+                    createdNow / minutes, goneNow / minutes));
+        }
+
+        output.append(LINE_SEPARATOR);
+
+        if (details != null) {
+
+            output.append(details);
+        }
+    }
+
+    private static String state(byte ordinal) {
+
+        return ordinal == NO_STATE ? "-" : STATES[ordinal].toString();
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The thread index, with the state of each thread, and whether it was matched by a thread of the next thread dump.
+     */
+    private static final class Index extends ThreadIndex {
+
+        private byte[] states;
+        private boolean[] matched;
+
+        @Override
+        protected void allocate(int capacity) {
+
+            super.allocate(capacity);
+            states = new byte[capacity];
+            matched = new boolean[capacity];
+        }
+
+        @Override
+        protected void clear(int size) {
+
+            super.clear(size);
+            Arrays.fill(matched, 0, size, false);
+        }
+
+        void add(long tid, String name, byte state, long fingerprint) {
+
+            int i = add(tid, name, fingerprint);
+
+            if (i != -1) {
+
+                states[i] = state;
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+/**
+ * Folds the stacks of all threads of all thread dumps, root first, into a call trie, and writes the trie in the
+ * collapsed stack format understood by the flame graph tools ("root;caller;method count", one line per distinct call
+ * path, in lexicographic order):
+ *
+ *     td flamegraph jstack.out | flamegraph.pl > threads.svg
+ *
+ * The trie nodes are shared by all the stacks with the same call path, so memory is proportional to the number of
+ * distinct call paths, and not to the number of threads times the number of thread dumps. Threads without frames are
+ * not counted.
+ *
+ * The threads can be filtered by state (--state=RUNNABLE, --state=BLOCKED, --state=WAITING) and by name
+ * (--thread-name=<regex>), see ThreadFilter. When the thread dumps are parsed in parallel, each parser builds the
+ * trie of its own thread dumps, and the tries are merged. JSON thread dumps are streamed into the trie one stack trace
+ * at a time, so a thread dump with millions of virtual threads is never held in memory.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/17/17
+ */
+public class FlameGraph extends BatchProcedureBase
+        implements AggregatingProcedure<FlameGraph.CallTrie>, StreamingProcedure {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "flamegraph";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ThreadFilter filter;
+
+    //
+    // the trie built when the thread dumps are delivered to process(), and not aggregated in parallel
+    //
+    private CallTrie trie;
+
+    private boolean emitted;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public FlameGraph() {
+
+        this.filter = new ThreadFilter();
+    }
+
+    public FlameGraph(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, filter::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        if (trie == null) {
+
+            trie = newPartial();
+        }
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            accumulate(trie, d);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        if (emitted) {
+
+            //
+            // the output was already produced from the parallel aggregate
+            //
+
+            return;
+        }
+
+        format(trie == null ? newPartial() : trie, output);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // AggregatingProcedure implementation -----------------------------------------------------------------------------
+
+    @Override
+    public CallTrie newPartial() {
+
+        return new CallTrie();
+    }
+
+    @Override
+    public void accumulate(CallTrie partial, JavaThreadDumpEvent dump) {
+
+        for(StackTraceEvent st: dump.getStackTraceEvents()) {
+
+            accumulate(partial, st);
+        }
+    }
+
+    @Override
+    public void emit(CallTrie aggregate) {
+
+        StringBuilder output = new StringBuilder();
+        format(aggregate, output);
+        print(output);
+        emitted = true;
+    }
+
+    // StreamingProcedure implementation -------------------------------------------------------------------------------
+
+    @Override
+    public void beginThreadDump(JavaThreadDumpEvent threadDump) {
+
+        if (trie == null) {
+
+            trie = newPartial();
+        }
+    }
+
+    @Override
+    public void processStackTrace(StackTraceEvent stackTrace) {
+
+        accumulate(trie, stackTrace);
+    }
+
+    @Override
+    public void endThreadDump() {
+
+        // noop
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    ThreadFilter getFilter() {
+
+        return filter;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void accumulate(CallTrie partial, StackTraceEvent st) {
+
+        String stack;
+
+        if (!filter.selects(st) || (stack = st.getStack()) == null) {
+
+            return;
+        }
+
+        partial.add(partial.methods.toIds(stack), 1L);
+    }
+
+    private void format(CallTrie t, StringBuilder output) {
+
+        for(String line: t.toCollapsed()) {
+
+            output.append(line).append(LINE_SEPARATOR);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * A prefix trie of call paths, root first. The nodes are kept in parallel arrays: the method id, the first child,
+     * the next sibling, and the number of stacks that end in the node. Node 0 is the root, which has no method.
+     */
+    public static class CallTrie implements PartialAggregate<CallTrie> {
+
+        private static final int NONE = -1;
+
+        private final MethodTable methods;
+
+        private int[] method;
+        private int[] firstChild;
+        private int[] nextSibling;
+        private long[] count;
+        private int size;
+
+        private long samples;
+
+        CallTrie() {
+
+            this.methods = new MethodTable();
+            this.method = new int[256];
+            this.firstChild = new int[256];
+            this.nextSibling = new int[256];
+            this.count = new long[256];
+            this.method[0] = NONE;
+            this.firstChild[0] = NONE;
+            this.nextSibling[0] = NONE;
+            this.size = 1;
+        }
+
+        @Override
+        public void merge(CallTrie next) {
+
+            //
+            // the method ids of the other trie are translated lazily
+            //
+
+            int[] ids = new int[next.methods.size()];
+            Arrays.fill(ids, NONE);
+
+            int[] pending = new int[64];
+            int top = 0;
+
+            pending[top ++] = 0;
+            pending[top ++] = 0;
+
+            while(top > 0) {
+
+                int node = pending[-- top];
+                int nextNode = pending[-- top];
+
+                for(int c = next.firstChild[nextNode]; c != NONE; c = next.nextSibling[c]) {
+
+                    int m = next.method[c];
+
+                    if (ids[m] == NONE) {
+
+                        ids[m] = methods.intern(next.methods.getName(m));
+                    }
+
+                    int child = child(node, ids[m]);
+                    count[child] += next.count[c];
+
+                    if (top + 2 > pending.length) {
+
+                        pending = Arrays.copyOf(pending, pending.length * 2);
+                    }
+
+                    pending[top ++] = c;
+                    pending[top ++] = child;
+                }
+            }
+
+            samples += next.samples;
+        }
+
+        /**
+         * @return the number of nodes, root included.
+         */
+        public int getNodeCount() {
+
+            return size;
+        }
+
+        /**
+         * @return the number of stacks added.
+         */
+        public long getSampleCount() {
+
+            return samples;
+        }
+
+        /**
+         * @param methodIds the method ids of a stack, top first, as returned by MethodTable.toIds(). Empty stacks are
+         *                  ignored.
+         */
+        void add(int[] methodIds, long n) {
+
+            if (methodIds.length == 0) {
+
+                return;
+            }
+
+            int node = 0;
+
+            for(int i = methodIds.length - 1; i >= 0; i --) {
+
+                node = child(node, methodIds[i]);
+            }
+
+            count[node] += n;
+            samples += n;
+        }
+
+        /**
+         * @return the call paths that end in a node, in the collapsed stack format, sorted.
+         */
+        List<String> toCollapsed() {
+
+            List<String> lines = new ArrayList<>();
+            StringBuilder path = new StringBuilder();
+
+            //
+            // depth-first, iterative since stacks may be deep; each entry is a node and the path length before it
+            //
+
+            int[] pending = new int[64];
+            int top = 0;
+
+            for(int c = firstChild[0]; c != NONE; c = nextSibling[c]) {
+
+                pending = push(pending, top, c, 0);
+                top += 2;
+            }
+
+            while(top > 0) {
+
+                int length = pending[-- top];
+                int node = pending[-- top];
+
+                path.setLength(length);
+
+                if (length > 0) {
+
+                    path.append(';');
+                }
+
+                path.append(methods.getName(method[node]));
+
+                if (count[node] > 0) {
+
+                    lines.add(path.toString() + " " + count[node]);
+                }
+
+                for(int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+
+                    pending = push(pending, top, c, path.length());
+                    top += 2;
+                }
+            }
+
+            Collections.sort(lines);
+            return lines;
+        }
+
+        /**
+         * @return the child of the parent node for the method, created if it does not exist.
+         */
+        private int child(int parent, int methodId) {
+
+            for(int c = firstChild[parent]; c != NONE; c = nextSibling[c]) {
+
+                if (method[c] == methodId) {
+
+                    return c;
+                }
+            }
+
+            if (size == method.length) {
+
+                int n = size * 2;
+                method = Arrays.copyOf(method, n);
+                firstChild = Arrays.copyOf(firstChild, n);
+                nextSibling = Arrays.copyOf(nextSibling, n);
+                count = Arrays.copyOf(count, n);
+            }
+
+            method[size] = methodId;
+            firstChild[size] = NONE;
+            nextSibling[size] = firstChild[parent];
+            firstChild[parent] = size;
+            return size ++;
+        }
+
+        private static int[] push(int[] a, int top, int node, int length) {
+
+            if (top + 2 > a.length) {
+
+                a = Arrays.copyOf(a, a.length * 2);
+            }
+
+            a[top] = node;
+            a[top + 1] = length;
+            return a;
+        }
+    }
+}
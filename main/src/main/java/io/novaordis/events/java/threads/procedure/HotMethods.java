@@ -0,0 +1,580 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+/**
+ * Uses the thread dumps as samples of a wall-clock profiler: reports, for each method, how often it was found on top
+ * of a stack ("self") and anywhere in a stack ("total"), across all thread dumps. A method is counted once per stack,
+ * even if it appears in the stack more than once. The source locations are ignored, so all lines of a method count as
+ * the method.
+ *
+ * Thread dumps taken at irregular intervals are time-weighted: each thread dump stands for the interval that elapsed
+ * since the previous one, and the first thread dump for the average interval. The counts are expressed in samples,
+ * scaled so that with regular intervals they are the plain sample counts. Intervals longer than MAX_INTERVAL_MS are
+ * considered pauses in the collection, and counted as MAX_INTERVAL_MS.
+ *
+ * The threads can be filtered by state (--state=RUNNABLE,WAITING_ON_CONDITION) and by name (--thread-name=<regex>,
+ * matching anywhere in the name), see ThreadFilter. The methods are interned, and the counts are kept in primitive
+ * arrays indexed by method id, so memory is proportional to the number of distinct methods and not to the number of
+ * thread dumps.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/16/17
+ */
+public class HotMethods extends BatchProcedureBase implements AggregatingProcedure<HotMethods.Profile> {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "hot-methods";
+
+    public static final String TOP_OPTION = "--top";
+
+    public static final int DEFAULT_TOP = 20;
+
+    public static final long MAX_INTERVAL_MS = 60 * 1000L;
+
+    private static final int[] NO_METHODS = new int[0];
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the weight of a thread dump taken "interval" milliseconds after the previous one.
+     */
+    static long weight(long interval) {
+
+        return Math.min(Math.max(interval, 1L), MAX_INTERVAL_MS);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ThreadFilter filter;
+
+    private int top;
+
+    //
+    // the aggregate built when the thread dumps are delivered to process(), and not aggregated in parallel
+    //
+    private Profile profile;
+
+    private boolean emitted;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public HotMethods() {
+
+        this.filter = new ThreadFilter();
+        this.top = DEFAULT_TOP;
+    }
+
+    public HotMethods(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, this::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        if (profile == null) {
+
+            profile = newPartial();
+        }
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            accumulate(profile, d);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        if (emitted) {
+
+            //
+            // the output was already produced from the parallel aggregate
+            //
+
+            return;
+        }
+
+        format(profile == null ? newPartial() : profile, output);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // AggregatingProcedure implementation -----------------------------------------------------------------------------
+
+    @Override
+    public Profile newPartial() {
+
+        return new Profile();
+    }
+
+    @Override
+    public void accumulate(Profile partial, JavaThreadDumpEvent dump) {
+
+        partial.startDump(dump.getTime());
+
+        for(StackTraceEvent st: dump.getStackTraceEvents()) {
+
+            if (!filter.selects(st)) {
+
+                continue;
+            }
+
+            String stack = st.getStack();
+            partial.addSample(stack == null ? NO_METHODS : partial.toMethodIds(stack));
+        }
+    }
+
+    @Override
+    public void emit(Profile aggregate) {
+
+        StringBuilder output = new StringBuilder();
+        format(aggregate, output);
+        print(output);
+        emitted = true;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param s a comma-separated list of thread states, see ThreadFilter.
+     *
+     * @exception IllegalArgumentException on unknown states.
+     */
+    public void setStates(String s) {
+
+        filter.setStates(s);
+    }
+
+    /**
+     * @return the thread states the threads are filtered by, or null if all threads are counted.
+     */
+    public Set<ThreadState> getStates() {
+
+        return filter.getStates();
+    }
+
+    /**
+     * @exception IllegalArgumentException on invalid regular expression.
+     */
+    public void setThreadName(String regex) {
+
+        filter.setThreadName(regex);
+    }
+
+    /**
+     * @return the pattern the thread names are filtered by, or null if all threads are counted.
+     */
+    public Pattern getThreadName() {
+
+        return filter.getThreadName();
+    }
+
+    public void setTop(int top) {
+
+        if (top <= 0) {
+
+            throw new IllegalArgumentException("invalid " + TOP_OPTION + " value: " + top);
+        }
+
+        this.top = top;
+    }
+
+    public int getTop() {
+
+        return top;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean consume(String arg) {
+
+        if (filter.consume(arg)) {
+
+            // applied
+        }
+        else if (arg.startsWith(TOP_OPTION + "=")) {
+
+            setTop(CommandLineOptions.positiveInt(arg, TOP_OPTION));
+        }
+        else {
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private void format(Profile p, StringBuilder output) {
+
+        double[] self = p.self.clone();
+        double[] total = p.total.clone();
+        double threads = p.threads;
+        double weight = p.weight;
+
+        //
+        // the first thread dump stands for the average interval
+        //
+
+        double headWeight = p.dumps > 1 ? p.weight / (p.dumps - 1) : 1d;
+
+        p.foldHead(headWeight, self, total, null);
+        threads += headWeight * p.headThreads;
+        weight += headWeight;
+
+        double scale = p.dumps == 0 ? 0d : p.dumps / weight;
+
+        output.append(p.dumps).append(" thread dump(s), ").append(format(threads * scale)).
+                append(" thread sample(s)").append(LINE_SEPARATOR);
+
+        if (threads == 0d) {
+
+            return;
+        }
+
+        formatTable("self", self, self, total, threads, scale, p, output);
+        formatTable("total", total, self, total, threads, scale, p, output);
+    }
+
+    private void formatTable(String label, double[] sortBy, double[] self, double[] total, double threads,
+                             double scale, Profile p, StringBuilder output) {
+
+        List<Integer> ids = new ArrayList<>();
+
+        for(int i = 0; i < p.methods.size(); i ++) {
+
+            if (sortBy[i] > 0d) {
+
+                ids.add(i);
+            }
+        }
+
+        ids.sort((a, b) -> {
+
+            int c = Double.compare(sortBy[b], sortBy[a]);
+            return c != 0 ? c : p.methods.getName(a).compareTo(p.methods.getName(b));
+        });
+
+        output.append(LINE_SEPARATOR).append("top ").append(Math.min(top, ids.size())).append(" method(s) by ").
+                append(label).append(" samples:").append(LINE_SEPARATOR).
+                append("  self, self%, total, total%, method").append(LINE_SEPARATOR);
+
+        for(int id: ids.subList(0, Math.min(top, ids.size()))) {
+
+            output.append("  ").
+                    append(format(self[id] * scale)).append(", ").
+                    append(format(100d * self[id] / threads)).append("%, ").
+                    append(format(total[id] * scale)).append(", ").
+                    append(format(100d * total[id] / threads)).append("%, ").
+                    append(p.methods.getName(id)).append(LINE_SEPARATOR);
+        }
+    }
+
+    private static String format(double d) {
+
+        return String.format(Locale.US, "%.1f", d);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The time-weighted self and total counts of the methods found in a range of thread dumps. The counts of the
+     * first thread dump of the range are kept apart, unweighted, because its weight depends on the time of the thread
+     * dump that precedes the range; they are weighted when the range is merged into the preceding one.
+     */
+    public static class Profile implements PartialAggregate<Profile> {
+
+        private final MethodTable methods;
+
+        //
+        // weighted counts, in milliseconds, indexed by method id
+        //
+        private double[] self;
+        private double[] total;
+
+        //
+        // the weighted number of thread samples, and the sum of the thread dump weights, first thread dump excluded
+        //
+        private double threads;
+        private double weight;
+
+        private int dumps;
+        private long firstTime;
+        private long lastTime;
+
+        //
+        // the method ids found on top of the stacks, and anywhere in the stacks, in the first thread dump
+        //
+        private int[] headSelf;
+        private int headSelfSize;
+        private int[] headTotal;
+        private int headTotalSize;
+        private int headThreads;
+
+        //
+        // the weight of the thread dump being accumulated, 0 while accumulating the first thread dump
+        //
+        private long currentWeight;
+
+        //
+        // used to count a method once per stack: seen[id] == sample if the method was already counted for the sample
+        //
+        private int[] seen;
+        private int sample;
+
+        Profile() {
+
+            this.methods = new MethodTable();
+            this.self = new double[64];
+            this.total = new double[64];
+            this.seen = new int[64];
+            this.headSelf = new int[64];
+            this.headTotal = new int[64];
+        }
+
+        @Override
+        public void merge(Profile next) {
+
+            if (next.dumps == 0) {
+
+                return;
+            }
+
+            if (dumps == 0) {
+
+                firstTime = next.firstTime;
+                headThreads = next.headThreads;
+                next.foldHead(0d, null, null, this);
+                foldCounts(next);
+            }
+            else {
+
+                double w = weight(next.firstTime - lastTime);
+                next.foldHead(w, null, null, this);
+                threads += w * next.headThreads;
+                weight += w;
+                foldCounts(next);
+            }
+
+            dumps += next.dumps;
+            lastTime = next.lastTime;
+        }
+
+        public int getThreadDumpCount() {
+
+            return dumps;
+        }
+
+        /**
+         * @return the number of distinct methods.
+         */
+        public int getMethodCount() {
+
+            return methods.size();
+        }
+
+        void startDump(long time) {
+
+            currentWeight = dumps == 0 ? 0L : weight(time - lastTime);
+            weight += currentWeight;
+
+            if (dumps == 0) {
+
+                firstTime = time;
+            }
+
+            lastTime = time;
+            dumps ++;
+        }
+
+        /**
+         * @param methodIds the method ids of a stack, top first.
+         */
+        void addSample(int[] methodIds) {
+
+            sample ++;
+
+            if (currentWeight == 0L) {
+
+                headThreads ++;
+
+                if (methodIds.length > 0) {
+
+                    headSelf = add(headSelf, headSelfSize ++, methodIds[0]);
+                }
+            }
+            else {
+
+                threads += currentWeight;
+
+                if (methodIds.length > 0) {
+
+                    self[methodIds[0]] += currentWeight;
+                }
+            }
+
+            for(int id: methodIds) {
+
+                if (seen[id] == sample) {
+
+                    continue;
+                }
+
+                seen[id] = sample;
+
+                if (currentWeight == 0L) {
+
+                    headTotal = add(headTotal, headTotalSize ++, id);
+                }
+                else {
+
+                    total[id] += currentWeight;
+                }
+            }
+        }
+
+        int[] toMethodIds(String stack) {
+
+            int[] result = methods.toIds(stack);
+            ensureCapacity();
+            return result;
+        }
+
+        /**
+         * Adds the counts of the first thread dump, with the given weight, either to the given arrays, indexed by the
+         * ids of this instance, or to another profile, as its first thread dump if the weight is 0.
+         */
+        void foldHead(double w, double[] selfTarget, double[] totalTarget, Profile target) {
+
+            for(int i = 0; i < headSelfSize; i ++) {
+
+                if (target == null) {
+
+                    selfTarget[headSelf[i]] += w;
+                    continue;
+                }
+
+                //
+                // intern() may reallocate the arrays of the target, so it must be invoked before accessing them
+                //
+
+                int id = target.intern(methods.getName(headSelf[i]));
+
+                if (w == 0d) {
+
+                    target.headSelf = add(target.headSelf, target.headSelfSize ++, id);
+                }
+                else {
+
+                    target.self[id] += w;
+                }
+            }
+
+            for(int i = 0; i < headTotalSize; i ++) {
+
+                if (target == null) {
+
+                    totalTarget[headTotal[i]] += w;
+                    continue;
+                }
+
+                int id = target.intern(methods.getName(headTotal[i]));
+
+                if (w == 0d) {
+
+                    target.headTotal = add(target.headTotal, target.headTotalSize ++, id);
+                }
+                else {
+
+                    target.total[id] += w;
+                }
+            }
+        }
+
+        private void foldCounts(Profile next) {
+
+            for(int i = 0; i < next.methods.size(); i ++) {
+
+                int id = intern(next.methods.getName(i));
+                self[id] += next.self[i];
+                total[id] += next.total[i];
+            }
+
+            threads += next.threads;
+            weight += next.weight;
+        }
+
+        private int intern(String method) {
+
+            int id = methods.intern(method);
+            ensureCapacity();
+            return id;
+        }
+
+        /**
+         * Grows the count arrays to cover all interned methods.
+         */
+        private void ensureCapacity() {
+
+            if (methods.size() > self.length) {
+
+                int n = Math.max(methods.size(), self.length * 2);
+                self = Arrays.copyOf(self, n);
+                total = Arrays.copyOf(total, n);
+                seen = Arrays.copyOf(seen, n);
+            }
+        }
+
+        private static int[] add(int[] a, int size, int value) {
+
+            if (size == a.length) {
+
+                a = Arrays.copyOf(a, a.length * 2);
+            }
+
+            a[size] = value;
+            return a;
+        }
+    }
+}
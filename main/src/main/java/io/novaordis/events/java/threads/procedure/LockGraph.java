@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+/**
+ * The owner/waiter relationships of the threads of a thread dump, for both monitors and java.util.concurrent locks:
+ *
+ * - a thread blocked entering a monitor ("- waiting to lock <0x...>") waits for the thread that holds the monitor
+ *   ("- locked <0x...>"). The monitor a thread waits on in Object.wait() is released, so it is not held.
+ *
+ * - a thread parked on a synchronizer ("- parking to wait for <0x...>") waits for the thread that owns it, as listed
+ *   in the "Locked ownable synchronizers:" section of "jstack -l" output. Threads parked on objects nobody owns, such
+ *   as conditions, or thread dumps taken without -l, produce waiters without owner.
+ *
+ * A thread waits for at most one lock, so the graph is represented by an array of owner indexes. The owners are kept
+ * in a primitive hash map, and the arrays are reused from one thread dump to the next: build() does not allocate per
+ * thread once the structures have grown to the size of the largest thread dump.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/21/17
+ */
+class LockGraph {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    static final int NONE = -1;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private List<StackTraceEvent> threads;
+
+    //
+    // monitor or synchronizer address -> index of the owner thread
+    //
+    private LongIntMap owners;
+
+    //
+    // the lock each thread waits for, or NO_MONITOR; the thread that holds it, or NONE
+    //
+    private long[] lock;
+    private boolean[] synchronizer;
+    private int[] owner;
+
+    private int waiters;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    LockGraph() {
+
+        this.threads = Collections.emptyList();
+        this.owners = new LongIntMap(1024);
+        this.lock = new long[0];
+        this.synchronizer = new boolean[0];
+        this.owner = new int[0];
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "LockGraph[" + threads.size() + " thread(s), " + waiters + " waiter(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Replaces the graph with the graph of the given threads. The list is kept until the next invocation.
+     */
+    void build(List<StackTraceEvent> threads) {
+
+        this.threads = threads;
+        int n = threads.size();
+
+        if (lock.length < n) {
+
+            lock = new long[n];
+            synchronizer = new boolean[n];
+            owner = new int[n];
+        }
+
+        owners.clear();
+        waiters = 0;
+
+        for(int i = 0; i < n; i ++) {
+
+            StackTraceEvent st = threads.get(i);
+            long blockedOn = st.getBlockedOnMonitor();
+            long waitingOn = st.getWaitingOnMonitor();
+
+            for(int j = 0; j < st.getLockedMonitorCount(); j ++) {
+
+                long m = st.getLockedMonitor(j);
+
+                if (m != blockedOn && m != waitingOn) {
+
+                    owners.put(m, i);
+                }
+            }
+
+            for(int j = 0; j < st.getOwnedSynchronizerCount(); j ++) {
+
+                owners.put(st.getOwnedSynchronizer(j), i);
+            }
+
+            if (blockedOn != StackTraceEvent.NO_MONITOR) {
+
+                lock[i] = blockedOn;
+                synchronizer[i] = false;
+                waiters ++;
+            }
+            else if (st.getParkedOn() != StackTraceEvent.NO_MONITOR) {
+
+                lock[i] = st.getParkedOn();
+                synchronizer[i] = true;
+                waiters ++;
+            }
+            else {
+
+                lock[i] = StackTraceEvent.NO_MONITOR;
+            }
+        }
+
+        for(int i = 0; i < n; i ++) {
+
+            owner[i] = lock[i] == StackTraceEvent.NO_MONITOR ? NONE : owners.get(lock[i], NONE);
+
+            if (owner[i] == i) {
+
+                //
+                // a thread does not wait for a lock it holds; the thread dump is not a consistent snapshot, and this
+                // is not a wait-for edge
+                //
+
+                owner[i] = NONE;
+            }
+        }
+    }
+
+    int size() {
+
+        return threads.size();
+    }
+
+    StackTraceEvent getThread(int index) {
+
+        return threads.get(index);
+    }
+
+    /**
+     * @return the address of the monitor the thread is blocked on, or of the object the thread is parked on, or
+     * NO_MONITOR if the thread does not wait for a lock.
+     */
+    long getLock(int index) {
+
+        return lock[index];
+    }
+
+    /**
+     * @return true if the thread is parked (java.util.concurrent), false if it is blocked on a monitor, or does not
+     * wait.
+     */
+    boolean isSynchronizer(int index) {
+
+        return lock[index] != StackTraceEvent.NO_MONITOR && synchronizer[index];
+    }
+
+    /**
+     * @return the index of the thread that holds the lock the thread waits for, or NONE if the thread does not wait,
+     * or the owner is not known.
+     */
+    int getOwner(int index) {
+
+        return owner[index];
+    }
+
+    /**
+     * @return the index of the thread that holds the monitor or owns the synchronizer, or NONE.
+     */
+    int getOwnerOf(long lock) {
+
+        return owners.get(lock, NONE);
+    }
+
+    /**
+     * @return the number of threads that wait for a lock, with or without a known owner.
+     */
+    int getWaiterCount() {
+
+        return waiters;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from long keys, such as monitor addresses, to non-negative int values, such as thread
+ * indexes, with no per-entry allocation. It is meant to be filled for a thread dump, and cleared for the next one: the
+ * arrays are kept, and only grow.
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/20/17
+ */
+class LongIntMap {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final int EMPTY = -1;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private long[] keys;
+
+    //
+    // EMPTY marks the free slots
+    //
+    private int[] values;
+
+    private int size;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    LongIntMap() {
+
+        this(16);
+    }
+
+    /**
+     * @param capacity the expected number of entries.
+     */
+    LongIntMap(int capacity) {
+
+        int slots = Integer.highestOneBit(Math.max(8, capacity * 2) - 1) << 1;
+        this.keys = new long[slots];
+        this.values = new int[slots];
+        Arrays.fill(values, EMPTY);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "LongIntMap[" + size + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @param value must not be negative.
+     *
+     * @exception IllegalArgumentException on negative values.
+     */
+    void put(long key, int value) {
+
+        if (value < 0) {
+
+            throw new IllegalArgumentException("negative value " + value);
+        }
+
+        if (2 * (size + 1) > keys.length) {
+
+            rehash(keys.length * 2);
+        }
+
+        int i = slot(key);
+
+        if (values[i] == EMPTY) {
+
+            keys[i] = key;
+            size ++;
+        }
+
+        values[i] = value;
+    }
+
+    /**
+     * @return the value, or missing if the key is not in the map.
+     */
+    int get(long key, int missing) {
+
+        int v = values[slot(key)];
+
+        return v == EMPTY ? missing : v;
+    }
+
+    int size() {
+
+        return size;
+    }
+
+    void clear() {
+
+        if (size == 0) {
+
+            return;
+        }
+
+        Arrays.fill(values, EMPTY);
+        size = 0;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the slot that holds the key, or the free slot where it would go.
+     */
+    private int slot(long key) {
+
+        int mask = keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int i = (int)(h ^ (h >>> 32)) & mask;
+
+        while(values[i] != EMPTY && keys[i] != key) {
+
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+
+    private void rehash(int slots) {
+
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new long[slots];
+        values = new int[slots];
+        Arrays.fill(values, EMPTY);
+
+        for(int i = 0; i < oldKeys.length; i ++) {
+
+            if (oldValues[i] != EMPTY) {
+
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the methods found in stacks, so the procedures that aggregate stacks can count by dense integer ids, in
+ * primitive arrays, instead of by name. The method of a stack frame is the frame without its source location, so all
+ * lines of a method are the same method.
+ *
+ * The ids of the recently seen stacks are remembered, up to STACK_CACHE_SIZE stacks, since the threads of a pool
+ * usually share their stack.
+ *
+ * Each partial aggregate has its own table; the ids of different tables are unrelated. The implementation is NOT
+ * thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/17/17
+ */
+class MethodTable {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int STACK_CACHE_SIZE = 4096;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param stack the literal stack, as returned by StackTraceEvent.getStack().
+     *
+     * @return the methods of the "at" lines of the stack, top first, without the source location. Other lines, such
+     * as "- locked <...>", are ignored.
+     */
+    static List<String> toMethods(String stack) {
+
+        return parse(stack, false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param stack the literal stack, as returned by StackTraceEvent.getStack().
+     *
+     * @return the frames of the "at" lines of the stack, top first, with the source location: "A.b(A.java:12)".
+     */
+    static List<String> toFrames(String stack) {
+
+        return parse(stack, true, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param stack the literal stack, as returned by StackTraceEvent.getStack().
+     *
+     * @return the method of the first "at" line of the stack, without the source location, or null if there is none.
+     * Only the beginning of the stack is scanned.
+     */
+    static String topMethod(String stack) {
+
+        List<String> methods = parse(stack, false, 1);
+
+        return methods.isEmpty() ? null : methods.get(0);
+    }
+
+    private static List<String> parse(String stack, boolean withLocation, int limit) {
+
+        List<String> methods = new ArrayList<>();
+
+        int start = 0;
+
+        while(start < stack.length() && methods.size() < limit) {
+
+            int end = stack.indexOf('\n', start);
+
+            if (end == -1) {
+
+                end = stack.length();
+            }
+
+            int i = start;
+
+            while(i < end && Character.isWhitespace(stack.charAt(i))) {
+
+                i ++;
+            }
+
+            if (stack.startsWith("at ", i)) {
+
+                i += 3;
+                int j = withLocation ? -1 : stack.indexOf('(', i);
+                methods.add(stack.substring(i, j == -1 || j > end ? end : j).trim());
+            }
+
+            start = end + 1;
+        }
+
+        return methods;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final Map<String, Integer> ids;
+
+    private String[] names;
+
+    private int size;
+
+    private final Map<String, int[]> stacks;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    MethodTable() {
+
+        this.ids = new HashMap<>();
+        this.names = new String[64];
+        this.stacks = new HashMap<>();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the id of the method, allocating the next id if the method was not seen before.
+     */
+    public int intern(String method) {
+
+        Integer id = ids.get(method);
+
+        if (id != null) {
+
+            return id;
+        }
+
+        if (size == names.length) {
+
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+
+        names[size] = method;
+        ids.put(method, size);
+        return size ++;
+    }
+
+    /**
+     * @return the method ids of the stack, top first. The array is shared, it must not be modified.
+     */
+    public int[] toIds(String stack) {
+
+        int[] result = stacks.get(stack);
+
+        if (result != null) {
+
+            return result;
+        }
+
+        List<String> methods = toMethods(stack);
+        result = new int[methods.size()];
+
+        for(int i = 0; i < result.length; i ++) {
+
+            result[i] = intern(methods.get(i));
+        }
+
+        if (stacks.size() == STACK_CACHE_SIZE) {
+
+            stacks.clear();
+        }
+
+        stacks.put(stack, result);
+
+        return result;
+    }
+
+    public String getName(int id) {
+
+        return names[id];
+    }
+
+    /**
+     * @return the number of methods, which is also the next id.
+     */
+    public int size() {
+
+        return size;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -16,20 +16,12 @@
 
 package io.novaordis.events.java.threads.procedure;
 
-import java.io.PrintStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
-import io.novaordis.events.api.event.EndOfStreamEvent;
-import io.novaordis.events.api.event.Event;
 import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
 import io.novaordis.events.java.threads.event.StackTraceEvent;
-import io.novaordis.events.processing.EventProcessingException;
-import io.novaordis.events.processing.ProcedureBase;
 
 /**
  * This is an "override" of the generic count, which counts stack traces per thread dump event instead of top-level
@@ -38,7 +30,7 @@ import io.novaordis.events.processing.ProcedureBase;
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
  * @since 11/29/17
  */
-public class Names extends ProcedureBase {
+public class Names extends BatchProcedureBase {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
@@ -48,51 +40,39 @@ public class Names extends ProcedureBase {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
-    private PrintStream out;
-
-    private SimpleDateFormat timestampFormat;
+    private List<String> names;
 
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public Names() {
 
-        this.out = System.out;
-        this.timestampFormat = new SimpleDateFormat("MM/dd/yy HH:mm:ss");
+        this.names = new ArrayList<>();
     }
 
-    // ProcedureBase overrides -----------------------------------------------------------------------------------------
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
 
     @Override
-    protected void process(AtomicLong invocationCount, Event e) throws EventProcessingException {
-
-        if (e instanceof EndOfStreamEvent) {
-
-            return;
-        }
-
-        if (!(e instanceof JavaThreadDumpEvent)) {
-
-            throw new IllegalArgumentException("expecting a JavaThreadDumpEvent, got " + e);
-        }
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
 
-        JavaThreadDumpEvent jtde = (JavaThreadDumpEvent)e;
+        for(JavaThreadDumpEvent jtde: dumps) {
 
-        List<String> names = new ArrayList<>();
+            for(StackTraceEvent st: jtde.getStackTraceEvents()) {
 
-        for(StackTraceEvent st: jtde.getStackTraceEvents()) {
+                names.add(st.getThreadName());
+            }
 
-            names.add(st.getThreadName());
-        }
+            Collections.sort(names);
 
-        Collections.sort(names);
+            long timestamp = jtde.getTime();
 
-        long timestamp = jtde.getTime();
+            output.append(formatTimestamp(timestamp)).append(LINE_SEPARATOR);
 
-        out.println(timestampFormat.format(timestamp));
+            for(String n : names) {
 
-        for(String n : names) {
+                output.append("  ").append(n).append(LINE_SEPARATOR);
+            }
 
-            out.println("  " + n);
+            names.clear();
         }
     }
 
@@ -104,18 +84,8 @@ public class Names extends ProcedureBase {
 
     // Public ----------------------------------------------------------------------------------------------------------
 
-    public DateFormat getTimestampFormat() {
-
-        return timestampFormat;
-    }
-
     // Package protected -----------------------------------------------------------------------------------------------
 
-    void setPrintStream(PrintStream ps) {
-
-        this.out = ps;
-    }
-
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+/**
+ * The partial result of an aggregating procedure over a contiguous range of thread dumps.
+ *
+ * merge() must be associative: for consecutive ranges a, b, c, (a + b) + c and a + (b + c) must produce the same
+ * aggregate. It does not have to be commutative - the argument always covers the range that immediately follows the
+ * range covered by the instance, which is what allows order-sensitive aggregates, such as per-dump output lines.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/5/17
+ */
+public interface PartialAggregate<P extends PartialAggregate<P>> {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Merges the given aggregate, which covers the range that immediately follows this one, into this instance. The
+     * argument must not be used after the call.
+     */
+    void merge(P next);
+
+}
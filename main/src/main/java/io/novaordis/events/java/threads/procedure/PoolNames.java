@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Derives the name of the pool a thread belongs to from the thread name, by removing the number that tells apart the
+ * threads of the pool: "default task-57" and "EJB default - 12" belong to the "default task" and "EJB default" pools,
+ * "pool-3-thread-17" to "pool-3-thread", and "Incoming-7,shared=udp" to "Incoming,shared=udp".
+ *
+ * An instance may also be configured with patterns, for the pools whose thread names are not told apart by a number.
+ * The patterns are tried in order, before the number is removed, and the pool of a thread whose name contains a match
+ * is the first group of the pattern, or the pattern itself if it has no group. An instance remembers the pool of the
+ * recently seen thread names, since the same threads appear in one thread dump after another. Instances are not
+ * thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/18/17
+ */
+final class PoolNames {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String SEPARATORS = " -_#.:";
+
+    public static final int NAME_CACHE_SIZE = 65536;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Removes the last run of digits that follows a separator (space, '-', '_', '#', '.' or ':'), together with the
+     * separators that precede it. Digits that are part of a word ("Writes1325617527") are kept.
+     *
+     * @return the pool name, or the thread name itself if it does not contain a thread number. Null for null.
+     */
+    static String normalize(String threadName) {
+
+        if (threadName == null) {
+
+            return null;
+        }
+
+        int end = threadName.length();
+
+        while(end > 0) {
+
+            //
+            // the last digit run before "end"
+            //
+
+            int j = end;
+
+            while(j > 0 && !Character.isDigit(threadName.charAt(j - 1))) {
+
+                j --;
+            }
+
+            if (j == 0) {
+
+                return threadName;
+            }
+
+            int i = j;
+
+            while(i > 0 && Character.isDigit(threadName.charAt(i - 1))) {
+
+                i --;
+            }
+
+            if (i > 0 && SEPARATORS.indexOf(threadName.charAt(i - 1)) != -1) {
+
+                int k = i;
+
+                while(k > 0 && SEPARATORS.indexOf(threadName.charAt(k - 1)) != -1) {
+
+                    k --;
+                }
+
+                if (k == 0) {
+
+                    return threadName;
+                }
+
+                return threadName.substring(0, k) + threadName.substring(j);
+            }
+
+            end = i;
+        }
+
+        return threadName;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private List<Pattern> patterns;
+
+    //
+    // thread name -> pool
+    //
+    private Map<String, String> cache;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    PoolNames() {
+
+        this.patterns = new ArrayList<>();
+        this.cache = new HashMap<>();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "PoolNames[" + patterns.size() + " pattern(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @exception IllegalArgumentException on invalid regular expression.
+     */
+    void addPattern(String regex) {
+
+        patterns.add(Pattern.compile(regex));
+        cache.clear();
+    }
+
+    List<Pattern> getPatterns() {
+
+        return Collections.unmodifiableList(patterns);
+    }
+
+    /**
+     * @return the pool of the thread, as determined by the patterns or, if none matches, by normalize(). Null for null.
+     */
+    String poolOf(String threadName) {
+
+        if (threadName == null) {
+
+            return null;
+        }
+
+        String pool = cache.get(threadName);
+
+        if (pool != null) {
+
+            return pool;
+        }
+
+        pool = match(threadName);
+
+        if (pool == null) {
+
+            pool = normalize(threadName);
+        }
+
+        if (cache.size() == NAME_CACHE_SIZE) {
+
+            cache.clear();
+        }
+
+        cache.put(threadName, pool);
+        return pool;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the pool determined by the first matching pattern, or null if no pattern matches.
+     */
+    private String match(String threadName) {
+
+        for(Pattern p: patterns) {
+
+            Matcher m = p.matcher(threadName);
+
+            if (!m.find()) {
+
+                continue;
+            }
+
+            if (m.groupCount() > 0 && m.group(1) != null) {
+
+                return m.group(1);
+            }
+
+            return p.pattern();
+        }
+
+        return null;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
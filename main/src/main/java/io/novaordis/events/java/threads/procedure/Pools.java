@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+/**
+ * The threads of each thread dump grouped by pool, with the number of threads in each state, one line per pool, in
+ * pool name order:
+ *
+ *     12/25/17 10:00:00, "default task", 120, 40, 0, 78, 0, 2, 0
+ *
+ * The columns are the total, then the RUNNABLE, OBJECT_WAIT, WAITING_ON_CONDITION, SLEEPING and
+ * WAITING_FOR_MONITOR_ENTRY threads, and the threads whose state is not known. The pool of a thread is derived from
+ * its name, see PoolNames; --pool=<regex> adds patterns for the pools whose thread names are not told apart by a
+ * number.
+ *
+ * The pool of each thread name is remembered, and the per-pool counters are reused from one thread dump to the next,
+ * so the cost of a thread dump is a couple of hash lookups per thread. The pools that have no threads in a thread dump
+ * are forgotten, so the memory does not grow with the length of the history.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/25/17
+ */
+public class Pools extends BatchProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "pools";
+
+    public static final String POOL_OPTION = "--pool";
+
+    private static final ThreadState[] STATES = ThreadState.values();
+
+    //
+    // the layout of the per-pool counters: the total, one counter per state, and the unknown state
+    //
+    private static final int TOTAL = 0;
+    private static final int UNKNOWN = STATES.length + 1;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private PoolNames poolNames;
+
+    //
+    // pool -> counters, for the pools with threads in the previous thread dump
+    //
+    private Map<String, int[]> pools;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Pools() {
+
+        this.poolNames = new PoolNames();
+        this.pools = new TreeMap<>();
+    }
+
+    public Pools(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, this::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            process(d, output);
+        }
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the --pool patterns, in order.
+     */
+    public List<Pattern> getPatterns() {
+
+        return poolNames.getPatterns();
+    }
+
+    @Override
+    public String toString() {
+
+        return "Pools[" + pools.size() + " pool(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean consume(String arg) {
+
+        if (!arg.startsWith(POOL_OPTION + "=")) {
+
+            return false;
+        }
+
+        String regex = arg.substring(POOL_OPTION.length() + 1);
+
+        try {
+
+            poolNames.addPattern(regex);
+        }
+        catch(IllegalArgumentException e) {
+
+            throw new IllegalArgumentException("invalid " + POOL_OPTION + " value: " + regex, e);
+        }
+
+        return true;
+    }
+
+    private void process(JavaThreadDumpEvent dump, StringBuilder output) {
+
+        for(StackTraceEvent st: dump.getStackTraceEvents()) {
+
+            String pool = poolNames.poolOf(st.getThreadName());
+
+            if (pool == null) {
+
+                pool = "-";
+            }
+
+            int[] counters = pools.get(pool);
+
+            if (counters == null) {
+
+                counters = new int[STATES.length + 2];
+                pools.put(pool, counters);
+            }
+
+            ThreadState state;
+
+            try {
+
+                state = st.getThreadState();
+            }
+            catch(IllegalStateException e) {
+
+                state = null;
+            }
+
+            counters[TOTAL] ++;
+            counters[state == null ? UNKNOWN : state.ordinal() + 1] ++;
+        }
+
+        String timestamp = dump.getTime() == null ? "-" : formatTimestamp(dump.getTime());
+
+        for(Iterator<Map.Entry<String, int[]>> i = pools.entrySet().iterator(); i.hasNext(); ) {
+
+            Map.Entry<String, int[]> e = i.next();
+            int[] counters = e.getValue();
+
+            if (counters[TOTAL] == 0) {
+
+                i.remove();
+                continue;
+            }
+
+            output.append(timestamp).append(", \"").append(e.getKey()).append("\"");
+
+            for(int c: counters) {
+
+                output.append(", ").append(c);
+            }
+
+            output.append(LINE_SEPARATOR);
+
+            Arrays.fill(counters, 0);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
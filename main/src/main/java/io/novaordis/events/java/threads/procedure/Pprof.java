@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+import io.novaordis.events.processing.EventProcessingException;
+
+/**
+ * Writes the thread dumps as a gzip-compressed pprof profile, to be explored with "go tool pprof" or any other pprof
+ * front end:
+ *
+ *     td pprof:threads.pb.gz jstack.out
+ *     go tool pprof -http=:8080 threads.pb.gz
+ *
+ * Each thread dump contributes one sample per distinct combination of stack, thread state and thread pool, whose
+ * value is the number of threads. The samples carry the thread state ("state"), the pool ("pool", the thread name
+ * without its sequence number, see PoolNames), the PID of the JVM ("pid", if known) and the time of the thread dump
+ * ("timestamp", in milliseconds) as labels, so they can be filtered and grouped with pprof's -tagfocus, -tagshow and
+ * -tagroot. The profile time is the time of the first thread dump, and its duration the time up to the last one.
+ *
+ * The profile is written while the thread dumps are processed, see PprofWriter. Only the function, location and string
+ * tables are kept in memory, so the memory does not grow with the number of thread dumps. For the same reason, the
+ * procedure processes the thread dumps in arrival order, and it is not aggregated in parallel.
+ *
+ * The threads can be filtered by state and by name, see ThreadFilter.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/18/17
+ */
+public class Pprof extends BatchProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(Pprof.class);
+
+    public static final String LABEL = "pprof";
+
+    public static final String STATE_LABEL = "state";
+    public static final String POOL_LABEL = "pool";
+    public static final String PID_LABEL = "pid";
+    public static final String TIMESTAMP_LABEL = "timestamp";
+    public static final String TIMESTAMP_UNIT = "milliseconds";
+
+    public static final int STACK_CACHE_SIZE = 4096;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ThreadFilter filter;
+
+    private PoolNames poolNames;
+
+    //
+    // created on the first thread dump, so it writes to the print stream installed after construction
+    //
+    private PprofWriter writer;
+
+    //
+    // the location ids of the recently seen stacks
+    //
+    private Map<String, long[]> stacks;
+
+    //
+    // the samples of the current thread dump, reused
+    //
+    private Map<SampleKey, long[]> samples;
+
+    private long firstTime;
+    private long lastTime;
+    private long dumps;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Pprof() {
+
+        this.filter = new ThreadFilter();
+        this.poolNames = new PoolNames();
+        this.stacks = new HashMap<>();
+        this.samples = new LinkedHashMap<>();
+    }
+
+    public Pprof(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, filter::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) throws EventProcessingException {
+
+        try {
+
+            for(JavaThreadDumpEvent d: dumps) {
+
+                write(d);
+            }
+        }
+        catch(IOException e) {
+
+            throw new EventProcessingException("cannot write the profile", e);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) throws EventProcessingException {
+
+        try {
+
+            if (writer == null) {
+
+                //
+                // an empty, but valid, profile
+                //
+
+                writer = new PprofWriter(getPrintStream());
+            }
+
+            writer.finish(firstTime * 1000000L, (lastTime - firstTime) * 1000000L);
+
+            log.debug(this + " wrote " + dumps + " thread dump(s), " + writer.getSampleCount() + " sample(s), " +
+                    writer.getLocationCount() + " location(s), " + writer.getFunctionCount() + " function(s), " +
+                    writer.getStringCount() + " string(s)");
+        }
+        catch(IOException e) {
+
+            throw new EventProcessingException("cannot write the profile", e);
+        }
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "Pprof[" + dumps + " thread dump(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    ThreadFilter getFilter() {
+
+        return filter;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void write(JavaThreadDumpEvent dump) throws IOException {
+
+        if (writer == null) {
+
+            writer = new PprofWriter(getPrintStream());
+        }
+
+        long time = dump.getTime() == null ? 0L : dump.getTime();
+
+        if (dumps == 0) {
+
+            firstTime = time;
+        }
+
+        lastTime = Math.max(lastTime, time);
+        dumps ++;
+
+        //
+        // the threads of a pool are often parked in the same place: one sample per distinct stack, state and pool
+        //
+
+        for(StackTraceEvent st: dump.getStackTraceEvents()) {
+
+            if (!filter.selects(st)) {
+
+                continue;
+            }
+
+            ThreadState state;
+
+            try {
+
+                state = st.getThreadState();
+            }
+            catch(IllegalStateException e) {
+
+                state = null;
+            }
+
+            SampleKey key = new SampleKey(
+                    toLocationIds(st.getStack()), state == null ? null : state.toString(),
+                    poolNames.poolOf(st.getThreadName()));
+
+            long[] count = samples.get(key);
+
+            if (count == null) {
+
+                samples.put(key, new long[] { 1L });
+            }
+            else {
+
+                count[0] ++;
+            }
+        }
+
+        Integer pid = dump.getPid();
+
+        for(Map.Entry<SampleKey, long[]> e: samples.entrySet()) {
+
+            SampleKey k = e.getKey();
+
+            writer.startSample(k.locations, e.getValue()[0]);
+
+            if (k.state != null) {
+
+                writer.label(STATE_LABEL, k.state);
+            }
+
+            if (k.pool != null) {
+
+                writer.label(POOL_LABEL, k.pool);
+            }
+
+            if (pid != null) {
+
+                writer.label(PID_LABEL, pid, "");
+            }
+
+            writer.label(TIMESTAMP_LABEL, time, TIMESTAMP_UNIT);
+            writer.endSample();
+        }
+
+        samples.clear();
+    }
+
+    /**
+     * @return the location ids of the stack frames, top first. The array is shared, it must not be modified.
+     */
+    private long[] toLocationIds(String stack) throws IOException {
+
+        if (stack == null) {
+
+            return new long[0];
+        }
+
+        long[] ids = stacks.get(stack);
+
+        if (ids != null) {
+
+            return ids;
+        }
+
+        List<String> frames = MethodTable.toFrames(stack);
+        ids = new long[frames.size()];
+
+        for(int i = 0; i < ids.length; i ++) {
+
+            ids[i] = writer.location(frames.get(i));
+        }
+
+        if (stacks.size() == STACK_CACHE_SIZE) {
+
+            stacks.clear();
+        }
+
+        stacks.put(stack, ids);
+
+        return ids;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static final class SampleKey {
+
+        private final long[] locations;
+        private final String state;
+        private final String pool;
+        private final int hashCode;
+
+        SampleKey(long[] locations, String state, String pool) {
+
+            this.locations = locations;
+            this.state = state;
+            this.pool = pool;
+            this.hashCode = 31 * (31 * Arrays.hashCode(locations) + Objects.hashCode(state)) + Objects.hashCode(pool);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (!(o instanceof SampleKey)) {
+
+                return false;
+            }
+
+            SampleKey that = (SampleKey)o;
+
+            return hashCode == that.hashCode && Arrays.equals(locations, that.locations) &&
+                    Objects.equals(state, that.state) && Objects.equals(pool, that.pool);
+        }
+
+        @Override
+        public int hashCode() {
+
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a gzip-compressed pprof profile (github.com/google/pprof, proto/profile.proto). The protocol buffer is
+ * encoded directly, without a protobuf runtime and without building the profile in memory: the repeated fields of a
+ * protobuf message may appear in any order, so each string, function and location is written the first time it is
+ * seen, and each sample as soon as it is complete. Only the deduplication tables are kept, and they are proportional
+ * to the number of distinct strings, functions and frames.
+ *
+ * The profile has a single sample type, "threads" / "count".
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/18/17
+ */
+class PprofWriter {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    //
+    // Profile
+    //
+    static final int PROFILE_SAMPLE_TYPE = 1;
+    static final int PROFILE_SAMPLE = 2;
+    static final int PROFILE_LOCATION = 4;
+    static final int PROFILE_FUNCTION = 5;
+    static final int PROFILE_STRING_TABLE = 6;
+    static final int PROFILE_TIME_NANOS = 9;
+    static final int PROFILE_DURATION_NANOS = 10;
+    static final int PROFILE_PERIOD_TYPE = 11;
+    static final int PROFILE_PERIOD = 12;
+
+    //
+    // ValueType
+    //
+    static final int VALUE_TYPE_TYPE = 1;
+    static final int VALUE_TYPE_UNIT = 2;
+
+    //
+    // Sample
+    //
+    static final int SAMPLE_LOCATION_ID = 1;
+    static final int SAMPLE_VALUE = 2;
+    static final int SAMPLE_LABEL = 3;
+
+    //
+    // Label
+    //
+    static final int LABEL_KEY = 1;
+    static final int LABEL_STR = 2;
+    static final int LABEL_NUM = 3;
+    static final int LABEL_NUM_UNIT = 4;
+
+    //
+    // Location
+    //
+    static final int LOCATION_ID = 1;
+    static final int LOCATION_LINE = 4;
+
+    //
+    // Line
+    //
+    static final int LINE_FUNCTION_ID = 1;
+    static final int LINE_LINE = 2;
+
+    //
+    // Function
+    //
+    static final int FUNCTION_ID = 1;
+    static final int FUNCTION_NAME = 2;
+    static final int FUNCTION_SYSTEM_NAME = 3;
+    static final int FUNCTION_FILENAME = 4;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private GZIPOutputStream out;
+
+    private Map<String, Long> strings;
+    private Map<String, Long> functions;
+    private Map<String, Long> locations;
+
+    //
+    // reused for each top-level message, and for the messages nested in it
+    //
+    private Message message;
+    private Message nested;
+
+    private long sampleCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Writes the profile header. The stream is not closed by finish().
+     */
+    PprofWriter(OutputStream os) throws IOException {
+
+        this.out = new GZIPOutputStream(os, 64 * 1024);
+        this.strings = new HashMap<>();
+        this.functions = new HashMap<>();
+        this.locations = new HashMap<>();
+        this.message = new Message();
+        this.nested = new Message();
+
+        //
+        // the first string of the table must be the empty string
+        //
+
+        string("");
+
+        valueType(PROFILE_SAMPLE_TYPE, "threads", "count");
+        valueType(PROFILE_PERIOD_TYPE, "threads", "count");
+
+        message.clear();
+        message.varint(PROFILE_PERIOD, 1L);
+        message.writeTo(out);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the index of the string in the string table, writing the string if it was not seen before.
+     */
+    long string(String s) throws IOException {
+
+        Long index = strings.get(s);
+
+        if (index != null) {
+
+            return index;
+        }
+
+        index = (long)strings.size();
+        strings.put(s, index);
+
+        //
+        // written directly, since strings are also interned while a sample is being built in the message buffer
+        //
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+        Message.tag(out, PROFILE_STRING_TABLE, WIRE_LENGTH_DELIMITED);
+        Message.varint(out, bytes.length);
+        out.write(bytes);
+
+        return index;
+    }
+
+    /**
+     * @param frame a stack frame, as it appears in a thread dump after "at ": "A.b(A.java:12)", "A.c(Native Method)",
+     *              "A.d". The frame is the location; the method and the source file are the function.
+     *
+     * @return the id of the location, writing the location, and its function, if they were not seen before.
+     */
+    long location(String frame) throws IOException {
+
+        Long id = locations.get(frame);
+
+        if (id != null) {
+
+            return id;
+        }
+
+        String name = frame;
+        String file = "";
+        long line = 0L;
+
+        int i = frame.indexOf('(');
+
+        if (i != -1) {
+
+            name = frame.substring(0, i);
+            int j = frame.lastIndexOf(')');
+            String source = frame.substring(i + 1, j > i ? j : frame.length());
+            int k = source.lastIndexOf(':');
+
+            if (k == -1) {
+
+                file = source;
+            }
+            else {
+
+                file = source.substring(0, k);
+
+                try {
+
+                    line = Long.parseLong(source.substring(k + 1));
+                }
+                catch(NumberFormatException e) {
+
+                    file = source;
+                }
+            }
+        }
+
+        long functionId = function(name, file);
+
+        id = (long)locations.size() + 1;
+        locations.put(frame, id);
+
+        nested.clear();
+        nested.varint(LINE_FUNCTION_ID, functionId);
+        nested.varint(LINE_LINE, line);
+
+        message.clear();
+        message.varint(LOCATION_ID, id);
+        message.message(LOCATION_LINE, nested);
+        wrap(PROFILE_LOCATION);
+
+        return id;
+    }
+
+    /**
+     * Starts a sample. Must be followed by any number of label() invocations, and by endSample().
+     *
+     * @param locationIds the locations of the stack, top first.
+     */
+    void startSample(long[] locationIds, long value) {
+
+        message.clear();
+        message.packed(SAMPLE_LOCATION_ID, locationIds, nested);
+        message.packed(SAMPLE_VALUE, new long[] { value }, nested);
+    }
+
+    void label(String key, String value) throws IOException {
+
+        long k = string(key);
+        long v = string(value);
+
+        nested.clear();
+        nested.varint(LABEL_KEY, k);
+        nested.varint(LABEL_STR, v);
+        message.message(SAMPLE_LABEL, nested);
+    }
+
+    void label(String key, long value, String unit) throws IOException {
+
+        long k = string(key);
+        long u = string(unit);
+
+        nested.clear();
+        nested.varint(LABEL_KEY, k);
+        nested.varint(LABEL_NUM, value);
+        nested.varint(LABEL_NUM_UNIT, u);
+        message.message(SAMPLE_LABEL, nested);
+    }
+
+    void endSample() throws IOException {
+
+        wrap(PROFILE_SAMPLE);
+        sampleCount ++;
+    }
+
+    /**
+     * Writes the time of the profile, and completes the gzip stream. The underlying stream is flushed, not closed.
+     */
+    void finish(long timeNanos, long durationNanos) throws IOException {
+
+        message.clear();
+        message.varint(PROFILE_TIME_NANOS, timeNanos);
+        message.varint(PROFILE_DURATION_NANOS, durationNanos);
+        message.writeTo(out);
+
+        out.finish();
+        out.flush();
+    }
+
+    long getSampleCount() {
+
+        return sampleCount;
+    }
+
+    int getStringCount() {
+
+        return strings.size();
+    }
+
+    int getFunctionCount() {
+
+        return functions.size();
+    }
+
+    int getLocationCount() {
+
+        return locations.size();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private long function(String name, String file) throws IOException {
+
+        String key = name + '\u0000' + file;
+
+        Long id = functions.get(key);
+
+        if (id != null) {
+
+            return id;
+        }
+
+        long n = string(name);
+        long f = string(file);
+
+        id = (long)functions.size() + 1;
+        functions.put(key, id);
+
+        message.clear();
+        message.varint(FUNCTION_ID, id);
+        message.varint(FUNCTION_NAME, n);
+        message.varint(FUNCTION_SYSTEM_NAME, n);
+        message.varint(FUNCTION_FILENAME, f);
+        wrap(PROFILE_FUNCTION);
+
+        return id;
+    }
+
+    private void valueType(int field, String type, String unit) throws IOException {
+
+        long t = string(type);
+        long u = string(unit);
+
+        nested.clear();
+        nested.varint(VALUE_TYPE_TYPE, t);
+        nested.varint(VALUE_TYPE_UNIT, u);
+
+        message.clear();
+        message.message(field, nested);
+        message.writeTo(out);
+    }
+
+    /**
+     * Writes the current message as the given field of the profile.
+     */
+    private void wrap(int field) throws IOException {
+
+        Message.tag(out, field, WIRE_LENGTH_DELIMITED);
+        Message.varint(out, message.size);
+        message.writeTo(out);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * A growable buffer a protocol buffer message is encoded into.
+     */
+    static final class Message {
+
+        static void tag(OutputStream os, int field, int wireType) throws IOException {
+
+            varint(os, (field << 3) | wireType);
+        }
+
+        static void varint(OutputStream os, long v) throws IOException {
+
+            while((v & ~0x7FL) != 0) {
+
+                os.write((int)((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+
+            os.write((int)v);
+        }
+
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        void clear() {
+
+            size = 0;
+        }
+
+        void varint(int field, long v) {
+
+            rawVarint((field << 3) | WIRE_VARINT);
+            rawVarint(v);
+        }
+
+        void bytes(int field, byte[] b, int offset, int length) {
+
+            rawVarint((field << 3) | WIRE_LENGTH_DELIMITED);
+            rawVarint(length);
+            ensureCapacity(length);
+            System.arraycopy(b, offset, buffer, size, length);
+            size += length;
+        }
+
+        void message(int field, Message m) {
+
+            bytes(field, m.buffer, 0, m.size);
+        }
+
+        /**
+         * @param scratch used to encode the values; cleared.
+         */
+        void packed(int field, long[] values, Message scratch) {
+
+            scratch.clear();
+
+            for(long v: values) {
+
+                scratch.rawVarint(v);
+            }
+
+            message(field, scratch);
+        }
+
+        void writeTo(OutputStream os) throws IOException {
+
+            os.write(buffer, 0, size);
+        }
+
+        private void rawVarint(long v) {
+
+            ensureCapacity(10);
+
+            while((v & ~0x7FL) != 0) {
+
+                buffer[size ++] = (byte)((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+
+            buffer[size ++] = (byte)v;
+        }
+
+        private void ensureCapacity(int n) {
+
+            if (size + n > buffer.length) {
+
+                buffer = Arrays.copyOf(buffer, Math.max(size + n, buffer.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.Procedure;
+
+/**
+ * A procedure that can process a thread dump one stack trace at a time, so the thread dump does not have to be
+ * assembled in memory. JSON thread dumps, which may have millions of virtual threads, are delivered this way. The
+ * output must be identical to the one produced by processing the assembled thread dump.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/27/17
+ */
+public interface StreamingProcedure extends Procedure {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Starts a thread dump. Its stack traces follow, through processStackTrace(), then endThreadDump() is invoked.
+     *
+     * @param threadDump the thread dump, without stack traces.
+     */
+    void beginThreadDump(JavaThreadDumpEvent threadDump) throws EventProcessingException;
+
+    /**
+     * @param stackTrace a stack trace of the current thread dump. The procedure must not keep a reference to it.
+     */
+    void processStackTrace(StackTraceEvent stackTrace) throws EventProcessingException;
+
+    void endThreadDump() throws EventProcessingException;
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+/**
+ * The threads stuck on the same work: a thread whose stack is identical in at least --dumps consecutive thread dumps
+ * (3 by default) is reported in each thread dump in which it is still stuck, with the time it was first seen with that
+ * stack and for how long:
+ *
+ *     12/24/17 10:01:30, default task-12, 4 thread dump(s), since 12/24/17 10:00:00 (90 s), com.example.Dao.query
+ *
+ * With --entry=<frame>, only the part of the stack above the outermost frame that starts with the given class or
+ * method name (org.apache.catalina.core.ApplicationFilterChain.doFilter, for example) is compared, so the frames of
+ * the container do not matter, and the threads that do not run through the entry frame, such as idle pool threads,
+ * are not tracked. The threads can also be filtered by state and by name, see ThreadFilter.
+ *
+ * The threads are followed by tid. The stacks are compared by fingerprint, and the state kept for each thread is a
+ * fingerprint, a counter and a timestamp, for the threads of the last thread dump only, so the procedure can run in
+ * --follow mode against JVMs with many threads. A change of PID (a JVM restart) starts over.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/24/17
+ */
+public class StuckThreads extends BatchProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "stuck-threads";
+
+    public static final String ENTRY_OPTION = "--entry";
+    public static final String DUMPS_OPTION = "--dumps";
+
+    public static final int DEFAULT_DUMPS = 3;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ThreadFilter filter;
+
+    //
+    // null means the whole stack is compared
+    //
+    private String entry;
+
+    //
+    // "at " + entry, what is looked for in the stack
+    //
+    private String entryFrame;
+
+    private int dumps;
+
+    //
+    // the threads of the previous thread dump, and the threads of the current one; swapped after each thread dump
+    //
+    private Threads previous;
+    private Threads current;
+    private boolean hasPrevious;
+
+    private long dumpCount;
+    private long stuck;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public StuckThreads() {
+
+        this.filter = new ThreadFilter();
+        this.dumps = DEFAULT_DUMPS;
+        this.previous = new Threads();
+        this.current = new Threads();
+    }
+
+    public StuckThreads(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, this::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            process(d, output);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        output.append(dumpCount).append(" thread dump(s), ").append(stuck).append(" stuck thread(s)")
+                .append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the entry frame, or null if the whole stack is compared.
+     */
+    public String getEntry() {
+
+        return entry;
+    }
+
+    /**
+     * @exception IllegalArgumentException on empty frame.
+     */
+    public void setEntry(String frame) {
+
+        if (frame.trim().isEmpty()) {
+
+            throw new IllegalArgumentException("invalid " + ENTRY_OPTION + " value: \"" + frame + "\"");
+        }
+
+        this.entry = frame.trim();
+        this.entryFrame = "at " + entry;
+    }
+
+    /**
+     * @return the number of consecutive thread dumps with the same stack after which a thread is stuck.
+     */
+    public int getDumps() {
+
+        return dumps;
+    }
+
+    /**
+     * @return the number of times a thread was found stuck so far. A thread that stays stuck is counted once.
+     */
+    public long getStuckCount() {
+
+        return stuck;
+    }
+
+    @Override
+    public String toString() {
+
+        return "StuckThreads[" + dumpCount + " thread dump(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    ThreadFilter getFilter() {
+
+        return filter;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean consume(String arg) {
+
+        if (filter.consume(arg)) {
+
+            // applied
+        }
+        else if (arg.startsWith(ENTRY_OPTION + "=")) {
+
+            setEntry(arg.substring(ENTRY_OPTION.length() + 1));
+        }
+        else if (arg.startsWith(DUMPS_OPTION + "=")) {
+
+            dumps = CommandLineOptions.positiveInt(arg, DUMPS_OPTION);
+        }
+        else {
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private void process(JavaThreadDumpEvent dump, StringBuilder output) {
+
+        dumpCount ++;
+
+        Long t = dump.getTime();
+        long time = t == null ? NO_TIME : t;
+
+        if (hasPrevious && !Objects.equals(previous.pid, dump.getPid())) {
+
+            hasPrevious = false;
+        }
+
+        List<StackTraceEvent> events = dump.getStackTraceEvents();
+        current.reset(events.size(), dump.getTime(), dump.getPid());
+
+        for(StackTraceEvent st: events) {
+
+            Long tid = st.getTidAsLong();
+
+            if (tid == null || !filter.selects(st)) {
+
+                continue;
+            }
+
+            String stack = st.getStack();
+            long fingerprint;
+
+            if (entry == null) {
+
+                fingerprint = st.getStackFingerprint();
+            }
+            else {
+
+                int end = entryEnd(stack);
+
+                if (end == -1) {
+
+                    continue;
+                }
+
+                fingerprint = StackTraceEvent.fingerprint(stack, 0, end);
+            }
+
+            String name = st.getThreadName();
+            int count = 1;
+            long since = time;
+
+            int j = hasPrevious ? previous.indexOf(tid) : -1;
+
+            if (j != -1 && previous.fingerprints[j] == fingerprint && Objects.equals(previous.names[j], name)) {
+
+                count = previous.counts[j] + 1;
+                since = previous.since[j];
+            }
+
+            if (!current.add(tid, name, fingerprint, count, since)) {
+
+                continue;
+            }
+
+            if (count < dumps) {
+
+                continue;
+            }
+
+            if (count == dumps) {
+
+                stuck ++;
+            }
+
+            report(time, name, count, since, stack, output);
+        }
+
+        Threads ts = previous;
+        previous = current;
+        current = ts;
+        hasPrevious = true;
+    }
+
+    /**
+     * @return the end of the line of the outermost entry frame, which is the end of the part of the stack that is
+     * compared, or -1 if the stack does not contain the entry frame.
+     */
+    private int entryEnd(String stack) {
+
+        if (stack == null) {
+
+            return -1;
+        }
+
+        int i = stack.lastIndexOf(entryFrame);
+
+        if (i == -1) {
+
+            return -1;
+        }
+
+        int end = stack.indexOf('\n', i);
+        return end == -1 ? stack.length() : end;
+    }
+
+    private void report(long time, String name, int count, long since, String stack, StringBuilder output) {
+
+        output.append(time == NO_TIME ? "-" : formatTimestamp(time)).append(", ").append(name).append(", ");
+        output.append(count).append(" thread dump(s), since ");
+
+        if (since == NO_TIME) {
+
+            output.append("-");
+        }
+        else {
+
+            output.append(getTimestampFormat().format(since));
+
+            if (time != NO_TIME) {
+
+                output.append(" (").append((time - since) / 1000L).append(" s)");
+            }
+        }
+
+        String top = stack == null ? null : MethodTable.topMethod(stack);
+        output.append(", ").append(top == null ? "-" : top).append(LINE_SEPARATOR);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The thread index, with the number of consecutive thread dumps each thread has had its stack in, and since when.
+     */
+    private static final class Threads extends ThreadIndex {
+
+        private int[] counts;
+        private long[] since;
+
+        @Override
+        protected void allocate(int capacity) {
+
+            super.allocate(capacity);
+            counts = new int[capacity];
+            since = new long[capacity];
+        }
+
+        /**
+         * @return false if the tid is already present in the thread dump, in which case the thread is ignored.
+         */
+        boolean add(long tid, String name, long fingerprint, int count, long since) {
+
+            int i = add(tid, name, fingerprint);
+
+            if (i == -1) {
+
+                return false;
+            }
+
+            counts[i] = count;
+            this.since[i] = since;
+            return true;
+        }
+    }
+}
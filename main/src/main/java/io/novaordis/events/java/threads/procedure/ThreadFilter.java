@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+/**
+ * The thread selection options shared by the procedures that aggregate stacks: --state=<state>,... and
+ * --thread-name=<regex>. The states are ThreadState names, case insensitive, or the java.lang.Thread.State names
+ * BLOCKED (WAITING_FOR_MONITOR_ENTRY) and WAITING (OBJECT_WAIT, WAITING_ON_CONDITION, SLEEPING). The regular
+ * expression may match anywhere in the thread name.
+ *
+ * Once configured, the instance is only read, so it can be used concurrently.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/17/17
+ */
+class ThreadFilter {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String STATE_OPTION = "--state";
+
+    public static final String THREAD_NAME_OPTION = "--thread-name";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    //
+    // null means all states
+    //
+    private Set<ThreadState> states;
+
+    //
+    // null means all threads
+    //
+    private Pattern threadName;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return true if the argument is one of the filter options, and was applied.
+     *
+     * @exception IllegalArgumentException on invalid option values.
+     */
+    public boolean consume(String arg) {
+
+        if (arg.startsWith(STATE_OPTION + "=")) {
+
+            setStates(arg.substring(STATE_OPTION.length() + 1));
+            return true;
+        }
+
+        if (arg.startsWith(THREAD_NAME_OPTION + "=")) {
+
+            setThreadName(arg.substring(THREAD_NAME_OPTION.length() + 1));
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param s a comma-separated list of state names, case insensitive.
+     *
+     * @exception IllegalArgumentException on unknown states.
+     */
+    public void setStates(String s) {
+
+        Set<ThreadState> set = EnumSet.noneOf(ThreadState.class);
+
+        for(String tok: s.split(",")) {
+
+            String name = tok.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+
+            if ("BLOCKED".equals(name)) {
+
+                set.add(ThreadState.WAITING_FOR_MONITOR_ENTRY);
+            }
+            else if ("WAITING".equals(name)) {
+
+                set.add(ThreadState.OBJECT_WAIT);
+                set.add(ThreadState.WAITING_ON_CONDITION);
+                set.add(ThreadState.SLEEPING);
+            }
+            else {
+
+                try {
+
+                    set.add(ThreadState.valueOf(name));
+                }
+                catch(IllegalArgumentException e) {
+
+                    throw new IllegalArgumentException(
+                            "unknown thread state \"" + tok.trim() + "\", expecting BLOCKED, WAITING or one of " +
+                                    Arrays.toString(ThreadState.values()));
+                }
+            }
+        }
+
+        this.states = set;
+    }
+
+    /**
+     * @return the states the threads are filtered by, or null if all states are selected.
+     */
+    public Set<ThreadState> getStates() {
+
+        return states;
+    }
+
+    /**
+     * @exception IllegalArgumentException on invalid regular expression.
+     */
+    public void setThreadName(String regex) {
+
+        this.threadName = Pattern.compile(regex);
+    }
+
+    /**
+     * @return the pattern the thread names are filtered by, or null if all names are selected.
+     */
+    public Pattern getThreadName() {
+
+        return threadName;
+    }
+
+    public boolean selects(StackTraceEvent st) {
+
+        if (states != null) {
+
+            ThreadState s;
+
+            try {
+
+                s = st.getThreadState();
+            }
+            catch(IllegalStateException e) {
+
+                s = null;
+            }
+
+            if (s == null || !states.contains(s)) {
+
+                return false;
+            }
+        }
+
+        if (threadName != null) {
+
+            String name = st.getThreadName();
+
+            if (name == null || !threadName.matcher(name).find()) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
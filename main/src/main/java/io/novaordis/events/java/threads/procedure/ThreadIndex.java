@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+
+/**
+ * The threads of a thread dump, indexed by tid: tid, name and stack fingerprint in parallel arrays, with a LongIntMap
+ * from tid to position. It is filled for a thread dump, and reset for the next one, so the procedures that compare
+ * consecutive thread dumps keep two instances and swap them; the arrays are kept, and only grow.
+ *
+ * The procedures that need more per-thread state extend it with their own parallel arrays, by overriding allocate()
+ * and clear().
+ *
+ * The implementation is NOT thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/26/17
+ */
+class ThreadIndex {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final int MIN_CAPACITY = 16;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final LongIntMap positions;
+
+    //
+    // null until the first reset()
+    //
+    long[] tids;
+    String[] names;
+    long[] fingerprints;
+
+    int size;
+
+    Long time;
+    Integer pid;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    ThreadIndex() {
+
+        this.positions = new LongIntMap(64);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "ThreadIndex[" + size + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Empties the index, and makes room for the given number of threads.
+     */
+    void reset(int capacity, Long time, Integer pid) {
+
+        if (tids == null || tids.length < capacity) {
+
+            allocate(Math.max(MIN_CAPACITY, capacity));
+        }
+        else {
+
+            clear(size);
+        }
+
+        positions.clear();
+        size = 0;
+        this.time = time;
+        this.pid = pid;
+    }
+
+    /**
+     * @return the position of the new thread, or -1 if the tid is already present in the thread dump, in which case
+     * the thread is ignored.
+     */
+    int add(long tid, String name, long fingerprint) {
+
+        if (positions.get(tid, -1) != -1) {
+
+            return -1;
+        }
+
+        positions.put(tid, size);
+        tids[size] = tid;
+        names[size] = name;
+        fingerprints[size] = fingerprint;
+        return size ++;
+    }
+
+    /**
+     * @return the position of the thread, or -1 if the tid is not in the index.
+     */
+    int indexOf(long tid) {
+
+        return positions.get(tid, -1);
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Replaces the arrays with empty ones of the given length. Subclasses allocate their own arrays too.
+     */
+    protected void allocate(int capacity) {
+
+        tids = new long[capacity];
+        names = new String[capacity];
+        fingerprints = new long[capacity];
+    }
+
+    /**
+     * Releases the references held by the first size positions, so the arrays can be reused. Subclasses clear their own
+     * arrays too, if needed.
+     */
+    protected void clear(int size) {
+
+        Arrays.fill(names, 0, size, null);
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.java.threads.CommandLineOptions;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+/**
+ * Writes the state of each thread over time in the Trace Event format (JSON array), which can be loaded in the Chrome
+ * trace viewer (chrome://tracing) or in Perfetto (ui.perfetto.dev):
+ *
+ *     td timeline:threads.json jstack.out
+ *
+ * A thread is followed across thread dumps by PID, name and tid. Its successive observations with the same state and
+ * the same top method are coalesced into a single span ("X" event), named after the top method, with the state as
+ * category. A span lasts until the thread is seen in a different state or with a different top method, or until the
+ * first thread dump the thread is missing from. At the end of the stream, the spans still open are closed one
+ * interval after the last thread dump. Each thread has its own track, labeled with the thread name, and each JVM its
+ * own process.
+ *
+ * The spans are written as soon as they are closed, and a thread is forgotten once it has been missing from two
+ * successive thread dumps, so the memory is proportional to the number of live threads, and not to the number of
+ * thread dumps or to the number of threads ever started. A thread that comes back after it was forgotten gets a new
+ * track. Since a thread that does not change state produces a single span, a long series of
+ * thread dumps of a mostly idle JVM yields a small trace. The thread dumps must be delivered in time order.
+ *
+ * The threads can be filtered by state and by name, see ThreadFilter.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/19/17
+ */
+public class Timeline extends BatchProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(Timeline.class);
+
+    public static final String LABEL = "timeline";
+
+    public static final String UNKNOWN_STATE = "UNKNOWN";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    static void appendJsonString(StringBuilder sb, String s) {
+
+        sb.append('"');
+
+        for(int i = 0; i < s.length(); i ++) {
+
+            char c = s.charAt(i);
+
+            if (c == '"' || c == '\\') {
+
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+
+                sb.append(String.format("\\u%04x", (int)c));
+            }
+            else {
+
+                sb.append(c);
+            }
+        }
+
+        sb.append('"');
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ThreadFilter filter;
+
+    private Map<String, Track> tracks;
+
+    //
+    // the tracks with an open span, in the order in which the spans were opened
+    //
+    private List<Track> open;
+
+    //
+    // the tracks whose thread was missing from the last thread dump; they are forgotten if the thread is also missing
+    // from the next one
+    //
+    private List<Track> missing;
+
+    private int trackCount;
+
+    private Set<Integer> processes;
+
+    private long generation;
+
+    //
+    // microseconds
+    //
+    private long lastTime;
+    private long lastInterval;
+
+    private long events;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Timeline() {
+
+        this.filter = new ThreadFilter();
+        this.tracks = new HashMap<>();
+        this.open = new ArrayList<>();
+        this.missing = new ArrayList<>();
+        this.processes = new HashSet<>();
+    }
+
+    public Timeline(int from, List<String> arguments) {
+
+        this();
+        CommandLineOptions.consume(from, arguments, filter::consume);
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            process(d, output);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        long end = lastTime + lastInterval;
+
+        for(Track t: open) {
+
+            close(t, end, output);
+        }
+
+        open.clear();
+
+        output.append(events == 0 ? "[" : LINE_SEPARATOR).append("]").append(LINE_SEPARATOR);
+
+        log.debug(this + " wrote " + events + " trace event(s) for " + trackCount + " thread(s)");
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "Timeline[" + tracks.size() + " thread(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    ThreadFilter getFilter() {
+
+        return filter;
+    }
+
+    /**
+     * @return the number of threads currently remembered.
+     */
+    int getThreadCount() {
+
+        return tracks.size();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void process(JavaThreadDumpEvent dump, StringBuilder output) {
+
+        long time = dump.getTime() == null ? 0L : dump.getTime() * 1000L;
+
+        if (generation > 0) {
+
+            lastInterval = Math.max(0L, time - lastTime);
+        }
+
+        lastTime = time;
+        generation ++;
+
+        Integer pid = dump.getPid();
+        int p = pid == null ? 0 : pid;
+
+        if (processes.add(p)) {
+
+            metadata("process_name", p, -1, pid == null ? "JVM" : "JVM " + pid, output);
+        }
+
+        for(StackTraceEvent st: dump.getStackTraceEvents()) {
+
+            if (!filter.selects(st)) {
+
+                continue;
+            }
+
+            String name = st.getThreadName() == null ? "" : st.getThreadName();
+            String key = p + "\u0000" + name + "\u0000" + st.getTid();
+
+            Track t = tracks.get(key);
+
+            if (t == null) {
+
+                t = new Track(key, p, ++ trackCount);
+                tracks.put(key, t);
+                metadata("thread_name", p, t.tid, name, output);
+            }
+            else if (t.seen == generation) {
+
+                //
+                // a second thread with the same name and tid in the same thread dump, ignored
+                //
+
+                continue;
+            }
+
+            t.seen = generation;
+
+            String state = toState(st);
+            String stack = st.getStack();
+            String method = stack == null ? null : MethodTable.topMethod(stack);
+
+            if (t.open) {
+
+                if (state.equals(t.state) && Objects.equals(method, t.method)) {
+
+                    continue;
+                }
+
+                close(t, time, output);
+            }
+            else {
+
+                open.add(t);
+            }
+
+            t.open = true;
+            t.start = time;
+            t.state = state;
+            t.method = method;
+        }
+
+        //
+        // forget the threads missing from the last two thread dumps, and close the spans of the threads missing from
+        // this one
+        //
+
+        for(Track t: missing) {
+
+            if (t.seen != generation) {
+
+                tracks.remove(t.key);
+            }
+        }
+
+        missing.clear();
+
+        int kept = 0;
+
+        for(Track t: open) {
+
+            if (t.seen == generation) {
+
+                open.set(kept ++, t);
+            }
+            else {
+
+                close(t, time, output);
+                missing.add(t);
+            }
+        }
+
+        open.subList(kept, open.size()).clear();
+    }
+
+    private void close(Track t, long end, StringBuilder output) {
+
+        startEvent(output);
+
+        output.append("{\"name\":");
+        appendJsonString(output, t.method == null ? t.state : t.method);
+        output.append(",\"cat\":");
+        appendJsonString(output, t.state);
+        output.append(",\"ph\":\"X\",\"pid\":").append(t.pid).append(",\"tid\":").append(t.tid);
+        output.append(",\"ts\":").append(t.start).append(",\"dur\":").append(Math.max(0L, end - t.start));
+        output.append(",\"args\":{\"state\":");
+        appendJsonString(output, t.state);
+
+        if (t.method != null) {
+
+            output.append(",\"method\":");
+            appendJsonString(output, t.method);
+        }
+
+        output.append("}}");
+
+        t.open = false;
+        t.state = null;
+        t.method = null;
+    }
+
+    /**
+     * @param tid -1 for process metadata.
+     */
+    private void metadata(String name, int pid, int tid, String value, StringBuilder output) {
+
+        startEvent(output);
+
+        output.append("{\"name\":\"").append(name).append("\",\"ph\":\"M\",\"pid\":").append(pid);
+
+        if (tid != -1) {
+
+            output.append(",\"tid\":").append(tid);
+        }
+
+        output.append(",\"args\":{\"name\":");
+        appendJsonString(output, value);
+        output.append("}}");
+    }
+
+    private void startEvent(StringBuilder output) {
+
+        output.append(events == 0 ? "[" : ",").append(LINE_SEPARATOR);
+        events ++;
+    }
+
+    private static String toState(StackTraceEvent st) {
+
+        try {
+
+            ThreadState s = st.getThreadState();
+
+            return s == null ? UNKNOWN_STATE : s.toString();
+        }
+        catch(IllegalStateException e) {
+
+            return UNKNOWN_STATE;
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * A thread, and its open span, if any.
+     */
+    private static final class Track {
+
+        private final String key;
+        private final int pid;
+        private final int tid;
+
+        //
+        // the last thread dump the thread was seen in
+        //
+        private long seen;
+
+        private boolean open;
+        private long start;
+        private String state;
+        private String method;
+
+        Track(String key, int pid, int tid) {
+
+            this.key = key;
+            this.pid = pid;
+            this.tid = tid;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+/**
+ * The totals across all thread dumps, written at the end of the stream: the number of thread dumps, the number of stack
+ * traces, and the number of distinct thread names.
+ *
+ *     3 thread dump(s), 312 stack trace(s), 105 thread name(s)
+ *
+ * The totals are a mergeable aggregate, so in staged mode they are built in parallel by the parser threads.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/5/17
+ */
+public class Totals extends BatchProcedureBase implements AggregatingProcedure<Totals.Summary> {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String LABEL = "totals";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    //
+    // the aggregate built when the thread dumps are delivered to process(), and not aggregated in parallel
+    //
+    private Summary summary;
+
+    private boolean emitted;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Totals() {
+
+        this.summary = newPartial();
+    }
+
+    // BatchProcedureBase overrides ------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(List<JavaThreadDumpEvent> dumps, StringBuilder output) {
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            accumulate(summary, d);
+        }
+    }
+
+    @Override
+    protected void endOfStream(StringBuilder output) {
+
+        if (emitted) {
+
+            //
+            // the output was already produced from the parallel aggregate
+            //
+
+            return;
+        }
+
+        format(summary, output);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(LABEL);
+    }
+
+    // AggregatingProcedure implementation -----------------------------------------------------------------------------
+
+    @Override
+    public Summary newPartial() {
+
+        return new Summary();
+    }
+
+    @Override
+    public void accumulate(Summary partial, JavaThreadDumpEvent dump) {
+
+        partial.dumps ++;
+
+        for(StackTraceEvent st: dump.getStackTraceEvents()) {
+
+            partial.stackTraces ++;
+            partial.names.add(st.getThreadName());
+        }
+    }
+
+    @Override
+    public void emit(Summary aggregate) {
+
+        StringBuilder output = new StringBuilder();
+        format(aggregate, output);
+        print(output);
+        emitted = true;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static void format(Summary s, StringBuilder output) {
+
+        output.append(s.dumps).append(" thread dump(s), ").append(s.stackTraces).append(" stack trace(s), ")
+                .append(s.names.size()).append(" thread name(s)").append(LINE_SEPARATOR);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The thread dump and stack trace counts, and the set of thread names, of a range of thread dumps.
+     */
+    public static class Summary implements PartialAggregate<Summary> {
+
+        private long dumps;
+        private long stackTraces;
+        private final Set<String> names;
+
+        Summary() {
+
+            this.names = new HashSet<>();
+        }
+
+        @Override
+        public void merge(Summary next) {
+
+            dumps += next.dumps;
+            stackTraces += next.stackTraces;
+            names.addAll(next.names);
+        }
+
+        public long getDumps() {
+
+            return dumps;
+        }
+
+        public long getStackTraces() {
+
+            return stackTraces;
+        }
+
+        public Set<String> getNames() {
+
+            return names;
+        }
+    }
+}
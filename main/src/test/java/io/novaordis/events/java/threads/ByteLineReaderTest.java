@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/14/17
+ */
+public class ByteLineReaderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void isAsciiCompatible() throws Exception {
+
+        assertTrue(ByteLineReader.isAsciiCompatible(StandardCharsets.UTF_8));
+        assertTrue(ByteLineReader.isAsciiCompatible(StandardCharsets.ISO_8859_1));
+        assertFalse(ByteLineReader.isAsciiCompatible(StandardCharsets.UTF_16));
+    }
+
+    @Test
+    public void readLine_SameLinesAsBufferedReader() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        byte[] content = Files.readAllBytes(f.toPath());
+
+        assertSameLines(content, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void readLine_LineTerminatorsAndNonAscii() throws Exception {
+
+        String s = "a\r\nb\rc\n\n\r\r\n\"th\u00e9read-\u4e2d\" #1 prio=5\n\u00ff\nlast";
+
+        assertSameLines(s.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        assertSameLines(s.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1);
+        assertSameLines(s.getBytes(StandardCharsets.UTF_16), StandardCharsets.UTF_16);
+        assertSameLines("x\r".getBytes(), StandardCharsets.UTF_8);
+        assertSameLines(new byte[0], StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void read_Characters() throws Exception {
+
+        ByteLineReader r = new ByteLineReader(new ByteArrayInputStream("abc\r\nde\nf".getBytes()));
+
+        char[] c = new char[2];
+
+        assertEquals(2, r.read(c, 0, 2));
+        assertEquals('a', c[0]);
+        assertEquals('b', c[1]);
+
+        //
+        // the rest of the line
+        //
+
+        assertEquals("c", r.readLine());
+
+        assertEquals('d', r.read());
+        assertEquals("e", r.readLine());
+        assertEquals(2, r.read(c, 0, 2));
+        assertEquals('f', c[0]);
+        assertEquals('\n', c[1]);
+        assertEquals(-1, r.read());
+        assertNull(r.readLine());
+
+        r.close();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Compares with BufferedReader for several buffer sizes, including ones that are smaller than a line.
+     */
+    private static void assertSameLines(byte[] content, Charset charset) throws Exception {
+
+        for(int bufferSize: new int[] { 1, 7, 64, ByteLineReader.INITIAL_BUFFER_SIZE }) {
+
+            BufferedReader expected =
+                    new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), charset));
+
+            ByteLineReader r = new ByteLineReader(new ByteArrayInputStream(content), charset, bufferSize);
+
+            String line;
+
+            while((line = expected.readLine()) != null) {
+
+                assertEquals(line, r.readLine());
+            }
+
+            assertNull(r.readLine());
+
+            r.close();
+            expected.close();
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/8/17
+ */
+public class CollectorDirectoryWatcherTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final long POLL_INTERVAL_MS = 10L;
+
+    private static final long TIMEOUT_MS = 5000L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private File directory;
+
+    private List<String> lines;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        File sample =
+                new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(sample.isFile());
+
+        lines = Files.readAllLines(sample.toPath());
+
+        directory = new File(System.getProperty("test.scratch.directory"), "CollectorDirectoryWatcherTest");
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+    }
+
+    @After
+    public void after() throws Exception {
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+
+            for(File f: files) {
+
+                assertTrue(f.delete());
+            }
+        }
+
+        assertTrue(directory.delete());
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getPid() throws Exception {
+
+        assertEquals(12345, CollectorDirectoryWatcher.getPid("17.12.08-10.00-12345-jstack.out").intValue());
+        assertEquals(12345, CollectorDirectoryWatcher.getPid("12345-jstack.out").intValue());
+        assertNull(CollectorDirectoryWatcher.getPid("17.12.08-10.00-12345-top.out"));
+        assertNull(CollectorDirectoryWatcher.getPid("17.12.08-disk-space.out"));
+        assertNull(CollectorDirectoryWatcher.getPid("something-jstack.out"));
+    }
+
+    @Test
+    public void ingest_ThreadDumpsFromSeveralFilesMergedInTimeOrder() throws Exception {
+
+        //
+        // the first and the third thread dumps in one file, the second in another
+        //
+
+        write("17.08.13-17.40-1111-jstack.out", 1, 97, false);
+        write("17.08.13-17.40-1111-jstack.out", 185, 269, true);
+        write("17.08.13-17.42-2222-jstack.out", 98, 184, false);
+        write("17.08.13-17.40-1111-top.out", 1, 10, false);
+
+        MockProcedure mp = new MockProcedure();
+
+        CollectorDirectoryWatcher w = new CollectorDirectoryWatcher(directory, mp, POLL_INTERVAL_MS);
+
+        w.discover();
+
+        assertEquals(2, w.getFiles().size());
+
+        w.ingest();
+
+        List<Event> events = mp.getEvents();
+        assertEquals(3, events.size());
+
+        JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
+        assertEquals(1111, e.getPid().intValue());
+        assertEquals("17.08.13-17.40-1111-jstack.out", e.getSource());
+        assertEquals(3L, e.getLineNumber().longValue());
+
+        e = (JavaThreadDumpEvent)events.get(1);
+        assertEquals(2222, e.getPid().intValue());
+        assertEquals(2L, e.getLineNumber().longValue());
+
+        e = (JavaThreadDumpEvent)events.get(2);
+        assertEquals(1111, e.getPid().intValue());
+
+        assertTrue(((JavaThreadDumpEvent)events.get(0)).getTime() < ((JavaThreadDumpEvent)events.get(1)).getTime());
+        assertTrue(((JavaThreadDumpEvent)events.get(1)).getTime() < ((JavaThreadDumpEvent)events.get(2)).getTime());
+
+        assertEquals(3L, w.getDumpsProcessed());
+    }
+
+    @Test
+    public void run_NewFilesAndNewThreadDumpsAreIngestedAsTheyAppear() throws Exception {
+
+        write("17.08.13-17.40-1111-jstack.out", 1, 97, false);
+
+        MockProcedure mp = new MockProcedure();
+
+        CollectorDirectoryWatcher w = new CollectorDirectoryWatcher(directory, mp, POLL_INTERVAL_MS);
+
+        Thread t = new Thread(() -> {
+
+            try {
+
+                w.run();
+            }
+            catch(Exception e) {
+
+                throw new IllegalStateException(e);
+            }
+        }, "watcher");
+
+        t.setDaemon(true);
+        t.start();
+
+        waitFor(() -> mp.getEvents().size() == 1);
+
+        //
+        // the JVM was restarted
+        //
+
+        write("17.08.13-17.42-2222-jstack.out", 98, 184, false);
+
+        waitFor(() -> mp.getEvents().size() == 2);
+
+        write("17.08.13-17.42-2222-jstack.out", 185, 269, true);
+
+        waitFor(() -> mp.getEvents().size() == 3);
+
+        w.stop();
+        t.join(TIMEOUT_MS);
+
+        assertTrue(mp.isEndOfStream());
+        assertEquals(1111, ((JavaThreadDumpEvent)mp.getEvents().get(0)).getPid().intValue());
+        assertEquals(2222, ((JavaThreadDumpEvent)mp.getEvents().get(1)).getPid().intValue());
+        assertEquals(2222, ((JavaThreadDumpEvent)mp.getEvents().get(2)).getPid().intValue());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Writes the sample lines between from and to, inclusive (1-based).
+     */
+    private void write(String fileName, int from, int to, boolean append) throws Exception {
+
+        try(OutputStream os = new FileOutputStream(new File(directory, fileName), append)) {
+
+            for(int i = from; i <= to; i ++) {
+
+                os.write((lines.get(i - 1) + "\n").getBytes());
+            }
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws Exception {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while(!condition.getAsBoolean()) {
+
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
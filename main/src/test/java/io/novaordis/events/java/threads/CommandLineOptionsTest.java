@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/16/17
+ */
+public class CommandLineOptionsTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void consume() throws Exception {
+
+        List<String> arguments = new ArrayList<>(Arrays.asList("hot-methods", "--a", "--b", "file.txt", "--a"));
+
+        CommandLineOptions.consume(1, arguments, arg -> arg.startsWith("--"));
+
+        assertEquals(Arrays.asList("hot-methods", "file.txt", "--a"), arguments);
+    }
+
+    @Test
+    public void consume_NoArgumentsLeft() throws Exception {
+
+        List<String> arguments = new ArrayList<>(Arrays.asList("hot-methods"));
+
+        CommandLineOptions.consume(1, arguments, arg -> true);
+
+        assertEquals(Arrays.asList("hot-methods"), arguments);
+    }
+
+    @Test
+    public void positiveInt() throws Exception {
+
+        assertEquals(5, CommandLineOptions.positiveInt("--top=5", "--top"));
+    }
+
+    @Test
+    public void positiveInt_Invalid() throws Exception {
+
+        for(String arg: Arrays.asList("--top=0", "--top=-1", "--top=x", "--top=")) {
+
+            try {
+
+                CommandLineOptions.positiveInt(arg, "--top");
+                fail("should have thrown exception");
+            }
+            catch(IllegalArgumentException e) {
+
+                assertEquals("invalid --top value: " + arg.substring(6), e.getMessage());
+            }
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
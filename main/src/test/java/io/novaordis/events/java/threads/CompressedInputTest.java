@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/6/17
+ */
+public class CompressedInputTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // detect() --------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void detect() throws Exception {
+
+        assertEquals(CompressedInput.Format.NONE, detect(new byte[0]));
+        assertEquals(CompressedInput.Format.NONE, detect("2017-11-29 14:21:11\n".getBytes()));
+        assertEquals(CompressedInput.Format.NONE, detect("x^".getBytes()));
+        assertEquals(CompressedInput.Format.GZIP, detect(gzip("something".getBytes())));
+        assertEquals(CompressedInput.Format.ZLIB, detect(zlib("something".getBytes())));
+        assertEquals(CompressedInput.Format.ZIP, detect(zip("a.txt", "something".getBytes())));
+        assertEquals(CompressedInput.Format.BZIP2, detect(new byte[] { 'B', 'Z', 'h', '9', 0x31, 0x41 }));
+    }
+
+    @Test
+    public void detect_DoesNotConsumeTheStream() throws Exception {
+
+        InputStream is = new BufferedInputStream(new ByteArrayInputStream("abc".getBytes()));
+
+        assertEquals(CompressedInput.Format.NONE, CompressedInput.detect(is));
+
+        assertEquals('a', is.read());
+    }
+
+    // open() ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void open_Uncompressed() throws Exception {
+
+        byte[] content = "something\nsomething else\n".getBytes();
+
+        assertArrayEquals(content, readFully(CompressedInput.open(new ByteArrayInputStream(content))));
+    }
+
+    @Test
+    public void open_Gzip() throws Exception {
+
+        byte[] content = sample();
+
+        InputStream is = CompressedInput.open(new ByteArrayInputStream(gzip(content)));
+
+        assertTrue(is instanceof ReadAheadInputStream);
+        assertArrayEquals(content, readFully(is));
+    }
+
+    @Test
+    public void open_Gzip_NoReadAhead() throws Exception {
+
+        byte[] content = sample();
+
+        InputStream is = CompressedInput.open(new ByteArrayInputStream(gzip(content)), false);
+
+        assertFalse(is instanceof ReadAheadInputStream);
+        assertArrayEquals(content, readFully(is));
+    }
+
+    @Test
+    public void open_MultiMemberGzip() throws Exception {
+
+        byte[] content = sample();
+        int half = content.length / 2;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(gzip(Arrays.copyOfRange(content, 0, half)));
+        baos.write(gzip(Arrays.copyOfRange(content, half, content.length)));
+
+        assertArrayEquals(content, readFully(CompressedInput.open(new ByteArrayInputStream(baos.toByteArray()))));
+    }
+
+    @Test
+    public void open_Zlib() throws Exception {
+
+        byte[] content = sample();
+
+        assertArrayEquals(content, readFully(CompressedInput.open(new ByteArrayInputStream(zlib(content)))));
+    }
+
+    @Test
+    public void open_Zip() throws Exception {
+
+        byte[] content = sample();
+
+        assertArrayEquals(content, readFully(CompressedInput.open(new ByteArrayInputStream(zip("td.txt", content)))));
+    }
+
+    @Test
+    public void open_UnsupportedFormat() throws Exception {
+
+        try {
+
+            CompressedInput.open(new ByteArrayInputStream(new byte[] { 'B', 'Z', 'h', '9', 0x31, 0x41 }));
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            assertTrue(e.getMessage().contains("bzip2"));
+        }
+    }
+
+    @Test
+    public void open_CorruptedGzip() throws Exception {
+
+        byte[] gz = gzip(sample());
+        byte[] truncated = Arrays.copyOf(gz, gz.length / 2);
+
+        InputStream is = CompressedInput.open(new ByteArrayInputStream(truncated));
+
+        try {
+
+            readFully(is);
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void open_GzipFile_ParsedSameAsUncompressed() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        File gz = new File(System.getProperty("test.scratch.directory"), "015_successive_thread_dumps.txt.gz");
+
+        try(OutputStream os = new GZIPOutputStream(new FileOutputStream(gz))) {
+
+            Files.copy(f.toPath(), os);
+        }
+
+        assertEquals(CompressedInput.Format.GZIP, CompressedInput.detect(gz));
+
+        ThreadDumpReader expected = new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+        ThreadDumpReader actual =
+                new ThreadDumpReader(new BufferedReader(new InputStreamReader(CompressedInput.open(gz))));
+
+        JavaThreadDumpEvent e;
+
+        while((e = expected.next()) != null) {
+
+            JavaThreadDumpEvent a = actual.next();
+
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getThreadCount(), a.getThreadCount());
+            assertEquals(e.getLineNumber(), a.getLineNumber());
+        }
+
+        assertNull(actual.next());
+
+        expected.close();
+        actual.close();
+
+        assertTrue(gz.delete());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static CompressedInput.Format detect(byte[] content) throws Exception {
+
+        return CompressedInput.detect(new BufferedInputStream(new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * Large enough to span several read-ahead blocks.
+     */
+    private static byte[] sample() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; sb.length() < 3 * ReadAheadInputStream.DEFAULT_BLOCK_SIZE; i ++) {
+
+            sb.append("\"Thread-").append(i).append("\" #").append(i).append(" prio=5 tid=0x").append(i).append('\n');
+        }
+
+        return sb.toString().getBytes();
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try(OutputStream os = new GZIPOutputStream(baos)) {
+
+            os.write(content);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static byte[] zlib(byte[] content) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try(OutputStream os = new DeflaterOutputStream(baos)) {
+
+            os.write(content);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static byte[] zip(String name, byte[] content) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try(ZipOutputStream zos = new ZipOutputStream(baos)) {
+
+            zos.putNextEntry(new ZipEntry(name));
+            zos.write(content);
+            zos.closeEntry();
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        try {
+
+            while((read = is.read(buffer)) != -1) {
+
+                baos.write(buffer, 0, read);
+            }
+        }
+        finally {
+
+            is.close();
+        }
+
+        return baos.toByteArray();
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/15/17
+ */
+public class DuplicateThreadDumpFilterTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCapacity() throws Exception {
+
+        try {
+
+            new DuplicateThreadDumpFilter(0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("invalid capacity"));
+        }
+    }
+
+    @Test
+    public void fingerprint() throws Exception {
+
+        long a = fingerprint("\"main\" #1 prio=5", "   java.lang.Thread.State: RUNNABLE");
+        long b = fingerprint("\"main\" #1 prio=5", "   java.lang.Thread.State: RUNNABLE");
+        assertEquals(a, b);
+
+        //
+        // content, order and line boundaries count
+        //
+
+        assertNotEquals(a, fingerprint("\"main\" #1 prio=5", "   java.lang.Thread.State: BLOCKED"));
+        assertNotEquals(a, fingerprint("   java.lang.Thread.State: RUNNABLE", "\"main\" #1 prio=5"));
+        assertNotEquals(fingerprint("ab", "c"), fingerprint("a", "bc"));
+        assertNotEquals(DuplicateThreadDumpFilter.INITIAL_FINGERPRINT, fingerprint("a"));
+
+        //
+        // blank lines do not count
+        //
+
+        assertEquals(DuplicateThreadDumpFilter.INITIAL_FINGERPRINT, fingerprint("", "  "));
+        assertEquals(a, fingerprint("\"main\" #1 prio=5", "", "   java.lang.Thread.State: RUNNABLE", " "));
+    }
+
+    @Test
+    public void isDuplicate() throws Exception {
+
+        DuplicateThreadDumpFilter f = new DuplicateThreadDumpFilter();
+
+        assertFalse(f.isDuplicate(1000L, 7L));
+        assertFalse(f.isDuplicate(2000L, 7L));
+        assertFalse(f.isDuplicate(1000L, 8L));
+        assertTrue(f.isDuplicate(1000L, 7L));
+        assertTrue(f.isDuplicate(2000L, 7L));
+
+        assertEquals(2L, f.getDuplicateCount());
+    }
+
+    @Test
+    public void isDuplicate_OldestForgotten() throws Exception {
+
+        DuplicateThreadDumpFilter f = new DuplicateThreadDumpFilter(2);
+
+        assertFalse(f.isDuplicate(1L, 1L));
+        assertFalse(f.isDuplicate(2L, 2L));
+        assertFalse(f.isDuplicate(3L, 3L));
+
+        assertTrue(f.isDuplicate(3L, 3L));
+        assertTrue(f.isDuplicate(2L, 2L));
+        assertFalse(f.isDuplicate(1L, 1L));
+
+        assertEquals(2L, f.getDuplicateCount());
+    }
+
+    @Test
+    public void isDuplicate_Event() throws Exception {
+
+        DuplicateThreadDumpFilter f = new DuplicateThreadDumpFilter();
+
+        JavaThreadDumpEvent e = new JavaThreadDumpEvent(1L, 1000L);
+
+        //
+        // no fingerprint, never a duplicate
+        //
+
+        assertFalse(f.isDuplicate(e));
+        assertFalse(f.isDuplicate(e));
+
+        e.setFingerprint(5L);
+
+        assertFalse(f.isDuplicate(e));
+
+        JavaThreadDumpEvent e2 = new JavaThreadDumpEvent(100L, 1000L);
+        e2.setFingerprint(5L);
+
+        assertTrue(f.isDuplicate(e2));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static long fingerprint(String... lines) {
+
+        long h = DuplicateThreadDumpFilter.INITIAL_FINGERPRINT;
+
+        for(String line: lines) {
+
+            h = DuplicateThreadDumpFilter.fingerprint(h, line);
+        }
+
+        return h;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
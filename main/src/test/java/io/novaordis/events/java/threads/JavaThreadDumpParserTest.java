@@ -21,6 +21,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -42,6 +43,7 @@ import io.novaordis.events.query.Query;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -160,9 +162,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(
-                JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2016-08-13 17:42:10").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2016-08-13 17:42:10"), e.getTime().longValue());
 
         assertTrue(events.get(1) instanceof EndOfStreamEvent);
     }
@@ -392,9 +392,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(
-                JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2016-08-13 02:02:02").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2016-08-13 02:02:02"), e.getTime().longValue());
 
         assertTrue(events.get(1) instanceof EndOfStreamEvent);
     }
@@ -445,15 +443,11 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(
-                JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2016-08-13 01:01:01").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2016-08-13 01:01:01"), e.getTime().longValue());
 
         JavaThreadDumpEvent e2 = (JavaThreadDumpEvent)events.get(1);
 
-        assertEquals(
-                JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2016-08-13 03:03:03").getTime(),
-                e2.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2016-08-13 03:03:03"), e2.getTime().longValue());
 
         assertTrue(events.get(2) instanceof EndOfStreamEvent);
     }
@@ -505,9 +499,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(
-                JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2016-08-13 02:02:02").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2016-08-13 02:02:02"), e.getTime().longValue());
 
         assertTrue(events.get(1) instanceof EndOfStreamEvent);
 
@@ -553,9 +545,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(
-                JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2016-01-01 01:01:01").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2016-01-01 01:01:01"), e.getTime().longValue());
 
 
         events = p.close();
@@ -566,13 +556,50 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e2 = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(
-                JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2016-02-02 02:02:02").getTime(),
-                e2.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2016-02-02 02:02:02"), e2.getTime().longValue());
 
         assertTrue(events.get(1) instanceof EndOfStreamEvent);
     }
 
+    @Test
+    public void parse_SubSecondTimestamps() throws Exception {
+
+        String content =
+                "2016-01-01 01:01:01.200\n" +
+                        "Full thread dump Java HotSpot(TM) 64-Bit Server VM (25.51-b03 mixed mode):\n" +
+                        "\n" +
+                        "2016-01-01 01:01:01.400\n" +
+                        "Full thread dump Java HotSpot(TM) 64-Bit Server VM (25.51-b03 mixed mode):\n" +
+                        "\n";
+
+        JavaThreadDumpParser p = new JavaThreadDumpParser();
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content.getBytes())));
+
+        String line;
+
+        List<Event> events = new ArrayList<>();
+
+        long lineNumber = 1;
+
+        for(; (line = br.readLine()) != null; lineNumber ++) {
+
+            events.addAll(p.parse(lineNumber, line, null));
+        }
+
+        events.addAll(p.close());
+
+        br.close();
+
+        assertEquals(3, events.size());
+
+        long base = ThreadDumpTimestamp.parse("2016-01-01 01:01:01");
+
+        assertEquals(base + 200L, ((JavaThreadDumpEvent)events.get(0)).getTime().longValue());
+        assertEquals(base + 400L, ((JavaThreadDumpEvent)events.get(1)).getTime().longValue());
+        assertTrue(events.get(2) instanceof EndOfStreamEvent);
+    }
+
     @Test
     public void parse_endToEnd() throws Exception {
 
@@ -687,8 +714,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2010-12-14 01:02:03").getTime(),
-                e.getTimestamp().getTime());
+        assertEquals(ThreadDumpTimestamp.parse("2010-12-14 01:02:03"), e.getTimestamp().getTime());
 
         assertEquals(2, e.getThreadCount());
 
@@ -761,8 +787,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2010-12-14 01:02:03").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2010-12-14 01:02:03"), e.getTime().longValue());
 
         assertEquals(2, e.getThreadCount());
 
@@ -771,8 +796,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e3 = (JavaThreadDumpEvent)events.get(2);
 
-        assertEquals(JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2011-01-02 03:04:05").getTime(),
-                e3.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2011-01-02 03:04:05"), e3.getTime().longValue());
 
         assertEquals(3, e3.getThreadCount());
 
@@ -928,8 +952,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2011-09-09 15:16:17").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2011-09-09 15:16:17"), e.getTime().longValue());
 
         assertEquals(2, e.getThreadCount());
 
@@ -937,6 +960,43 @@ public class JavaThreadDumpParserTest {
         assertNotNull(e2);
     }
 
+    @Test
+    public void parse_Fingerprinting() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/004_Minimal.txt");
+
+        assertTrue(f.isFile());
+
+        List<String> lines = Files.readAllLines(f.toPath());
+
+        for(boolean fingerprinting: new boolean[] { false, true }) {
+
+            JavaThreadDumpParser p = new JavaThreadDumpParser();
+            assertFalse(p.isFingerprinting());
+            p.setFingerprinting(fingerprinting);
+
+            List<Event> events = new ArrayList<>();
+
+            for(int i = 0; i < lines.size(); i ++) {
+
+                events.addAll(p.parse(i + 1, lines.get(i), null));
+            }
+
+            events.addAll(p.close(lines.size()));
+
+            JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
+
+            if (fingerprinting) {
+
+                assertNotNull(e.getFingerprint());
+            }
+            else {
+
+                assertNull(e.getFingerprint());
+            }
+        }
+    }
+
     @Test
     public void parse_Real_001() throws Exception {
 
@@ -966,8 +1026,7 @@ public class JavaThreadDumpParserTest {
 
         JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
 
-        assertEquals(JavaThreadDumpParser.THREAD_DUMP_TIMESTAMP_FORMATS[0].parse("2011-10-04 00:09:02").getTime(),
-                e.getTime().longValue());
+        assertEquals(ThreadDumpTimestamp.parse("2011-10-04 00:09:02"), e.getTime().longValue());
 
         assertEquals(786, e.getThreadCount());
 
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+import io.novaordis.utilities.parsing.ParsingException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/12/17
+ */
+public class JsonThreadDumpReaderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String THREAD_DUMP =
+            "{\n" +
+                    "  \"threadDump\": {\n" +
+                    "    \"processId\": \"12345\",\n" +
+                    "    \"time\": \"2017-08-13T17:41:59.250Z\",\n" +
+                    "    \"runtimeVersion\": \"21+35-2513\",\n" +
+                    "    \"threadContainers\": [\n" +
+                    "      {\n" +
+                    "        \"container\": \"<root>\",\n" +
+                    "        \"parent\": null,\n" +
+                    "        \"owner\": null,\n" +
+                    "        \"threads\": [\n" +
+                    "          {\n" +
+                    "            \"tid\": \"1\",\n" +
+                    "            \"name\": \"main\",\n" +
+                    "            \"state\": \"WAITING\",\n" +
+                    "            \"stack\": [\n" +
+                    "              \"java.base\\/java.lang.Object.wait0(Native Method)\",\n" +
+                    "              \"java.base\\/java.lang.Object.wait(Object.java:366)\",\n" +
+                    "              \"Main.main(Main.java:10)\"\n" +
+                    "            ]\n" +
+                    "          },\n" +
+                    "          {\n" +
+                    "            \"tid\": \"25\",\n" +
+                    "            \"name\": \"ForkJoinPool-1-worker-1\",\n" +
+                    "            \"state\": \"RUNNABLE\",\n" +
+                    "            \"stack\": []\n" +
+                    "          }\n" +
+                    "        ],\n" +
+                    "        \"threadCount\": \"2\"\n" +
+                    "      },\n" +
+                    "      {\n" +
+                    "        \"container\": \"java.util.concurrent.ThreadPerTaskExecutor@6d06d69c\",\n" +
+                    "        \"parent\": \"<root>\",\n" +
+                    "        \"owner\": null,\n" +
+                    "        \"threads\": [\n" +
+                    "          {\n" +
+                    "            \"tid\": \"31\",\n" +
+                    "            \"virtual\": true,\n" +
+                    "            \"name\": \"\",\n" +
+                    "            \"state\": \"RUNNABLE\",\n" +
+                    "            \"carrier\": \"25\",\n" +
+                    "            \"parkBlocker\": { \"object\": \"x\", \"owner\": [1, 2] },\n" +
+                    "            \"stack\": [\n" +
+                    "              \"Task.run(Task.java:20)\"\n" +
+                    "            ]\n" +
+                    "          }\n" +
+                    "        ],\n" +
+                    "        \"threadCount\": \"1\"\n" +
+                    "      }\n" +
+                    "    ]\n" +
+                    "  }\n" +
+                    "}\n";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void isJson() throws Exception {
+
+        BufferedInputStream is = new BufferedInputStream(new ByteArrayInputStream(" \n {}".getBytes()));
+
+        assertTrue(JsonThreadDumpReader.isJson(is));
+
+        //
+        // nothing consumed
+        //
+
+        assertEquals(' ', is.read());
+
+        assertFalse(JsonThreadDumpReader.isJson(
+                new BufferedInputStream(new ByteArrayInputStream("2017-08-13 17:41:59\n".getBytes()))));
+        assertFalse(JsonThreadDumpReader.isJson(new BufferedInputStream(new ByteArrayInputStream(new byte[0]))));
+    }
+
+    @Test
+    public void next() throws Exception {
+
+        JsonThreadDumpReader r = new JsonThreadDumpReader(new StringReader(THREAD_DUMP + THREAD_DUMP));
+
+        JavaThreadDumpEvent e = r.next();
+
+        assertEquals(1502646119250L, e.getTime().longValue());
+        assertEquals(1L, e.getLineNumber().longValue());
+        assertEquals(12345, e.getPid().intValue());
+        assertEquals("21+35-2513", r.getRuntimeVersion());
+        assertEquals(3, e.getThreadCount());
+
+        StackTraceEvent main = e.getStackTraceEvent(0);
+
+        assertEquals("main", main.getThreadName());
+        assertEquals(1L, main.getTidAsLong().longValue());
+        assertEquals("<root>", main.getContainer());
+        assertFalse(main.isVirtual());
+        assertNull(main.getCarrier());
+        assertEquals(ThreadState.OBJECT_WAIT, main.getThreadState());
+        assertEquals(
+                "\tat java.base/java.lang.Object.wait0(Native Method)\n" +
+                        "\tat java.base/java.lang.Object.wait(Object.java:366)\n" +
+                        "\tat Main.main(Main.java:10)", main.getStack());
+
+        StackTraceEvent carrier = e.getStackTraceEvent(1);
+
+        assertEquals("ForkJoinPool-1-worker-1", carrier.getThreadName());
+        assertEquals(ThreadState.RUNNABLE, carrier.getThreadState());
+        assertNull(carrier.getStack());
+
+        StackTraceEvent virtual = e.getStackTraceEvent(2);
+
+        assertEquals("", virtual.getThreadName());
+        assertTrue(virtual.isVirtual());
+        assertEquals(carrier.getTid(), virtual.getCarrier());
+        assertEquals("java.util.concurrent.ThreadPerTaskExecutor@6d06d69c", virtual.getContainer());
+        assertEquals("\tat Task.run(Task.java:20)", virtual.getStack());
+
+        //
+        // the second document
+        //
+
+        e = r.next();
+
+        assertEquals(3, e.getThreadCount());
+        assertEquals(53L, e.getLineNumber().longValue());
+
+        assertNull(r.next());
+
+        r.close();
+    }
+
+    @Test
+    public void next_NoTime_ThreadDumpSkipped() throws Exception {
+
+        JsonThreadDumpReader r = new JsonThreadDumpReader(
+                new StringReader("{ \"threadDump\": { \"threadContainers\": [] } }" + THREAD_DUMP));
+
+        JavaThreadDumpEvent e = r.next();
+
+        assertEquals(1502646119250L, e.getTime().longValue());
+        assertNull(r.next());
+
+        r.close();
+    }
+
+    @Test
+    public void next_TooManyStackTraces() throws Exception {
+
+        JsonThreadDumpReader r = new JsonThreadDumpReader(new StringReader(THREAD_DUMP));
+        r.setMaxStackTraces(2);
+
+        try {
+
+            r.next();
+            fail("should have thrown exception");
+        }
+        catch(ParsingException e) {
+
+            assertTrue(e.getMessage().contains("more than 2 threads"));
+        }
+
+        r.close();
+
+        r = new JsonThreadDumpReader(new StringReader(THREAD_DUMP));
+        r.setMaxStackTraces(3);
+        assertEquals(3, r.next().getThreadCount());
+        r.close();
+    }
+
+    @Test
+    public void nextWithoutStackTraces() throws Exception {
+
+        JsonThreadDumpReader r = new JsonThreadDumpReader(new StringReader(THREAD_DUMP + THREAD_DUMP));
+
+        JavaThreadDumpEvent e = r.nextWithoutStackTraces();
+
+        assertEquals(1502646119250L, e.getTime().longValue());
+        assertEquals(12345, e.getPid().intValue());
+        assertEquals(0, e.getThreadCount());
+
+        assertEquals("main", r.nextStackTrace().getThreadName());
+
+        //
+        // the rest of the first thread dump is skipped
+        //
+
+        e = r.nextWithoutStackTraces();
+
+        assertEquals(53L, e.getLineNumber().longValue());
+        assertEquals("main", r.nextStackTrace().getThreadName());
+        assertEquals("ForkJoinPool-1-worker-1", r.nextStackTrace().getThreadName());
+        assertTrue(r.nextStackTrace().isVirtual());
+        assertNull(r.nextStackTrace());
+
+        assertNull(r.nextWithoutStackTraces());
+
+        r.close();
+    }
+
+    @Test
+    public void nextWithoutStackTraces_TimeAfterThreads_ThreadDumpSkipped() throws Exception {
+
+        JsonThreadDumpReader r = new JsonThreadDumpReader(new GeneratedThreadDump(10, false));
+
+        assertNull(r.nextWithoutStackTraces());
+
+        r.close();
+    }
+
+    @Test
+    public void nextWithoutStackTraces_ThreadsAreStreamed() throws Exception {
+
+        int threads = 200 * 1000;
+
+        JsonThreadDumpReader r = new JsonThreadDumpReader(new GeneratedThreadDump(threads, true));
+
+        JavaThreadDumpEvent e = r.nextWithoutStackTraces();
+
+        assertEquals(1502646119000L, e.getTime().longValue());
+
+        int count = 0;
+
+        while(r.nextStackTrace() != null) {
+
+            count ++;
+        }
+
+        assertEquals(threads, count);
+        assertNull(r.nextWithoutStackTraces());
+
+        r.close();
+    }
+
+    @Test
+    public void nextStackTrace_ThreadsAreStreamed() throws Exception {
+
+        int threads = 200 * 1000;
+
+        JsonThreadDumpReader r = new JsonThreadDumpReader(new GeneratedThreadDump(threads, false));
+
+        assertTrue(r.nextThreadDump());
+
+        StackTraceEvent s;
+        StackTraceEvent first = null;
+        int count = 0;
+
+        while((s = r.nextStackTrace()) != null) {
+
+            if (first == null) {
+
+                first = s;
+            }
+
+            assertTrue(s.isVirtual());
+            count ++;
+        }
+
+        assertEquals(threads, count);
+        assertEquals(1502646119000L, r.getTime().longValue());
+
+        //
+        // identical stacks are shared
+        //
+
+        assertEquals("\tat Task.run(Task.java:20)\n\tat java.lang.VirtualThread.run(VirtualThread.java:309)",
+                first.getStack());
+
+        assertFalse(r.nextThreadDump());
+
+        r.close();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Produces a thread dump with the given number of virtual threads as it is read, without ever holding it in
+     * memory.
+     */
+    private static class GeneratedThreadDump extends Reader {
+
+        private static final String TIME = "\"time\": \"2017-08-13T17:41:59Z\"";
+
+        private int threads;
+        private boolean timeFirst;
+        private int generated;
+        private StringReader current;
+        private boolean closed;
+
+        /**
+         * @param timeFirst true if the time precedes the threads, as in jcmd output, false if it follows them.
+         */
+        GeneratedThreadDump(int threads, boolean timeFirst) {
+
+            this.threads = threads;
+            this.timeFirst = timeFirst;
+            this.current = new StringReader(
+                    "{ \"threadDump\": { " + (timeFirst ? TIME + ", " : "") +
+                            "\"threadContainers\": [ { \"container\": \"c\", \"threads\": [\n");
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+
+            int n;
+
+            while((n = current.read(cbuf, off, len)) == -1) {
+
+                if (closed) {
+
+                    return -1;
+                }
+
+                if (generated == threads) {
+
+                    current = new StringReader("] } ]" + (timeFirst ? "" : ", " + TIME) + " } }\n");
+                    closed = true;
+                }
+                else {
+
+                    current = new StringReader((generated == 0 ? "" : ",") + "{ \"tid\": \"" + (100 + generated) +
+                            "\", \"virtual\": true, \"name\": \"\", \"stack\": [ \"Task.run(Task.java:20)\", " +
+                            "\"java.lang.VirtualThread.run(VirtualThread.java:309)\" ] }\n");
+                    generated ++;
+                }
+            }
+
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.JsonTokenizer.Token;
+import io.novaordis.utilities.parsing.ParsingException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/12/17
+ */
+public class JsonTokenizerTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void next() throws Exception {
+
+        JsonTokenizer t = new JsonTokenizer(new StringReader(
+                "{\n \"a\": \"x\\/y\\n\\u0041\",\n \"b\": [1, -2.5e3, true, false, null],\n \"c\": {} }\n[]"));
+
+        assertEquals(Token.BEGIN_OBJECT, t.next());
+        assertEquals(1, t.getDepth());
+        assertEquals(Token.NAME, t.next());
+        assertTrue(t.textEquals("a"));
+        assertEquals(Token.STRING, t.next());
+        assertEquals("x/y\nA", t.getText());
+        assertEquals(2L, t.getLineNumber());
+        assertEquals(Token.NAME, t.next());
+        assertEquals("b", t.getText());
+        assertEquals(Token.BEGIN_ARRAY, t.next());
+        assertEquals(2, t.getDepth());
+        assertEquals(Token.NUMBER, t.next());
+        assertEquals("1", t.getText());
+        assertEquals(Token.NUMBER, t.next());
+        assertEquals("-2.5e3", t.getText());
+        assertEquals(Token.TRUE, t.next());
+        assertEquals(Token.FALSE, t.next());
+        assertEquals(Token.NULL, t.next());
+        assertEquals(Token.END_ARRAY, t.next());
+        assertEquals(Token.NAME, t.next());
+        assertEquals("c", t.getText());
+        assertEquals(Token.BEGIN_OBJECT, t.next());
+        assertEquals(Token.END_OBJECT, t.next());
+        assertEquals(Token.END_OBJECT, t.next());
+        assertEquals(0, t.getDepth());
+
+        //
+        // the next document
+        //
+
+        assertEquals(Token.BEGIN_ARRAY, t.next());
+        assertEquals(Token.END_ARRAY, t.next());
+        assertEquals(Token.END, t.next());
+        assertEquals(5L, t.getLineNumber());
+
+        t.close();
+    }
+
+    @Test
+    public void next_StringSpansSeveralBuffers() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 3 * JsonTokenizer.BUFFER_SIZE; i ++) {
+
+            sb.append((char)('a' + i % 26));
+        }
+
+        JsonTokenizer t = new JsonTokenizer(new StringReader("[\"" + sb + "\\\"\"]"));
+
+        assertEquals(Token.BEGIN_ARRAY, t.next());
+        assertEquals(Token.STRING, t.next());
+        assertEquals(sb + "\"", t.getText());
+        assertEquals(Token.END_ARRAY, t.next());
+        assertEquals(Token.END, t.next());
+    }
+
+    @Test
+    public void skipValue() throws Exception {
+
+        JsonTokenizer t = new JsonTokenizer(new StringReader("{\"a\": {\"b\": [1, {\"c\": 2}]}, \"d\": 3}"));
+
+        assertEquals(Token.BEGIN_OBJECT, t.next());
+        assertEquals(Token.NAME, t.next());
+        t.skipValue();
+        assertEquals(Token.NAME, t.next());
+        assertEquals("d", t.getText());
+        assertEquals(Token.NUMBER, t.next());
+        assertEquals(Token.END_OBJECT, t.next());
+    }
+
+    @Test
+    public void next_Mismatched() throws Exception {
+
+        JsonTokenizer t = new JsonTokenizer(new StringReader("{ ]"));
+
+        assertEquals(Token.BEGIN_OBJECT, t.next());
+
+        try {
+
+            t.next();
+            fail("should have thrown exception");
+        }
+        catch(ParsingException e) {
+
+            assertTrue(e.getMessage().contains("unexpected ']'"));
+        }
+    }
+
+    @Test
+    public void next_Truncated() throws Exception {
+
+        JsonTokenizer t = new JsonTokenizer(new StringReader("{ \"a\": \"b"));
+
+        assertEquals(Token.BEGIN_OBJECT, t.next());
+        assertEquals(Token.NAME, t.next());
+
+        try {
+
+            t.next();
+            fail("should have thrown exception");
+        }
+        catch(ParsingException e) {
+
+            assertTrue(e.getMessage().contains("unterminated"));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class LineTerminatedInputStreamTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void read_Empty() throws Exception {
+
+        assertEquals("", readAll(stream("")));
+    }
+
+    @Test
+    public void read_Terminated() throws Exception {
+
+        assertEquals("a\nb\n", readAll(stream("a\nb\n")));
+        assertEquals("a\r\n", readAll(stream("a\r\n")));
+    }
+
+    @Test
+    public void read_NotTerminated() throws Exception {
+
+        assertEquals("a\nb\n", readAll(stream("a\nb")));
+    }
+
+    @Test
+    public void read_SingleBytes() throws Exception {
+
+        InputStream is = stream("ab");
+
+        assertEquals('a', is.read());
+        assertEquals('b', is.read());
+        assertEquals('\n', is.read());
+        assertEquals(-1, is.read());
+        assertEquals(-1, is.read());
+    }
+
+    @Test
+    public void read_LastByteIsNotMistakenForNothingRead() throws Exception {
+
+        InputStream is = new LineTerminatedInputStream(new ByteArrayInputStream(new byte[] { (byte)0xFF }));
+
+        assertEquals(2, readAll(is).length());
+    }
+
+    @Test
+    public void concatenation() throws Exception {
+
+        SequenceInputStream sis = new SequenceInputStream(stream("first"), stream("second"));
+        BufferedReader br = new BufferedReader(new InputStreamReader(sis, "US-ASCII"));
+
+        assertEquals("first", br.readLine());
+        assertEquals("second", br.readLine());
+        assertNull(br.readLine());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static InputStream stream(String s) throws Exception {
+
+        return new LineTerminatedInputStream(new ByteArrayInputStream(s.getBytes("US-ASCII")));
+    }
+
+    private static String readAll(InputStream is) throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int n;
+
+        while((n = is.read(buffer, 0, buffer.length)) != -1) {
+
+            baos.write(buffer, 0, n);
+        }
+
+        return new String(baos.toByteArray(), "ISO-8859-1");
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
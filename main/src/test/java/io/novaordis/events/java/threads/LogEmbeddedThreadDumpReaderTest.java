@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/10/17
+ */
+public class LogEmbeddedThreadDumpReaderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private List<String> lines;
+
+    private List<JavaThreadDumpEvent> expected;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        File sample =
+                new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(sample.isFile());
+
+        lines = Files.readAllLines(sample.toPath());
+
+        expected = new ArrayList<>();
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(sample)));
+
+        JavaThreadDumpEvent e;
+
+        while((e = r.next()) != null) {
+
+            expected.add(e);
+        }
+
+        r.close();
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void toThreadDumpTimestampLine() throws Exception {
+
+        assertEquals("2017-08-13 17:41:58",
+                LogEmbeddedThreadDumpReader.toThreadDumpTimestampLine("2017-08-13 17:41:58 INFO [main] x"));
+        assertEquals("2017-08-13 17:41:58,456",
+                LogEmbeddedThreadDumpReader.toThreadDumpTimestampLine("2017-08-13 17:41:58,456 INFO [main] x"));
+        assertEquals("2017-08-13T17:41:58.456+0000",
+                LogEmbeddedThreadDumpReader.toThreadDumpTimestampLine("[2017-08-13T17:41:58.456+0000] x"));
+        assertNull(LogEmbeddedThreadDumpReader.toThreadDumpTimestampLine("2017-08-13 17:41:581 INFO [main] x"));
+        assertNull(LogEmbeddedThreadDumpReader.toThreadDumpTimestampLine("17:41:58,456 INFO [main] x"));
+        assertNull(LogEmbeddedThreadDumpReader.toThreadDumpTimestampLine(null));
+    }
+
+    @Test
+    public void next_ThreadDumpsEmbeddedInLog() throws Exception {
+
+        for(int bufferSize: new int[] { LogEmbeddedThreadDumpReader.INITIAL_BUFFER_SIZE, 16, 100 }) {
+
+            LogEmbeddedThreadDumpReader r = new LogEmbeddedThreadDumpReader(
+                    new ByteArrayInputStream(log().getBytes()), null, bufferSize);
+
+            //
+            // with a standalone timestamp line
+            //
+
+            JavaThreadDumpEvent e = r.next();
+
+            assertEquals(expected.get(0).getTime(), e.getTime());
+            assertEquals(expected.get(0).getThreadCount(), e.getThreadCount());
+            assertEquals(4L, e.getLineNumber().longValue());
+
+            //
+            // timestamp from the preceding log line, with its sub-second part
+            //
+
+            e = r.next();
+
+            assertEquals(expected.get(1).getTime() + 500L, e.getTime().longValue());
+            assertEquals(expected.get(1).getThreadCount(), e.getThreadCount());
+
+            //
+            // no JNI line, ends at the end of the input
+            //
+
+            e = r.next();
+
+            assertEquals(expected.get(2).getTime(), e.getTime());
+            assertEquals(expected.get(2).getThreadCount(), e.getThreadCount());
+
+            assertNull(r.next());
+
+            assertTrue(r.getSkippedLines() >= 5);
+
+            r.close();
+        }
+    }
+
+    @Test
+    public void next_NoTimestamp_ThreadDumpSkipped() throws Exception {
+
+        StringBuilder sb = new StringBuilder("no timestamp here\n");
+
+        for(int i = 3; i <= 95; i ++) {
+
+            sb.append(lines.get(i - 1)).append('\n');
+        }
+
+        LogEmbeddedThreadDumpReader r =
+                new LogEmbeddedThreadDumpReader(new ByteArrayInputStream(sb.toString().getBytes()));
+
+        assertNull(r.next());
+
+        r.close();
+    }
+
+    @Test
+    public void next_NoThreadDumps() throws Exception {
+
+        LogEmbeddedThreadDumpReader r = new LogEmbeddedThreadDumpReader(
+                new ByteArrayInputStream("a\nFull\nb\r\nFull thread\n".getBytes()));
+
+        assertNull(r.next());
+        assertEquals(4L, r.getLineNumber());
+
+        r.close();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private String log() {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("2017-08-13 17:41:50,001 INFO [main] starting\n");
+        sb.append("2017-08-13 17:41:51,001 WARN [main] something happened\n");
+
+        append(sb, 2, 95);
+
+        sb.append("2017-08-13 17:42:05,123 INFO [main] after the first thread dump\n");
+        sb.append("\tat some.Class.method(Class.java:10)\n");
+        sb.append("2017-08-13 17:42:10,500 INFO [main] before the second thread dump\n");
+
+        //
+        // the header, without its standalone timestamp line
+        //
+
+        append(sb, 99, 182);
+
+        sb.append("2017-08-13 17:42:20,000 INFO [main] before the third thread dump\n");
+
+        //
+        // the last line of the input is not terminated
+        //
+
+        append(sb, 185, 268);
+        sb.setLength(sb.length() - 1);
+
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb, int from, int to) {
+
+        for(int i = from; i <= to; i ++) {
+
+            sb.append(lines.get(i - 1)).append('\n');
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
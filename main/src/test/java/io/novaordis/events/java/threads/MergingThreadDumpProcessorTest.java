@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/9/17
+ */
+public class MergingThreadDumpProcessorTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private List<String> lines;
+
+    private List<File> created;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        File sample =
+                new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(sample.isFile());
+
+        lines = Files.readAllLines(sample.toPath());
+        created = new ArrayList<>();
+    }
+
+    @After
+    public void after() throws Exception {
+
+        for(File f: created) {
+
+            Files.deleteIfExists(f.toPath());
+        }
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void run_ThreadDumpsMergedInTimeOrder() throws Exception {
+
+        //
+        // the first and the third thread dumps in one (compressed) file, the second in another, and an empty file
+        //
+
+        File a = create("rotated.txt.gz", true, 1, 97, 185, 269);
+        File b = create("17.08.13-17.42-2222-jstack.out", false, 98, 184);
+        File c = create("empty.txt", false);
+
+        MockProcedure mp = new MockProcedure();
+
+        MergingThreadDumpProcessor p = new MergingThreadDumpProcessor(Arrays.asList(c, b, a), mp);
+
+        p.run();
+
+        assertTrue(mp.isEndOfStream());
+
+        List<Event> events = mp.getEvents();
+        assertEquals(3, events.size());
+        assertEquals(3L, p.getDumpsProcessed());
+
+        JavaThreadDumpEvent e = (JavaThreadDumpEvent)events.get(0);
+        assertEquals(a.getName(), e.getSource());
+        assertNull(e.getPid());
+
+        e = (JavaThreadDumpEvent)events.get(1);
+        assertEquals(b.getName(), e.getSource());
+        assertEquals(2222, e.getPid().intValue());
+
+        e = (JavaThreadDumpEvent)events.get(2);
+        assertEquals(a.getName(), e.getSource());
+
+        for(int i = 1; i < events.size(); i ++) {
+
+            assertTrue(((JavaThreadDumpEvent)events.get(i - 1)).getTime() <
+                    ((JavaThreadDumpEvent)events.get(i)).getTime());
+        }
+    }
+
+    @Test
+    public void run_SameTimestamp_FileOrderPreserved() throws Exception {
+
+        File a = create("a.txt", false, 1, 97);
+        File b = create("b.txt", false, 1, 97);
+
+        MockProcedure mp = new MockProcedure();
+
+        new MergingThreadDumpProcessor(Arrays.asList(b, a), mp).run();
+
+        assertEquals(2, mp.getEvents().size());
+        assertEquals("b.txt", ((JavaThreadDumpEvent)mp.getEvents().get(0)).getSource());
+        assertEquals("a.txt", ((JavaThreadDumpEvent)mp.getEvents().get(1)).getSource());
+    }
+
+    @Test
+    public void run_DuplicateFilter_OverlappingSegments() throws Exception {
+
+        //
+        // the second thread dump is at the end of the first segment and at the beginning of the second
+        //
+
+        File a = create("a.txt", false, 1, 184);
+        File b = create("b.txt", false, 98, 269);
+
+        MockProcedure mp = new MockProcedure();
+
+        MergingThreadDumpProcessor p = new MergingThreadDumpProcessor(Arrays.asList(a, b), mp);
+        DuplicateThreadDumpFilter filter = new DuplicateThreadDumpFilter();
+        p.setDuplicateFilter(filter);
+
+        p.run();
+
+        List<Event> events = mp.getEvents();
+        assertEquals(3, events.size());
+        assertEquals(3L, p.getDumpsProcessed());
+        assertEquals(1L, filter.getDuplicateCount());
+
+        assertEquals("a.txt", ((JavaThreadDumpEvent)events.get(0)).getSource());
+        assertEquals("a.txt", ((JavaThreadDumpEvent)events.get(1)).getSource());
+        assertEquals("b.txt", ((JavaThreadDumpEvent)events.get(2)).getSource());
+    }
+
+    @Test
+    public void run_FileCannotBeRead() throws Exception {
+
+        File a = create("a.txt", false, 1, 269);
+        File missing = new File(System.getProperty("test.scratch.directory"), "no-such-file.txt");
+        assertFalse(missing.exists());
+
+        MockProcedure mp = new MockProcedure();
+
+        try {
+
+            new MergingThreadDumpProcessor(Arrays.asList(a, missing), mp).run();
+            fail("should have thrown exception");
+        }
+        catch(Exception e) {
+
+            assertTrue(e.getMessage().contains("no-such-file.txt"));
+        }
+
+        assertFalse(mp.isEndOfStream());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param ranges pairs of sample line numbers (1-based, inclusive).
+     */
+    private File create(String name, boolean gzip, int... ranges) throws Exception {
+
+        File f = new File(System.getProperty("test.scratch.directory"), name);
+        created.add(f);
+
+        OutputStream os = new FileOutputStream(f);
+
+        if (gzip) {
+
+            os = new GZIPOutputStream(os);
+        }
+
+        try {
+
+            for(int i = 0; i < ranges.length; i += 2) {
+
+                for(int j = ranges[i]; j <= ranges[i + 1]; j ++) {
+
+                    os.write((lines.get(j - 1) + "\n").getBytes());
+                }
+            }
+        }
+        finally {
+
+            os.close();
+        }
+
+        return f;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
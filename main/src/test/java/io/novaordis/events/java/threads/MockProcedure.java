@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.ProcedureBase;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class MockProcedure extends ProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private List<Event> events;
+
+    private boolean endOfStream;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public MockProcedure() {
+
+        this.events = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    // ProcedureBase overrides -----------------------------------------------------------------------------------------
+
+    @Override
+    protected void process(AtomicLong invocationCount, Event e) throws EventProcessingException {
+
+        if (e instanceof EndOfStreamEvent) {
+
+            endOfStream = true;
+            return;
+        }
+
+        events.add(e);
+    }
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList("mock");
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the events received so far, except the EndOfStreamEvent.
+     */
+    public List<Event> getEvents() {
+
+        return events;
+    }
+
+    public boolean isEndOfStream() {
+
+        return endOfStream;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/6/17
+ */
+public class ReadAheadInputStreamTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void read_Empty() throws Exception {
+
+        ReadAheadInputStream is = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), "test", 8, 2);
+
+        assertEquals(-1, is.read());
+        assertEquals(-1, is.read(new byte[10], 0, 10));
+
+        is.close();
+    }
+
+    @Test
+    public void read_SeveralBlocks() throws Exception {
+
+        byte[] content = new byte[1000];
+
+        for(int i = 0; i < content.length; i ++) {
+
+            content[i] = (byte)i;
+        }
+
+        ReadAheadInputStream is = new ReadAheadInputStream(new ByteArrayInputStream(content), "test", 64, 2);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        //
+        // mix single byte and bulk reads
+        //
+
+        baos.write(is.read());
+
+        byte[] buffer = new byte[100];
+        int read;
+
+        while((read = is.read(buffer, 0, buffer.length)) != -1) {
+
+            baos.write(buffer, 0, read);
+        }
+
+        assertArrayEquals(content, baos.toByteArray());
+
+        is.close();
+
+        assertEquals(16L, is.getBuffer().getPutCount());
+        assertTrue(is.getBuffer().getHighWatermark() <= 2);
+
+        //
+        // blocks are recycled: the buffered ones, the one being filled and the one being read
+        //
+
+        assertTrue(is.getAllocatedBlocks() <= 4);
+    }
+
+    @Test
+    public void read_SourceFails_FailureReportedAfterTheDataReadBeforeTheFailure() throws Exception {
+
+        InputStream source = new InputStream() {
+
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+
+                if (count == 10) {
+
+                    throw new IOException("SYNTHETIC");
+                }
+
+                return count ++;
+            }
+        };
+
+        ReadAheadInputStream is = new ReadAheadInputStream(source, "test", 4, 2);
+
+        for(int i = 0; i < 8; i ++) {
+
+            assertEquals(i, is.read());
+        }
+
+        assertEquals(8, is.read());
+        assertEquals(9, is.read());
+
+        try {
+
+            is.read();
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            assertEquals("SYNTHETIC", e.getMessage());
+        }
+
+        is.close();
+    }
+
+    @Test
+    public void read_SourceFailsWithUncheckedException() throws Exception {
+
+        InputStream source = new InputStream() {
+
+            @Override
+            public int read() {
+
+                throw new NullPointerException("SYNTHETIC");
+            }
+        };
+
+        ReadAheadInputStream is = new ReadAheadInputStream(source, "test", 4, 2);
+
+        try {
+
+            is.read();
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            assertEquals("java.lang.NullPointerException: SYNTHETIC", e.getMessage());
+        }
+
+        is.close();
+    }
+
+    @Test
+    public void close_WhileReadAheadIsBlocked() throws Exception {
+
+        //
+        // endless source, the read-ahead thread fills the buffer and blocks
+        //
+
+        InputStream source = new InputStream() {
+
+            @Override
+            public int read() {
+
+                return 'a';
+            }
+        };
+
+        ReadAheadInputStream is = new ReadAheadInputStream(source, "test", 4, 1);
+
+        assertEquals('a', is.read());
+
+        is.close();
+
+        try {
+
+            is.read();
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+
+    @Test
+    public void close_SourceIsClosedByTheReadAheadThread() throws Exception {
+
+        AtomicReference<Thread> closedBy = new AtomicReference<>();
+        CountDownLatch sourceClosed = new CountDownLatch(1);
+
+        InputStream source = new InputStream() {
+
+            @Override
+            public int read() {
+
+                return 'a';
+            }
+
+            @Override
+            public void close() {
+
+                closedBy.set(Thread.currentThread());
+                sourceClosed.countDown();
+            }
+        };
+
+        ReadAheadInputStream is = new ReadAheadInputStream(source, "test", 4, 1);
+
+        assertEquals('a', is.read());
+
+        is.close();
+
+        assertTrue(sourceClosed.await(10, TimeUnit.SECONDS));
+        assertNotEquals(Thread.currentThread(), closedBy.get());
+        assertTrue(closedBy.get().getName().startsWith("td read-ahead"));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
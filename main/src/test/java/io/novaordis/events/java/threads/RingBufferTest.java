@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class RingBufferTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCapacity() throws Exception {
+
+        try {
+
+            new RingBuffer<String>("test", 0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void putAndDrain_WrapsAround() throws Exception {
+
+        RingBuffer<Integer> b = new RingBuffer<>("test", 3);
+
+        List<Integer> drained = new ArrayList<>();
+
+        for(int i = 0; i < 10; i ++) {
+
+            b.put(i);
+            b.put(i + 100);
+            assertEquals(2, b.getDepth());
+            assertEquals(2, b.drainTo(drained, 5));
+        }
+
+        assertEquals(20, drained.size());
+
+        for(int i = 0; i < 10; i ++) {
+
+            assertEquals(i, drained.get(2 * i).intValue());
+            assertEquals(i + 100, drained.get(2 * i + 1).intValue());
+        }
+
+        assertEquals(20L, b.getPutCount());
+        assertEquals(2, b.getHighWatermark());
+        assertEquals(0, b.getDepth());
+    }
+
+    @Test
+    public void drainTo_Batch() throws Exception {
+
+        RingBuffer<Integer> b = new RingBuffer<>("test", 5);
+
+        for(int i = 0; i < 5; i ++) {
+
+            b.put(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+
+        assertEquals(2, b.drainTo(drained, 2));
+        assertEquals(3, b.drainTo(drained, 10));
+        assertEquals(5, drained.size());
+        assertEquals(5, b.getHighWatermark());
+    }
+
+    @Test
+    public void close_RemainingElementsStillDrained() throws Exception {
+
+        RingBuffer<String> b = new RingBuffer<>("test", 2);
+
+        b.put("a");
+        b.close();
+
+        List<String> drained = new ArrayList<>();
+
+        assertEquals(1, b.drainTo(drained, 10));
+        assertEquals(-1, b.drainTo(drained, 10));
+        assertEquals("a", drained.get(0));
+
+        try {
+
+            b.put("b");
+            fail("should have thrown exception");
+        }
+        catch(IllegalStateException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void put_BlocksWhenFull() throws Exception {
+
+        RingBuffer<Integer> b = new RingBuffer<>("test", 1);
+
+        b.put(1);
+
+        Thread producer = new Thread(() -> {
+
+            try {
+
+                b.put(2);
+            }
+            catch(InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.start();
+
+        Thread.sleep(200L);
+
+        assertEquals(1, b.getDepth());
+
+        List<Integer> drained = new ArrayList<>();
+        b.drainTo(drained, 1);
+
+        producer.join(10000L);
+
+        assertEquals(1, b.getDepth());
+        assertEquals(1L, b.getFullCount());
+        b.drainTo(drained, 1);
+        assertEquals(2, drained.get(1).intValue());
+    }
+
+    @Test
+    public void awaitNotFull() throws Exception {
+
+        RingBuffer<Integer> b = new RingBuffer<>("test", 1);
+
+        b.awaitNotFull();
+        b.put(1);
+
+        Thread producer = new Thread(() -> {
+
+            try {
+
+                b.awaitNotFull();
+            }
+            catch(InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.start();
+
+        Thread.sleep(200L);
+
+        assertTrue(producer.isAlive());
+
+        b.drainTo(new ArrayList<>(), 1);
+
+        producer.join(10000L);
+
+        assertFalse(producer.isAlive());
+        assertEquals(1L, b.getFullCount());
+
+        b.close();
+
+        try {
+
+            b.awaitNotFull();
+            fail("should have thrown exception");
+        }
+        catch(IllegalStateException e) {
+
+            // expected
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
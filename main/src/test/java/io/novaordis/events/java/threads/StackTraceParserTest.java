@@ -888,6 +888,52 @@ public class StackTraceParserTest {
         assertEquals("0x00007f6209147000", e.getMonitor());
     }
 
+    @Test
+    public void processStackTraceHeader_CpuAndElapsed() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(7L);
+
+        StackTraceParser.processStackTraceHeader(
+                7L, e, "something", "0x00007f2c7c00e800",
+                " #12 daemon prio=5 os_prio=0 cpu=1234.56ms elapsed=789.01s",
+                " nid=0x1832 waiting on condition [0x00007f6209147000]", "mock raw header");
+
+        assertEquals(5, e.getPrio().intValue());
+        assertEquals(0, e.getOsPrio().intValue());
+        assertEquals(1234560L, e.getCpuMicros());
+        assertEquals(789010000L, e.getElapsedMicros());
+        assertEquals(1234560L, e.getLongProperty(StackTraceEvent.CPU_PROPERTY_NAME).getLong().longValue());
+        assertEquals(789010000L, e.getLongProperty(StackTraceEvent.ELAPSED_PROPERTY_NAME).getLong().longValue());
+    }
+
+    @Test
+    public void processStackTraceHeader_NoCpuAndElapsed() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(7L);
+
+        StackTraceParser.processStackTraceHeader(
+                7L, e, "something", "0xff", " os_prio=0", " nid=0x1829 runnable", "mock raw header");
+
+        assertEquals(-1L, e.getCpuMicros());
+        assertEquals(-1L, e.getElapsedMicros());
+        assertNull(e.getLongProperty(StackTraceEvent.CPU_PROPERTY_NAME));
+    }
+
+    // parseScaledDecimal() --------------------------------------------------------------------------------------------
+
+    @Test
+    public void parseScaledDecimal() throws Exception {
+
+        assertEquals(1234560L, StackTraceParser.parseScaledDecimal("cpu=1234.56ms", "cpu=", "ms", 3));
+        assertEquals(12000L, StackTraceParser.parseScaledDecimal(" x cpu=12ms y", "cpu=", "ms", 3));
+        assertEquals(1L, StackTraceParser.parseScaledDecimal(" cpu=0.0019ms", "cpu=", "ms", 3));
+        assertEquals(789010000L, StackTraceParser.parseScaledDecimal(" elapsed=789.01s", "elapsed=", "s", 6));
+        assertEquals(-1L, StackTraceParser.parseScaledDecimal(" xcpu=12ms", "cpu=", "ms", 3));
+        assertEquals(-1L, StackTraceParser.parseScaledDecimal(" cpu=12s", "cpu=", "ms", 3));
+        assertEquals(-1L, StackTraceParser.parseScaledDecimal(" cpu=ms", "cpu=", "ms", 3));
+        assertEquals(-1L, StackTraceParser.parseScaledDecimal(" prio=5", "cpu=", "ms", 3));
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.procedure.Totals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class StagedThreadDumpProcessorTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void run_EmptyInput() throws Exception {
+
+        MockProcedure mp = new MockProcedure();
+
+        StagedThreadDumpProcessor p =
+                new StagedThreadDumpProcessor(new BufferedReader(new StringReader("")), mp, null, 2);
+
+        p.run();
+
+        assertTrue(mp.getEvents().isEmpty());
+        assertTrue(mp.isEndOfStream());
+    }
+
+    @Test
+    public void run_SameResultAsSequentialParsing() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        for(int parserThreads = 1; parserThreads <= 4; parserThreads ++) {
+
+            MockProcedure mp = new MockProcedure();
+
+            StagedThreadDumpProcessor p =
+                    new StagedThreadDumpProcessor(new BufferedReader(new FileReader(f)), mp, null, parserThreads);
+
+            p.run();
+
+            assertTrue(mp.isEndOfStream());
+
+            List<Event> events = mp.getEvents();
+            assertEquals(3, events.size());
+
+            ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+
+            for(Event e: events) {
+
+                JavaThreadDumpEvent expected = r.next();
+                JavaThreadDumpEvent actual = (JavaThreadDumpEvent)e;
+
+                assertEquals(expected.getTime(), actual.getTime());
+                assertEquals(expected.getLineNumber(), actual.getLineNumber());
+                assertEquals(expected.getThreadCount(), actual.getThreadCount());
+                assertEquals(expected.getRawRepresentation(), actual.getRawRepresentation());
+            }
+
+            r.close();
+
+            assertEquals(269L, p.getLinesRead());
+            assertEquals(3L, p.getDumpsProcessed());
+            assertEquals(4L, p.getChunkBuffer().getPutCount());
+            assertEquals(4L, p.getDumpBuffer().getPutCount());
+        }
+    }
+
+    @Test
+    public void run_AggregatingProcedure_SameOutputAsSequentialProcessing() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        Totals sequential = new Totals();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sequential.setPrintStream(new PrintStream(expected));
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+
+        JavaThreadDumpEvent e;
+
+        while((e = r.next()) != null) {
+
+            sequential.process(e);
+        }
+
+        sequential.process(new EndOfStreamEvent());
+
+        r.close();
+
+        for(int parserThreads = 1; parserThreads <= 4; parserThreads ++) {
+
+            Totals c = new Totals();
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            c.setPrintStream(new PrintStream(actual));
+
+            StagedThreadDumpProcessor p =
+                    new StagedThreadDumpProcessor(new BufferedReader(new FileReader(f)), c, null, parserThreads);
+
+            p.run();
+
+            assertEquals(new String(expected.toByteArray()), new String(actual.toByteArray()));
+            assertEquals(3L, p.getDumpsProcessed());
+        }
+    }
+
+    @Test
+    public void run_DuplicateFilter_SameFingerprintsAsTheParser() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        //
+        // thread dumps seen by the parser are recognized as duplicates by the staged reader
+        //
+
+        DuplicateThreadDumpFilter filter = new DuplicateThreadDumpFilter();
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+        r.setFingerprinting(true);
+
+        JavaThreadDumpEvent e;
+
+        while((e = r.next()) != null) {
+
+            assertFalse(filter.isDuplicate(e));
+        }
+
+        r.close();
+
+        MockProcedure mp = new MockProcedure();
+
+        StagedThreadDumpProcessor p = new StagedThreadDumpProcessor(new BufferedReader(new FileReader(f)), mp, null, 2);
+        p.setDuplicateFilter(filter);
+        p.run();
+
+        assertTrue(mp.isEndOfStream());
+        assertTrue(mp.getEvents().isEmpty());
+        assertEquals(3L, filter.getDuplicateCount());
+    }
+
+    @Test
+    public void run_DuplicateFilter() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        //
+        // the same thread dumps, twice; the file does not end with a new line
+        //
+
+        String content = new String(Files.readAllBytes(f.toPath()));
+        String input = content + "\n" + content;
+
+        for(int parserThreads = 1; parserThreads <= 4; parserThreads ++) {
+
+            MockProcedure mp = new MockProcedure();
+
+            StagedThreadDumpProcessor p =
+                    new StagedThreadDumpProcessor(new BufferedReader(new StringReader(input)), mp, null, parserThreads);
+
+            DuplicateThreadDumpFilter filter = new DuplicateThreadDumpFilter();
+            p.setDuplicateFilter(filter);
+
+            p.run();
+
+            assertTrue(mp.isEndOfStream());
+            assertEquals(3, mp.getEvents().size());
+            assertEquals(3L, p.getDumpsProcessed());
+            assertEquals(3L, filter.getDuplicateCount());
+            assertEquals(538L, p.getLinesRead());
+
+            for(int i = 0; i < 3; i ++) {
+
+                assertEquals(i == 0 ? 3L : i == 1 ? 99L : 186L, mp.getEvents().get(i).getLineNumber().longValue());
+            }
+        }
+
+        //
+        // no filter, all thread dumps are processed
+        //
+
+        MockProcedure mp = new MockProcedure();
+        new StagedThreadDumpProcessor(new BufferedReader(new StringReader(input)), mp, null, 2).run();
+        assertEquals(6, mp.getEvents().size());
+    }
+
+    @Test
+    public void run_ReorderWindowSmallerThanParserCount() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        String content = new String(Files.readAllBytes(f.toPath()));
+        StringBuilder input = new StringBuilder();
+
+        for(int i = 0; i < 50; i ++) {
+
+            input.append(content).append("\n");
+        }
+
+        MockProcedure mp = new MockProcedure();
+
+        StagedThreadDumpProcessor p =
+                new StagedThreadDumpProcessor(new BufferedReader(new StringReader(input.toString())), mp, null, 4);
+
+        p.setReorderWindow(2);
+        p.run();
+
+        assertTrue(mp.isEndOfStream());
+        assertEquals(150, mp.getEvents().size());
+        assertTrue(p.getReorderHighWatermark() <= 2);
+
+        long previous = 0;
+
+        for(Event e: mp.getEvents()) {
+
+            assertTrue(e.getLineNumber() > previous);
+            previous = e.getLineNumber();
+        }
+    }
+
+    @Test
+    public void setReorderWindow_Invalid() throws Exception {
+
+        StagedThreadDumpProcessor p =
+                new StagedThreadDumpProcessor(new BufferedReader(new StringReader("")), new MockProcedure(), null, 1);
+
+        assertEquals(StagedThreadDumpProcessor.REORDER_WINDOW, p.getReorderWindow());
+
+        try {
+
+            p.setReorderWindow(0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("reorder window"));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -16,15 +16,33 @@
 
 package io.novaordis.events.java.threads;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
+import io.novaordis.events.java.threads.procedure.CompositeProcedure;
+import io.novaordis.events.java.threads.procedure.Contention;
 import io.novaordis.events.java.threads.procedure.Count;
+import io.novaordis.events.java.threads.procedure.Deadlocks;
+import io.novaordis.events.java.threads.procedure.Diff;
+import io.novaordis.events.java.threads.procedure.FlameGraph;
+import io.novaordis.events.java.threads.procedure.HotMethods;
 import io.novaordis.events.java.threads.procedure.Names;
+import io.novaordis.events.java.threads.procedure.Pools;
+import io.novaordis.events.java.threads.procedure.Pprof;
+import io.novaordis.events.java.threads.procedure.StuckThreads;
+import io.novaordis.events.java.threads.procedure.Timeline;
+import io.novaordis.events.java.threads.procedure.Totals;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
@@ -72,6 +90,229 @@ public class TDProcedureFactoryTest {
         assertNotNull(procedure);
     }
 
+    @Test
+    public void totals() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        Totals procedure = (Totals)f.find(Totals.LABEL, 1, Collections.emptyList());
+
+        assertNotNull(procedure);
+    }
+
+    @Test
+    public void hotMethods() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList(HotMethods.LABEL, "--top=3", "a.txt"));
+
+        HotMethods procedure = (HotMethods)f.find(HotMethods.LABEL, 1, args);
+
+        assertNotNull(procedure);
+        assertEquals(3, procedure.getTop());
+        assertEquals(Arrays.asList(HotMethods.LABEL, "a.txt"), args);
+    }
+
+    @Test
+    public void flamegraph() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        assertNotNull(f.find(FlameGraph.LABEL, 1, new ArrayList<>()));
+    }
+
+    @Test
+    public void pprof() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        assertNotNull(f.find(Pprof.LABEL, 1, new ArrayList<>()));
+    }
+
+    @Test
+    public void timeline() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        assertNotNull(f.find(Timeline.LABEL, 1, new ArrayList<>()));
+    }
+
+    @Test
+    public void deadlocks() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        assertNotNull(f.find(Deadlocks.LABEL, 1, new ArrayList<>()));
+    }
+
+    @Test
+    public void contention() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList("contention", "--by-class", "--top=3", "a.txt"));
+
+        Contention c = (Contention)f.find(Contention.LABEL, 1, args);
+
+        assertEquals(Arrays.asList("contention", "a.txt"), args);
+        assertTrue(c.isByClass());
+        assertEquals(3, c.getTop());
+    }
+
+    @Test
+    public void diff() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList("diff", "--threads", "a.txt"));
+
+        Diff d = (Diff)f.find(Diff.LABEL, 1, args);
+
+        assertEquals(Arrays.asList("diff", "a.txt"), args);
+        assertTrue(d.isThreads());
+    }
+
+    @Test
+    public void stuckThreads() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList("stuck-threads", "--dumps=5", "--entry=A.service", "a.txt"));
+
+        StuckThreads s = (StuckThreads)f.find(StuckThreads.LABEL, 1, args);
+
+        assertEquals(Arrays.asList("stuck-threads", "a.txt"), args);
+        assertEquals(5, s.getDumps());
+        assertEquals("A.service", s.getEntry());
+    }
+
+    @Test
+    public void pools() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList("pools", "--pool=^(Incoming|OOB)-", "a.txt"));
+
+        Pools p = (Pools)f.find(Pools.LABEL, 1, args);
+
+        assertEquals(Arrays.asList("pools", "a.txt"), args);
+        assertEquals(1, p.getPatterns().size());
+    }
+
+    @Test
+    public void composite() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        CompositeProcedure procedure = (CompositeProcedure)f.find("count,names", 1, Collections.emptyList());
+
+        assertNotNull(procedure);
+        assertFalse(procedure.isThreaded());
+        assertEquals(2, procedure.getProcedures().size());
+        assertTrue(procedure.getProcedures().get(0) instanceof Count);
+        assertTrue(procedure.getProcedures().get(1) instanceof Names);
+        assertEquals("count,names", procedure.getCommandLineLabels().get(0));
+    }
+
+    @Test
+    public void composite_OutputFileAndThreaded() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+        f.setThreadedComposite(true);
+
+        CompositeProcedure procedure = (CompositeProcedure)f.find("count:something.txt", 1, Collections.emptyList());
+
+        assertNotNull(procedure);
+        assertTrue(procedure.isThreaded());
+        assertEquals(1, procedure.getProcedures().size());
+        assertTrue(procedure.getProcedures().get(0) instanceof Count);
+    }
+
+    @Test
+    public void composite_UnknownComponent() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        assertNull(f.find("count,I-am-sure-there-is-no-such-procedure", 1, Collections.emptyList()));
+    }
+
+    @Test
+    public void composite_UnknownComponent_ArgumentsUnchanged() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList("hot-methods,no-such-procedure", "--top=3", "a.txt"));
+
+        assertNull(f.find("hot-methods,no-such-procedure", 1, args));
+        assertEquals(Arrays.asList("hot-methods,no-such-procedure", "--top=3", "a.txt"), args);
+    }
+
+    @Test
+    public void composite_ProcedureOptionsAreRejected() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList("hot-methods,stuck-threads", "--state=runnable", "a.txt"));
+
+        try {
+
+            f.find("hot-methods,stuck-threads", 1, args);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("--state=runnable"));
+        }
+
+        assertEquals(Arrays.asList("hot-methods,stuck-threads", "--state=runnable", "a.txt"), args);
+    }
+
+    @Test
+    public void composite_SingleProcedureWithOutputFile_OptionsAreConsumed() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+
+        List<String> args = new ArrayList<>(Arrays.asList("pprof:out.pb.gz", "--state=RUNNABLE", "a.txt"));
+
+        CompositeProcedure procedure = (CompositeProcedure)f.find("pprof:out.pb.gz", 1, args);
+
+        assertNotNull(procedure);
+        assertEquals(1, procedure.getProcedures().size());
+        assertTrue(procedure.getProcedures().get(0) instanceof Pprof);
+        assertEquals(Arrays.asList("pprof:out.pb.gz", "a.txt"), args);
+    }
+
+    @Test
+    public void composite_ThreadedProceduresCannotShareStdout() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+        f.setThreadedComposite(true);
+
+        try {
+
+            f.find("count,names", 1, Collections.emptyList());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("stdout"));
+        }
+    }
+
+    @Test
+    public void composite_ThreadedProcedures_OneWritesToStdout() throws Exception {
+
+        TDProcedureFactory f = new TDProcedureFactory();
+        f.setThreadedComposite(true);
+
+        CompositeProcedure procedure = (CompositeProcedure)f.find("count,names:names.txt", 1, Collections.emptyList());
+
+        assertNotNull(procedure);
+        assertTrue(procedure.isThreaded());
+        assertEquals(2, procedure.getProcedures().size());
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
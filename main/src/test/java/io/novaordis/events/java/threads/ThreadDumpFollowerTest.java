@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/7/17
+ */
+public class ThreadDumpFollowerTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final long POLL_INTERVAL_MS = 10L;
+
+    private static final long TIMEOUT_MS = 5000L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private File file;
+
+    private File checkpoint;
+
+    private byte[] content;
+
+    private List<JavaThreadDumpEvent> expected;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        File sample =
+                new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(sample.isFile());
+
+        content = Files.readAllBytes(sample.toPath());
+
+        expected = new ArrayList<>();
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(sample)));
+
+        JavaThreadDumpEvent e;
+
+        while((e = r.next()) != null) {
+
+            expected.add(e);
+        }
+
+        r.close();
+
+        assertEquals(3, expected.size());
+
+        File scratch = new File(System.getProperty("test.scratch.directory"));
+        file = new File(scratch, "ThreadDumpFollowerTest-jstack.out");
+        checkpoint = ThreadDumpFollower.getDefaultCheckpointFile(file);
+    }
+
+    @After
+    public void after() throws Exception {
+
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(checkpoint.toPath());
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void follow_ThreadDumpsDeliveredAsTheyAreWritten_RestartResumesFromCheckpoint() throws Exception {
+
+        int endOfLine150 = offsetOfLine(151);
+        int startOfLine183 = offsetOfLine(183);
+        int middleOfLastLine = content.length - 5;
+
+        write(0, endOfLine150, false);
+
+        MockProcedure mp = new MockProcedure();
+        ThreadDumpFollower f = new ThreadDumpFollower(file, mp, checkpoint, POLL_INTERVAL_MS);
+        Thread t = start(f);
+
+        waitFor(() -> mp.getEvents().size() == 1);
+        assertSameDump(expected.get(0), (JavaThreadDumpEvent)mp.getEvents().get(0));
+        assertEquals(offsetOfLine(96), f.getCheckpointOffset());
+
+        //
+        // the end of the second dump and a partially written last line
+        //
+
+        write(endOfLine150, middleOfLastLine, true);
+
+        waitFor(() -> mp.getEvents().size() == 2);
+        assertSameDump(expected.get(1), (JavaThreadDumpEvent)mp.getEvents().get(1));
+
+        f.stop();
+        t.join(TIMEOUT_MS);
+
+        assertTrue(mp.isEndOfStream());
+        assertEquals(2, mp.getEvents().size());
+
+        Properties p = new Properties();
+
+        try(InputStream is = new FileInputStream(checkpoint)) {
+
+            p.load(is);
+        }
+
+        assertEquals(Integer.toString(startOfLine183), p.getProperty(ThreadDumpFollower.OFFSET_PROPERTY));
+        assertEquals("182", p.getProperty(ThreadDumpFollower.LINE_NUMBER_PROPERTY));
+
+        //
+        // a new session only sees the third dump, once its last line is complete
+        //
+
+        MockProcedure mp2 = new MockProcedure();
+        ThreadDumpFollower f2 = new ThreadDumpFollower(file, mp2, checkpoint, POLL_INTERVAL_MS);
+        Thread t2 = start(f2);
+
+        write(middleOfLastLine, content.length, true);
+
+        try(OutputStream os = new FileOutputStream(file, true)) {
+
+            os.write('\n');
+        }
+
+        waitFor(() -> mp2.getEvents().size() == 1);
+        assertSameDump(expected.get(2), (JavaThreadDumpEvent)mp2.getEvents().get(0));
+
+        f2.stop();
+        t2.join(TIMEOUT_MS);
+
+        assertEquals(1, mp2.getEvents().size());
+        assertEquals(1L, f2.getDumpsProcessed());
+    }
+
+    @Test
+    public void follow_FileTruncated_ReadFromTheBeginning() throws Exception {
+
+        write(0, content.length, false);
+
+        Properties p = new Properties();
+        p.setProperty(ThreadDumpFollower.OFFSET_PROPERTY, Integer.toString(content.length + 1000));
+        p.setProperty(ThreadDumpFollower.LINE_NUMBER_PROPERTY, "1000");
+
+        try(OutputStream os = new FileOutputStream(checkpoint)) {
+
+            p.store(os, null);
+        }
+
+        MockProcedure mp = new MockProcedure();
+        ThreadDumpFollower f = new ThreadDumpFollower(file, mp, checkpoint, POLL_INTERVAL_MS);
+        Thread t = start(f);
+
+        waitFor(() -> mp.getEvents().size() == 2);
+
+        f.stop();
+        t.join(TIMEOUT_MS);
+
+        assertSameDump(expected.get(0), (JavaThreadDumpEvent)mp.getEvents().get(0));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the offset of the first byte of the given line (1-based).
+     */
+    private int offsetOfLine(int line) {
+
+        int current = 1;
+
+        for(int i = 0; i < content.length; i ++) {
+
+            if (current == line) {
+
+                return i;
+            }
+
+            if (content[i] == '\n') {
+
+                current ++;
+            }
+        }
+
+        throw new IllegalArgumentException("no line " + line);
+    }
+
+    private void write(int from, int to, boolean append) throws Exception {
+
+        try(OutputStream os = new FileOutputStream(file, append)) {
+
+            os.write(content, from, to - from);
+        }
+    }
+
+    private static Thread start(ThreadDumpFollower f) {
+
+        Thread t = new Thread(() -> {
+
+            try {
+
+                f.run();
+            }
+            catch(Exception e) {
+
+                throw new IllegalStateException(e);
+            }
+        }, "follower");
+
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws Exception {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while(!condition.getAsBoolean()) {
+
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+    }
+
+    private static void assertSameDump(JavaThreadDumpEvent expected, JavaThreadDumpEvent actual) {
+
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getLineNumber(), actual.getLineNumber());
+        assertEquals(expected.getThreadCount(), actual.getThreadCount());
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/1/17
+ */
+public class ThreadDumpPublisherTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void subscribe_UnboundedDemand() throws Exception {
+
+        ThreadDumpPublisher p = new ThreadDumpPublisher(getReader());
+
+        RecordingSubscriber s = new RecordingSubscriber(Long.MAX_VALUE);
+
+        p.subscribe(s);
+
+        assertTrue(s.terminated.await(10, TimeUnit.SECONDS));
+
+        assertEquals(3, s.events.size());
+        assertTrue(s.completed);
+        assertNull(s.error);
+    }
+
+    @Test
+    public void subscribe_NoDemandNoDelivery() throws Exception {
+
+        ThreadDumpReader r = getReader();
+        ThreadDumpPublisher p = new ThreadDumpPublisher(r);
+
+        RecordingSubscriber s = new RecordingSubscriber(0);
+
+        p.subscribe(s);
+
+        assertTrue(s.subscribed.await(10, TimeUnit.SECONDS));
+
+        Thread.sleep(200L);
+
+        //
+        // nothing requested, nothing read
+        //
+
+        assertTrue(s.events.isEmpty());
+        assertEquals(0L, r.getLineNumber());
+
+        s.subscription.request(1);
+
+        long t0 = System.currentTimeMillis();
+        while(s.events.isEmpty() && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        Thread.sleep(200L);
+
+        assertEquals(1, s.events.size());
+        assertFalse(s.completed);
+
+        s.subscription.request(10);
+
+        assertTrue(s.terminated.await(10, TimeUnit.SECONDS));
+        assertEquals(3, s.events.size());
+        assertTrue(s.completed);
+    }
+
+    @Test
+    public void cancel() throws Exception {
+
+        ThreadDumpPublisher p = new ThreadDumpPublisher(getReader());
+
+        RecordingSubscriber s = new RecordingSubscriber(1) {
+
+            @Override
+            public void onNext(JavaThreadDumpEvent item) {
+
+                super.onNext(item);
+                subscription.cancel();
+                terminated.countDown();
+            }
+        };
+
+        p.subscribe(s);
+
+        assertTrue(s.terminated.await(10, TimeUnit.SECONDS));
+
+        Thread.sleep(200L);
+
+        assertEquals(1, s.events.size());
+        assertFalse(s.completed);
+        assertNull(s.error);
+    }
+
+    @Test
+    public void request_Invalid() throws Exception {
+
+        ThreadDumpPublisher p = new ThreadDumpPublisher(getReader());
+
+        RecordingSubscriber s = new RecordingSubscriber(-1);
+
+        p.subscribe(s);
+
+        assertTrue(s.terminated.await(10, TimeUnit.SECONDS));
+
+        assertNotNull(s.error);
+        assertTrue(s.error instanceof IllegalArgumentException);
+        assertTrue(s.events.isEmpty());
+    }
+
+    @Test
+    public void subscribe_SecondSubscriberRejected() throws Exception {
+
+        ThreadDumpPublisher p = new ThreadDumpPublisher(getReader());
+
+        p.subscribe(new RecordingSubscriber(0));
+
+        RecordingSubscriber s2 = new RecordingSubscriber(0);
+
+        p.subscribe(s2);
+
+        assertTrue(s2.terminated.await(10, TimeUnit.SECONDS));
+        assertTrue(s2.error instanceof IllegalStateException);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static ThreadDumpReader getReader() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        return new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class RecordingSubscriber implements Flow.Subscriber<JavaThreadDumpEvent> {
+
+        final List<JavaThreadDumpEvent> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch terminated = new CountDownLatch(1);
+
+        volatile Flow.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        private long initialRequest;
+
+        RecordingSubscriber(long initialRequest) {
+
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+
+            this.subscription = subscription;
+
+            if (initialRequest != 0) {
+
+                subscription.request(initialRequest);
+            }
+
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(JavaThreadDumpEvent item) {
+
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+
+            completed = true;
+            terminated.countDown();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/1/17
+ */
+public class ThreadDumpReaderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void next_EmptyInput() throws Exception {
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new StringReader("")));
+
+        assertNull(r.next());
+        assertNull(r.next());
+
+        r.close();
+    }
+
+    @Test
+    public void next_ReadsOnlyAsMuchAsNeeded() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+
+        JavaThreadDumpEvent e = r.next();
+        assertNotNull(e);
+        assertEquals(ThreadDumpTimestamp.parse("2017-08-13 17:41:59"), e.getTime().longValue());
+
+        //
+        // the first dump is complete when its "JNI global references" line is read
+        //
+
+        assertEquals(95L, r.getLineNumber());
+
+        JavaThreadDumpEvent e2 = r.next();
+        assertNotNull(e2);
+        assertEquals(ThreadDumpTimestamp.parse("2017-08-13 17:42:10"), e2.getTime().longValue());
+
+        JavaThreadDumpEvent e3 = r.next();
+        assertNotNull(e3);
+        assertEquals(ThreadDumpTimestamp.parse("2017-08-13 17:42:21"), e3.getTime().longValue());
+
+        assertNull(r.next());
+
+        r.close();
+    }
+
+    @Test
+    public void close() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+
+        assertNotNull(r.next());
+
+        r.close();
+
+        assertNull(r.next());
+    }
+
+    @Test
+    public void fingerprint() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        String content = new String(Files.readAllBytes(f.toPath()));
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new StringReader(content + "\n" + content)));
+        r.setFingerprinting(true);
+
+        Long[] fingerprints = new Long[6];
+
+        for(int i = 0; i < fingerprints.length; i ++) {
+
+            fingerprints[i] = r.next().getFingerprint();
+            assertNotNull(fingerprints[i]);
+        }
+
+        assertNull(r.next());
+
+        //
+        // the second and the third thread dumps only differ in timestamp and in the JNI global reference count, which
+        // is not part of the fingerprint
+        //
+
+        assertNotEquals(fingerprints[0], fingerprints[1]);
+        assertEquals(fingerprints[1], fingerprints[2]);
+
+        for(int i = 0; i < 3; i ++) {
+
+            assertEquals(fingerprints[i], fingerprints[i + 3]);
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
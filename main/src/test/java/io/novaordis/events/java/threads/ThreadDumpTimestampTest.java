@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads;
+
+import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/11/17
+ */
+public class ThreadDumpTimestampTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_SecondResolution() throws Exception {
+
+        long expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2017-08-13 17:41:59").getTime();
+
+        assertEquals(expected, ThreadDumpTimestamp.parse("2017-08-13 17:41:59"));
+        assertEquals(expected, ThreadDumpTimestamp.parse("2017-08-13 17:41:59   "));
+        assertEquals(expected, ThreadDumpTimestamp.parse("2017-08-13T17:41:59"));
+    }
+
+    @Test
+    public void parse_SubSecond() throws Exception {
+
+        long expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").parse("2017-08-13 17:41:59.123").getTime();
+
+        assertEquals(expected, ThreadDumpTimestamp.parse("2017-08-13 17:41:59.123"));
+        assertEquals(expected, ThreadDumpTimestamp.parse("2017-08-13 17:41:59,123"));
+        assertEquals(expected, ThreadDumpTimestamp.parse("2017-08-13 17:41:59.123456789"));
+        assertEquals(expected - 23, ThreadDumpTimestamp.parse("2017-08-13 17:41:59.1"));
+    }
+
+    @Test
+    public void parse_Offset() throws Exception {
+
+        long utc = OffsetDateTime.parse("2017-08-13T17:41:59.200Z").toInstant().toEpochMilli();
+
+        assertEquals(utc, ThreadDumpTimestamp.parse("2017-08-13T17:41:59.200Z"));
+        assertEquals(utc - 2 * 3600 * 1000L, ThreadDumpTimestamp.parse("2017-08-13T17:41:59.200+02:00"));
+        assertEquals(utc - 2 * 3600 * 1000L, ThreadDumpTimestamp.parse("2017-08-13T17:41:59.200+0200"));
+        assertEquals(utc - 2 * 3600 * 1000L, ThreadDumpTimestamp.parse("2017-08-13T17:41:59.200+02"));
+        assertEquals(utc + 5 * 3600 * 1000L + 30 * 60 * 1000L,
+                ThreadDumpTimestamp.parse("2017-08-13T17:41:59.200-05:30"));
+        assertEquals(utc - 200, ThreadDumpTimestamp.parse("2017-08-13 17:41:59Z"));
+    }
+
+    @Test
+    public void parse_NotATimestamp() throws Exception {
+
+        String[] lines = new String[] {
+
+                "",
+                "2017-08-13",
+                "2017-08-13 17:41",
+                "Full thread dump Java HotSpot(TM) 64-Bit Server VM (25.51-b03 mixed mode):",
+                "2017/08/13 17:41:59",
+                "4017-08-13 17:41:59",
+                "2017-08-13 17:41:59 INFO something",
+                "2017-08-13 17:41:59.",
+                "2017-08-13 17:41:59.1234567890",
+                "2017-08-13T17:41:59+",
+                "2017-08-13T17:41:59+2",
+                " 2017-08-13 17:41:59",
+        };
+
+        for(String line: lines) {
+
+            assertEquals(line, ThreadDumpTimestamp.NOT_A_TIMESTAMP, ThreadDumpTimestamp.parse(line));
+            assertFalse(line, ThreadDumpTimestamp.isTimestamp(line));
+        }
+    }
+
+    @Test
+    public void parse_SyntacticallyValid_InvalidDate() throws Exception {
+
+        assertTrue(ThreadDumpTimestamp.isTimestamp("2017-02-30 17:41:59"));
+        assertEquals(ThreadDumpTimestamp.NOT_A_TIMESTAMP, ThreadDumpTimestamp.parse("2017-02-30 17:41:59"));
+        assertEquals(ThreadDumpTimestamp.NOT_A_TIMESTAMP, ThreadDumpTimestamp.parse("2017-08-13 29:41:59"));
+    }
+
+    @Test
+    public void length() throws Exception {
+
+        assertEquals(19, ThreadDumpTimestamp.length("2017-08-13 17:41:59 INFO", 0));
+        assertEquals(23, ThreadDumpTimestamp.length("[2017-08-13 17:41:59,456] INFO", 1));
+        assertEquals(29, ThreadDumpTimestamp.length("2017-08-13T17:41:59.456+02:00 INFO", 0));
+        assertEquals(-1, ThreadDumpTimestamp.length("INFO 2017-08-13 17:41:59", 0));
+        assertEquals(-1, ThreadDumpTimestamp.length(null, 0));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
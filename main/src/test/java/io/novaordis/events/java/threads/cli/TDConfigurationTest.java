@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.cli;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.JsonThreadDumpReader;
+import io.novaordis.events.java.threads.TDProcedureFactory;
+import io.novaordis.events.java.threads.procedure.Count;
+import io.novaordis.events.java.threads.procedure.HotMethods;
+import io.novaordis.utilities.UserErrorException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/2/17
+ */
+public class TDConfigurationTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void noTDSpecificOptions() throws Exception {
+
+        String[] args = new String[] { "count", "something.txt" };
+
+        TDConfiguration c = new TDConfiguration(args, new TDProcedureFactory());
+
+        assertFalse(c.isExtendedMode());
+        assertFalse(c.isStaged());
+        assertNull(c.getProcedure());
+        assertEquals(2, c.getRemainingArguments().length);
+        assertEquals("count", c.getRemainingArguments()[0]);
+        assertEquals("something.txt", c.getRemainingArguments()[1]);
+    }
+
+    @Test
+    public void staged() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        String[] args = new String[] { "--staged", "count", f.getPath() };
+
+        TDConfiguration c = new TDConfiguration(args, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertTrue(c.isStaged());
+        assertEquals(0, c.getParserThreads());
+        assertTrue(c.getProcedure() instanceof Count);
+        assertEquals(1, c.getFiles().size());
+        assertEquals(f, c.getFiles().get(0));
+    }
+
+    @Test
+    public void parserThreads() throws Exception {
+
+        String[] args = new String[] { "--parser-threads=3", "count" };
+
+        TDConfiguration c = new TDConfiguration(args, new TDProcedureFactory());
+
+        assertTrue(c.isStaged());
+        assertEquals(3, c.getParserThreads());
+        assertTrue(c.getFiles().isEmpty());
+    }
+
+    @Test
+    public void parserThreads_Invalid() throws Exception {
+
+        try {
+
+            new TDConfiguration(new String[] { "--parser-threads=0", "count" }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("--parser-threads"));
+        }
+    }
+
+    @Test
+    public void staged_NoProcedure() throws Exception {
+
+        try {
+
+            new TDConfiguration(new String[] { "--staged" }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("no procedure"));
+        }
+    }
+
+    @Test
+    public void staged_NoSuchFile() throws Exception {
+
+        try {
+
+            new TDConfiguration(new String[] { "--staged", "count", "no-such-file.txt" }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("no-such-file.txt"));
+        }
+    }
+
+    @Test
+    public void compressedInput_SelectsExtendedMode() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        File gz = new File(System.getProperty("test.scratch.directory"), "TDConfigurationTest.txt.gz");
+
+        try(OutputStream os = new GZIPOutputStream(new FileOutputStream(gz))) {
+
+            Files.copy(f.toPath(), os);
+        }
+
+        TDConfiguration c = new TDConfiguration(new String[] { "count", gz.getPath() }, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertFalse(c.isStaged());
+        assertTrue(c.isCompressedInput());
+        assertTrue(c.getProcedure() instanceof Count);
+        assertEquals(gz, c.getFiles().get(0));
+
+        c = new TDConfiguration(new String[] { "count", f.getPath() }, new TDProcedureFactory());
+
+        assertFalse(c.isExtendedMode());
+        assertFalse(c.isCompressedInput());
+
+        assertTrue(gz.delete());
+    }
+
+    @Test
+    public void compressedInput_QueryIsRejected() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        File gz = new File(System.getProperty("test.scratch.directory"), "TDConfigurationTest.txt.gz");
+
+        try(OutputStream os = new GZIPOutputStream(new FileOutputStream(gz))) {
+
+            Files.copy(f.toPath(), os);
+        }
+
+        try {
+
+            new TDConfiguration(new String[] { "count", "from", "12:00:00", gz.getPath() }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("from"));
+            assertTrue(e.getMessage().contains("queries"));
+        }
+
+        assertTrue(gz.delete());
+    }
+
+    @Test
+    public void jsonInput_SelectsExtendedMode() throws Exception {
+
+        File json = new File(System.getProperty("test.scratch.directory"), "TDConfigurationTest.json");
+
+        Files.write(json.toPath(), "\n{ \"threadDump\": {} }\n".getBytes());
+
+        TDConfiguration c = new TDConfiguration(new String[] { "count", json.getPath() }, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertTrue(c.isJsonInput());
+        assertFalse(c.isCompressedInput());
+
+        try {
+
+            new TDConfiguration(new String[] { "--merge", "count", json.getPath() }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("JSON"));
+        }
+
+        assertTrue(json.delete());
+    }
+
+    @Test
+    public void maxJsonThreads() throws Exception {
+
+        TDConfiguration c = new TDConfiguration(new String[] { "count" }, new TDProcedureFactory());
+
+        assertEquals(JsonThreadDumpReader.DEFAULT_MAX_STACK_TRACES, c.getMaxJsonThreads());
+
+        c = new TDConfiguration(new String[] { "--max-json-threads=500000", "count" }, new TDProcedureFactory());
+
+        assertEquals(500000, c.getMaxJsonThreads());
+
+        try {
+
+            new TDConfiguration(new String[] { "--max-json-threads=0", "count" }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("--max-json-threads"));
+        }
+    }
+
+    @Test
+    public void follow() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        TDConfiguration c =
+                new TDConfiguration(new String[] { "--follow", "count", f.getPath() }, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertTrue(c.isFollow());
+        assertTrue(c.getProcedure() instanceof Count);
+        assertEquals(new File(f.getPath() + ".td-checkpoint"), c.getCheckpointFile());
+
+        c = new TDConfiguration(
+                new String[] { "--checkpoint=/tmp/something", "count", f.getPath() }, new TDProcedureFactory());
+
+        assertTrue(c.isFollow());
+        assertEquals(new File("/tmp/something"), c.getCheckpointFile());
+    }
+
+    @Test
+    public void follow_MoreThanOneFile() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        try {
+
+            String[] args = new String[] { "--follow", "count", f.getPath(), f.getPath() };
+            new TDConfiguration(args, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("exactly one file"));
+        }
+    }
+
+    @Test
+    public void watch() throws Exception {
+
+        File dir = new File(System.getProperty("test.scratch.directory"));
+        assertTrue(dir.isDirectory());
+
+        TDConfiguration c =
+                new TDConfiguration(new String[] { "--watch=" + dir.getPath(), "count" }, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertEquals(dir, c.getWatchDirectory());
+        assertTrue(c.getProcedure() instanceof Count);
+        assertTrue(c.getFiles().isEmpty());
+    }
+
+    @Test
+    public void watch_NoSuchDirectory() throws Exception {
+
+        try {
+
+            new TDConfiguration(new String[] { "--watch=/no/such/directory", "count" }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("no such directory"));
+        }
+    }
+
+    @Test
+    public void merge() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        TDConfiguration c = new TDConfiguration(
+                new String[] { "--merge", "count", f.getPath(), f.getPath() }, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertTrue(c.isMerge());
+        assertFalse(c.isStaged());
+        assertEquals(2, c.getFiles().size());
+    }
+
+    @Test
+    public void merge_NoFiles() throws Exception {
+
+        try {
+
+            new TDConfiguration(new String[] { "--merge", "count" }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("at least one file"));
+        }
+    }
+
+    @Test
+    public void log() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        TDConfiguration c =
+                new TDConfiguration(new String[] { "--log", "count", f.getPath() }, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertTrue(c.isLogEmbedded());
+        assertEquals(1, c.getFiles().size());
+    }
+
+    @Test
+    public void log_CombinedWithAnotherMode() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        try {
+
+            new TDConfiguration(new String[] { "--log", "--merge", "count", f.getPath() }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("cannot be combined"));
+        }
+    }
+
+    @Test
+    public void skipDuplicates() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        TDConfiguration c = new TDConfiguration(
+                new String[] { "--skip-duplicates", "count", f.getPath(), f.getPath() }, new TDProcedureFactory());
+
+        assertTrue(c.isExtendedMode());
+        assertTrue(c.isSkipDuplicates());
+        assertFalse(c.isStaged());
+        assertEquals(2, c.getFiles().size());
+
+        c = new TDConfiguration(new String[] { "--staged", "count", f.getPath() }, new TDProcedureFactory());
+
+        assertFalse(c.isSkipDuplicates());
+    }
+
+    @Test
+    public void skipDuplicates_Follow() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        try {
+
+            new TDConfiguration(
+                    new String[] { "--skip-duplicates", "--follow", "count", f.getPath() }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("--skip-duplicates"));
+        }
+    }
+
+    @Test
+    public void procedureOptions() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        TDConfiguration c = new TDConfiguration(
+                new String[] { "--staged", "hot-methods", "--top=5", f.getPath() }, new TDProcedureFactory());
+
+        assertEquals(5, ((HotMethods)c.getProcedure()).getTop());
+        assertEquals(1, c.getFiles().size());
+
+        try {
+
+            new TDConfiguration(
+                    new String[] { "--staged", "hot-methods", "--top=none", f.getPath() }, new TDProcedureFactory());
+            fail("should have thrown exception");
+        }
+        catch(UserErrorException e) {
+
+            assertTrue(e.getMessage().contains("--top"));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -20,6 +20,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.nio.file.Files;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -53,6 +54,15 @@ public class JavaThreadDumpEventTest {
 
     // Tests -----------------------------------------------------------------------------------------------------------
 
+    @Test
+    public void toString_TimestampDisplay() throws Exception {
+
+        long t = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").parse("2017-08-13 17:41:59.000").getTime();
+
+        assertEquals("ThreadDump[line 7, 08/13/17 17:41:59]", new JavaThreadDumpEvent(7L, t).toString());
+        assertEquals("ThreadDump[line 7, 08/13/17 17:41:59.120]", new JavaThreadDumpEvent(7L, t + 120).toString());
+    }
+
     // addStackTraces() ------------------------------------------------------------------------------------------------
 
     @Test
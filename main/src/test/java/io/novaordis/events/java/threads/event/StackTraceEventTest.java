@@ -505,6 +505,201 @@ public class StackTraceEventTest {
         assertFalse(e.update(12L, "something"));
     }
 
+    @Test
+    public void update_MonitorLines() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(10L);
+
+        String[] lines = {
+                "   java.lang.Thread.State: BLOCKED (on object monitor)",
+                "\tat com.example.Transfer.debit(Transfer.java:41)",
+                "\t- waiting to lock <0x000000076ab62208> (a com.example.Account)",
+                "\tat com.example.Transfer.credit(Transfer.java:30)",
+                "\t- locked <0x000000076ab62218> (a com.example.Account)",
+                "\tat com.example.Transfer.run(Transfer.java:22)",
+                "\t- locked <0x000000076ab62228> (a java.lang.Object)",
+                "\t- eliminated <owner is scalar replaced> (a java.lang.Object)",
+                "",
+                "   Locked ownable synchronizers:",
+                "\t- None",
+        };
+
+        for(String line: lines) {
+
+            assertTrue(e.update(11L, line));
+        }
+
+        assertEquals(0x76ab62208L, e.getBlockedOnMonitor());
+        assertEquals(StackTraceEvent.NO_MONITOR, e.getWaitingOnMonitor());
+        assertEquals(2, e.getLockedMonitorCount());
+        assertEquals(0x76ab62218L, e.getLockedMonitor(0));
+        assertEquals(0x76ab62228L, e.getLockedMonitor(1));
+
+        assertEquals("com.example.Account", e.getMonitorClass(0x76ab62208L));
+        assertEquals("java.lang.Object", e.getMonitorClass(0x76ab62228L));
+        assertNull(e.getMonitorClass(0x1L));
+
+        try {
+
+            e.getLockedMonitor(2);
+            fail("should have thrown exception");
+        }
+        catch(IndexOutOfBoundsException ex) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void update_ObjectWait() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(10L);
+
+        String[] lines = {
+                "   java.lang.Thread.State: WAITING (on object monitor)",
+                "\tat java.lang.Object.wait(Native Method)",
+                "\t- waiting on <0x00000006c0008ed0> (a java.lang.ref.ReferenceQueue$Lock)",
+                "\tat java.lang.ref.ReferenceQueue.remove(ReferenceQueue.java:143)",
+                "\t- locked <0x00000006c0008ed0> (a java.lang.ref.ReferenceQueue$Lock)",
+                "",
+        };
+
+        for(String line: lines) {
+
+            assertTrue(e.update(11L, line));
+        }
+
+        assertEquals(0x6c0008ed0L, e.getWaitingOnMonitor());
+        assertEquals(StackTraceEvent.NO_MONITOR, e.getBlockedOnMonitor());
+        assertEquals(1, e.getLockedMonitorCount());
+        assertEquals(0x6c0008ed0L, e.getLockedMonitor(0));
+    }
+
+    @Test
+    public void update_LockedOwnableSynchronizers() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(10L);
+
+        String[] lines = {
+                "   java.lang.Thread.State: WAITING (parking)",
+                "\tat sun.misc.Unsafe.park(Native Method)",
+                "\t- parking to wait for  <0x000000076ab8c5b8> " +
+                        "(a java.util.concurrent.locks.ReentrantLock$NonfairSync)",
+                "\tat java.util.concurrent.locks.LockSupport.park(LockSupport.java:175)",
+                "",
+                "   Locked ownable synchronizers:",
+                "\t- <0x000000076ab8c5a8> (a java.util.concurrent.locks.ReentrantLock$NonfairSync)",
+                "\t- <0x000000076ab8c6a8> (a java.util.concurrent.locks.ReentrantReadWriteLock$FairSync)",
+                "",
+        };
+
+        for(String line: lines) {
+
+            assertTrue(e.update(11L, line));
+        }
+
+        assertEquals(0x76ab8c5b8L, e.getParkedOn());
+        assertEquals(StackTraceEvent.NO_MONITOR, e.getBlockedOnMonitor());
+        assertEquals(0, e.getLockedMonitorCount());
+        assertEquals(
+                "java.util.concurrent.locks.ReentrantLock$NonfairSync", e.getMonitorClass(0x76ab8c5b8L));
+
+        assertEquals(2, e.getOwnedSynchronizerCount());
+        assertEquals(0x76ab8c5a8L, e.getOwnedSynchronizer(0));
+        assertEquals("java.util.concurrent.locks.ReentrantLock$NonfairSync", e.getOwnedSynchronizerClass(0));
+        assertEquals(0x76ab8c6a8L, e.getOwnedSynchronizer(1));
+        assertEquals("java.util.concurrent.locks.ReentrantReadWriteLock$FairSync", e.getOwnedSynchronizerClass(1));
+
+        //
+        // the locking information is not part of the stack
+        //
+
+        assertFalse(e.getStack().contains("Locked ownable synchronizers"));
+    }
+
+    @Test
+    public void update_LockedOwnableSynchronizers_None() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(10L);
+
+        for(String line: new String[] {
+                "   java.lang.Thread.State: RUNNABLE", "\tat A.b(A.java:1)", "",
+                "   Locked ownable synchronizers:", "\t- None", "" }) {
+
+            assertTrue(e.update(11L, line));
+        }
+
+        assertEquals(0, e.getOwnedSynchronizerCount());
+        assertEquals(StackTraceEvent.NO_MONITOR, e.getParkedOn());
+    }
+
+    @Test
+    public void monitorAddress() throws Exception {
+
+        assertEquals(0x76ab62208L, StackTraceEvent.monitorAddress("- locked <0x000000076ab62208> (a X)", 0));
+        assertEquals(0xffffffff00000001L, StackTraceEvent.monitorAddress("<0xffffffff00000001>", 0));
+        assertEquals(StackTraceEvent.NO_MONITOR,
+                StackTraceEvent.monitorAddress("- waiting on <no object reference available>", 0));
+        assertEquals(StackTraceEvent.NO_MONITOR, StackTraceEvent.monitorAddress("- locked <0x>", 0));
+        assertEquals(StackTraceEvent.NO_MONITOR, StackTraceEvent.monitorAddress("- locked <0xzz>", 0));
+        assertEquals(StackTraceEvent.NO_MONITOR, StackTraceEvent.monitorAddress("- locked <0x12", 0));
+    }
+
+    @Test
+    public void getStackFingerprint() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(10L);
+
+        assertEquals(0L, e.getStackFingerprint());
+
+        e.setStack("\tat A.a(A.java:1)\n\tat B.b(B.java:2)");
+        long f = e.getStackFingerprint();
+
+        assertTrue(f != 0L);
+        assertEquals(f, e.getStackFingerprint());
+
+        StackTraceEvent e2 = new StackTraceEvent(20L);
+        e2.setStack("\tat A.a(A.java:1)\n\tat B.b(B.java:2)");
+
+        assertEquals(f, e2.getStackFingerprint());
+
+        e2.setStack("\tat A.a(A.java:1)\n\tat B.b(B.java:3)");
+
+        assertTrue(f != e2.getStackFingerprint());
+    }
+
+    @Test
+    public void fingerprint() throws Exception {
+
+        String s = "\tat A.a(A.java:1)\n\tat B.b(B.java:2)";
+
+        StackTraceEvent e = new StackTraceEvent(10L);
+        e.setStack(s);
+
+        assertEquals(e.getStackFingerprint(), StackTraceEvent.fingerprint(s, 0, s.length()));
+        assertEquals(StackTraceEvent.fingerprint("\tat A.a(A.java:1)", 0, 17), StackTraceEvent.fingerprint(s, 0, 17));
+        assertTrue(StackTraceEvent.fingerprint(s, 0, 17) != StackTraceEvent.fingerprint(s, 0, 18));
+    }
+
+    @Test
+    public void getStackFingerprint_Parsed() throws Exception {
+
+        StackTraceEvent e = new StackTraceEvent(10L);
+
+        e.update(11L, "   java.lang.Thread.State: RUNNABLE");
+        e.update(12L, "\tat A.a(A.java:1)");
+
+        assertEquals(0L, e.getStackFingerprint());
+
+        e.update(13L, "");
+
+        StackTraceEvent e2 = new StackTraceEvent(20L);
+        e2.setStack(e.getStack());
+
+        assertTrue(e.getStackFingerprint() != 0L);
+        assertEquals(e2.getStackFingerprint(), e.getStackFingerprint());
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.ProcedureBase;
+
+/**
+ * Compares the per-event cost of a short, cheap procedure (count) when it is implemented one event at a time, as
+ * Count was before BatchProcedureBase, and when it gets runs of events through BatchProcedureBase.processBatch().
+ *
+ * Not a test, run it manually:
+ *
+ *      java -cp ... io.novaordis.events.java.threads.procedure.BatchProcedureBenchmark [events] [batch-size]
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/4/17
+ */
+public class BatchProcedureBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final int ROUNDS = 10;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+
+        int eventCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+        List<Event> events = new ArrayList<>(eventCount);
+
+        for(int i = 0; i < eventCount; i ++) {
+
+            //
+            // one dump every 200 ms
+            //
+
+            JavaThreadDumpEvent e = new JavaThreadDumpEvent((long)i, 1500000000000L + 200L * i);
+            StackTraceEvent ste = new StackTraceEvent((long)i);
+            ste.setTid("1");
+            e.addStackTrace(ste);
+            events.add(e);
+        }
+
+        PrintStream devNull = new PrintStream(new OutputStream() {
+
+            @Override
+            public void write(int b) {
+                // discard
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // discard
+            }
+        });
+
+        for(int round = 0; round < ROUNDS; round ++) {
+
+            //
+            // the first rounds warm up the JIT
+            //
+
+            PerEventCount perEvent = new PerEventCount(devNull);
+
+            long t0 = System.nanoTime();
+
+            for(Event e: events) {
+
+                perEvent.process(e);
+            }
+
+            perEvent.process(new EndOfStreamEvent());
+
+            long perEventNanos = System.nanoTime() - t0;
+
+            Count batched = new Count();
+            batched.setPrintStream(devNull);
+
+            t0 = System.nanoTime();
+
+            for(int i = 0; i < eventCount; i += batchSize) {
+
+                batched.processBatch(events.subList(i, Math.min(eventCount, i + batchSize)));
+            }
+
+            batched.process(new EndOfStreamEvent());
+
+            long batchedNanos = System.nanoTime() - t0;
+
+            System.out.printf(
+                    "round %2d: one at a time %7.1f ns/event, batches of %d %7.1f ns/event%n",
+                    round, (double)perEventNanos / eventCount, batchSize, (double)batchedNanos / eventCount);
+        }
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The one-event-at-a-time implementation Count had before BatchProcedureBase.
+     */
+    private static class PerEventCount extends ProcedureBase {
+
+        private final PrintStream out;
+        private final SimpleDateFormat timestampFormat;
+
+        PerEventCount(PrintStream out) {
+
+            this.out = out;
+            this.timestampFormat = new SimpleDateFormat(BatchProcedureBase.TIMESTAMP_FORMAT);
+        }
+
+        @Override
+        protected void process(AtomicLong invocationCount, Event e) throws EventProcessingException {
+
+            if (e instanceof EndOfStreamEvent) {
+
+                return;
+            }
+
+            if (!(e instanceof JavaThreadDumpEvent)) {
+
+                throw new IllegalArgumentException("expecting a JavaThreadDumpEvent, got " + e);
+            }
+
+            JavaThreadDumpEvent jtde = (JavaThreadDumpEvent)e;
+
+            out.println(timestampFormat.format(jtde.getTime()) + ", " + jtde.getThreadCount());
+        }
+
+        @Override
+        public List<String> getCommandLineLabels() {
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/3/17
+ */
+public class CompositeProcedureTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void process_AllProceduresSeeAllEvents() throws Exception {
+
+        for(boolean threaded: new boolean[] { false, true }) {
+
+            CompositeProcedure c = new CompositeProcedure("count,names", threaded);
+
+            Count count = new Count();
+            ByteArrayOutputStream countBaos = new ByteArrayOutputStream();
+            count.setPrintStream(new PrintStream(countBaos));
+
+            Names names = new Names();
+            ByteArrayOutputStream namesBaos = new ByteArrayOutputStream();
+            names.setPrintStream(new PrintStream(namesBaos));
+
+            c.addProcedure(count, null);
+            c.addProcedure(names, null);
+
+            for(int i = 1; i <= 3; i ++) {
+
+                c.process(threadDump(i * 1000L, i));
+            }
+
+            c.process(new EndOfStreamEvent());
+
+            String expectedCount =
+                    count.getTimestampFormat().format(1000L) + ", 1\n" +
+                            count.getTimestampFormat().format(2000L) + ", 2\n" +
+                            count.getTimestampFormat().format(3000L) + ", 3\n";
+
+            assertEquals(expectedCount, new String(countBaos.toByteArray()));
+
+            String[] namesLines = new String(namesBaos.toByteArray()).split("\n");
+            assertEquals(9, namesLines.length);
+            assertEquals(names.getTimestampFormat().format(3000L), namesLines[5]);
+            assertEquals("  thread-2", namesLines[8]);
+        }
+    }
+
+    @Test
+    public void process_OutputFile() throws Exception {
+
+        File output = new File(System.getProperty("test.scratch.directory"), "composite-count.txt");
+        assertTrue(!output.exists() || output.delete());
+
+        CompositeProcedure c = new CompositeProcedure("count:" + output, false);
+
+        Count count = new Count();
+        c.addProcedure(count, output);
+
+        c.process(threadDump(1000L, 2));
+        c.process(new EndOfStreamEvent());
+
+        String actual = new String(Files.readAllBytes(output.toPath()));
+        assertEquals(count.getTimestampFormat().format(1000L) + ", 2\n", actual);
+
+        assertTrue(output.delete());
+    }
+
+    @Test
+    public void addProcedure_OutputCannotBeRedirected() throws Exception {
+
+        CompositeProcedure c = new CompositeProcedure("test", false);
+
+        try {
+
+            c.addProcedure(new CompositeProcedure("other", false), new File("something.txt"));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("cannot be redirected"));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected CompositeProcedure getProcedureToTest() throws Exception {
+
+        CompositeProcedure c = new CompositeProcedure("count", false);
+        c.addProcedure(new Count(), null);
+        return c;
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static JavaThreadDumpEvent threadDump(long timestamp, int threadCount) {
+
+        JavaThreadDumpEvent e = new JavaThreadDumpEvent(1L, timestamp);
+
+        for(int i = 0; i < threadCount; i ++) {
+
+            StackTraceEvent ste = new StackTraceEvent((long)(10 + i));
+            ste.setThreadName("thread-" + i);
+            ste.setTid(Integer.toHexString(i + 1));
+            e.addStackTrace(ste);
+        }
+
+        return e;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.readSingle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/22/17
+ */
+public class ContentionTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(Contention.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "contention", "--top=5", "--convoy-waiters=4", "--convoy-dumps=6", "a.txt", "--by-class"));
+
+        Contention c = new Contention(1, args);
+
+        assertEquals(Arrays.asList("contention", "a.txt", "--by-class"), args);
+        assertEquals(5, c.getTop());
+        assertEquals(4, c.getConvoyWaiters());
+        assertEquals(6, c.getConvoyDumps());
+        assertFalse(c.isByClass());
+    }
+
+    @Test
+    public void constructor_InvalidOption() throws Exception {
+
+        try {
+
+            new Contention(0, new ArrayList<>(Arrays.asList("--convoy-dumps=0")));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("--convoy-dumps"));
+        }
+    }
+
+    @Test
+    public void process_Monitors() throws Exception {
+
+        Contention c = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        c.setPrintStream(new PrintStream(baos));
+
+        JavaThreadDumpEvent dump = readSingle("018_deadlock.txt");
+
+        c.process(dump);
+
+        String nl = System.lineSeparator();
+        String ts = c.getTimestampFormat().format(dump.getTime());
+
+        assertEquals(
+                ts + ", 0x000000076ab62208, com.example.Account, 2, worker-1, com.example.Transfer.debit" + nl +
+                ts + ", 0x00000006c0008ed0, java.lang.ref.ReferenceQueue$Lock, 1, -, -" + nl +
+                ts + ", 0x000000076ab62218, com.example.Account, 1, worker-2, com.example.Transfer.debit" + nl,
+                new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_OwnableSynchronizers_ConditionsAreNotLocks() throws Exception {
+
+        Contention c = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        c.setPrintStream(new PrintStream(baos));
+
+        c.process(readSingle("019_ownable_synchronizers.txt"));
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].endsWith(
+                ", 0x000000076ab8c5a8, java.util.concurrent.locks.ReentrantLock$NonfairSync, 2, lock-a, " +
+                        "sun.misc.Unsafe.park"));
+
+        for(String line: lines) {
+
+            assertTrue(line, !line.contains("ConditionObject"));
+        }
+    }
+
+    @Test
+    public void process_ByClass() throws Exception {
+
+        Contention c = new Contention(0, new ArrayList<>(Arrays.asList("--by-class", "--top=1")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        c.setPrintStream(new PrintStream(baos));
+
+        JavaThreadDumpEvent dump = readSingle("018_deadlock.txt");
+
+        c.process(dump);
+
+        assertEquals(
+                c.getTimestampFormat().format(dump.getTime()) +
+                        ", com.example.Account, 3, worker-1, com.example.Transfer.debit" + System.lineSeparator(),
+                new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_Convoy() throws Exception {
+
+        Contention c = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        c.setPrintStream(new PrintStream(baos));
+
+        c.processBatch(Arrays.asList(
+                contended(0L, 3), contended(30000L, 4), contended(60000L, 3), contended(90000L, 3),
+                contended(120000L, 1), contended(150000L, 3), contended(180000L, 3)));
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        assertEquals(7, lines.length);
+
+        String since = ", convoy since " + c.getTimestampFormat().format(0L);
+
+        assertTrue(lines[0].endsWith(", 3, owner, -"));
+        assertTrue(lines[1].endsWith(", 4, owner, -"));
+        assertTrue(lines[2].endsWith(", 3, owner, -" + since));
+        assertTrue(lines[3].endsWith(", 3, owner, -" + since));
+        assertTrue(lines[4].endsWith(", 1, owner, -"));
+        assertTrue(lines[5].endsWith(", 3, owner, -"));
+        assertTrue(lines[6].endsWith(", 3, owner, -"));
+
+        assertEquals(1L, c.getConvoyCount());
+
+        c.process(new EndOfStreamEvent());
+
+        assertTrue(new String(baos.toByteArray()).endsWith("7 thread dump(s), 1 convoy(s)" + System.lineSeparator()));
+    }
+
+    @Test
+    public void process_NoWaiters() throws Exception {
+
+        Contention c = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        c.setPrintStream(new PrintStream(baos));
+
+        c.process(contended(0L, 0));
+
+        assertEquals(0, baos.size());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Contention getProcedureToTest() throws Exception {
+
+        return new Contention();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * A thread dump in which a thread holds a monitor, and the given number of threads are blocked on it.
+     */
+    private static JavaThreadDumpEvent contended(long time, int waiters) {
+
+        JavaThreadDumpEvent e = new JavaThreadDumpEvent(1L, time);
+
+        StackTraceEvent owner = new StackTraceEvent(1L);
+        owner.setThreadName("owner");
+        owner.addLockedMonitor(0x6c0000000L);
+        e.addStackTrace(owner);
+
+        for(int i = 0; i < waiters; i ++) {
+
+            StackTraceEvent st = new StackTraceEvent(1L);
+            st.setThreadName("waiter-" + i);
+            st.setBlockedOnMonitor(0x6c0000000L);
+            e.addStackTrace(st);
+        }
+
+        return e;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
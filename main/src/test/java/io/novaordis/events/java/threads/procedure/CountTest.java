@@ -18,14 +18,22 @@ package io.novaordis.events.java.threads.procedure;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.api.event.GenericEvent;
 import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
 import io.novaordis.events.java.threads.event.StackTraceEvent;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
@@ -80,6 +88,140 @@ public class CountTest extends ProcedureTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void streaming_SameOutputAsProcess() throws Exception {
+
+        Count c = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        c.setPrintStream(new PrintStream(baos));
+
+        c.beginThreadDump(new JavaThreadDumpEvent(1L, 1000L));
+        c.processStackTrace(new StackTraceEvent(10L));
+        c.processStackTrace(new StackTraceEvent(20L));
+        c.endThreadDump();
+
+        c.beginThreadDump(new JavaThreadDumpEvent(30L, 2000L));
+        c.endThreadDump();
+
+        c.process(new EndOfStreamEvent());
+
+        assertEquals(
+                c.getTimestampFormat().format(1000L) + ", 2\n" + c.getTimestampFormat().format(2000L) + ", 0\n",
+                new String(baos.toByteArray()));
+    }
+
+    // processBatch() --------------------------------------------------------------------------------------------------
+
+    @Test
+    public void processBatch() throws Exception {
+
+        Count c = getProcedureToTest();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(baos);
+
+        c.setPrintStream(out);
+
+        List<Event> batch = new ArrayList<>();
+
+        for(int i = 1; i <= 3; i ++) {
+
+            JavaThreadDumpEvent e = new JavaThreadDumpEvent(1L, i * 500L);
+
+            for(int j = 0; j < i; j ++) {
+
+                StackTraceEvent ste = new StackTraceEvent(10L + j);
+                ste.setTid(Integer.toHexString(j + 1));
+                e.addStackTrace(ste);
+            }
+
+            batch.add(e);
+        }
+
+        batch.add(new EndOfStreamEvent());
+
+        c.processBatch(batch);
+
+        out.flush();
+
+        String actual = new String(baos.toByteArray());
+
+        String expected =
+                c.getTimestampFormat().format(500L) + ", 1\n" +
+                        c.getTimestampFormat().format(1000L) + ", 2\n" +
+                        c.getTimestampFormat().format(1500L) + ", 3\n";
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void processBatch_InvocationCount() throws Exception {
+
+        Count c = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        c.setPrintStream(new PrintStream(baos));
+
+        c.processBatch(Arrays.asList(new JavaThreadDumpEvent(1L, 500L), new JavaThreadDumpEvent(1L, 1000L)));
+
+        assertEquals(2L, c.getInvocationCount());
+        assertEquals(
+                c.getTimestampFormat().format(500L) + ", 0\n" + c.getTimestampFormat().format(1000L) + ", 0\n",
+                new String(baos.toByteArray()));
+
+        c.process(new JavaThreadDumpEvent(1L, 1500L));
+
+        assertEquals(3L, c.getInvocationCount());
+
+        c.processBatch(Arrays.asList(new JavaThreadDumpEvent(1L, 2000L), new EndOfStreamEvent()));
+
+        assertEquals(5L, c.getInvocationCount());
+    }
+
+    @Test
+    public void processBatch_InvocationCount_EndOfStreamOnly() throws Exception {
+
+        Count c = getProcedureToTest();
+
+        c.processBatch(Collections.singletonList(new EndOfStreamEvent()));
+
+        assertEquals(1L, c.getInvocationCount());
+    }
+
+    @Test
+    public void processBatch_NotAJavaThreadDumpEvent_NothingProcessed() throws Exception {
+
+        Count c = getProcedureToTest();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(baos);
+
+        c.setPrintStream(out);
+
+        try {
+
+            c.processBatch(Arrays.asList(new JavaThreadDumpEvent(1L, 1000L), new GenericEvent()));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("expecting a JavaThreadDumpEvent"));
+        }
+
+        out.flush();
+
+        assertEquals(0, baos.toByteArray().length);
+
+        //
+        // the rejected batch does not leak into the next one
+        //
+
+        c.processBatch(Arrays.asList(new JavaThreadDumpEvent(1L, 2000L)));
+
+        out.flush();
+
+        assertEquals(c.getTimestampFormat().format(2000L) + ", 0\n", new String(baos.toByteArray()));
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.read;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/20/17
+ */
+public class DeadlocksTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(Deadlocks.LABEL));
+    }
+
+    @Test
+    public void process_Deadlock() throws Exception {
+
+        Deadlocks d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        List<JavaThreadDumpEvent> dumps = read("018_deadlock.txt");
+        assertEquals(1, dumps.size());
+
+        d.process(dumps.get(0));
+
+        String nl = System.lineSeparator();
+
+        //
+        // "auditor" waits for a deadlocked thread, but it is not part of the cycle; "cleaner" waits for a monitor that
+        // the Finalizer released in Object.wait()
+        //
+
+        assertEquals(
+                d.getTimestampFormat().format(dumps.get(0).getTime()) + " Java-level deadlock, 2 thread(s):" + nl +
+                "    \"worker-2\" waiting to lock <0x000000076ab62208> (a com.example.Account), held by " +
+                "\"worker-1\"" + nl +
+                "    \"worker-1\" waiting to lock <0x000000076ab62218> (a com.example.Account), held by " +
+                "\"worker-2\"" + nl,
+                new String(baos.toByteArray()));
+
+        d.process(new EndOfStreamEvent());
+
+        assertTrue(new String(baos.toByteArray()).endsWith("1 thread dump(s), 1 deadlock(s)" + nl));
+        assertEquals(1L, d.getDeadlockCount());
+    }
+
+    @Test
+    public void process_OwnableSynchronizers() throws Exception {
+
+        Deadlocks d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        List<JavaThreadDumpEvent> dumps = read("019_ownable_synchronizers.txt");
+        assertEquals(1, dumps.size());
+
+        d.process(dumps.get(0));
+
+        String nl = System.lineSeparator();
+        String timestamp = d.getTimestampFormat().format(dumps.get(0).getTime());
+
+        //
+        // a deadlock between two ReentrantLocks, and one between a ReentrantLock and a monitor; "reader" waits for a
+        // deadlocked thread, "consumer" waits for a condition nobody owns
+        //
+
+        assertEquals(
+                timestamp + " Java-level deadlock, 2 thread(s):" + nl +
+                "    \"lock-a\" waiting for ownable synchronizer <0x000000076ab8c5b8> " +
+                "(a java.util.concurrent.locks.ReentrantLock$NonfairSync), held by \"lock-b\"" + nl +
+                "    \"lock-b\" waiting for ownable synchronizer <0x000000076ab8c5a8> " +
+                "(a java.util.concurrent.locks.ReentrantLock$NonfairSync), held by \"lock-a\"" + nl +
+                timestamp + " Java-level deadlock, 2 thread(s):" + nl +
+                "    \"mixed-1\" waiting for ownable synchronizer <0x000000076ab8c5c8> " +
+                "(a java.util.concurrent.locks.ReentrantLock$FairSync), held by \"mixed-2\"" + nl +
+                "    \"mixed-2\" waiting to lock <0x000000076ab62300> (a com.example.Cache), held by \"mixed-1\"" + nl,
+                new String(baos.toByteArray()));
+
+        assertEquals(2L, d.getDeadlockCount());
+    }
+
+    @Test
+    public void process_NoDeadlock() throws Exception {
+
+        Deadlocks d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        for(JavaThreadDumpEvent e: read("015_successive_thread_dumps.txt")) {
+
+            d.process(e);
+        }
+
+        assertEquals(0, baos.size());
+
+        d.process(new EndOfStreamEvent());
+
+        assertEquals("3 thread dump(s), 0 deadlock(s)" + System.lineSeparator(), new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_LongChainAndLargeCycle() throws Exception {
+
+        Deadlocks d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        //
+        // 20000 threads: thread i holds monitor i and waits for monitor i + 1, thread 19999 waits for nothing; then
+        // the same, with the last thread waiting for monitor 0
+        //
+
+        int n = 20000;
+
+        d.process(chain(0L, n, false));
+        assertEquals(0, baos.size());
+
+        d.process(chain(1000L, n, true));
+
+        String s = new String(baos.toByteArray());
+        assertTrue(s.contains("Java-level deadlock, " + n + " thread(s):"));
+        assertEquals(n + 1, s.split(System.lineSeparator()).length);
+        assertEquals(1L, d.getDeadlockCount());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Deadlocks getProcedureToTest() throws Exception {
+
+        return new Deadlocks();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static JavaThreadDumpEvent chain(long time, int n, boolean closed) {
+
+        JavaThreadDumpEvent e = new JavaThreadDumpEvent(1L, time);
+
+        for(int i = 0; i < n; i ++) {
+
+            StackTraceEvent st = new StackTraceEvent(1L);
+            st.setThreadName("t-" + i);
+            st.addLockedMonitor(0x6c0000000L + 8L * i);
+
+            if (i < n - 1) {
+
+                st.setBlockedOnMonitor(0x6c0000000L + 8L * (i + 1));
+            }
+            else if (closed) {
+
+                st.setBlockedOnMonitor(0x6c0000000L);
+            }
+
+            e.addStackTrace(st);
+        }
+
+        return e;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.dump;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.read;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.thread;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/23/17
+ */
+public class DiffTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(Diff.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList("diff", "--threads", "a.txt", "--threads"));
+
+        Diff d = new Diff(1, args);
+
+        assertEquals(Arrays.asList("diff", "a.txt", "--threads"), args);
+        assertTrue(d.isThreads());
+        assertFalse(getProcedureToTest().isThreads());
+    }
+
+    @Test
+    public void process_FirstThreadDumpIsNotReported() throws Exception {
+
+        Diff d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        d.process(dump(0L, thread(1, "main", "runnable", "A.run")));
+
+        assertEquals(0, baos.size());
+    }
+
+    @Test
+    public void process() throws Exception {
+
+        Diff d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        d.processBatch(Arrays.asList(
+                dump(0L,
+                        thread(1, "main", "runnable", "A.run"),
+                        thread(2, "worker-1", "runnable", "B.run"),
+                        thread(3, "worker-2", "runnable", "C.run"),
+                        thread(4, "worker-3", "runnable", "D.run")),
+                dump(30000L,
+                        thread(1, "main", "runnable", "A.run"),
+                        thread(2, "worker-1", "waiting on condition", "B.park"),
+                        thread(3, "worker-2", "runnable", "C.read"),
+                        thread(5, "worker-4", "runnable", "E.run"),
+                        thread(6, "worker-5", "runnable", "F.run"))));
+
+        String nl = System.lineSeparator();
+
+        assertEquals(
+                d.getTimestampFormat().format(30000L) + " 5 thread(s), 2 created, 1 gone, 1 changed state, " +
+                        "1 changed stack, churn 75.0% (4.0 created/min, 2.0 gone/min)" + nl,
+                new String(baos.toByteArray()));
+
+        assertEquals(2L, d.getCreatedCount());
+        assertEquals(1L, d.getGoneCount());
+
+        d.process(new EndOfStreamEvent());
+
+        assertTrue(new String(baos.toByteArray()).endsWith(
+                "2 thread dump(s), 2 thread(s) created, 1 thread(s) gone" + nl));
+    }
+
+    @Test
+    public void process_Threads() throws Exception {
+
+        Diff d = new Diff(0, new ArrayList<>(Arrays.asList("--threads")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        d.processBatch(Arrays.asList(
+                dump(0L,
+                        thread(1, "main", "runnable", "A.run"),
+                        thread(2, "worker-1", "runnable", "B.run"),
+                        thread(3, "worker-2", "runnable", "C.run")),
+                dump(60000L,
+                        thread(1, "main", "runnable", "A.read"),
+                        thread(2, "worker-1", "waiting on condition", "B.park"),
+                        thread(4, "worker-3", "runnable", "D.run"))));
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].endsWith(" 3 thread(s), 1 created, 1 gone, 1 changed state, 1 changed stack, " +
+                "churn 66.7% (1.0 created/min, 1.0 gone/min)"));
+        assertEquals("* \"main\"", lines[1]);
+        assertEquals("~ \"worker-1\" RUNNABLE -> WAITING_ON_CONDITION", lines[2]);
+        assertEquals("+ \"worker-3\" RUNNABLE", lines[3]);
+        assertEquals("- \"worker-2\"", lines[4]);
+    }
+
+    @Test
+    public void process_ReusedTid() throws Exception {
+
+        Diff d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        d.processBatch(Arrays.asList(
+                dump(0L, thread(1, "worker-1", "runnable", "A.run")),
+                dump(0L, thread(1, "worker-2", "runnable", "A.run"))));
+
+        assertTrue(new String(baos.toByteArray()).contains(" 1 thread(s), 1 created, 1 gone, "));
+    }
+
+    @Test
+    public void process_ThreadsWithoutTidAreIgnored() throws Exception {
+
+        Diff d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        StackTraceEvent noTid = new StackTraceEvent(1L);
+        noTid.setThreadName("VM Thread");
+
+        d.processBatch(Arrays.asList(dump(0L, thread(1, "main", "runnable")), dump(0L, noTid)));
+
+        assertTrue(new String(baos.toByteArray()).contains(" 0 thread(s), 0 created, 1 gone, "));
+    }
+
+    @Test
+    public void process_InvalidThreadStateIsReportedAsUnknown() throws Exception {
+
+        Diff d = new Diff(0, new ArrayList<>(Arrays.asList("--threads")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        StackTraceEvent invalid = thread(1, "main", null, "A.run");
+        invalid.setStringProperty(StackTraceEvent.THREAD_STATE_PROPERTY_NAME, "something");
+
+        d.processBatch(Arrays.asList(dump(0L, thread(1, "main", "runnable", "A.run")), dump(0L, invalid)));
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        assertEquals(2, lines.length);
+        assertEquals("~ \"main\" RUNNABLE -> -", lines[1]);
+    }
+
+    @Test
+    public void process_PidChangeStartsOver() throws Exception {
+
+        Diff d = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        JavaThreadDumpEvent first = dump(0L, thread(1, "main", "runnable"));
+        first.setPid(100);
+        JavaThreadDumpEvent second = dump(30000L, thread(2, "main", "runnable"));
+        second.setPid(200);
+
+        d.processBatch(Arrays.asList(first, second));
+
+        assertEquals(0, baos.size());
+        assertEquals(0L, d.getCreatedCount());
+    }
+
+    @Test
+    public void process_ThreadDumpFile() throws Exception {
+
+        Diff d = new Diff(0, new ArrayList<>(Arrays.asList("--threads")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.setPrintStream(new PrintStream(baos));
+
+        for(JavaThreadDumpEvent e: read("015_successive_thread_dumps.txt")) {
+
+            d.process(e);
+        }
+
+        d.process(new EndOfStreamEvent());
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        //
+        // the first thread dump is the baseline; two threads are replaced between the first and the second
+        //
+
+        assertEquals(7, lines.length);
+        assertEquals("08/13/17 17:42:10 14 thread(s), 2 created, 2 gone, 0 changed state, 0 changed stack, " +
+                "churn 28.6% (10.9 created/min, 10.9 gone/min)", lines[0]);
+        assertEquals("+ \"Finalizer\" OBJECT_WAIT", lines[1]);
+        assertEquals("+ \"Reference Handler\" OBJECT_WAIT", lines[2]);
+        assertEquals("- \"Thread-0 (HornetQ-Asynchronous-Persistent-Writes1325617527-1999251805)\"", lines[3]);
+        assertEquals("- \"transport-thread-1\"", lines[4]);
+        assertEquals("08/13/17 17:42:21 14 thread(s), 0 created, 0 gone, 0 changed state, 0 changed stack, " +
+                "churn 0.0% (0.0 created/min, 0.0 gone/min)", lines[5]);
+        assertEquals("3 thread dump(s), 2 thread(s) created, 2 thread(s) gone", lines[6]);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Diff getProcedureToTest() throws Exception {
+
+        return new Diff();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
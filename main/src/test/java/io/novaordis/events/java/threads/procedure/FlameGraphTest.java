@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.StagedThreadDumpProcessor;
+import io.novaordis.events.java.threads.ThreadDumpReader;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.dump;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.thread;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/17/17
+ */
+public class FlameGraphTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(FlameGraph.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList("flamegraph", "--state=blocked", "a.txt", "--state=x"));
+
+        FlameGraph f = new FlameGraph(1, args);
+
+        assertEquals(Arrays.asList("flamegraph", "a.txt", "--state=x"), args);
+        assertEquals(1, f.getFilter().getStates().size());
+    }
+
+    @Test
+    public void process_CollapsedStacks() throws Exception {
+
+        FlameGraph f = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        f.setPrintStream(new PrintStream(baos));
+
+        f.processBatch(Arrays.asList(
+                dump(1000L,
+                        thread("a", "runnable", "A.read", "A.run", "Thread.run"),
+                        thread("b", "waiting on condition", "B.park", "A.run", "Thread.run"),
+                        thread("c", "runnable", "A.run", "Thread.run"),
+                        thread("VM Thread", "runnable")),
+                dump(2000L,
+                        thread("a", "runnable", "A.read", "A.run", "Thread.run"))));
+
+        assertEquals(0, baos.size());
+
+        f.process(new EndOfStreamEvent());
+
+        String nl = System.lineSeparator();
+
+        assertEquals(
+                "Thread.run;A.run 1" + nl +
+                "Thread.run;A.run;A.read 2" + nl +
+                "Thread.run;A.run;B.park 1" + nl,
+                new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void streaming_SameOutputAsProcess() throws Exception {
+
+        FlameGraph f = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        f.setPrintStream(new PrintStream(baos));
+
+        f.beginThreadDump(new JavaThreadDumpEvent(1L, 1000L));
+        f.processStackTrace(thread("a", "runnable", "A.read", "A.run", "Thread.run"));
+        f.processStackTrace(thread("b", "waiting on condition", "B.park", "A.run", "Thread.run"));
+        f.processStackTrace(thread("VM Thread", "runnable"));
+        f.endThreadDump();
+
+        f.processBatch(Collections.singletonList(
+                dump(2000L, thread("a", "runnable", "A.read", "A.run", "Thread.run"))));
+
+        f.process(new EndOfStreamEvent());
+
+        String nl = System.lineSeparator();
+
+        assertEquals(
+                "Thread.run;A.run;A.read 2" + nl +
+                "Thread.run;A.run;B.park 1" + nl,
+                new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_StateFilter() throws Exception {
+
+        FlameGraph f = new FlameGraph(0, new ArrayList<>(Arrays.asList("--state=WAITING")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        f.setPrintStream(new PrintStream(baos));
+
+        f.process(dump(1000L,
+                thread("a", "runnable", "A.read", "A.run"),
+                thread("b", "waiting on condition", "B.park", "A.run"),
+                thread("c", "in Object.wait()", "Object.wait", "C.run")));
+
+        f.process(new EndOfStreamEvent());
+
+        String nl = System.lineSeparator();
+
+        assertEquals("A.run;B.park 1" + nl + "C.run;Object.wait 1" + nl, new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void trie_MemoryScalesWithDistinctCallPaths() throws Exception {
+
+        FlameGraph f = getProcedureToTest();
+        FlameGraph.CallTrie t = f.newPartial();
+
+        for(int i = 0; i < 1000; i ++) {
+
+            f.accumulate(t, dump(i * 1000L,
+                    thread("a-" + i, "runnable", "A.read", "A.run", "Thread.run"),
+                    thread("b-" + i, "runnable", "B.write", "A.run", "Thread.run")));
+        }
+
+        //
+        // root, Thread.run, A.run, A.read and B.write
+        //
+
+        assertEquals(5, t.getNodeCount());
+        assertEquals(2000L, t.getSampleCount());
+    }
+
+    // AggregatingProcedure ------------------------------------------------------------------------------------------
+
+    @Test
+    public void aggregate_MergedPartialsProduceTheSameOutputAsSequentialProcessing() throws Exception {
+
+        List<JavaThreadDumpEvent> dumps = Arrays.asList(
+                dump(0L, thread("a", "runnable", "A.read", "A.run"), thread("b", "runnable", "B.park")),
+                dump(1000L, thread("a", "runnable", "C.write", "A.run")),
+                dump(3500L, thread("b", "runnable", "B.park", "C.write")),
+                dump(4000L, thread("a", "runnable", "A.read", "A.run"), thread("c", "runnable", "D.x", "B.park")));
+
+        FlameGraph sequential = getProcedureToTest();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sequential.setPrintStream(new PrintStream(expected));
+        sequential.processBatch(dumps);
+        sequential.process(new EndOfStreamEvent());
+
+        for(int i = 0; i <= dumps.size(); i ++) {
+
+            for(int j = i; j <= dumps.size(); j ++) {
+
+                FlameGraph f = getProcedureToTest();
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                f.setPrintStream(new PrintStream(actual));
+
+                FlameGraph.CallTrie first = partial(f, dumps.subList(0, i));
+                first.merge(partial(f, dumps.subList(i, j)));
+                first.merge(partial(f, dumps.subList(j, dumps.size())));
+
+                assertEquals(6L, first.getSampleCount());
+
+                f.emit(first);
+                f.process(new EndOfStreamEvent());
+
+                assertEquals(i + ", " + j, new String(expected.toByteArray()), new String(actual.toByteArray()));
+            }
+        }
+    }
+
+    @Test
+    public void stagedProcessing_SameOutputAsSequentialProcessing() throws Exception {
+
+        File file =
+                new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(file.isFile());
+
+        FlameGraph sequential = getProcedureToTest();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sequential.setPrintStream(new PrintStream(expected));
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(file)));
+
+        JavaThreadDumpEvent e;
+
+        while((e = r.next()) != null) {
+
+            sequential.process(e);
+        }
+
+        r.close();
+
+        sequential.process(new EndOfStreamEvent());
+
+        String s = new String(expected.toByteArray());
+        assertTrue(s.contains("java.lang.Thread.run;"));
+
+        FlameGraph f = getProcedureToTest();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        f.setPrintStream(new PrintStream(actual));
+
+        new StagedThreadDumpProcessor(new BufferedReader(new FileReader(file)), f, null, 3).run();
+
+        assertEquals(s, new String(actual.toByteArray()));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected FlameGraph getProcedureToTest() throws Exception {
+
+        return new FlameGraph();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static FlameGraph.CallTrie partial(FlameGraph f, List<JavaThreadDumpEvent> dumps) {
+
+        FlameGraph.CallTrie t = f.newPartial();
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            f.accumulate(t, d);
+        }
+
+        return t;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.StagedThreadDumpProcessor;
+import io.novaordis.events.java.threads.ThreadDumpReader;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.dump;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.thread;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/16/17
+ */
+public class HotMethodsTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(HotMethods.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "hot-methods", "--state=runnable,waiting-on-condition", "--thread-name=^http", "--top=5", "a.txt"));
+
+        HotMethods h = new HotMethods(1, args);
+
+        assertEquals(Arrays.asList("hot-methods", "a.txt"), args);
+        assertEquals(2, h.getStates().size());
+        assertTrue(h.getStates().contains(ThreadState.RUNNABLE));
+        assertTrue(h.getStates().contains(ThreadState.WAITING_ON_CONDITION));
+        assertEquals("^http", h.getThreadName().pattern());
+        assertEquals(5, h.getTop());
+    }
+
+    @Test
+    public void constructor_NoOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList("hot-methods", "a.txt"));
+
+        HotMethods h = new HotMethods(1, args);
+
+        assertEquals(2, args.size());
+        assertNull(h.getStates());
+        assertNull(h.getThreadName());
+        assertEquals(HotMethods.DEFAULT_TOP, h.getTop());
+    }
+
+    @Test
+    public void constructor_InvalidOptions() throws Exception {
+
+        String[] invalid = { "--state=running", "--top=0", "--top=x", "--thread-name=(" };
+
+        for(String s: invalid) {
+
+            try {
+
+                new HotMethods(0, new ArrayList<>(Arrays.asList(s)));
+                fail("should have thrown exception on " + s);
+            }
+            catch(IllegalArgumentException e) {
+
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void weight() throws Exception {
+
+        assertEquals(1L, HotMethods.weight(0L));
+        assertEquals(1L, HotMethods.weight(-5L));
+        assertEquals(1500L, HotMethods.weight(1500L));
+        assertEquals(HotMethods.MAX_INTERVAL_MS, HotMethods.weight(HotMethods.MAX_INTERVAL_MS + 1));
+    }
+
+    @Test
+    public void process_RegularIntervals() throws Exception {
+
+        HotMethods h = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        h.setPrintStream(new PrintStream(baos));
+
+        h.processBatch(Arrays.asList(
+                dump(1000L,
+                        thread("a", "runnable", "A.read", "A.run"),
+                        thread("b", "waiting on condition", "B.park", "A.run")),
+                dump(2000L,
+                        thread("a", "runnable", "A.read", "A.run"),
+                        thread("b", "runnable", "A.run", "A.run"))));
+
+        assertEquals(0, baos.size());
+
+        h.process(new EndOfStreamEvent());
+
+        String nl = System.lineSeparator();
+
+        String expected =
+                "2 thread dump(s), 4.0 thread sample(s)" + nl +
+                nl +
+                "top 3 method(s) by self samples:" + nl +
+                "  self, self%, total, total%, method" + nl +
+                "  2.0, 50.0%, 2.0, 50.0%, A.read" + nl +
+                "  1.0, 25.0%, 4.0, 100.0%, A.run" + nl +
+                "  1.0, 25.0%, 1.0, 25.0%, B.park" + nl +
+                nl +
+                "top 3 method(s) by total samples:" + nl +
+                "  self, self%, total, total%, method" + nl +
+                "  1.0, 25.0%, 4.0, 100.0%, A.run" + nl +
+                "  2.0, 50.0%, 2.0, 50.0%, A.read" + nl +
+                "  1.0, 25.0%, 1.0, 25.0%, B.park" + nl;
+
+        assertEquals(expected, new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_IrregularIntervals_TimeWeighted() throws Exception {
+
+        HotMethods h = getProcedureToTest();
+        h.setTop(1);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        h.setPrintStream(new PrintStream(baos));
+
+        //
+        // weights 1000 and 3000, and 2000 (the average) for the first thread dump: 6000 ms for 3 samples
+        //
+
+        h.processBatch(Arrays.asList(
+                dump(0L, thread("a", "runnable", "A.first")),
+                dump(1000L, thread("a", "runnable", "A.second")),
+                dump(4000L, thread("a", "runnable", "A.third"))));
+
+        h.process(new EndOfStreamEvent());
+
+        String s = new String(baos.toByteArray());
+
+        assertTrue(s.startsWith("3 thread dump(s), 3.0 thread sample(s)"));
+        assertTrue(s.contains("  1.5, 50.0%, 1.5, 50.0%, A.third"));
+    }
+
+    @Test
+    public void process_Filters() throws Exception {
+
+        HotMethods h = new HotMethods(0, new ArrayList<>(Arrays.asList("--state=RUNNABLE", "--thread-name=^http")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        h.setPrintStream(new PrintStream(baos));
+
+        h.process(dump(1000L,
+                thread("http-1", "runnable", "H.service"),
+                thread("http-2", "waiting on condition", "H.park"),
+                thread("worker", "runnable", "W.work")));
+
+        h.process(new EndOfStreamEvent());
+
+        String s = new String(baos.toByteArray());
+
+        assertTrue(s.startsWith("1 thread dump(s), 1.0 thread sample(s)"));
+        assertTrue(s.contains("H.service"));
+        assertTrue(!s.contains("H.park"));
+        assertTrue(!s.contains("W.work"));
+    }
+
+    @Test
+    public void process_NoThreadDumps() throws Exception {
+
+        HotMethods h = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        h.setPrintStream(new PrintStream(baos));
+
+        h.process(new EndOfStreamEvent());
+
+        assertEquals("0 thread dump(s), 0.0 thread sample(s)" + System.lineSeparator(),
+                new String(baos.toByteArray()));
+    }
+
+    // AggregatingProcedure ------------------------------------------------------------------------------------------
+
+    @Test
+    public void aggregate_MergedPartialsProduceTheSameOutputAsSequentialProcessing() throws Exception {
+
+        List<JavaThreadDumpEvent> dumps = Arrays.asList(
+                dump(0L, thread("a", "runnable", "A.read", "A.run"), thread("b", "runnable", "B.park")),
+                dump(1000L, thread("a", "runnable", "C.write", "A.run")),
+                dump(3500L, thread("b", "runnable", "B.park", "C.write")),
+                dump(4000L, thread("a", "runnable", "A.read", "A.run"), thread("c", "runnable", "D.x", "B.park")),
+                dump(90000L, thread("a", "runnable", "E.y")));
+
+        HotMethods sequential = getProcedureToTest();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sequential.setPrintStream(new PrintStream(expected));
+        sequential.processBatch(dumps);
+        sequential.process(new EndOfStreamEvent());
+
+        //
+        // all ways of splitting the thread dumps into two or three consecutive ranges
+        //
+
+        for(int i = 0; i <= dumps.size(); i ++) {
+
+            for(int j = i; j <= dumps.size(); j ++) {
+
+                HotMethods h = getProcedureToTest();
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                h.setPrintStream(new PrintStream(actual));
+
+                HotMethods.Profile first = partial(h, dumps.subList(0, i));
+                first.merge(partial(h, dumps.subList(i, j)));
+                first.merge(partial(h, dumps.subList(j, dumps.size())));
+
+                assertEquals(5, first.getThreadDumpCount());
+
+                h.emit(first);
+
+                //
+                // the end of the stream that follows the parallel aggregation does not produce output
+                //
+
+                h.process(new EndOfStreamEvent());
+
+                assertEquals(i + ", " + j, new String(expected.toByteArray()), new String(actual.toByteArray()));
+            }
+        }
+    }
+
+    @Test
+    public void stagedProcessing_SameOutputAsSequentialProcessing() throws Exception {
+
+        File f = new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(f.isFile());
+
+        HotMethods sequential = getProcedureToTest();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sequential.setPrintStream(new PrintStream(expected));
+
+        ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(f)));
+
+        JavaThreadDumpEvent e;
+
+        while((e = r.next()) != null) {
+
+            sequential.process(e);
+        }
+
+        r.close();
+
+        sequential.process(new EndOfStreamEvent());
+
+        String s = new String(expected.toByteArray());
+        assertTrue(s.startsWith("3 thread dump(s), 42.0 thread sample(s)"));
+
+        HotMethods h = getProcedureToTest();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        h.setPrintStream(new PrintStream(actual));
+
+        new StagedThreadDumpProcessor(new BufferedReader(new FileReader(f)), h, null, 3).run();
+
+        assertEquals(s, new String(actual.toByteArray()));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected HotMethods getProcedureToTest() throws Exception {
+
+        return new HotMethods();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static HotMethods.Profile partial(HotMethods h, List<JavaThreadDumpEvent> dumps) {
+
+        HotMethods.Profile p = h.newPartial();
+
+        for(JavaThreadDumpEvent d: dumps) {
+
+            h.accumulate(p, d);
+        }
+
+        return p;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
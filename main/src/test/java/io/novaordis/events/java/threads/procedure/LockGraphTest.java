@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.readSingle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/21/17
+ */
+public class LockGraphTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void build_OwnableSynchronizers() throws Exception {
+
+        LockGraph g = new LockGraph();
+
+        g.build(readSingle("019_ownable_synchronizers.txt").getStackTraceEvents());
+
+        assertEquals(6, g.size());
+        assertEquals(6, g.getWaiterCount());
+
+        int lockA = index(g, "lock-a");
+        int lockB = index(g, "lock-b");
+        int mixed1 = index(g, "mixed-1");
+        int mixed2 = index(g, "mixed-2");
+        int consumer = index(g, "consumer");
+        int reader = index(g, "reader");
+
+        assertEquals(0x76ab8c5b8L, g.getLock(lockA));
+        assertTrue(g.isSynchronizer(lockA));
+        assertEquals(lockB, g.getOwner(lockA));
+        assertEquals(lockA, g.getOwner(lockB));
+
+        assertEquals(mixed2, g.getOwner(mixed1));
+        assertFalse(g.isSynchronizer(mixed2));
+        assertEquals(mixed1, g.getOwner(mixed2));
+
+        assertEquals(0x76ab8c700L, g.getLock(consumer));
+        assertEquals(LockGraph.NONE, g.getOwner(consumer));
+
+        assertEquals(lockA, g.getOwner(reader));
+        assertEquals(lockA, g.getOwnerOf(0x76ab8c5a8L));
+        assertEquals(mixed1, g.getOwnerOf(0x76ab62300L));
+        assertEquals(LockGraph.NONE, g.getOwnerOf(0x76ab8c700L));
+    }
+
+    @Test
+    public void build_ObjectWaitReleasesTheMonitor() throws Exception {
+
+        LockGraph g = new LockGraph();
+
+        g.build(readSingle("018_deadlock.txt").getStackTraceEvents());
+
+        int cleaner = index(g, "cleaner");
+
+        assertEquals(0x6c0008ed0L, g.getLock(cleaner));
+        assertEquals(LockGraph.NONE, g.getOwner(cleaner));
+        assertEquals(LockGraph.NONE, g.getOwnerOf(0x6c0008ed0L));
+        assertEquals(index(g, "worker-1"), g.getOwner(index(g, "auditor")));
+    }
+
+    @Test
+    public void build_Reused() throws Exception {
+
+        LockGraph g = new LockGraph();
+
+        g.build(readSingle("019_ownable_synchronizers.txt").getStackTraceEvents());
+
+        StackTraceEvent idle = new StackTraceEvent(1L);
+        idle.setThreadName("idle");
+
+        g.build(Arrays.asList(idle));
+
+        assertEquals(1, g.size());
+        assertEquals(0, g.getWaiterCount());
+        assertEquals(StackTraceEvent.NO_MONITOR, g.getLock(0));
+        assertEquals(LockGraph.NONE, g.getOwner(0));
+        assertEquals(LockGraph.NONE, g.getOwnerOf(0x76ab8c5a8L));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static int index(LockGraph g, String threadName) {
+
+        for(int i = 0; i < g.size(); i ++) {
+
+            if (threadName.equals(g.getThread(i).getThreadName())) {
+
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("no such thread: " + threadName);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
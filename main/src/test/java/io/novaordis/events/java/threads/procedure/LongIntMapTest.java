@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/20/17
+ */
+public class LongIntMapTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void putGet() throws Exception {
+
+        LongIntMap m = new LongIntMap();
+
+        assertEquals(-1, m.get(0x76ab62208L, -1));
+
+        m.put(0x76ab62208L, 0);
+        m.put(0x76ab62218L, 7);
+        m.put(-1L, 3);
+
+        assertEquals(3, m.size());
+        assertEquals(0, m.get(0x76ab62208L, -1));
+        assertEquals(7, m.get(0x76ab62218L, -1));
+        assertEquals(3, m.get(-1L, -1));
+
+        m.put(0x76ab62218L, 8);
+
+        assertEquals(3, m.size());
+        assertEquals(8, m.get(0x76ab62218L, -1));
+    }
+
+    @Test
+    public void put_NegativeValue() throws Exception {
+
+        try {
+
+            new LongIntMap().put(1L, -1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("negative"));
+        }
+    }
+
+    @Test
+    public void growAndClear() throws Exception {
+
+        LongIntMap m = new LongIntMap(2);
+
+        //
+        // addresses are 8-byte aligned
+        //
+
+        for(int i = 0; i < 10000; i ++) {
+
+            m.put(0x6c0000000L + 8L * i, i);
+        }
+
+        assertEquals(10000, m.size());
+
+        for(int i = 0; i < 10000; i ++) {
+
+            assertEquals(i, m.get(0x6c0000000L + 8L * i, -1));
+        }
+
+        m.clear();
+
+        assertEquals(0, m.size());
+        assertEquals(-1, m.get(0x6c0000000L, -1));
+
+        m.put(0x6c0000000L, 5);
+        assertEquals(5, m.get(0x6c0000000L, -1));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
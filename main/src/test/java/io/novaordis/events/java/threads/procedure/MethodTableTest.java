@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/17/17
+ */
+public class MethodTableTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void toMethods() throws Exception {
+
+        String stack =
+                "\tat java.lang.Object.wait(Native Method)\n" +
+                "\t- waiting on <0x00000006c0a8b8e0> (a java.lang.Object)\n" +
+                "\tat java.lang.Object.wait(Object.java:502)\n" +
+                "\tat java.base/java.lang.Thread.run\n" +
+                "\t- locked <0x00000006c0a8b8e0> (a java.lang.Object)";
+
+        assertEquals(
+                Arrays.asList("java.lang.Object.wait", "java.lang.Object.wait", "java.base/java.lang.Thread.run"),
+                MethodTable.toMethods(stack));
+
+        assertTrue(MethodTable.toMethods("").isEmpty());
+    }
+
+    @Test
+    public void toFrames() throws Exception {
+
+        String stack =
+                "\tat java.lang.Object.wait(Native Method)\n" +
+                "\t- waiting on <0x00000006c0a8b8e0> (a java.lang.Object)\n" +
+                "\tat java.lang.Object.wait(Object.java:502)\n" +
+                "\tat java.base/java.lang.Thread.run";
+
+        assertEquals(
+                Arrays.asList(
+                        "java.lang.Object.wait(Native Method)", "java.lang.Object.wait(Object.java:502)",
+                        "java.base/java.lang.Thread.run"),
+                MethodTable.toFrames(stack));
+    }
+
+    @Test
+    public void topMethod() throws Exception {
+
+        String stack =
+                "\t- parking to wait for <0x00000006c0a8b8e0> (a java.lang.Object)\n" +
+                "\tat sun.misc.Unsafe.park(Native Method)\n" +
+                "\tat java.lang.Thread.run(Thread.java:748)";
+
+        assertEquals("sun.misc.Unsafe.park", MethodTable.topMethod(stack));
+        assertNull(MethodTable.topMethod("\t- locked <0x00000006c0a8b8e0> (a java.lang.Object)"));
+        assertNull(MethodTable.topMethod(""));
+    }
+
+    @Test
+    public void intern() throws Exception {
+
+        MethodTable t = new MethodTable();
+
+        for(int i = 0; i < 100; i ++) {
+
+            assertEquals(i, t.intern("m" + i));
+        }
+
+        assertEquals(7, t.intern("m7"));
+        assertEquals(100, t.size());
+        assertEquals("m99", t.getName(99));
+    }
+
+    @Test
+    public void toIds() throws Exception {
+
+        MethodTable t = new MethodTable();
+
+        t.intern("C.c");
+
+        String stack = "\tat A.a(A.java:1)\n\tat B.b(B.java:2)\n\tat A.a(A.java:3)\n\tat C.c(C.java:4)";
+
+        int[] ids = t.toIds(stack);
+
+        assertEquals("[1, 2, 1, 0]", Arrays.toString(ids));
+        assertEquals(3, t.size());
+
+        //
+        // same stack content, same ids
+        //
+
+        assertSame(ids, t.toIds(new String(stack)));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
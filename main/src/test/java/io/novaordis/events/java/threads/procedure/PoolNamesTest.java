@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/18/17
+ */
+public class PoolNamesTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void normalize() throws Exception {
+
+        assertEquals("default task", PoolNames.normalize("default task-57"));
+        assertEquals("EJB default", PoolNames.normalize("EJB default - 12"));
+        assertEquals("pool-3-thread", PoolNames.normalize("pool-3-thread-17"));
+        assertEquals("Incoming,shared=udp", PoolNames.normalize("Incoming-7,shared=udp"));
+        assertEquals("http-nio-8080-exec", PoolNames.normalize("http-nio-8080-exec-3"));
+        assertEquals("GC task thread (ParallelGC)", PoolNames.normalize("GC task thread#0 (ParallelGC)"));
+    }
+
+    @Test
+    public void normalize_NothingToRemove() throws Exception {
+
+        assertEquals("main", PoolNames.normalize("main"));
+        assertEquals("VM Thread", PoolNames.normalize("VM Thread"));
+        assertEquals("log4j2", PoolNames.normalize("log4j2"));
+        assertEquals("C2 CompilerThread1", PoolNames.normalize("C2 CompilerThread1"));
+        assertEquals("17", PoolNames.normalize("17"));
+        assertNull(PoolNames.normalize(null));
+    }
+
+    @Test
+    public void poolOf() throws Exception {
+
+        PoolNames p = new PoolNames();
+
+        assertEquals("default task", p.poolOf("default task-57"));
+        assertSame(p.poolOf("default task-57"), p.poolOf("default task-57"));
+        assertNull(p.poolOf(null));
+    }
+
+    @Test
+    public void poolOf_Patterns() throws Exception {
+
+        PoolNames p = new PoolNames();
+
+        assertEquals("jgroups-timer-worker-a", p.poolOf("jgroups-timer-worker-a"));
+
+        p.addPattern("^(Incoming|OOB)-");
+        p.addPattern("^jgroups-timer-worker-");
+
+        assertEquals(2, p.getPatterns().size());
+        assertEquals("Incoming", p.poolOf("Incoming-7,shared=udp"));
+        assertEquals("OOB", p.poolOf("OOB-2,shared=udp"));
+        assertEquals("^jgroups-timer-worker-", p.poolOf("jgroups-timer-worker-a"));
+        assertEquals("default task", p.poolOf("default task-57"));
+    }
+
+    @Test
+    public void addPattern_Invalid() throws Exception {
+
+        try {
+
+            new PoolNames().addPattern("(");
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
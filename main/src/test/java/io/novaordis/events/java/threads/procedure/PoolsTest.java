@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.dump;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.read;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.thread;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/25/17
+ */
+public class PoolsTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(Pools.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList("pools", "--pool=^OOB-", "--pool=^Incoming-", "a.txt"));
+
+        Pools p = new Pools(1, args);
+
+        assertEquals(Arrays.asList("pools", "a.txt"), args);
+        assertEquals(2, p.getPatterns().size());
+        assertEquals("^OOB-", p.getPatterns().get(0).pattern());
+    }
+
+    @Test
+    public void constructor_InvalidOption() throws Exception {
+
+        try {
+
+            new Pools(0, new ArrayList<>(Arrays.asList("--pool=(")));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("--pool"));
+        }
+    }
+
+    @Test
+    public void process() throws Exception {
+
+        Pools p = new Pools(0, new ArrayList<>(Arrays.asList("--pool=^(Incoming|OOB)-")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        p.setPrintStream(new PrintStream(baos));
+
+        p.processBatch(Arrays.asList(
+                dump(0L,
+                        thread("default task-1", "runnable"),
+                        thread("default task-2", "waiting on condition"),
+                        thread("default task-3", "waiting for monitor entry"),
+                        thread("Incoming-1,shared=udp", "runnable"),
+                        thread("OOB-1,shared=udp", "in Object.wait()"),
+                        thread("main", null)),
+                dump(30000L,
+                        thread("default task-1", "runnable"),
+                        thread("main", "sleeping"))));
+
+        String nl = System.lineSeparator();
+        String ts0 = p.getTimestampFormat().format(0L);
+        String ts1 = p.getTimestampFormat().format(30000L);
+
+        assertEquals(
+                ts0 + ", \"Incoming\", 1, 1, 0, 0, 0, 0, 0" + nl +
+                ts0 + ", \"OOB\", 1, 0, 1, 0, 0, 0, 0" + nl +
+                ts0 + ", \"default task\", 3, 1, 0, 1, 0, 1, 0" + nl +
+                ts0 + ", \"main\", 1, 0, 0, 0, 0, 0, 1" + nl +
+                ts1 + ", \"default task\", 1, 1, 0, 0, 0, 0, 0" + nl +
+                ts1 + ", \"main\", 1, 0, 0, 0, 1, 0, 0" + nl,
+                new String(baos.toByteArray()));
+
+        assertEquals("Pools[2 pool(s)]", p.toString());
+    }
+
+    @Test
+    public void process_ThreadDumpFile() throws Exception {
+
+        Pools p = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        p.setPrintStream(new PrintStream(baos));
+
+        for(JavaThreadDumpEvent e: read("015_successive_thread_dumps.txt")) {
+
+            p.process(e);
+        }
+
+        p.process(new EndOfStreamEvent());
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        assertEquals(21, lines.length);
+        assertEquals("08/13/17 17:41:59, \"GC task thread (ParallelGC)\", 8, 8, 0, 0, 0, 0, 0", lines[0]);
+        assertEquals("08/13/17 17:41:59, \"Incoming,shared=udp\", 1, 0, 0, 1, 0, 0, 0", lines[1]);
+        assertEquals("08/13/17 17:41:59, \"transport-thread\", 1, 0, 0, 1, 0, 0, 0", lines[6]);
+
+        //
+        // pools that lost their last thread are not reported anymore
+        //
+
+        assertEquals("08/13/17 17:42:10, \"Finalizer\", 1, 0, 1, 0, 0, 0, 0", lines[7]);
+        assertEquals("08/13/17 17:42:21, \"main\", 1, 1, 0, 0, 0, 0, 0", lines[20]);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Pools getProcedureToTest() throws Exception {
+
+        return new Pools();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.ThreadDumpReader;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.dump;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.threadWithFrames;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/18/17
+ */
+public class PprofTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(Pprof.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList("pprof", "--thread-name=task", "a.txt"));
+
+        Pprof p = new Pprof(1, args);
+
+        assertEquals(Arrays.asList("pprof", "a.txt"), args);
+        assertEquals("task", p.getFilter().getThreadName().pattern());
+    }
+
+    @Test
+    public void endOfStream_NoThreadDumps() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Pprof p = new Pprof();
+        p.setPrintStream(new PrintStream(baos));
+
+        p.process(new EndOfStreamEvent());
+
+        Profile profile = Profile.read(baos.toByteArray());
+
+        assertEquals("", profile.strings.get(0));
+        assertEquals(Arrays.asList("threads", "count"), profile.sampleType);
+        assertTrue(profile.samples.isEmpty());
+        assertTrue(profile.functions.isEmpty());
+        assertTrue(profile.locations.isEmpty());
+    }
+
+    @Test
+    public void process_SamplesLabelsAndTables() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Pprof p = new Pprof();
+        p.setPrintStream(new PrintStream(baos));
+
+        JavaThreadDumpEvent first = dump(1000L,
+                threadWithFrames("default task-1", "runnable", "A.read(A.java:10)", "A.run(A.java:5)"),
+                threadWithFrames("default task-2", "runnable", "A.read(A.java:10)", "A.run(A.java:5)"),
+                threadWithFrames(
+                        "default task-3", "waiting on condition", "Unsafe.park(Native Method)", "A.run(A.java:5)"),
+                threadWithFrames("VM Thread", "runnable"));
+
+        first.setPid(12345);
+
+        JavaThreadDumpEvent second = dump(3000L,
+                threadWithFrames("default task-1", "runnable", "A.read(A.java:12)", "A.run(A.java:5)"));
+
+        p.processBatch(Arrays.asList(first, second));
+
+        assertTrue(baos.size() > 0);
+
+        p.process(new EndOfStreamEvent());
+
+        Profile profile = Profile.read(baos.toByteArray());
+
+        assertEquals(1000000000L, profile.timeNanos);
+        assertEquals(2000000000L, profile.durationNanos);
+
+        //
+        // the strings are not duplicated
+        //
+
+        assertEquals(profile.strings.size(), new HashSet<>(profile.strings).size());
+
+        //
+        // A.read, A.run, Unsafe.park; A.read(A.java:10), A.run(A.java:5), Unsafe.park(Native Method), A.read(A.java:12)
+        //
+
+        assertEquals(3, profile.functions.size());
+        assertEquals(4, profile.locations.size());
+
+        assertEquals(4, profile.samples.size());
+
+        Sample s = profile.samples.get(0);
+        assertEquals(Arrays.asList("A.read(A.java:10)", "A.run(A.java:5)"), profile.frames(s));
+        assertEquals(2L, s.value);
+        assertEquals("RUNNABLE", s.labels.get(Pprof.STATE_LABEL));
+        assertEquals("default task", s.labels.get(Pprof.POOL_LABEL));
+        assertEquals(12345L, s.numLabels.get(Pprof.PID_LABEL).longValue());
+        assertEquals(1000L, s.numLabels.get(Pprof.TIMESTAMP_LABEL).longValue());
+
+        s = profile.samples.get(1);
+        assertEquals(Arrays.asList("Unsafe.park(Native Method)", "A.run(A.java:5)"), profile.frames(s));
+        assertEquals(1L, s.value);
+        assertEquals("WAITING_ON_CONDITION", s.labels.get(Pprof.STATE_LABEL));
+
+        s = profile.samples.get(2);
+        assertTrue(s.locations.isEmpty());
+        assertEquals("VM Thread", s.labels.get(Pprof.POOL_LABEL));
+
+        s = profile.samples.get(3);
+        assertEquals(Arrays.asList("A.read(A.java:12)", "A.run(A.java:5)"), profile.frames(s));
+        assertEquals(1L, s.value);
+        assertNull(s.numLabels.get(Pprof.PID_LABEL));
+        assertEquals(3000L, s.numLabels.get(Pprof.TIMESTAMP_LABEL).longValue());
+    }
+
+    @Test
+    public void process_SameStacksAcrossThreadDumps_TablesDoNotGrow() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Pprof p = new Pprof();
+        p.setPrintStream(new PrintStream(baos));
+
+        for(int i = 0; i < 100; i ++) {
+
+            p.process(dump(i * 1000L,
+                    threadWithFrames("pool-1-thread-" + i, "runnable", "A.read(A.java:10)", "A.run(A.java:5)"),
+                    threadWithFrames("pool-1-thread-" + (i + 1), "runnable", "A.read(A.java:10)", "A.run(A.java:5)")));
+        }
+
+        p.process(new EndOfStreamEvent());
+
+        Profile profile = Profile.read(baos.toByteArray());
+
+        assertEquals(100, profile.samples.size());
+        assertEquals(2, profile.functions.size());
+        assertEquals(2, profile.locations.size());
+        assertEquals(99000000000L, profile.durationNanos);
+
+        for(Sample s: profile.samples) {
+
+            assertEquals(2L, s.value);
+            assertEquals("pool-1-thread", s.labels.get(Pprof.POOL_LABEL));
+        }
+    }
+
+    @Test
+    public void process_ThreadDumpFile() throws Exception {
+
+        File file =
+                new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(file.isFile());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Pprof p = new Pprof();
+        p.setPrintStream(new PrintStream(baos));
+
+        int threads = 0;
+
+        try(ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(file)))) {
+
+            JavaThreadDumpEvent e;
+
+            while((e = r.next()) != null) {
+
+                threads += e.getThreadCount();
+                p.process(e);
+            }
+        }
+
+        p.process(new EndOfStreamEvent());
+
+        Profile profile = Profile.read(baos.toByteArray());
+
+        long total = 0;
+
+        for(Sample s: profile.samples) {
+
+            total += s.value;
+        }
+
+        assertEquals(threads, total);
+        assertTrue(profile.functions.size() > 0);
+        assertTrue(profile.locations.size() >= profile.functions.size());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Pprof getProcedureToTest() throws Exception {
+
+        Pprof p = new Pprof();
+
+        //
+        // the profile is binary
+        //
+
+        p.setPrintStream(new PrintStream(new ByteArrayOutputStream()));
+
+        return p;
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Just enough of a protocol buffer decoder to read the profiles written by PprofWriter back.
+     */
+    private static class Reader {
+
+        private final byte[] b;
+        private int position;
+        private final int limit;
+
+        Reader(byte[] b, int offset, int limit) {
+
+            this.b = b;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+
+            return position < limit;
+        }
+
+        long varint() {
+
+            long v = 0;
+
+            for(int shift = 0; ; shift += 7) {
+
+                byte x = b[position ++];
+                v |= (long)(x & 0x7F) << shift;
+
+                if ((x & 0x80) == 0) {
+
+                    return v;
+                }
+            }
+        }
+
+        /**
+         * @return a reader over the next length-delimited field.
+         */
+        Reader nested() {
+
+            int length = (int)varint();
+            Reader r = new Reader(b, position, position + length);
+            position += length;
+            return r;
+        }
+
+        String string() {
+
+            Reader r = nested();
+            return new String(b, r.position, r.limit - r.position, StandardCharsets.UTF_8);
+        }
+
+        List<Long> packed() {
+
+            Reader r = nested();
+            List<Long> values = new ArrayList<>();
+
+            while(r.hasMore()) {
+
+                values.add(r.varint());
+            }
+
+            return values;
+        }
+    }
+
+    private static class Sample {
+
+        private List<Long> locations = new ArrayList<>();
+        private long value;
+        private Map<String, String> labels = new HashMap<>();
+        private Map<String, Long> numLabels = new HashMap<>();
+
+        //
+        // string table indexes, resolved after the whole profile was read
+        //
+        private List<long[]> rawLabels = new ArrayList<>();
+    }
+
+    private static class Profile {
+
+        static Profile read(byte[] gzipped) throws IOException {
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+            try(InputStream is = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+
+                byte[] buffer = new byte[1024];
+                int n;
+
+                while((n = is.read(buffer)) != -1) {
+
+                    baos.write(buffer, 0, n);
+                }
+            }
+
+            byte[] b = baos.toByteArray();
+            Profile p = new Profile();
+            Reader r = new Reader(b, 0, b.length);
+            List<long[]> sampleType = new ArrayList<>();
+
+            while(r.hasMore()) {
+
+                long tag = r.varint();
+                int field = (int)(tag >>> 3);
+
+                if (field == PprofWriter.PROFILE_STRING_TABLE) {
+
+                    p.strings.add(r.string());
+                }
+                else if (field == PprofWriter.PROFILE_SAMPLE_TYPE) {
+
+                    sampleType.add(pair(r.nested()));
+                }
+                else if (field == PprofWriter.PROFILE_FUNCTION) {
+
+                    Reader f = r.nested();
+                    long[] function = new long[5];
+
+                    while(f.hasMore()) {
+
+                        int ff = (int)(f.varint() >>> 3);
+                        function[ff] = f.varint();
+                    }
+
+                    p.functions.put(function[PprofWriter.FUNCTION_ID], function);
+                }
+                else if (field == PprofWriter.PROFILE_LOCATION) {
+
+                    //
+                    // id, then a single line: function id, line number
+                    //
+
+                    Reader l = r.nested();
+                    l.varint();
+                    long id = l.varint();
+                    l.varint();
+                    p.locations.put(id, pair(l.nested()));
+                }
+                else if (field == PprofWriter.PROFILE_SAMPLE) {
+
+                    Reader s = r.nested();
+                    Sample sample = new Sample();
+
+                    while(s.hasMore()) {
+
+                        int sf = (int)(s.varint() >>> 3);
+
+                        if (sf == PprofWriter.SAMPLE_LOCATION_ID) {
+
+                            sample.locations = s.packed();
+                        }
+                        else if (sf == PprofWriter.SAMPLE_VALUE) {
+
+                            sample.value = s.packed().get(0);
+                        }
+                        else {
+
+                            Reader l = s.nested();
+                            long[] label = new long[5];
+
+                            while(l.hasMore()) {
+
+                                int lf = (int)(l.varint() >>> 3);
+                                label[lf] = l.varint();
+                            }
+
+                            sample.rawLabels.add(label);
+                        }
+                    }
+
+                    p.samples.add(sample);
+                }
+                else if (field == PprofWriter.PROFILE_TIME_NANOS) {
+
+                    p.timeNanos = r.varint();
+                }
+                else if (field == PprofWriter.PROFILE_DURATION_NANOS) {
+
+                    p.durationNanos = r.varint();
+                }
+                else if ((tag & 0x7) == 0) {
+
+                    r.varint();
+                }
+                else {
+
+                    r.nested();
+                }
+            }
+
+            for(long[] t: sampleType) {
+
+                p.sampleType.add(p.strings.get((int)t[0]));
+                p.sampleType.add(p.strings.get((int)t[1]));
+            }
+
+            for(Sample s: p.samples) {
+
+                for(long[] l: s.rawLabels) {
+
+                    String key = p.strings.get((int)l[PprofWriter.LABEL_KEY]);
+
+                    if (l[PprofWriter.LABEL_STR] != 0) {
+
+                        s.labels.put(key, p.strings.get((int)l[PprofWriter.LABEL_STR]));
+                    }
+                    else {
+
+                        s.numLabels.put(key, l[PprofWriter.LABEL_NUM]);
+                    }
+                }
+            }
+
+            return p;
+        }
+
+        /**
+         * @return the values of the first two varint fields of the message.
+         */
+        private static long[] pair(Reader r) {
+
+            long[] result = new long[2];
+
+            for(int i = 0; i < 2 && r.hasMore(); i ++) {
+
+                r.varint();
+                result[i] = r.varint();
+            }
+
+            return result;
+        }
+
+        private List<String> strings = new ArrayList<>();
+        private List<String> sampleType = new ArrayList<>();
+        private Map<Long, long[]> functions = new HashMap<>();
+        private Map<Long, long[]> locations = new HashMap<>();
+        private List<Sample> samples = new ArrayList<>();
+        private long timeNanos;
+        private long durationNanos;
+
+        /**
+         * @return the frames of the sample, rebuilt from the locations and the functions, in thread dump format.
+         */
+        List<String> frames(Sample s) {
+
+            List<String> frames = new ArrayList<>();
+
+            for(long id: s.locations) {
+
+                long[] line = locations.get(id);
+                long[] function = functions.get(line[0]);
+                String name = strings.get((int)function[PprofWriter.FUNCTION_NAME]);
+                String file = strings.get((int)function[PprofWriter.FUNCTION_FILENAME]);
+                frames.add(name + "(" + file + (line[1] == 0 ? "" : ":" + line[1]) + ")");
+            }
+
+            return frames;
+        }
+    }
+}
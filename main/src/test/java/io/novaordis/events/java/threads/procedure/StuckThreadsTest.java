@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.dump;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.read;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.thread;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/24/17
+ */
+public class StuckThreadsTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(StuckThreads.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "stuck-threads", "--dumps=4", "--state=runnable", "--entry=A.service", "a.txt", "--dumps=5"));
+
+        StuckThreads s = new StuckThreads(1, args);
+
+        assertEquals(Arrays.asList("stuck-threads", "a.txt", "--dumps=5"), args);
+        assertEquals(4, s.getDumps());
+        assertEquals("A.service", s.getEntry());
+        assertTrue(s.getFilter().getStates().contains(ThreadState.RUNNABLE));
+
+        StuckThreads defaults = getProcedureToTest();
+
+        assertEquals(StuckThreads.DEFAULT_DUMPS, defaults.getDumps());
+        assertNull(defaults.getEntry());
+    }
+
+    @Test
+    public void constructor_InvalidOption() throws Exception {
+
+        try {
+
+            new StuckThreads(0, new ArrayList<>(Arrays.asList("--dumps=0")));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("--dumps"));
+        }
+
+        try {
+
+            new StuckThreads(0, new ArrayList<>(Arrays.asList("--entry=")));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("--entry"));
+        }
+    }
+
+    @Test
+    public void process() throws Exception {
+
+        StuckThreads s = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        s.setPrintStream(new PrintStream(baos));
+
+        s.processBatch(Arrays.asList(
+                dump(0L, thread(1, "worker-1", "runnable", "Dao.query", "A.service"),
+                        thread(2, "worker-2", "runnable", "B.run")),
+                dump(30000L, thread(1, "worker-1", "runnable", "Dao.query", "A.service"),
+                        thread(2, "worker-2", "runnable", "B.read")),
+                dump(60000L, thread(1, "worker-1", "runnable", "Dao.query", "A.service"),
+                        thread(2, "worker-2", "runnable", "B.read")),
+                dump(90000L, thread(1, "worker-1", "runnable", "Dao.query", "A.service"),
+                        thread(2, "worker-2", "runnable", "B.read"))));
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        String since0 = s.getTimestampFormat().format(0L);
+
+        assertEquals(3, lines.length);
+        assertEquals(s.getTimestampFormat().format(60000L) + ", worker-1, 3 thread dump(s), since " + since0 +
+                " (60 s), Dao.query", lines[0]);
+        assertEquals(s.getTimestampFormat().format(90000L) + ", worker-1, 4 thread dump(s), since " + since0 +
+                " (90 s), Dao.query", lines[1]);
+        assertTrue(lines[2].endsWith(", worker-2, 3 thread dump(s), since " + s.getTimestampFormat().format(30000L) +
+                " (60 s), B.read"));
+
+        assertEquals(2L, s.getStuckCount());
+
+        s.process(new EndOfStreamEvent());
+
+        assertTrue(new String(baos.toByteArray()).endsWith(
+                "4 thread dump(s), 2 stuck thread(s)" + System.lineSeparator()));
+    }
+
+    @Test
+    public void process_StackChangeStartsOver() throws Exception {
+
+        StuckThreads s = new StuckThreads(0, new ArrayList<>(Arrays.asList("--dumps=2")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        s.setPrintStream(new PrintStream(baos));
+
+        s.processBatch(Arrays.asList(
+                dump(0L, thread(1, "worker-1", "runnable", "A.run")),
+                dump(30000L, thread(1, "worker-1", "runnable", "B.run")),
+                dump(60000L, thread(1, "worker-1", "runnable", "A.run")),
+                dump(90000L, thread(2, "worker-1", "runnable", "A.run"))));
+
+        assertEquals(0, baos.size());
+        assertEquals(0L, s.getStuckCount());
+    }
+
+    @Test
+    public void process_Entry() throws Exception {
+
+        StuckThreads s = new StuckThreads(0, new ArrayList<>(Arrays.asList("--dumps=2", "--entry=Servlet.service")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        s.setPrintStream(new PrintStream(baos));
+
+        //
+        // the container frames below the entry frame differ, the idle thread does not run through the entry frame
+        //
+
+        s.processBatch(Arrays.asList(
+                dump(0L,
+                        thread(1, "request", "runnable", "Dao.query", "Servlet.service", "Container.dispatch"),
+                        thread(2, "idle", "runnable", "Unsafe.park", "Pool.take")),
+                dump(30000L,
+                        thread(1, "request", "runnable", "Dao.query", "Servlet.service", "Container.dispatchAsync"),
+                        thread(2, "idle", "runnable", "Unsafe.park", "Pool.take"))));
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains(", request, 2 thread dump(s), since "));
+    }
+
+    @Test
+    public void process_PidChangeStartsOver() throws Exception {
+
+        StuckThreads s = new StuckThreads(0, new ArrayList<>(Arrays.asList("--dumps=2")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        s.setPrintStream(new PrintStream(baos));
+
+        JavaThreadDumpEvent first = dump(0L, thread(1, "main", "runnable", "A.run"));
+        first.setPid(100);
+        JavaThreadDumpEvent second = dump(30000L, thread(1, "main", "runnable", "A.run"));
+        second.setPid(200);
+
+        s.processBatch(Arrays.asList(first, second));
+
+        assertEquals(0, baos.size());
+    }
+
+    @Test
+    public void process_ThreadDumpFile() throws Exception {
+
+        StuckThreads s = new StuckThreads(0, new ArrayList<>(Arrays.asList("--dumps=3")));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        s.setPrintStream(new PrintStream(baos));
+
+        for(JavaThreadDumpEvent e: read("015_successive_thread_dumps.txt")) {
+
+            s.process(e);
+        }
+
+        s.process(new EndOfStreamEvent());
+
+        String[] lines = new String(baos.toByteArray()).split(System.lineSeparator());
+
+        //
+        // nothing changes in the last two thread dumps; the threads that were there from the start are reported
+        //
+
+        assertEquals(13, lines.length);
+        assertEquals("08/13/17 17:42:21, Incoming-7,shared=udp, 3 thread dump(s), since 08/13/17 17:41:59 (22 s), " +
+                "sun.misc.Unsafe.park", lines[0]);
+        assertEquals("08/13/17 17:42:21, main, 3 thread dump(s), since 08/13/17 17:41:59 (22 s), " +
+                "java.io.FileInputStream.readBytes", lines[1]);
+        assertEquals("08/13/17 17:42:21, VM Thread, 3 thread dump(s), since 08/13/17 17:41:59 (22 s), -", lines[2]);
+        assertEquals("3 thread dump(s), 12 stuck thread(s)", lines[12]);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected StuckThreads getProcedureToTest() throws Exception {
+
+        return new StuckThreads();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
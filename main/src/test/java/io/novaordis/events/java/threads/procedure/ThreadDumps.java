@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.novaordis.events.java.threads.ThreadDumpReader;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds synthetic thread dumps, and reads sample thread dump files, for procedure tests.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/26/17
+ */
+final class ThreadDumps {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param sample the name of a file in src/test/resources/samples.
+     */
+    static List<JavaThreadDumpEvent> read(String sample) throws Exception {
+
+        File file = new File(System.getProperty("basedir"), "src/test/resources/samples/" + sample);
+        assertTrue(file.isFile());
+
+        List<JavaThreadDumpEvent> dumps = new ArrayList<>();
+
+        try(ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(file)))) {
+
+            JavaThreadDumpEvent e;
+
+            while((e = r.next()) != null) {
+
+                dumps.add(e);
+            }
+        }
+
+        return dumps;
+    }
+
+    /**
+     * Reads a sample file that contains exactly one thread dump.
+     */
+    static JavaThreadDumpEvent readSingle(String sample) throws Exception {
+
+        List<JavaThreadDumpEvent> dumps = read(sample);
+        assertEquals(1, dumps.size());
+        return dumps.get(0);
+    }
+
+    static JavaThreadDumpEvent dump(long time, StackTraceEvent... threads) {
+
+        JavaThreadDumpEvent e = new JavaThreadDumpEvent(1L, time);
+
+        for(StackTraceEvent st: threads) {
+
+            e.addStackTrace(st);
+        }
+
+        return e;
+    }
+
+    /**
+     * @param state null for no state.
+     * @param methods top first, each gets a "(Source.java:1)" location. No methods means no stack.
+     */
+    static StackTraceEvent thread(String name, String state, String... methods) {
+
+        String[] frames = new String[methods.length];
+
+        for(int i = 0; i < methods.length; i ++) {
+
+            frames[i] = methods[i] + "(Source.java:1)";
+        }
+
+        return threadWithFrames(name, state, frames);
+    }
+
+    /**
+     * @param tid the Java thread ID, set as hexadecimal, as the parser does.
+     *
+     * @see ThreadDumps#thread(String, String, String...)
+     */
+    static StackTraceEvent thread(long tid, String name, String state, String... methods) {
+
+        StackTraceEvent st = thread(name, state, methods);
+        st.setTid(Long.toHexString(tid));
+        return st;
+    }
+
+    /**
+     * @param state null for no state.
+     * @param frames top first, with their location. No frames means no stack.
+     */
+    static StackTraceEvent threadWithFrames(String name, String state, String... frames) {
+
+        StackTraceEvent st = new StackTraceEvent(1L);
+        st.setThreadName(name);
+
+        if (state != null) {
+
+            st.setThreadState(state);
+        }
+
+        if (frames.length > 0) {
+
+            StringBuilder stack = new StringBuilder();
+
+            for(String f: frames) {
+
+                stack.append(stack.length() == 0 ? "" : "\n").append("\tat ").append(f);
+            }
+
+            st.setStack(stack.toString());
+        }
+
+        return st;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private ThreadDumps() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import org.junit.Test;
+
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+import io.novaordis.events.java.threads.event.ThreadState;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.thread;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/17/17
+ */
+public class ThreadFilterTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void noFilter_SelectsEverything() throws Exception {
+
+        ThreadFilter f = new ThreadFilter();
+
+        assertNull(f.getStates());
+        assertNull(f.getThreadName());
+        assertTrue(f.selects(thread("a", "runnable")));
+        assertTrue(f.selects(new StackTraceEvent(1L)));
+    }
+
+    @Test
+    public void consume() throws Exception {
+
+        ThreadFilter f = new ThreadFilter();
+
+        assertTrue(f.consume("--state=runnable"));
+        assertTrue(f.consume("--thread-name=^http"));
+        assertFalse(f.consume("--top=5"));
+        assertFalse(f.consume("--state"));
+
+        assertEquals(1, f.getStates().size());
+        assertEquals("^http", f.getThreadName().pattern());
+    }
+
+    @Test
+    public void states_Aliases() throws Exception {
+
+        ThreadFilter f = new ThreadFilter();
+
+        f.setStates("blocked, Waiting");
+
+        assertEquals(4, f.getStates().size());
+        assertTrue(f.getStates().contains(ThreadState.WAITING_FOR_MONITOR_ENTRY));
+        assertTrue(f.getStates().contains(ThreadState.OBJECT_WAIT));
+        assertTrue(f.getStates().contains(ThreadState.WAITING_ON_CONDITION));
+        assertTrue(f.getStates().contains(ThreadState.SLEEPING));
+
+        assertTrue(f.selects(thread("a", "waiting for monitor entry")));
+        assertTrue(f.selects(thread("a", "in Object.wait()")));
+        assertFalse(f.selects(thread("a", "runnable")));
+        assertFalse(f.selects(new StackTraceEvent(1L)));
+    }
+
+    @Test
+    public void states_Unknown() throws Exception {
+
+        try {
+
+            new ThreadFilter().setStates("RUNNABLE,RUNNING");
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("RUNNING"));
+        }
+    }
+
+    @Test
+    public void threadName() throws Exception {
+
+        ThreadFilter f = new ThreadFilter();
+
+        f.setThreadName("pool-[0-9]+");
+
+        assertTrue(f.selects(thread("my-pool-3-thread-1", "runnable")));
+        assertFalse(f.selects(thread("main", "runnable")));
+        assertFalse(f.selects(new StackTraceEvent(1L)));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/26/17
+ */
+public class ThreadIndexTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void addIndexOf() throws Exception {
+
+        ThreadIndex i = new ThreadIndex();
+        i.reset(2, 1000L, 7);
+
+        assertEquals(0, i.add(10L, "main", 1L));
+        assertEquals(1, i.add(20L, "worker-1", 2L));
+
+        assertEquals(2, i.size);
+        assertEquals(1000L, i.time.longValue());
+        assertEquals(7, i.pid.intValue());
+        assertEquals(0, i.indexOf(10L));
+        assertEquals(1, i.indexOf(20L));
+        assertEquals(-1, i.indexOf(30L));
+        assertEquals("worker-1", i.names[1]);
+        assertEquals(2L, i.fingerprints[1]);
+    }
+
+    @Test
+    public void add_DuplicateTidIsIgnored() throws Exception {
+
+        ThreadIndex i = new ThreadIndex();
+        i.reset(0, null, null);
+
+        assertEquals(0, i.add(10L, "main", 1L));
+        assertEquals(-1, i.add(10L, "other", 2L));
+
+        assertEquals(1, i.size);
+        assertEquals("main", i.names[0]);
+    }
+
+    @Test
+    public void reset() throws Exception {
+
+        ThreadIndex i = new ThreadIndex();
+        i.reset(1, null, null);
+        i.add(10L, "main", 1L);
+
+        i.reset(1, null, null);
+
+        assertEquals(0, i.size);
+        assertEquals(-1, i.indexOf(10L));
+        assertNull(i.names[0]);
+
+        i.reset(100, null, null);
+
+        assertEquals(100, i.tids.length);
+        assertEquals(0, i.add(10L, "main", 1L));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.ThreadDumpReader;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.dump;
+import static io.novaordis.events.java.threads.procedure.ThreadDumps.thread;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/19/17
+ */
+public class TimelineTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        assertTrue(getProcedureToTest().getCommandLineLabels().contains(Timeline.LABEL));
+    }
+
+    @Test
+    public void constructor_ConsumesOptions() throws Exception {
+
+        List<String> args = new ArrayList<>(Arrays.asList("timeline", "--state=RUNNABLE", "a.txt"));
+
+        Timeline t = new Timeline(1, args);
+
+        assertEquals(Arrays.asList("timeline", "a.txt"), args);
+        assertEquals(1, t.getFilter().getStates().size());
+    }
+
+    @Test
+    public void appendJsonString() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        Timeline.appendJsonString(sb, "a\"b\\c\td\u00e9");
+
+        assertEquals("\"a\\\"b\\\\c\\u0009d\u00e9\"", sb.toString());
+    }
+
+    @Test
+    public void endOfStream_NoThreadDumps() throws Exception {
+
+        Timeline t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        t.process(new EndOfStreamEvent());
+
+        assertEquals("[]" + System.lineSeparator(), new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_CoalescedSpans() throws Exception {
+
+        Timeline t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        t.processBatch(Arrays.asList(
+                dump(1000L,
+                        thread("a", "runnable", "A.read"),
+                        thread("b", "waiting on condition", "B.park")),
+                dump(2000L,
+                        thread("a", "runnable", "A.read"),
+                        thread("b", "runnable", "B.run"))));
+
+        t.process(dump(3000L, thread("a", "runnable", "A.read")));
+
+        t.process(new EndOfStreamEvent());
+
+        String nl = System.lineSeparator();
+
+        assertEquals(
+                "[" + nl +
+                "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":0,\"args\":{\"name\":\"JVM\"}}," + nl +
+                "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":1,\"args\":{\"name\":\"a\"}}," + nl +
+                "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":2,\"args\":{\"name\":\"b\"}}," + nl +
+                "{\"name\":\"B.park\",\"cat\":\"WAITING_ON_CONDITION\",\"ph\":\"X\",\"pid\":0,\"tid\":2," +
+                "\"ts\":1000000,\"dur\":1000000," +
+                "\"args\":{\"state\":\"WAITING_ON_CONDITION\",\"method\":\"B.park\"}}," + nl +
+                "{\"name\":\"B.run\",\"cat\":\"RUNNABLE\",\"ph\":\"X\",\"pid\":0,\"tid\":2," +
+                "\"ts\":2000000,\"dur\":1000000,\"args\":{\"state\":\"RUNNABLE\",\"method\":\"B.run\"}}," + nl +
+                "{\"name\":\"A.read\",\"cat\":\"RUNNABLE\",\"ph\":\"X\",\"pid\":0,\"tid\":1," +
+                "\"ts\":1000000,\"dur\":3000000,\"args\":{\"state\":\"RUNNABLE\",\"method\":\"A.read\"}}" + nl +
+                "]" + nl,
+                new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_MissingThreadsAreForgotten() throws Exception {
+
+        Timeline t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        t.process(dump(1000L, thread("a", "runnable", "A.read"), thread("b", "runnable", "B.run")));
+        assertEquals(2, t.getThreadCount());
+
+        //
+        // missing from one thread dump, the span is closed but the thread is still remembered
+        //
+
+        t.process(dump(2000L, thread("a", "runnable", "A.read")));
+        assertEquals(2, t.getThreadCount());
+
+        t.process(dump(3000L, thread("a", "runnable", "A.read"), thread("b", "runnable", "B.run")));
+        assertEquals(2, t.getThreadCount());
+
+        //
+        // missing from two successive thread dumps, the thread is forgotten
+        //
+
+        t.process(dump(4000L, thread("a", "runnable", "A.read")));
+        t.process(dump(5000L, thread("a", "runnable", "A.read")));
+        assertEquals(1, t.getThreadCount());
+
+        //
+        // a thread that comes back gets a new track
+        //
+
+        t.process(dump(6000L, thread("a", "runnable", "A.read"), thread("b", "runnable", "B.run")));
+        assertEquals(2, t.getThreadCount());
+
+        t.process(new EndOfStreamEvent());
+
+        String output = new String(baos.toByteArray());
+
+        assertTrue(output.contains(
+                "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":2,\"args\":{\"name\":\"b\"}}"));
+        assertTrue(output.contains(
+                "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":3,\"args\":{\"name\":\"b\"}}"));
+        assertTrue(output.contains("\"tid\":2,\"ts\":3000000,\"dur\":1000000"));
+        assertTrue(output.contains("\"tid\":3,\"ts\":6000000,\"dur\":1000000"));
+    }
+
+    @Test
+    public void process_ThreadWithoutStack_ProcessPerPid() throws Exception {
+
+        Timeline t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        JavaThreadDumpEvent first = dump(1000L, thread("VM Thread", "runnable"));
+        first.setPid(7);
+        JavaThreadDumpEvent second = dump(1000L, thread("VM Thread", "runnable"));
+        second.setPid(8);
+
+        t.processBatch(Arrays.asList(first, second));
+        t.process(new EndOfStreamEvent());
+
+        String s = new String(baos.toByteArray());
+
+        assertTrue(s.contains("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":7,\"args\":{\"name\":\"JVM 7\"}}"));
+        assertTrue(s.contains("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":8,\"args\":{\"name\":\"JVM 8\"}}"));
+        assertTrue(s.contains("{\"name\":\"RUNNABLE\",\"cat\":\"RUNNABLE\",\"ph\":\"X\",\"pid\":7,\"tid\":1,"));
+        assertTrue(s.contains("{\"name\":\"RUNNABLE\",\"cat\":\"RUNNABLE\",\"ph\":\"X\",\"pid\":8,\"tid\":2,"));
+    }
+
+    @Test
+    public void process_IdleThreads_OneSpanPerThread() throws Exception {
+
+        Timeline t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        for(int i = 0; i < 1000; i ++) {
+
+            t.process(dump(i * 30000L,
+                    thread("pool-1-thread-1", "waiting on condition", "Unsafe.park"),
+                    thread("pool-1-thread-2", "waiting on condition", "Unsafe.park")));
+        }
+
+        t.process(new EndOfStreamEvent());
+
+        String s = new String(baos.toByteArray());
+
+        assertEquals(2, s.split("\"ph\":\"X\"", -1).length - 1);
+        assertTrue(s.contains("\"ts\":0,\"dur\":30000000000,"));
+    }
+
+    @Test
+    public void process_ThreadDumpFile() throws Exception {
+
+        File file =
+                new File(System.getProperty("basedir"), "src/test/resources/samples/015_successive_thread_dumps.txt");
+        assertTrue(file.isFile());
+
+        Timeline t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        int threads = 0;
+
+        try(ThreadDumpReader r = new ThreadDumpReader(new BufferedReader(new FileReader(file)))) {
+
+            JavaThreadDumpEvent e;
+
+            while((e = r.next()) != null) {
+
+                threads = Math.max(threads, e.getThreadCount());
+                t.process(e);
+            }
+        }
+
+        t.process(new EndOfStreamEvent());
+
+        String s = new String(baos.toByteArray()).trim();
+
+        assertTrue(s.startsWith("["));
+        assertTrue(s.endsWith("]"));
+        int tracks = s.split("\"thread_name\"", -1).length - 1;
+        assertTrue(tracks >= threads);
+
+        //
+        // the last two thread dumps are identical, so their spans are coalesced
+        //
+
+        int spans = s.split("\"ph\":\"X\"", -1).length - 1;
+        assertTrue(spans >= tracks);
+        assertTrue(spans <= 2 * tracks);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Timeline getProcedureToTest() throws Exception {
+
+        return new Timeline();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.java.threads.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.java.threads.event.JavaThreadDumpEvent;
+import io.novaordis.events.java.threads.event.StackTraceEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 12/5/17
+ */
+public class TotalsTest extends ProcedureTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        Totals t = getProcedureToTest();
+
+        assertTrue(t.getCommandLineLabels().contains(Totals.LABEL));
+    }
+
+    @Test
+    public void process() throws Exception {
+
+        Totals t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        List<JavaThreadDumpEvent> dumps = dumps();
+
+        t.processBatch(dumps.subList(0, 2));
+
+        assertEquals(0, baos.size());
+
+        t.process(dumps.get(2));
+        t.process(new EndOfStreamEvent());
+
+        assertEquals("3 thread dump(s), 6 stack trace(s), 3 thread name(s)\n", new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void process_NoThreadDumps() throws Exception {
+
+        Totals t = getProcedureToTest();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(baos));
+
+        t.process(new EndOfStreamEvent());
+
+        assertEquals("0 thread dump(s), 0 stack trace(s), 0 thread name(s)\n", new String(baos.toByteArray()));
+    }
+
+    // AggregatingProcedure --------------------------------------------------------------------------------------------
+
+    @Test
+    public void aggregate_MergedPartialsProduceTheSameOutputAsSequentialProcessing() throws Exception {
+
+        List<JavaThreadDumpEvent> dumps = dumps();
+
+        Totals sequential = getProcedureToTest();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sequential.setPrintStream(new PrintStream(expected));
+        sequential.processBatch(dumps);
+        sequential.process(new EndOfStreamEvent());
+
+        Totals t = getProcedureToTest();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        t.setPrintStream(new PrintStream(actual));
+
+        //
+        // ranges [0, 1), [1, 2), [2, 3) accumulated independently, then merged in order
+        //
+
+        Totals.Summary first = t.newPartial();
+        Totals.Summary second = t.newPartial();
+        Totals.Summary third = t.newPartial();
+
+        t.accumulate(first, dumps.get(0));
+        t.accumulate(second, dumps.get(1));
+        t.accumulate(third, dumps.get(2));
+
+        second.merge(third);
+        first.merge(second);
+
+        assertEquals(3L, first.getDumps());
+        assertEquals(6L, first.getStackTraces());
+        assertEquals(3, first.getNames().size());
+
+        t.emit(first);
+
+        //
+        // the end of the stream does not write the totals again
+        //
+
+        t.process(new EndOfStreamEvent());
+
+        assertEquals(new String(expected.toByteArray()), new String(actual.toByteArray()));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Totals getProcedureToTest() throws Exception {
+
+        return new Totals();
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Three thread dumps, with 1, 2 and 3 threads: "main", then "main" and "worker-1", then "main", "worker-1" and
+     * "worker-2".
+     */
+    private static List<JavaThreadDumpEvent> dumps() {
+
+        List<JavaThreadDumpEvent> dumps = new ArrayList<>();
+
+        for(int i = 0; i < 3; i ++) {
+
+            JavaThreadDumpEvent e = new JavaThreadDumpEvent((long)i, i * 1000L);
+
+            for(int j = 0; j <= i; j ++) {
+
+                StackTraceEvent st = new StackTraceEvent(10L + j);
+                st.setThreadName(j == 0 ? "main" : "worker-" + j);
+                e.addStackTrace(st);
+            }
+
+            dumps.add(e);
+        }
+
+        return dumps;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}